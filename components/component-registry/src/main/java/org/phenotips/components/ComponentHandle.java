@@ -0,0 +1,296 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.components;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.inject.Provider;
+
+/**
+ * A cached reference to components, for code which needs them often, and would otherwise look them up in the
+ * component manager each time. A handle can point to a single component, or to all the components implementing a
+ * role, as a list or as a map. The components are looked up the first time they are needed, and are then kept until
+ * components implementing the same role are registered or unregistered, or until the component manager provider
+ * returns a different instance. A failed lookup is not remembered, and is retried on the next access.
+ * <p>
+ * Handles are only meant for roles implemented by components registered in the root component manager, which are the
+ * same in every wiki and for every user. The value looked up is shared by all the callers, whatever their context:
+ * the context component manager is the same delegating instance in every wiki and for every user, so a handle cannot
+ * tell contexts apart, and components registered only in a wiki or only for a user must not be accessed through a
+ * handle.
+ * </p>
+ * <p>
+ * By default, handles use the {@link ComponentManagerRegistry#getContextComponentManager() context component manager},
+ * which falls back to the root component manager, so they can be used by non-components, for example as static
+ * fields. Components can use their own injected component manager instead, with {@link #from(Provider)} or
+ * {@link #from(ComponentManager)}.
+ * </p>
+ *
+ * @param <T> the type of the cached value: the component role for a single component, or a list or map of components
+ * @version $Id$
+ * @since 1.3M1
+ */
+public final class ComponentHandle<T>
+{
+    /** All the handles in use, so that they can be cleared when components change. */
+    private static final Set<ComponentHandle<?>> HANDLES =
+        Collections.newSetFromMap(new WeakHashMap<ComponentHandle<?>, Boolean>());
+
+    /** The component manager used by default. */
+    private static final Provider<ComponentManager> CONTEXT = new Provider<ComponentManager>()
+    {
+        @Override
+        public ComponentManager get()
+        {
+            return ComponentManagerRegistry.getContextComponentManager();
+        }
+    };
+
+    /** How are components looked up. */
+    private enum Kind
+    {
+        /** A single component, identified by its role and hint. */
+        INSTANCE,
+        /** All the components implementing a role, as a list. */
+        LIST,
+        /** All the components implementing a role, as a map with their hints as keys. */
+        MAP
+    }
+
+    private final Kind kind;
+
+    private final Type role;
+
+    private final String hint;
+
+    private volatile Provider<ComponentManager> source = CONTEXT;
+
+    /** The cached value, {@code null} if it wasn't looked up yet, or if it was cleared. */
+    private volatile Entry<T> cached;
+
+    /**
+     * Incremented each time the handle is cleared, so that a lookup started before components changed doesn't cache
+     * its outdated result. Only changed while holding the lock on this handle.
+     */
+    private volatile int generation;
+
+    private ComponentHandle(Kind kind, Type role, String hint)
+    {
+        this.kind = kind;
+        this.role = role;
+        this.hint = hint;
+        synchronized (HANDLES) {
+            HANDLES.add(this);
+        }
+    }
+
+    /**
+     * Create a handle for the default implementation of a role.
+     *
+     * @param role the role of the component
+     * @param <R> the type of the component
+     * @return a new handle
+     */
+    public static <R> ComponentHandle<R> of(Type role)
+    {
+        return of(role, null);
+    }
+
+    /**
+     * Create a handle for a specific implementation of a role.
+     *
+     * @param role the role of the component
+     * @param hint the hint of the component, {@code null} for the default implementation
+     * @param <R> the type of the component
+     * @return a new handle
+     */
+    public static <R> ComponentHandle<R> of(Type role, String hint)
+    {
+        return new ComponentHandle<>(Kind.INSTANCE, role, hint);
+    }
+
+    /**
+     * Create a handle for all the implementations of a role, as a list.
+     *
+     * @param role the role of the components
+     * @param <R> the type of the components
+     * @return a new handle, whose value is an unmodifiable list of components
+     */
+    public static <R> ComponentHandle<List<R>> listOf(Type role)
+    {
+        return new ComponentHandle<>(Kind.LIST, role, null);
+    }
+
+    /**
+     * Create a handle for all the implementations of a role, as a map.
+     *
+     * @param role the role of the components
+     * @param <R> the type of the components
+     * @return a new handle, whose value is an unmodifiable map with the component hints as keys, in the order in which
+     *         they were returned by the component manager
+     */
+    public static <R> ComponentHandle<Map<String, R>> mapOf(Type role)
+    {
+        return new ComponentHandle<>(Kind.MAP, role, null);
+    }
+
+    /**
+     * Look up components using a specific component manager provider, instead of the context component manager.
+     *
+     * @param componentManager the component manager provider to use
+     * @return this handle, for method chaining
+     */
+    public ComponentHandle<T> from(Provider<ComponentManager> componentManager)
+    {
+        this.source = componentManager;
+        clear();
+        return this;
+    }
+
+    /**
+     * Look up components using a specific component manager, instead of the context component manager.
+     *
+     * @param componentManager the component manager to use
+     * @return this handle, for method chaining
+     */
+    public ComponentHandle<T> from(final ComponentManager componentManager)
+    {
+        return from(new Provider<ComponentManager>()
+        {
+            @Override
+            public ComponentManager get()
+            {
+                return componentManager;
+            }
+        });
+    }
+
+    /**
+     * Get the components, looking them up if needed.
+     *
+     * @return the cached components; if the lookup fails, {@code null} for a single component, or an empty list or map
+     */
+    public T get()
+    {
+        ComponentManager componentManager = this.source.get();
+        Entry<T> entry = this.cached;
+        if (entry != null && entry.componentManager == componentManager) {
+            return entry.value;
+        }
+        int lookupGeneration = this.generation;
+        try {
+            T value = lookup(componentManager);
+            synchronized (this) {
+                if (this.generation == lookupGeneration) {
+                    this.cached = new Entry<>(componentManager, value);
+                }
+            }
+            return value;
+        } catch (ComponentLookupException | RuntimeException ex) {
+            return getEmptyValue();
+        }
+    }
+
+    /** Forget the cached components, so that they are looked up again when next needed. */
+    public synchronized void clear()
+    {
+        ++this.generation;
+        this.cached = null;
+    }
+
+    /**
+     * Clear all the handles pointing to components implementing a role, since the available components changed.
+     *
+     * @param changedRole the role of a component which was registered or unregistered
+     */
+    static void clear(Type changedRole)
+    {
+        if (changedRole == null) {
+            return;
+        }
+        Class<?> changedClass = ReflectionUtils.getTypeClass(changedRole);
+        List<ComponentHandle<?>> handles;
+        synchronized (HANDLES) {
+            handles = new ArrayList<>(HANDLES);
+        }
+        for (ComponentHandle<?> handle : handles) {
+            if (changedRole.equals(handle.role)
+                || (changedClass != null && changedClass.equals(ReflectionUtils.getTypeClass(handle.role)))) {
+                handle.clear();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T lookup(ComponentManager componentManager) throws ComponentLookupException
+    {
+        switch (this.kind) {
+            case LIST:
+                return (T) Collections.unmodifiableList(componentManager.getInstanceList(this.role));
+            case MAP:
+                return (T) Collections.unmodifiableMap(
+                    new LinkedHashMap<>(componentManager.<Object>getInstanceMap(this.role)));
+            default:
+                return this.hint == null ? componentManager.<T>getInstance(this.role)
+                    : componentManager.<T>getInstance(this.role, this.hint);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getEmptyValue()
+    {
+        switch (this.kind) {
+            case LIST:
+                return (T) Collections.emptyList();
+            case MAP:
+                return (T) Collections.emptyMap();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * A cached value, with the component manager instance it was looked up from.
+     *
+     * @param <T> the type of the cached value
+     * @version $Id$
+     */
+    private static final class Entry<T>
+    {
+        private final ComponentManager componentManager;
+
+        private final T value;
+
+        Entry(ComponentManager componentManager, T value)
+        {
+            this.componentManager = componentManager;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.components;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link ComponentHandle} class.
+ *
+ * @version $Id$
+ */
+public class ComponentHandleTest
+{
+    @Test
+    public void componentsAreLookedUpOnce() throws ComponentLookupException
+    {
+        ComponentManager cm = mock(ComponentManager.class);
+        Runnable component = mock(Runnable.class);
+        when(cm.getInstance(Runnable.class)).thenReturn(component);
+        ComponentHandle<Runnable> handle = ComponentHandle.<Runnable>of(Runnable.class).from(cm);
+
+        Assert.assertSame(component, handle.get());
+        Assert.assertSame(component, handle.get());
+        verify(cm, times(1)).getInstance(Runnable.class);
+    }
+
+    @Test
+    public void componentsAreLookedUpAgainInAnotherComponentManager() throws ComponentLookupException
+    {
+        ComponentManager cm1 = mock(ComponentManager.class);
+        ComponentManager cm2 = mock(ComponentManager.class);
+        Runnable component1 = mock(Runnable.class);
+        Runnable component2 = mock(Runnable.class);
+        when(cm1.getInstance(Runnable.class, "hint")).thenReturn(component1);
+        when(cm2.getInstance(Runnable.class, "hint")).thenReturn(component2);
+        ComponentHandle<Runnable> handle = ComponentHandle.<Runnable>of(Runnable.class, "hint").from(cm1);
+
+        Assert.assertSame(component1, handle.get());
+        Assert.assertSame(component2, handle.from(cm2).get());
+    }
+
+    @Test
+    public void registrationEventsClearTheCachedComponents() throws ComponentLookupException
+    {
+        ComponentManager cm = mock(ComponentManager.class);
+        Runnable component1 = mock(Runnable.class);
+        Runnable component2 = mock(Runnable.class);
+        when(cm.<Runnable>getInstanceList(Runnable.class)).thenReturn(Collections.singletonList(component1),
+            Arrays.asList(component1, component2));
+        ComponentHandle<List<Runnable>> handle = ComponentHandle.<Runnable>listOf(Runnable.class).from(cm);
+
+        Assert.assertEquals(1, handle.get().size());
+        ComponentHandle.clear(Comparable.class);
+        Assert.assertEquals(1, handle.get().size());
+        ComponentHandle.clear(Runnable.class);
+        Assert.assertEquals(2, handle.get().size());
+    }
+
+    @Test
+    public void lookupsOverlappingRegistrationEventsAreNotCached() throws ComponentLookupException
+    {
+        ComponentManager cm = mock(ComponentManager.class);
+        final Runnable component1 = mock(Runnable.class);
+        Runnable component2 = mock(Runnable.class);
+        when(cm.<Runnable>getInstance(Runnable.class)).thenAnswer(new Answer<Runnable>()
+        {
+            @Override
+            public Runnable answer(InvocationOnMock invocation)
+            {
+                // A new implementation is registered while the old one is being returned
+                ComponentHandle.clear(Runnable.class);
+                return component1;
+            }
+        }).thenReturn(component2);
+        ComponentHandle<Runnable> handle = ComponentHandle.<Runnable>of(Runnable.class).from(cm);
+
+        Assert.assertSame(component1, handle.get());
+        Assert.assertSame(component2, handle.get());
+        Assert.assertSame(component2, handle.get());
+        verify(cm, times(2)).getInstance(Runnable.class);
+    }
+
+    @Test
+    public void failedLookupsAreNotCached() throws ComponentLookupException
+    {
+        ComponentManager cm = mock(ComponentManager.class);
+        Runnable component = mock(Runnable.class);
+        when(cm.<Runnable>getInstanceMap(Runnable.class)).thenThrow(new ComponentLookupException("Missing"))
+            .thenReturn(Collections.<String, Runnable>singletonMap("default", component));
+        ComponentHandle<Map<String, Runnable>> handle =
+            ComponentHandle.<Runnable>mapOf(Runnable.class).from(cm);
+
+        Assert.assertTrue(handle.get().isEmpty());
+        Assert.assertSame(component, handle.get().get("default"));
+    }
+}
@@ -20,9 +20,7 @@
 import org.phenotips.components.ComponentManagerRegistry;
 import org.phenotips.data.Feature;
 import org.phenotips.tools.PhenotypeMappingService;
-import org.phenotips.tools.PropertyDisplayer;
 import org.phenotips.vocabulary.Vocabulary;
-import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.script.service.ScriptService;
@@ -184,6 +182,11 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
     {
         List<Feature> sortedFeatures = new LinkedList<Feature>();
 
+        Map<String, Set<String>> featureCategories = new HashMap<>();
+        for (Feature feature : features) {
+            featureCategories.put(feature.getId(), getCategoriesFromOntology(feature.getId()));
+        }
+
         Map<String, List<String>> mapping = this.getCategoryMapping();
         for (String section : mapping.keySet()) {
             if (features.isEmpty()) {
@@ -195,7 +198,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
                 Iterator<Feature> iter = features.iterator();
                 while (iter.hasNext()) {
                     Feature feature = iter.next();
-                    if (getCategoriesFromOntology(feature.getId()).contains(category)
+                    if (featureCategories.get(feature.getId()).contains(category)
                         || StringUtils.equals(feature.getId(), category))
                     {
                         this.sectionFeatureTree.put(feature.getId(), section);
@@ -234,22 +237,15 @@ public Set<Feature> filterFeaturesByPrenatal(Set<? extends Feature> features, Bo
      * Given an HPO id, finds categories to which the id belongs to.
      *
      * @param value must start with "HP:"
-     * @return a list of categories as HPO ids, excluding the passed in id, or an empty list if the categories could not
+     * @return a set of categories as HPO ids, excluding the passed in id, or an empty set if the categories could not
      * be determined
      */
-    @SuppressWarnings("unchecked")
-    private List<String> getCategoriesFromOntology(String value)
+    private Set<String> getCategoriesFromOntology(String value)
     {
         if (!value.startsWith("HP:")) {
-            return Collections.emptyList();
-        }
-        VocabularyTerm termObj = this.ontologyService.getTerm(value);
-        if (termObj != null && termObj.get(PropertyDisplayer.INDEXED_CATEGORY_KEY) != null
-            && List.class.isAssignableFrom(termObj.get(PropertyDisplayer.INDEXED_CATEGORY_KEY).getClass()))
-        {
-            return (List<String>) termObj.get(PropertyDisplayer.INDEXED_CATEGORY_KEY);
+            return Collections.emptySet();
         }
-        return new LinkedList<String>();
+        return this.ontologyService.getAncestorIds(value);
     }
 
     /**
@@ -22,7 +22,8 @@
 import org.phenotips.data.FeatureMetadatum;
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
-import org.phenotips.vocabulary.internal.solr.SolrVocabularyTerm;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.model.reference.DocumentReference;
@@ -66,6 +67,37 @@
 
     public static final Integer charactersPerLine = 100;
 
+    /**
+     * Resolve at once all the vocabulary terms used by the features, their metadata, and the disorders of the exported
+     * patients, so that the names displayed in the body sections are already in the vocabulary caches, instead of
+     * being looked up one by one.
+     *
+     * @param patients the patients being exported
+     */
+    public void prefetchTerms(Collection<Patient> patients)
+    {
+        Set<String> ids = new LinkedHashSet<String>();
+        for (Patient patient : patients) {
+            if (patient == null) {
+                continue;
+            }
+            for (Feature feature : patient.getFeatures()) {
+                ids.add(feature.getId());
+                for (FeatureMetadatum meta : feature.getMetadata().values()) {
+                    ids.add(meta.getId());
+                }
+            }
+            for (Disorder disorder : patient.getDisorders()) {
+                ids.add(disorder.getId());
+            }
+        }
+        ids.remove("");
+        ids.remove(null);
+        if (!ids.isEmpty()) {
+            Utils.getComponent(VocabularyManager.class).resolveTerms(ids);
+        }
+    }
+
     public void phenotypeSetup(Set<String> enabledFields) throws Exception
     {
         String sectionName = "phenotype";
@@ -822,12 +854,12 @@ public DataSection familyHistoryBody(Patient patient)
         PatientData<List<String>> ethnicities = patient.getData("ethnicity");
         int x = 0;
         if (present.contains("global_mode_of_inheritance")) {
-            PatientData<List<SolrVocabularyTerm>> globalControllers = patient.getData("global-qualifiers");
-            List<SolrVocabularyTerm> modeTermList =
+            PatientData<List<VocabularyTerm>> globalControllers = patient.getData("global-qualifiers");
+            List<VocabularyTerm> modeTermList =
                 globalControllers != null ? globalControllers.get("global_mode_of_inheritance") : null;
             int y = 0;
             if (modeTermList != null && !modeTermList.isEmpty()) {
-                for (SolrVocabularyTerm term : modeTermList) {
+                for (VocabularyTerm term : modeTermList) {
                     String mode = term != null ? term.getName() : "";
                     DataCell cell = new DataCell(mode, x, y);
                     bodySection.addCell(cell);
@@ -1298,11 +1330,11 @@ public DataSection medicalHistoryBody(Patient patient)
         }
 
         if (present.contains("global_age_of_onset")) {
-            PatientData<List<SolrVocabularyTerm>> qualifiers = patient.getData("global-qualifiers");
-            List<SolrVocabularyTerm> ageOfOnsetList = qualifiers != null ? qualifiers.get("global_age_of_onset") : null;
+            PatientData<List<VocabularyTerm>> qualifiers = patient.getData("global-qualifiers");
+            List<VocabularyTerm> ageOfOnsetList = qualifiers != null ? qualifiers.get("global_age_of_onset") : null;
             int y = 0;
             if (ageOfOnsetList != null && !ageOfOnsetList.isEmpty()) {
-                for (SolrVocabularyTerm term : ageOfOnsetList) {
+                for (VocabularyTerm term : ageOfOnsetList) {
                     String onset = term != null ? term.getName() : "";
                     DataCell cell = new DataCell(onset, x, y);
                     bodySection.addCell(cell);
@@ -106,6 +106,7 @@ private List<List<DataSection>> generateBody(DataToCellConverter converter, List
         throws Exception
     {
         List<List<DataSection>> allSections = new LinkedList<List<DataSection>>();
+        converter.prefetchTerms(patients);
         for (Patient patient : patients) {
             if (patient == null) {
                 continue;
@@ -22,8 +22,11 @@
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,9 +36,12 @@
     private static final String TERM_MARKER = "[Term]";
 
     /** Not all entities are terms prompted by the presence of a {@link #TERM_MARKER} */
-    private static final String ENTITY_SEPARATION_REGEX = "^\\[[a-zA-Z]+\\]$";
+    private static final Pattern ENTITY_SEPARATION_PATTERN = Pattern.compile("^\\[[a-zA-Z]+\\]$");
 
-    private static final String FIELD_NAME_VALUE_SEPARATOR = "\\s*:\\s+";
+    /** Extracts the text of a quoted value, like {@code def: "The text" [source]}. */
+    private static final Pattern QUOTED_VALUE_PATTERN = Pattern.compile("^\"(.+)\"\\s*?(?:[A-Z]+|\\[).*");
+
+    private static final String ESCAPED_QUOTE = "\\\"";
 
     private int counter;
 
@@ -61,8 +67,8 @@ public Map<String, TermData> transform(String ontologyUrl, Map<String, Double> f
     public Map<String, TermData> transform(URL input, Map<String, Double> fieldSelection)
     {
         this.fieldSelection = fieldSelection;
-        try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(input.openConnection().getInputStream()));
+        try (BufferedReader in = new BufferedReader(
+            new InputStreamReader(input.openConnection().getInputStream(), StandardCharsets.UTF_8))) {
             String line;
             this.counter = 0;
 
@@ -72,37 +78,26 @@ public Map<String, TermData> transform(URL input, Map<String, Double> fieldSelec
              */
             boolean skip = false;
             while ((line = in.readLine()) != null) {
-                if (line.trim().matches(ENTITY_SEPARATION_REGEX)) {
+                String trimmedLine = line.trim();
+                if (isEntitySeparator(trimmedLine)) {
                     if (this.counter > 0) {
                         storeCrtTerm();
                     }
-                    // Overridden below
-                    skip = true;
-                }
-                if (line.trim().equalsIgnoreCase(TERM_MARKER)) {
-                    ++this.counter;
-                    skip = false;
+                    if (trimmedLine.equalsIgnoreCase(TERM_MARKER)) {
+                        ++this.counter;
+                        skip = false;
+                    } else {
+                        skip = true;
+                    }
                     continue;
                 }
                 if (!skip) {
-                    String[] pieces = line.split(FIELD_NAME_VALUE_SEPARATOR, 2);
-                    if (pieces.length != 2) {
-                        continue;
-                    }
-                    if (pieces[0].trim().equals("data-version")) {
-                        this.crtTerm.addTo("version", pieces[1]);
-                        this.crtTerm.addTo(TermData.ID_FIELD_NAME, "HEADER_INFO");
-                        this.counter++;
-                    }
-                    loadField(pieces[0], pieces[1]);
+                    parseLine(line);
                 }
             }
             if (this.counter > 0) {
                 storeCrtTerm();
             }
-            if (isFieldSelected(TermData.TERM_CATEGORY_FIELD_NAME)) {
-                propagateAncestors();
-            }
         } catch (NullPointerException ex) {
             this.logger.error("NullPointer: {}", ex.getMessage());
         } catch (IOException ex) {
@@ -113,6 +108,42 @@ public Map<String, TermData> transform(URL input, Map<String, Double> fieldSelec
         return this.data;
     }
 
+    private boolean isEntitySeparator(String trimmedLine)
+    {
+        return trimmedLine.length() > 2 && trimmedLine.charAt(0) == '['
+            && trimmedLine.charAt(trimmedLine.length() - 1) == ']'
+            && ENTITY_SEPARATION_PATTERN.matcher(trimmedLine).matches();
+    }
+
+    /**
+     * Splits a {@code name: value} line at the first colon followed by whitespace, without using regular expressions.
+     */
+    private void parseLine(String line)
+    {
+        int length = line.length();
+        for (int i = 0; i < length - 1; ++i) {
+            if (line.charAt(i) == ':' && Character.isWhitespace(line.charAt(i + 1))) {
+                int valueStart = i + 1;
+                while (valueStart < length && Character.isWhitespace(line.charAt(valueStart))) {
+                    ++valueStart;
+                }
+                int nameEnd = i;
+                while (nameEnd > 0 && Character.isWhitespace(line.charAt(nameEnd - 1))) {
+                    --nameEnd;
+                }
+                String name = line.substring(0, nameEnd);
+                String value = line.substring(valueStart);
+                if ("data-version".equals(name.trim())) {
+                    this.crtTerm.addTo("version", value);
+                    this.crtTerm.addTo(TermData.ID_FIELD_NAME, "HEADER_INFO");
+                    this.counter++;
+                }
+                loadField(name, value);
+                return;
+            }
+        }
+    }
+
     private void storeCrtTerm()
     {
         if (this.crtTerm.getId() != null) {
@@ -131,14 +162,16 @@ private void loadField(String name, String value)
         if (!(isFieldSelected(name))) {
             return;
         }
-        this.crtTerm.addTo(name, value.replaceFirst("^\"(.+)\"\\s*?(?:[A-Z]+|\\[).*", "$1").replace("\\\"", "\""));
-    }
-
-    private void propagateAncestors()
-    {
-        for (String id : this.data.keySet()) {
-            TermData term = this.data.get(id);
-            term.expandTermCategories(this.data);
+        String cleanValue = value;
+        if (cleanValue.length() > 0 && cleanValue.charAt(0) == '"') {
+            Matcher quoted = QUOTED_VALUE_PATTERN.matcher(cleanValue);
+            if (quoted.matches()) {
+                cleanValue = quoted.group(1);
+            }
+        }
+        if (cleanValue.indexOf('\\') >= 0) {
+            cleanValue = cleanValue.replace(ESCAPED_QUOTE, "\"");
         }
+        this.crtTerm.addTo(name, cleanValue);
     }
 }
@@ -20,9 +20,6 @@
 import org.phenotips.obo2solr.maps.SetMap;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 
 public class TermData extends SetMap<String, String>
 {
@@ -34,8 +31,6 @@ public class TermData extends SetMap<String, String>
 
     public static final String TERM_CATEGORY_FIELD_NAME = "term_category";
 
-    public static final String PARENT_ID_REGEX = "^(HP\\:[0-9]{7})\\s*!\\s*.*";
-
     private String id;
 
     @Override
@@ -56,11 +51,20 @@ public boolean addTo(String key, String value)
         if (ID_FIELD_NAME.equals(key)) {
             this.id = value;
         } else if (PARENT_FIELD_NAME.equals(key)) {
-            this.addTo(TERM_CATEGORY_FIELD_NAME, value.replaceAll(PARENT_ID_REGEX, "$1"));
+            this.addTo(TERM_CATEGORY_FIELD_NAME, getParentId(value));
         }
         return super.addTo(key, value);
     }
 
+    /**
+     * Strips the optional name from a parent reference, for example {@code HP:0000118 ! Phenotypic abnormality}.
+     */
+    private static String getParentId(String value)
+    {
+        int nameSeparator = value.indexOf('!');
+        return nameSeparator > 0 ? value.substring(0, nameSeparator).trim() : value.trim();
+    }
+
     @Override
     public boolean addTo(String key, Collection<String> values)
     {
@@ -70,35 +74,4 @@ public boolean addTo(String key, Collection<String> values)
         }
         return result;
     }
-
-    public void expandTermCategories(Map<String, TermData> data)
-    {
-        Set<String> result = new HashSet<String>();
-        Set<String> front = new HashSet<String>();
-
-        if (this.get(TERM_CATEGORY_FIELD_NAME) == null) {
-            this.put(TERM_CATEGORY_FIELD_NAME, super.getEmptyCollection());
-        }
-
-        front.addAll(this.get(TERM_CATEGORY_FIELD_NAME));
-        Set<String> newFront = new HashSet<String>();
-        while (!front.isEmpty()) {
-            for (String nextTermId : front) {
-                if (data.get(nextTermId).get(TERM_CATEGORY_FIELD_NAME) == null) {
-                    continue;
-                }
-                for (String parentTermId : data.get(nextTermId).get(TERM_CATEGORY_FIELD_NAME)) {
-                    if (!result.contains(parentTermId)) {
-                        newFront.add(parentTermId);
-                        result.add(parentTermId);
-                    }
-                }
-            }
-            front.clear();
-            front.addAll(newFront);
-            newFront.clear();
-        }
-        result.add(this.id);
-        this.addTo(TERM_CATEGORY_FIELD_NAME, result);
-    }
 }
@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the OBO parsing done by {@link SolrUpdateGenerator}.
+ *
+ * @version $Id$
+ */
+public class SolrUpdateGeneratorTest
+{
+    private Map<String, TermData> data;
+
+    @Before
+    public void setUp()
+    {
+        this.data = new SolrUpdateGenerator().transform(this.getClass().getResource("/test.obo").toString(),
+            new HashMap<String, Double>());
+    }
+
+    @Test
+    public void allTermsAreParsed()
+    {
+        Assert.assertEquals(Arrays.asList("HEADER_INFO", "HP:0000001", "HP:0000118", "HP:0001507", "HP:0001434"),
+            Arrays.asList(this.data.keySet().toArray()));
+        Assert.assertEquals(set("releases/2015-04-10"), set(this.data.get("HEADER_INFO").get("version")));
+    }
+
+    @Test
+    public void isARelationsListTheDirectParentsAsCategories()
+    {
+        TermData term = this.data.get("HP:0001507");
+        Assert.assertEquals(set("HP:0000118 ! Phenotypic abnormality", "HP:0000001"), set(term.get("is_a")));
+        // The ancestors are only added when indexing, from the ontology graph
+        Assert.assertEquals(set("HP:0000118", "HP:0000001"), set(term.get("term_category")));
+        Assert.assertNull(this.data.get("HP:0000001").get("term_category"));
+    }
+
+    @Test
+    public void alternativeIdsAreKept()
+    {
+        Assert.assertEquals(set("HP:0008904", "HP:0010718"), set(this.data.get("HP:0001507").get("alt_id")));
+        Assert.assertFalse(this.data.containsKey("HP:0008904"));
+    }
+
+    @Test
+    public void obsoleteTermsAreKeptWithTheirReplacement()
+    {
+        TermData term = this.data.get("HP:0001434");
+        Assert.assertEquals(set("true"), set(term.get("is_obsolete")));
+        Assert.assertEquals(set("HP:0001507"), set(term.get("replaced_by")));
+        Assert.assertNull(term.get("term_category"));
+    }
+
+    @Test
+    public void quotedValuesAreUnquoted()
+    {
+        Assert.assertEquals(set("A phenotypic abnormality."), set(this.data.get("HP:0000118").get("def")));
+        Assert.assertEquals(set("Organ abnormality"), set(this.data.get("HP:0000118").get("synonym")));
+        Assert.assertEquals(set("A \"growth\" abnormality."), set(this.data.get("HP:0001507").get("def")));
+    }
+
+    @Test
+    public void otherStanzasAreSkipped()
+    {
+        Assert.assertFalse(this.data.containsKey("part_of"));
+        Assert.assertNull(this.data.get("HP:0001434").get("is_transitive"));
+    }
+
+    @Test
+    public void onlySelectedFieldsAreKept()
+    {
+        Map<String, Double> fields = new HashMap<>();
+        fields.put("id", 1.0);
+        fields.put("name", 1.0);
+        Map<String, TermData> selected =
+            new SolrUpdateGenerator().transform(this.getClass().getResource("/test.obo").toString(), fields);
+
+        Assert.assertEquals(set("id", "name"), selected.get("HP:0001507").keySet());
+    }
+
+    @Test
+    public void invalidLocationsAreReported()
+    {
+        Assert.assertNull(new SolrUpdateGenerator().transform("not a URL", Collections.<String, Double>emptyMap()));
+    }
+
+    private static Set<String> set(String... values)
+    {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static Set<String> set(Collection<String> values)
+    {
+        return values == null ? null : new HashSet<>(values);
+    }
+}
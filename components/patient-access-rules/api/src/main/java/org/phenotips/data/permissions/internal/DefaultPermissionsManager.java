@@ -17,6 +17,7 @@
  */
 package org.phenotips.data.permissions.internal;
 
+import org.phenotips.components.ComponentHandle;
 import org.phenotips.data.Patient;
 import org.phenotips.data.permissions.AccessLevel;
 import org.phenotips.data.permissions.PatientAccess;
@@ -26,10 +27,13 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 import javax.inject.Inject;
@@ -45,7 +49,7 @@
  */
 @Component
 @Singleton
-public class DefaultPermissionsManager implements PermissionsManager
+public class DefaultPermissionsManager implements PermissionsManager, Initializable
 {
     @Inject
     private Logger logger;
@@ -54,60 +58,84 @@ public class DefaultPermissionsManager implements PermissionsManager
     @Named("context")
     private Provider<ComponentManager> componentManager;
 
+    /** The available visibility options, looked up once instead of on each call. */
+    private ComponentHandle<List<Visibility>> visibilities;
+
+    /** The available visibility options, by name. */
+    private ComponentHandle<Map<String, Visibility>> visibilitiesByName;
+
+    /** The available access levels, looked up once instead of on each call. */
+    private ComponentHandle<List<AccessLevel>> accessLevels;
+
+    /** The available access levels, by name. */
+    private ComponentHandle<Map<String, AccessLevel>> accessLevelsByName;
+
+    /** The helper passed to each patient access. */
+    private ComponentHandle<PatientAccessHelper> helper;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        // Handles are shared by all the wikis and users; the options are core components, registered in the root
+        // component manager, and options registered elsewhere can still be resolved by name
+        this.visibilities = ComponentHandle.<Visibility>listOf(Visibility.class).from(this.componentManager);
+        this.visibilitiesByName = ComponentHandle.<Visibility>mapOf(Visibility.class).from(this.componentManager);
+        this.accessLevels = ComponentHandle.<AccessLevel>listOf(AccessLevel.class).from(this.componentManager);
+        this.accessLevelsByName = ComponentHandle.<AccessLevel>mapOf(AccessLevel.class).from(this.componentManager);
+        this.helper = ComponentHandle.<PatientAccessHelper>of(PatientAccessHelper.class).from(this.componentManager);
+    }
+
     @Override
     public Collection<Visibility> listVisibilityOptions()
     {
-        try {
-            Collection<Visibility> result = new TreeSet<Visibility>();
-            result.addAll(this.componentManager.get().<Visibility>getInstanceList(Visibility.class));
-            return result;
-        } catch (ComponentLookupException ex) {
-            return Collections.emptyList();
-        }
+        return new TreeSet<Visibility>(this.visibilities.get());
     }
 
     @Override
     public Visibility resolveVisibility(String name)
     {
-        try {
-            if (StringUtils.isNotBlank(name)) {
-                return this.componentManager.get().getInstance(Visibility.class, name);
+        if (StringUtils.isBlank(name)) {
+            return null;
+        }
+        Visibility result = this.visibilitiesByName.get().get(name);
+        if (result == null) {
+            try {
+                result = this.componentManager.get().getInstance(Visibility.class, name);
+            } catch (ComponentLookupException ex) {
+                this.logger.warn("Invalid patient visibility requested: {}", name);
             }
-        } catch (ComponentLookupException ex) {
-            this.logger.warn("Invalid patient visibility requested: {}", name);
         }
-        return null;
+        return result;
     }
 
     @Override
     public Collection<AccessLevel> listAccessLevels()
     {
-        try {
-            Collection<AccessLevel> result = new TreeSet<AccessLevel>();
-            result.addAll(this.componentManager.get().<AccessLevel>getInstanceList(AccessLevel.class));
-            Iterator<AccessLevel> it = result.iterator();
-            while (it.hasNext()) {
-                if (!it.next().isAssignable()) {
-                    it.remove();
-                }
+        Collection<AccessLevel> result = new TreeSet<AccessLevel>(this.accessLevels.get());
+        Iterator<AccessLevel> it = result.iterator();
+        while (it.hasNext()) {
+            if (!it.next().isAssignable()) {
+                it.remove();
             }
-            return result;
-        } catch (ComponentLookupException ex) {
-            return Collections.emptyList();
         }
+        return result;
     }
 
     @Override
     public AccessLevel resolveAccessLevel(String name)
     {
-        try {
-            if (StringUtils.isNotBlank(name)) {
-                return this.componentManager.get().getInstance(AccessLevel.class, name);
+        if (StringUtils.isBlank(name)) {
+            return null;
+        }
+        AccessLevel result = this.accessLevelsByName.get().get(name);
+        if (result == null) {
+            try {
+                result = this.componentManager.get().getInstance(AccessLevel.class, name);
+            } catch (ComponentLookupException ex) {
+                this.logger.warn("Invalid patient access level requested: {}", name);
             }
-        } catch (ComponentLookupException ex) {
-            this.logger.warn("Invalid patient access level requested: {}", name);
         }
-        return null;
+        return result;
     }
 
     @Override
@@ -118,11 +146,10 @@ public PatientAccess getPatientAccess(Patient targetPatient)
 
     private PatientAccessHelper getHelper()
     {
-        try {
-            return this.componentManager.get().getInstance(PatientAccessHelper.class);
-        } catch (ComponentLookupException ex) {
-            this.logger.error("Mandatory component [PatientAccessHelper] missing: {}", ex.getMessage(), ex);
+        PatientAccessHelper result = this.helper.get();
+        if (result == null) {
+            this.logger.error("Mandatory component [PatientAccessHelper] missing");
         }
-        return null;
+        return result;
     }
 }
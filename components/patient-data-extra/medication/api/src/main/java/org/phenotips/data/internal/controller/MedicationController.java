@@ -22,6 +22,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
@@ -77,6 +78,10 @@ public class MedicationController implements PatientDataController<Medication>
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
+    @Inject
+    private PatientUnitOfWork unitOfWork;
+
     @Override
     public PatientData<Medication> load(Patient patient)
     {
@@ -117,7 +122,7 @@ public PatientData<Medication> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
 
             PatientData<Medication> data = patient.getData(DATA_NAME);
             if (data == null || !data.isIndexed()) {
@@ -144,7 +149,7 @@ public void save(Patient patient)
                 o.setLargeStringValue(Medication.NOTES, m.getNotes());
             }
 
-            context.getWiki().saveDocument(doc, "Updated medication data from JSON", true, context);
+            this.unitOfWork.save(doc, "Updated medication data from JSON");
         } catch (Exception ex) {
             this.logger.error("Failed to save medication data: [{}]", ex.getMessage());
         }
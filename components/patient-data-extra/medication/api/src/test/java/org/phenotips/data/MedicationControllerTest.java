@@ -42,7 +42,6 @@
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
-import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
@@ -76,9 +75,6 @@
     @Mock
     private XWikiDocument doc;
 
-    @Mock
-    private XWiki xwiki;
-
     @Mock
     private XWikiContext xcontext;
 
@@ -95,6 +91,8 @@ public void setup() throws Exception
         when(this.patient.getDocument()).thenReturn(this.docRef);
         DocumentAccessBridge dab = this.mocker.getInstance(DocumentAccessBridge.class);
         when(dab.getDocument(this.docRef)).thenReturn(this.doc);
+        PatientUnitOfWork unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
+        when(unitOfWork.getDocument(this.docRef)).thenReturn(this.doc);
 
         when(this.obj1.getStringValue("name")).thenReturn("n");
         when(this.obj1.getStringValue("genericName")).thenReturn("gn");
@@ -107,7 +105,6 @@ public void setup() throws Exception
 
         Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
         when(xcontextProvider.get()).thenReturn(this.xcontext);
-        when(this.xcontext.getWiki()).thenReturn(this.xwiki);
     }
 
     @Test
@@ -261,7 +258,8 @@ public void saveUpdatesXObjects() throws Exception
         verify(obj2, never()).setStringValue(Medication.EFFECT, null);
         verify(obj2).setLargeStringValue(Medication.NOTES, "note2");
 
-        verify(this.xwiki, times(1)).saveDocument(eq(this.doc), any(String.class), eq(true), eq(this.xcontext));
+        PatientUnitOfWork unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
+        verify(unitOfWork, times(1)).save(eq(this.doc), any(String.class));
     }
 
     @Test
@@ -0,0 +1,67 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Usage statistics for the cache of loaded patient records. Also used as the management interface exposed over JMX,
+ * so all the getters must stay simple values.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+public interface PatientCacheStatistics
+{
+    /**
+     * The number of requested patients that were answered from the cache.
+     *
+     * @return a positive number, {@code 0} if the cache wasn't used yet
+     */
+    long getHits();
+
+    /**
+     * The number of requested patients that weren't in the cache, or were cached for an older version of the document,
+     * and had to be loaded again.
+     *
+     * @return a positive number, {@code 0} if the cache wasn't used yet
+     */
+    long getMisses();
+
+    /**
+     * The fraction of requested patients answered from the cache.
+     *
+     * @return a number between {@code 0} and {@code 1}
+     */
+    double getHitRatio();
+
+    /**
+     * The number of cached patients that were discarded because the patient record was changed or deleted.
+     *
+     * @return a positive number
+     */
+    long getInvalidations();
+
+    /**
+     * The maximum number of patients kept in the cache.
+     *
+     * @return a positive number
+     */
+    int getMaxSize();
+}
@@ -0,0 +1,99 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data;
+
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Groups all the changes made to patient documents during one logical operation, such as updating a patient from JSON
+ * or creating a new patient, so that each changed document is saved only once, as a single new version, instead of
+ * once for each piece of data. A unit of work is bound to the current thread:
+ *
+ * <pre>
+ * unitOfWork.begin();
+ * try {
+ *     XWikiDocument doc = (XWikiDocument) unitOfWork.getDocument(patient.getDocument());
+ *     // change the document
+ *     unitOfWork.save(doc, "Updated something");
+ *     // more changes, possibly done by other components
+ *     unitOfWork.commit("Updated patient");
+ * } finally {
+ *     unitOfWork.end();
+ * }
+ * </pre>
+ * <p>
+ * Units of work can be nested: an inner unit joins the outer one, and only the outermost commit actually saves the
+ * documents. Outside of a unit of work, {@link #getDocument} simply loads the document, and {@link #save} saves it
+ * right away, so components writing patient data can always use this API.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+@Role
+public interface PatientUnitOfWork
+{
+    /** Start a new unit of work in the current thread, or join the one already started. */
+    void begin();
+
+    /**
+     * Check if a unit of work is started in the current thread.
+     *
+     * @return {@code true} if changes are currently collected instead of being saved right away
+     */
+    boolean isActive();
+
+    /**
+     * Get a document to change. During a unit of work, all the callers get the same in-memory instance of the
+     * document, so that their changes accumulate until the commit.
+     *
+     * @param reference the reference of the document to get
+     * @return the document, possibly already changed in the current unit of work
+     * @throws Exception if loading the document fails
+     */
+    DocumentModelBridge getDocument(DocumentReference reference) throws Exception;
+
+    /**
+     * Mark a document as changed. During a unit of work, the document will be saved when the unit of work is committed;
+     * otherwise, it is saved right away, as a minor edit.
+     *
+     * @param document the changed document, as returned by {@link #getDocument}
+     * @param comment the comment to use when saving the document outside of a unit of work
+     * @throws Exception if saving the document fails
+     */
+    void save(DocumentModelBridge document, String comment) throws Exception;
+
+    /**
+     * Save all the documents changed in the current unit of work, once each. Nothing happens if this is a nested unit
+     * of work, the changes are saved by the outermost unit.
+     *
+     * @param comment the comment of the new version of the changed documents
+     * @throws Exception if saving the documents fails
+     */
+    void commit(String comment) throws Exception;
+
+    /**
+     * End the current unit of work, must always be called once for each {@link #begin()}, usually in a
+     * {@code finally} block. When the outermost unit of work ends without being committed, its changes are discarded.
+     */
+    void end();
+}
@@ -17,13 +17,11 @@
  */
 package org.phenotips.data.internal;
 
-import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.components.ComponentHandle;
 import org.phenotips.data.VocabularyProperty;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
 
-import org.xwiki.component.manager.ComponentLookupException;
-
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
@@ -43,6 +41,10 @@ public abstract class AbstractPhenoTipsVocabularyProperty implements VocabularyP
 
     protected static final String NAME_JSON_KEY_NAME = "label";
 
+    /** Used for resolving term names, looked up once instead of for each term. */
+    protected static final ComponentHandle<VocabularyManager> VOCABULARY_MANAGER =
+        ComponentHandle.of(VocabularyManager.class);
+
     /** Pattern used for identifying vocabulary terms from free text terms. */
     private static final Pattern VOCABULARY_TERM_PATTERN = Pattern.compile("\\w++:\\w++");
 
@@ -52,6 +54,9 @@ public abstract class AbstractPhenoTipsVocabularyProperty implements VocabularyP
     /** @see #getName() */
     protected String name;
 
+    /** The batch in which the label is resolved, if the property belongs to a patient; see {@link #getName()}. */
+    PhenoTipsTermLabels labels;
+
     /**
      * Simple constructor providing the {@link #id term identifier}.
      *
@@ -95,16 +100,16 @@ public String getName()
         if (this.name != null) {
             return this.name;
         }
-        try {
-            VocabularyManager vm =
-                ComponentManagerRegistry.getContextComponentManager().getInstance(VocabularyManager.class);
-            VocabularyTerm term = vm.resolveTerm(this.id);
-            if (term != null && StringUtils.isNotEmpty(term.getName())) {
-                this.name = term.getName();
-                return this.name;
-            }
-        } catch (ComponentLookupException ex) {
-            // Shouldn't happen
+        if (this.labels != null) {
+            // Resolved together with all the other terms of the patient, only once
+            this.labels.resolve();
+            return this.name != null ? this.name : this.id;
+        }
+        VocabularyManager vm = VOCABULARY_MANAGER.get();
+        VocabularyTerm term = vm != null ? vm.resolveTerm(this.id) : null;
+        if (term != null && StringUtils.isNotEmpty(term.getName())) {
+            this.name = term.getName();
+            return this.name;
         }
         return this.id;
     }
@@ -135,6 +140,19 @@ public int compareTo(VocabularyProperty o)
             // Nulls at the end
             return -1;
         }
-        return getName().compareTo(o.getName());
+        return getSortKey(this).compareTo(getSortKey(o));
+    }
+
+    /**
+     * The key used for ordering properties, which doesn't need the vocabulary to be queried: the term identifier, or
+     * the free text label for non-standard terms.
+     *
+     * @param property the property whose key to compute
+     * @return the identifier or the label of the property, or an empty string if it has neither
+     */
+    private static String getSortKey(VocabularyProperty property)
+    {
+        String id = property.getId();
+        return StringUtils.isNotEmpty(id) ? id : StringUtils.defaultString(property.getName());
     }
 }
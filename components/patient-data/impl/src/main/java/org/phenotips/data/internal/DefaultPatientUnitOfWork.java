@@ -0,0 +1,173 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientUnitOfWork;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Default implementation of the {@link PatientUnitOfWork}, keeping the state of the current unit of work in a thread
+ * local variable.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Component
+@Singleton
+public class DefaultPatientUnitOfWork implements PatientUnitOfWork
+{
+    /** Provides access to the XWiki data. */
+    @Inject
+    private DocumentAccessBridge bridge;
+
+    /** Provides access to the current request context, needed for saving documents. */
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    /** The unit of work started in the current thread, if any. */
+    private final ThreadLocal<State> current = new ThreadLocal<>();
+
+    @Override
+    public void begin()
+    {
+        State state = this.current.get();
+        if (state == null) {
+            state = new State();
+            this.current.set(state);
+        }
+        ++state.depth;
+    }
+
+    @Override
+    public boolean isActive()
+    {
+        return this.current.get() != null;
+    }
+
+    @Override
+    public DocumentModelBridge getDocument(DocumentReference reference) throws Exception
+    {
+        State state = this.current.get();
+        if (state == null) {
+            return this.bridge.getDocument(reference);
+        }
+        DocumentModelBridge result = state.documents.get(reference);
+        if (result == null) {
+            result = this.bridge.getDocument(reference);
+            state.documents.put(reference, result);
+        }
+        return result;
+    }
+
+    @Override
+    public void save(DocumentModelBridge document, String comment) throws Exception
+    {
+        State state = this.current.get();
+        if (state == null) {
+            XWikiContext context = this.contextProvider.get();
+            context.getWiki().saveDocument((XWikiDocument) document, comment, true, context);
+            return;
+        }
+        // Make sure that later calls to getDocument return this instance
+        state.documents.put(document.getDocumentReference(), document);
+        state.changed.put(document.getDocumentReference(), document);
+    }
+
+    @Override
+    public void commit(String comment) throws Exception
+    {
+        State state = this.current.get();
+        if (state == null || state.depth > 1) {
+            return;
+        }
+        XWikiContext context = this.contextProvider.get();
+        // Listeners notified while saving may change more documents in this unit of work, those are saved next
+        while (!state.changed.isEmpty()) {
+            List<DocumentModelBridge> pending = new ArrayList<>(state.changed.values());
+            state.changed.clear();
+            for (int i = 0; i < pending.size(); ++i) {
+                try {
+                    context.getWiki().saveDocument((XWikiDocument) pending.get(i), comment, true, context);
+                } catch (Exception ex) {
+                    keepUnsaved(state, pending.subList(i, pending.size()));
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void end()
+    {
+        State state = this.current.get();
+        if (state != null && --state.depth <= 0) {
+            this.current.remove();
+        }
+    }
+
+    /**
+     * Put back the documents that couldn't be saved, so that a failed commit doesn't lose any changes.
+     *
+     * @param state the state of the current unit of work
+     * @param unsaved the documents not saved yet, in the order in which they should be saved
+     */
+    private void keepUnsaved(State state, List<DocumentModelBridge> unsaved)
+    {
+        Map<DocumentReference, DocumentModelBridge> changed = new LinkedHashMap<>();
+        for (DocumentModelBridge document : unsaved) {
+            changed.put(document.getDocumentReference(), document);
+        }
+        changed.putAll(state.changed);
+        state.changed.clear();
+        state.changed.putAll(changed);
+    }
+
+    /**
+     * The state of a unit of work.
+     *
+     * @version $Id$
+     */
+    private static final class State
+    {
+        /** The documents used in this unit of work, so that all the callers share the same instances. */
+        private final Map<DocumentReference, DocumentModelBridge> documents = new HashMap<>();
+
+        /** The documents to save on commit, in the order in which they were first changed. */
+        private final Map<DocumentReference, DocumentModelBridge> changed = new LinkedHashMap<>();
+
+        /** The number of nested units of work started and not yet ended. */
+        private int depth;
+    }
+}
@@ -27,10 +27,12 @@
 import org.xwiki.observation.AbstractEventListener;
 import org.xwiki.observation.event.Event;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -86,15 +88,24 @@ public void onEvent(Event event, Object source, Object data)
 
         if (patientObject != null) {
             XWikiContext context = (XWikiContext) this.execution.getContext().getProperty("xwikicontext");
+            // All the terms from all the fields are resolved at once
+            Map<String, List<String>> fieldTerms = new HashMap<String, List<String>>();
+            Set<String> allTerms = new HashSet<String>();
             for (String field : this.fieldsToFix) {
                 DBStringListProperty currentTermList = (DBStringListProperty) patientObject.getField(field);
-                if (currentTermList == null) {
-                    continue;
+                if (currentTermList != null) {
+                    fieldTerms.put(field, currentTermList.getList());
+                    allTerms.addAll(currentTermList.getList());
                 }
-                List<String> terms = currentTermList.getList();
+            }
+            if (allTerms.isEmpty()) {
+                return;
+            }
+            Map<String, VocabularyTerm> properTerms = this.vocabularyManager.resolveTerms(allTerms);
+            for (Map.Entry<String, List<String>> field : fieldTerms.entrySet()) {
                 Set<String> correctSet = new LinkedHashSet<String>();
-                for (String term : terms) {
-                    VocabularyTerm properTerm = this.vocabularyManager.resolveTerm(term);
+                for (String term : field.getValue()) {
+                    VocabularyTerm properTerm = properTerms.get(term);
                     if (properTerm != null) {
                         correctSet.add(properTerm.getId());
                     } else {
@@ -103,7 +114,7 @@ public void onEvent(Event event, Object source, Object data)
                 }
                 List<String> correctList = new LinkedList<String>();
                 correctList.addAll(correctSet);
-                patientObject.set(field, correctList, context);
+                patientObject.set(field.getKey(), correctList, context);
             }
         }
     }
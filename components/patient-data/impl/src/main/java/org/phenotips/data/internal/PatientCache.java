@@ -0,0 +1,249 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientCacheStatistics;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Keeps the recently loaded patients, so that the same record read again and again, by the REST API, the sheets, the
+ * exporter or event listeners, isn't decoded again each time. Entries are snapshots of a specific version of the
+ * patient document: a request for a different version of the document is a miss, and the entry is replaced. Entries
+ * are also discarded when the patient is changed or deleted, see {@link #invalidate(DocumentReference)}.
+ * <p>
+ * Cached patients are shared between threads, so they are marked as such before being cached: all their data is
+ * loaded right away instead of on demand, and {@link Patient#updateFromJSON(org.json.JSONObject)} works on a fresh
+ * copy, whose data only replaces the data of the shared instance once it is saved.
+ * </p>
+ * <p>
+ * The size of the cache is configured with the {@code phenotips.patients.cache.maxEntries} property, and setting it
+ * to {@code 0} disables the cache.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Component(roles = { PatientCache.class })
+@Singleton
+public class PatientCache implements PatientCacheStatistics, Initializable, Disposable
+{
+    private static final int DEFAULT_MAX_ENTRIES = 500;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** Serializes document references into cache keys, including the wiki. */
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    /** The cached patients, keyed by the serialized reference of their document. */
+    private Cache<Entry> cache;
+
+    /** @see #getMaxSize() */
+    private int maxSize;
+
+    /** @see #getHits() */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** @see #getMisses() */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** @see #getInvalidations() */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /** The name under which the statistics are registered as a JMX bean, if registering succeeded. */
+    private ObjectName statisticsName;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        Integer configuredSize = this.configuration.getProperty("phenotips.patients.cache.maxEntries", Integer.class);
+        this.maxSize = configuredSize == null || configuredSize < 0 ? DEFAULT_MAX_ENTRIES : configuredSize;
+        if (this.maxSize == 0) {
+            return;
+        }
+        CacheConfiguration config = new CacheConfiguration(new LRUEvictionConfiguration(this.maxSize));
+        config.setConfigurationId("patients");
+        try {
+            this.cache = this.cacheManager.createNewLocalCache(config);
+        } catch (CacheException ex) {
+            throw new InitializationException("Failed to create the patient cache", ex);
+        }
+        registerStatistics();
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+        if (this.statisticsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.statisticsName);
+            } catch (JMException ex) {
+                this.logger.debug("Failed to unregister the patient cache statistics: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the patient stored in a document, from the cache if the same version of the document was already loaded.
+     *
+     * @param doc the document holding the patient record, must contain a patient object
+     * @return the patient, possibly shared with other callers
+     */
+    public PhenoTipsPatient get(XWikiDocument doc)
+    {
+        if (this.cache == null || doc.isNew()) {
+            // Documents which aren't saved yet are still being built, and don't have a meaningful version
+            return new PhenoTipsPatient(doc);
+        }
+        String key = this.serializer.serialize(doc.getDocumentReference());
+        String version = doc.getVersion();
+        Entry entry = this.cache.get(key);
+        if (entry != null && StringUtils.equals(entry.version, version)) {
+            this.hitCount.incrementAndGet();
+            return entry.patient;
+        }
+        this.missCount.incrementAndGet();
+        PhenoTipsPatient patient = new PhenoTipsPatient(doc);
+        patient.markShared();
+        this.cache.set(key, new Entry(version, patient));
+        return patient;
+    }
+
+    /**
+     * Discard the cached patient stored in a document, if any.
+     *
+     * @param document the reference to the document which was changed or deleted
+     */
+    public void invalidate(DocumentReference document)
+    {
+        if (this.cache == null || document == null) {
+            return;
+        }
+        String key = this.serializer.serialize(document);
+        if (this.cache.get(key) != null) {
+            this.cache.remove(key);
+            this.invalidationCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getHits()
+    {
+        return this.hitCount.get();
+    }
+
+    @Override
+    public long getMisses()
+    {
+        return this.missCount.get();
+    }
+
+    @Override
+    public double getHitRatio()
+    {
+        long hits = this.hitCount.get();
+        long total = hits + this.missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getInvalidations()
+    {
+        return this.invalidationCount.get();
+    }
+
+    @Override
+    public int getMaxSize()
+    {
+        return this.maxSize;
+    }
+
+    /** Expose the cache statistics as a JMX bean. */
+    private void registerStatistics()
+    {
+        try {
+            ObjectName name = new ObjectName("org.phenotips:type=PatientCache");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(this, PatientCacheStatistics.class), name);
+            this.statisticsName = name;
+        } catch (JMException ex) {
+            this.logger.warn("Failed to register the patient cache statistics: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * A cached patient, with the version of the document it was loaded from.
+     *
+     * @version $Id$
+     */
+    private static final class Entry
+    {
+        private final String version;
+
+        private final PhenoTipsPatient patient;
+
+        Entry(String version, PhenoTipsPatient patient)
+        {
+            this.version = version;
+            this.patient = patient;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.events.PatientChangedEvent;
+import org.phenotips.data.events.PatientDeletedEvent;
+import org.phenotips.data.events.PatientEvent;
+
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Discards the cached patients whose records were changed or deleted. Document events are also handled, so that
+ * changes made outside the patient API, for example by another cluster node or by a direct edit of the document, are
+ * seen even when no patient event is sent.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Component
+@Named("patient-cache-invalidator")
+@Singleton
+public class PatientCacheInvalidator implements EventListener
+{
+    @Inject
+    private PatientCache cache;
+
+    @Override
+    public String getName()
+    {
+        return "patient-cache-invalidator";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.<Event>asList(new PatientChangedEvent(), new PatientDeletedEvent(), new DocumentUpdatedEvent(),
+            new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof PatientEvent) {
+            PatientEvent patientEvent = (PatientEvent) event;
+            if (patientEvent.getPatient() != null) {
+                this.cache.invalidate(patientEvent.getPatient().getDocument());
+            }
+        } else if (source instanceof DocumentModelBridge) {
+            this.cache.invalidate(((DocumentModelBridge) source).getDocumentReference());
+        }
+    }
+}
@@ -89,9 +89,7 @@ private void updateField(String baseFieldName, String extendedFieldName, BaseObj
             sortedPhenotypes.add(phenotype);
             VocabularyTerm phenotypeTerm = this.vocabularyManager.resolveTerm(phenotype);
             if (phenotypeTerm != null) {
-                for (VocabularyTerm term : phenotypeTerm.getAncestorsAndSelf()) {
-                    extendedPhenotypes.add(term.getId());
-                }
+                extendedPhenotypes.addAll(phenotypeTerm.getAncestorAndSelfIds());
             } else {
                 extendedPhenotypes.add(phenotype);
             }
@@ -17,24 +17,16 @@
  */
 package org.phenotips.data.internal;
 
-import org.phenotips.Constants;
-import org.phenotips.components.ComponentManagerRegistry;
 import org.phenotips.data.Feature;
 import org.phenotips.data.FeatureMetadatum;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
 
-import org.xwiki.component.manager.ComponentLookupException;
-import org.xwiki.model.EntityType;
-import org.xwiki.model.reference.EntityReference;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
@@ -62,11 +54,7 @@ public class PhenoTipsFeature extends AbstractPhenoTipsVocabularyProperty implem
      *
      * @see #isPresent()
      */
-    private static final Pattern NEGATIVE_PREFIX = Pattern.compile("^negative_");
-
-    private static final String META_PROPERTY_NAME = "target_property_name";
-
-    private static final String META_PROPERTY_VALUE = "target_property_value";
+    private static final String NEGATIVE_PREFIX = "negative_";
 
     private static final String META_PROPERTY_CATEGORIES = "target_property_category";
 
@@ -113,17 +101,29 @@ public class PhenoTipsFeature extends AbstractPhenoTipsVocabularyProperty implem
      * @param value the specific value from the property represented by this object
      */
     PhenoTipsFeature(XWikiDocument doc, ListProperty property, String value)
+    {
+        this(new PhenoTipsFeatureObjects(doc), property, value);
+    }
+
+    /**
+     * Constructor that copies the data from an XProperty value, using the already indexed objects of the patient
+     * document, so that loading all the features of a patient doesn't scan the document once for each feature.
+     *
+     * @param objects the metadata and categories objects of the described patient
+     * @param property the feature category XProperty
+     * @param value the specific value from the property represented by this object
+     */
+    PhenoTipsFeature(PhenoTipsFeatureObjects objects, ListProperty property, String value)
     {
         super(value);
         this.propertyName = property.getName();
-        Matcher nameMatch = NEGATIVE_PREFIX.matcher(this.propertyName);
-        this.present = !nameMatch.lookingAt();
-        this.type = nameMatch.replaceFirst("");
+        this.present = !StringUtils.startsWith(this.propertyName, NEGATIVE_PREFIX);
+        this.type = this.present ? this.propertyName : this.propertyName.substring(NEGATIVE_PREFIX.length());
 
         this.metadata = new TreeMap<String, FeatureMetadatum>();
         String metadataNotes = "";
         try {
-            BaseObject metadataObject = findMetadataObject(doc);
+            BaseObject metadataObject = objects.getMetadataObject(this.propertyName, value);
             if (metadataObject != null) {
                 for (FeatureMetadatum.Type metadataType : FeatureMetadatum.Type.values()) {
                     StringProperty metadataProp = (StringProperty) metadataObject.get(metadataType.toString());
@@ -142,16 +142,13 @@ public class PhenoTipsFeature extends AbstractPhenoTipsVocabularyProperty implem
         this.metadata = Collections.unmodifiableMap(this.metadata);
 
         List<String> categoriesList = Collections.emptyList();
-        try {
-            BaseObject categoriesObject = findCategoriesObject(doc);
-            if (categoriesObject != null && categoriesObject.getListValue(META_PROPERTY_CATEGORIES) != null) {
-                @SuppressWarnings("unchecked")
-                List<String> originalCategories = categoriesObject.getListValue(META_PROPERTY_CATEGORIES);
+        BaseObject categoriesObject = objects.getCategoriesObject(this.propertyName, value);
+        if (categoriesObject != null) {
+            @SuppressWarnings("unchecked")
+            List<String> originalCategories = categoriesObject.getListValue(META_PROPERTY_CATEGORIES);
+            if (originalCategories != null) {
                 categoriesList = Collections.unmodifiableList(originalCategories);
             }
-        } catch (XWikiException ex) {
-            // Cannot access metadata, simply ignore
-            this.logger.info("Failed to retrieve phenotype categories: {}", ex.getMessage());
         }
         this.categories = categoriesList;
     }
@@ -231,11 +228,11 @@ public JSONObject toJSON()
         }
         if (!this.categories.isEmpty()) {
             JSONArray categoriesList = new JSONArray();
-            try {
-                VocabularyManager vm =
-                    ComponentManagerRegistry.getContextComponentManager().getInstance(VocabularyManager.class);
+            VocabularyManager vm = VOCABULARY_MANAGER.get();
+            if (vm != null) {
+                Map<String, VocabularyTerm> terms = vm.resolveTerms(this.categories);
                 for (String category : this.categories) {
-                    VocabularyTerm term = vm.resolveTerm(category);
+                    VocabularyTerm term = terms.get(category);
                     if (term != null && StringUtils.isNotEmpty(term.getName())) {
                         JSONObject categoryObject = new JSONObject();
                         categoryObject.put(ID_JSON_KEY_NAME, term.getId());
@@ -243,65 +240,9 @@ public JSONObject toJSON()
                         categoriesList.put(categoryObject);
                     }
                 }
-            } catch (ComponentLookupException ex) {
-                // Shouldn't happen
             }
             result.put(CATEGORIES_JSON_KEY_NAME, categoriesList);
         }
         return result;
     }
-
-    /**
-     * Find the XObject that contains metadata for this feature, if any.
-     *
-     * @param doc the patient's XDocument, where metadata objects are stored
-     * @return the found object, or {@code null} if one wasn't found
-     * @throws XWikiException if accessing the data fails
-     */
-    private BaseObject findMetadataObject(XWikiDocument doc) throws XWikiException
-    {
-        List<BaseObject> objects = doc.getXObjects(FeatureMetadatum.CLASS_REFERENCE);
-        if (objects != null && !objects.isEmpty()) {
-            for (BaseObject o : objects) {
-                if (o == null) {
-                    continue;
-                }
-                StringProperty nameProperty = (StringProperty) o.get(META_PROPERTY_NAME);
-                StringProperty valueProperty = (StringProperty) o.get(META_PROPERTY_VALUE);
-                if (nameProperty != null && StringUtils.equals(nameProperty.getValue(), this.propertyName)
-                    && valueProperty != null && StringUtils.equals(valueProperty.getValue(), this.getValue())) {
-                    return o;
-                }
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Find the XObject that contains the custom categories for this non-standard feature, if any.
-     *
-     * @param doc the patient's XDocument, where objects are stored
-     * @return the found object, or {@code null} if one wasn't found
-     * @throws XWikiException if accessing the data fails
-     */
-    private BaseObject findCategoriesObject(XWikiDocument doc) throws XWikiException
-    {
-        List<BaseObject> objects =
-            doc.getXObjects(new EntityReference("PhenotypeCategoryClass", EntityType.DOCUMENT,
-                Constants.CODE_SPACE_REFERENCE));
-        if (objects != null && !objects.isEmpty()) {
-            for (BaseObject o : objects) {
-                if (o == null) {
-                    continue;
-                }
-                StringProperty nameProperty = (StringProperty) o.get(META_PROPERTY_NAME);
-                StringProperty valueProperty = (StringProperty) o.get(META_PROPERTY_VALUE);
-                if (nameProperty != null && StringUtils.equals(nameProperty.getValue(), this.propertyName)
-                    && valueProperty != null && StringUtils.equals(valueProperty.getValue(), this.getValue())) {
-                    return o;
-                }
-            }
-        }
-        return null;
-    }
 }
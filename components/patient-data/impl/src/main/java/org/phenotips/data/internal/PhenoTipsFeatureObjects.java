@@ -0,0 +1,137 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.Constants;
+import org.phenotips.data.FeatureMetadatum;
+
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.StringProperty;
+
+/**
+ * The metadata and custom categories objects of a patient document, indexed by the feature they're attached to, so
+ * that all the features of a patient can find their objects with a single pass over the document.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+final class PhenoTipsFeatureObjects
+{
+    /** The class of the objects holding the custom categories of a feature. */
+    static final EntityReference CATEGORIES_CLASS_REFERENCE = new EntityReference("PhenotypeCategoryClass",
+        EntityType.DOCUMENT, Constants.CODE_SPACE_REFERENCE);
+
+    private static final String META_PROPERTY_NAME = "target_property_name";
+
+    private static final String META_PROPERTY_VALUE = "target_property_value";
+
+    /** Separates the property name from the value in index keys; not allowed in either of them. */
+    private static final char KEY_SEPARATOR = '\n';
+
+    /** Logging helper object. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PhenoTipsFeatureObjects.class);
+
+    /** Metadata objects, with the keys built by {@link #getKey}. */
+    private final Map<String, BaseObject> metadata;
+
+    /** Custom categories objects, with the keys built by {@link #getKey}. */
+    private final Map<String, BaseObject> categories;
+
+    /**
+     * Index the objects of a patient document.
+     *
+     * @param doc the patient's XDocument, where metadata and categories objects are stored
+     */
+    PhenoTipsFeatureObjects(XWikiDocument doc)
+    {
+        this.metadata = index(doc.getXObjects(FeatureMetadatum.CLASS_REFERENCE));
+        this.categories = index(doc.getXObjects(CATEGORIES_CLASS_REFERENCE));
+    }
+
+    /**
+     * Find the object that contains metadata for a feature, if any.
+     *
+     * @param propertyName the name of the property holding the feature
+     * @param value the value of the feature, either a term identifier or a free text label
+     * @return the found object, or {@code null} if one wasn't found
+     */
+    BaseObject getMetadataObject(String propertyName, String value)
+    {
+        return this.metadata.get(getKey(propertyName, value));
+    }
+
+    /**
+     * Find the object that contains the custom categories for a feature, if any.
+     *
+     * @param propertyName the name of the property holding the feature
+     * @param value the value of the feature, either a term identifier or a free text label
+     * @return the found object, or {@code null} if one wasn't found
+     */
+    BaseObject getCategoriesObject(String propertyName, String value)
+    {
+        return this.categories.get(getKey(propertyName, value));
+    }
+
+    private static Map<String, BaseObject> index(List<BaseObject> objects)
+    {
+        if (objects == null || objects.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, BaseObject> result = new HashMap<>();
+        for (BaseObject o : objects) {
+            if (o == null) {
+                continue;
+            }
+            try {
+                StringProperty nameProperty = (StringProperty) o.get(META_PROPERTY_NAME);
+                StringProperty valueProperty = (StringProperty) o.get(META_PROPERTY_VALUE);
+                if (nameProperty == null || valueProperty == null) {
+                    continue;
+                }
+                String key = getKey(nameProperty.getValue(), valueProperty.getValue());
+                // In case of duplicates, the first object wins
+                if (!result.containsKey(key)) {
+                    result.put(key, o);
+                }
+            } catch (XWikiException ex) {
+                // Cannot access this object, simply ignore it
+                LOGGER.info("Failed to retrieve phenotype metadata: {}", ex.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static String getKey(String propertyName, String value)
+    {
+        return StringUtils.defaultString(propertyName) + KEY_SEPARATOR + StringUtils.defaultString(value);
+    }
+}
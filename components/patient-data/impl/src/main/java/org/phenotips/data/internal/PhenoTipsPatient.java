@@ -18,15 +18,16 @@
 package org.phenotips.data.internal;
 
 import org.phenotips.Constants;
+import org.phenotips.components.ComponentHandle;
 import org.phenotips.components.ComponentManagerRegistry;
 import org.phenotips.data.Disorder;
 import org.phenotips.data.Feature;
+import org.phenotips.data.FeatureMetadatum;
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
-import org.xwiki.bridge.DocumentAccessBridge;
-import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.context.Execution;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
@@ -85,6 +86,12 @@ public class PhenoTipsPatient implements Patient
 
     private static final String PHENOTYPE_NEGATIVE_PROPERTY = NEGATIVE_PHENOTYPE_PREFIX + PHENOTYPE_POSITIVE_PROPERTY;
 
+    /** Suffix of all the fields holding phenotypes, other than {@link #PHENOTYPE_POSITIVE_PROPERTY}. */
+    private static final String PHENOTYPE_FIELD_SUFFIX = "_" + PHENOTYPE_POSITIVE_PROPERTY;
+
+    /** Prefix of the fields holding the ancestors of the selected phenotypes, which are not features themselves. */
+    private static final String EXTENDED_FIELD_PREFIX = "extended_";
+
     private static final String[] PHENOTYPE_PROPERTIES =
         new String[] { PHENOTYPE_POSITIVE_PROPERTY, PHENOTYPE_NEGATIVE_PROPERTY };
 
@@ -92,6 +99,10 @@ public class PhenoTipsPatient implements Patient
 
     private static final String[] DISORDER_PROPERTIES = new String[] { DISORDER_PROPERTIES_OMIMID };
 
+    /** The available data controllers, looked up once instead of for each patient. */
+    private static final ComponentHandle<List<PatientDataController<?>>> CONTROLLERS =
+        ComponentHandle.listOf(PatientDataController.class);
+
     /** Logging helper object. */
     private Logger logger = LoggerFactory.getLogger(PhenoTipsPatient.class);
 
@@ -102,16 +113,19 @@ public class PhenoTipsPatient implements Patient
     private DocumentReference reporter;
 
     /** @see #getFeatures() */
-    private Set<Feature> features = new TreeSet<Feature>();
+    private volatile Set<Feature> features = new TreeSet<Feature>();
 
     /** @see #getDisorders() */
-    private Set<Disorder> disorders = new TreeSet<Disorder>();
+    private volatile Set<Disorder> disorders = new TreeSet<Disorder>();
 
     /** The list of all the initialized data holders (PatientDataSerializer). */
     private Map<String, PatientDataController<?>> serializers = new TreeMap<String, PatientDataController<?>>();
 
-    /** Extra data that can be plugged into the patient record. */
-    private Map<String, PatientData<?>> extraData = new TreeMap<String, PatientData<?>>();
+    /** Extra data that can be plugged into the patient record, loaded on demand, or all at once if shared. */
+    private volatile Map<String, PatientData<?>> extraData = new TreeMap<String, PatientData<?>>();
+
+    /** Whether this instance is cached and shared between callers, see {@link #markShared()}. */
+    private volatile boolean shared;
 
     /**
      * Constructor that copies the data from an XDocument.
@@ -131,6 +145,7 @@ public PhenoTipsPatient(XWikiDocument doc)
         try {
             loadFeatures(doc, data);
             loadDisorders(doc, data);
+            groupLabels();
             loadSerializers();
         } catch (XWikiException ex) {
             this.logger.warn("Failed to access patient data for [{}]: {}", doc.getDocumentReference(), ex.getMessage());
@@ -144,22 +159,40 @@ public PhenoTipsPatient(XWikiDocument doc)
 
     private void loadFeatures(XWikiDocument doc, BaseObject data)
     {
+        // Indexed on the first feature found, since it needs a pass over all the objects of the document
+        PhenoTipsFeatureObjects objects = null;
         @SuppressWarnings("unchecked")
         Collection<BaseProperty<EntityReference>> fields = data.getFieldList();
         for (BaseProperty<EntityReference> field : fields) {
-            if (field == null || !field.getName().matches("(?!extended_)(.*_)?phenotype")
-                || !ListProperty.class.isInstance(field)) {
+            if (field == null || !isPhenotypeField(field.getName()) || !ListProperty.class.isInstance(field)) {
                 continue;
             }
             ListProperty values = (ListProperty) field;
             for (String value : values.getList()) {
                 if (StringUtils.isNotBlank(value)) {
-                    this.features.add(new PhenoTipsFeature(doc, values, value));
+                    if (objects == null) {
+                        objects = new PhenoTipsFeatureObjects(doc);
+                    }
+                    this.features.add(new PhenoTipsFeature(objects, values, value));
                 }
             }
         }
     }
 
+    /**
+     * Check if a field holds phenotypes, i.e. it's either {@code phenotype}, or any other field whose name ends in
+     * {@code _phenotype}, except for the {@code extended_*} fields, which hold the ancestors of the selected terms.
+     *
+     * @param name the name of the field to check
+     * @return {@code true} if the field holds phenotypes
+     */
+    private static boolean isPhenotypeField(String name)
+    {
+        return PHENOTYPE_POSITIVE_PROPERTY.equals(name)
+            || (StringUtils.endsWith(name, PHENOTYPE_FIELD_SUFFIX)
+                && !StringUtils.startsWith(name, EXTENDED_FIELD_PREFIX));
+    }
+
     private void loadDisorders(XWikiDocument doc, BaseObject data) throws XWikiException
     {
         for (String property : DISORDER_PROPERTIES) {
@@ -174,20 +207,75 @@ private void loadDisorders(XWikiDocument doc, BaseObject data) throws XWikiExcep
         }
     }
 
+    /** Make the labels of all the terms of this patient be resolved together, and only when first needed. */
+    private void groupLabels()
+    {
+        PhenoTipsTermLabels labels = new PhenoTipsTermLabels();
+        for (Feature feature : this.features) {
+            addToLabels(labels, feature);
+            for (FeatureMetadatum metadatum : feature.getMetadata().values()) {
+                addToLabels(labels, metadatum);
+            }
+        }
+        for (Disorder disorder : this.disorders) {
+            addToLabels(labels, disorder);
+        }
+    }
+
+    private void addToLabels(PhenoTipsTermLabels labels, Object property)
+    {
+        if (property instanceof AbstractPhenoTipsVocabularyProperty) {
+            labels.add((AbstractPhenoTipsVocabularyProperty) property);
+        }
+    }
+
+    /**
+     * Mark this instance as shared between callers, for example when it is cached. The data of all the controllers is
+     * loaded right away, before the instance is handed to other callers, since {@link #getData(String)} doesn't load
+     * anything into shared instances. {@link #updateFromJSON(JSONObject)} works on a fresh copy loaded from the
+     * document, and only replaces the data of this instance with the saved data of the copy.
+     */
+    void markShared()
+    {
+        loadAllData();
+        this.shared = true;
+    }
+
+    private void loadAllData()
+    {
+        for (String name : this.serializers.keySet()) {
+            if (this.extraData.containsKey(name)) {
+                continue;
+            }
+            try {
+                readPatientData(name);
+            } catch (Exception ex) {
+                this.logger.warn("Failed to load patient data using controller [{}] for [{}]: {}", name,
+                    this.document, ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replace the data of this instance with the data of an updated copy of the same patient.
+     *
+     * @param copy the updated copy, which is not used anymore afterwards
+     */
+    private void refreshFrom(PhenoTipsPatient copy)
+    {
+        copy.loadAllData();
+        this.features = copy.features;
+        this.disorders = copy.disorders;
+        this.extraData = copy.extraData;
+    }
+
     private void loadSerializers()
     {
-        try {
-            List<PatientDataController<?>> availableSerializers = ComponentManagerRegistry
-                .getContextComponentManager()
-                .getInstanceList(PatientDataController.class);
-            for (PatientDataController<?> serializer : availableSerializers) {
-                if (this.serializers.containsKey(serializer.getName())) {
-                    this.logger.warn("Overwriting patient data controller with the name [{}]", serializer.getName());
-                }
-                this.serializers.put(serializer.getName(), serializer);
+        for (PatientDataController<?> serializer : CONTROLLERS.get()) {
+            if (this.serializers.containsKey(serializer.getName())) {
+                this.logger.warn("Overwriting patient data controller with the name [{}]", serializer.getName());
             }
-        } catch (ComponentLookupException ex) {
-            this.logger.error("Failed to lookup serializers", ex);
+            this.serializers.put(serializer.getName(), serializer);
         }
     }
 
@@ -267,7 +355,7 @@ public Set<Disorder> getDisorders()
     @Override
     public <T> PatientData<T> getData(String name)
     {
-        if (!this.extraData.containsKey(name)) {
+        if (!this.shared && !this.extraData.containsKey(name)) {
             this.readPatientData(name);
         }
         return (PatientData<T>) this.extraData.get(name);
@@ -353,7 +441,7 @@ public JSONObject toJSON(Collection<String> onlyFieldNames)
     }
 
     private void updateFeaturesFromJSON(XWikiDocument doc, BaseObject data, XWikiContext context,
-        JSONObject json)
+        PatientUnitOfWork unitOfWork, JSONObject json)
     {
         try {
             JSONArray jsonFeatures =
@@ -398,7 +486,7 @@ private void updateFeaturesFromJSON(XWikiDocument doc, BaseObject data, XWikiCon
             for (String type : featuresMap.keySet()) {
                 data.set(type, featuresMap.get(type), context);
             }
-            context.getWiki().saveDocument(doc, "Updated features from JSON", true, context);
+            unitOfWork.save(doc, "Updated features from JSON");
 
         } catch (Exception ex) {
             this.logger.warn("Failed to update patient features from JSON [{}]: {}", ex.getMessage(), ex);
@@ -421,7 +509,8 @@ private JSONArray joinArrays(JSONArray jsonOne, JSONArray jsonTwo)
         return result;
     }
 
-    private void updateDisordersFromJSON(XWikiDocument doc, BaseObject data, XWikiContext context, JSONObject json)
+    private void updateDisordersFromJSON(XWikiDocument doc, BaseObject data, XWikiContext context,
+        PatientUnitOfWork unitOfWork, JSONObject json)
     {
         try {
             JSONArray inputDisorders = json.optJSONArray(JSON_KEY_DISORDERS);
@@ -449,7 +538,7 @@ private void updateDisordersFromJSON(XWikiDocument doc, BaseObject data, XWikiCo
 
                 // update the values in the document (overwriting the old list, if any)
                 data.set(DISORDER_PROPERTIES_OMIMID, disorderValues, context);
-                context.getWiki().saveDocument(doc, "Updated disorders from JSON", true, context);
+                unitOfWork.save(doc, "Updated disorders from JSON");
             }
         } catch (Exception ex) {
             this.logger.warn("Failed to update patient disorders from JSON [{}]: {}", ex.getMessage(), ex);
@@ -466,37 +555,55 @@ public void updateFromJSON(JSONObject json)
             Execution execution = ComponentManagerRegistry.getContextComponentManager().getInstance(Execution.class);
             XWikiContext context = (XWikiContext) execution.getContext().getProperty("xwikicontext");
 
-            DocumentAccessBridge documentAccessBridge =
-                ComponentManagerRegistry.getContextComponentManager().getInstance(DocumentAccessBridge.class);
-            XWikiDocument doc = (XWikiDocument) documentAccessBridge.getDocument(getDocument());
-
-            BaseObject data = doc.getXObject(CLASS_REFERENCE);
-            if (data == null) {
-                return;
+            // All the changes are collected and saved together, as a single new version of the patient document
+            PatientUnitOfWork unitOfWork =
+                ComponentManagerRegistry.getContextComponentManager().getInstance(PatientUnitOfWork.class);
+            unitOfWork.begin();
+            try {
+                XWikiDocument doc = (XWikiDocument) unitOfWork.getDocument(getDocument());
+                // Other callers may be reading a shared instance, so the update is done on a private copy, and the
+                // shared instance only takes the new data, all at once, once it is saved
+                PhenoTipsPatient target = this.shared ? new PhenoTipsPatient(doc) : this;
+                target.updateDocumentFromJSON(doc, context, unitOfWork, json);
+                unitOfWork.commit("Updated patient from JSON");
+                if (target != this) {
+                    refreshFrom(target);
+                }
+            } finally {
+                unitOfWork.end();
             }
+        } catch (Exception ex) {
+            this.logger.warn("Failed to update patient data from JSON [{}]: {}", ex.getMessage(), ex);
+        }
+    }
 
-            updateFeaturesFromJSON(doc, data, context, json);
-            updateDisordersFromJSON(doc, data, context, json);
-
-            for (PatientDataController<?> serializer : this.serializers.values()) {
-                try {
-                    PatientData<?> patientData = serializer.readJSON(json);
-                    if (patientData != null) {
-                        this.extraData.put(patientData.getName(), patientData);
-                        serializer.save(this);
-                        this.logger.info("Successfully updated patient form JSON using serializer [{}]",
-                            serializer.getName());
-                    }
-                } catch (UnsupportedOperationException ex) {
-                    this.logger.info("Unable to update patient from JSON using serializer [{}]: not supported",
+    private void updateDocumentFromJSON(XWikiDocument doc, XWikiContext context, PatientUnitOfWork unitOfWork,
+        JSONObject json)
+    {
+        BaseObject data = doc.getXObject(CLASS_REFERENCE);
+        if (data == null) {
+            return;
+        }
+
+        updateFeaturesFromJSON(doc, data, context, unitOfWork, json);
+        updateDisordersFromJSON(doc, data, context, unitOfWork, json);
+
+        for (PatientDataController<?> serializer : this.serializers.values()) {
+            try {
+                PatientData<?> patientData = serializer.readJSON(json);
+                if (patientData != null) {
+                    this.extraData.put(patientData.getName(), patientData);
+                    serializer.save(this);
+                    this.logger.info("Successfully updated patient form JSON using serializer [{}]",
                         serializer.getName());
-                } catch (Exception ex) {
-                    this.logger.warn("Failed to update patient data from JSON using serializer [{}]: {}",
-                        serializer.getName(), ex.getMessage(), ex);
                 }
+            } catch (UnsupportedOperationException ex) {
+                this.logger.info("Unable to update patient from JSON using serializer [{}]: not supported",
+                    serializer.getName());
+            } catch (Exception ex) {
+                this.logger.warn("Failed to update patient data from JSON using serializer [{}]: {}",
+                    serializer.getName(), ex.getMessage(), ex);
             }
-        } catch (Exception ex) {
-            this.logger.warn("Failed to update patient data from JSON [{}]: {}", ex.getMessage(), ex);
         }
     }
 
@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientRecordInitializer;
 import org.phenotips.data.PatientRepository;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.bridge.DocumentModelBridge;
@@ -84,6 +85,20 @@ public class PhenoTipsPatientRepository implements PatientRepository
     @Named("current")
     private DocumentReferenceResolver<EntityReference> referenceResolver;
 
+    /** Keeps the recently loaded patients. */
+    @Inject
+    private PatientCache cache;
+
+    /** Collects the changes to the new patient documents, so that each new patient is saved only once. */
+    @Inject
+    private PatientUnitOfWork unitOfWork;
+
+    /**
+     * The last identifier given to a new patient. The new document may only be saved when the unit of work creating it
+     * is committed, so the identifiers already taken can't be found only by querying the database.
+     */
+    private long lastReservedId;
+
     @Override
     public Patient getPatientById(String id)
     {
@@ -91,7 +106,7 @@ public Patient getPatientById(String id)
         try {
             XWikiDocument doc = (XWikiDocument) this.bridge.getDocument(reference);
             if (doc != null && doc.getXObject(Patient.CLASS_REFERENCE) != null) {
-                return new PhenoTipsPatient(doc);
+                return this.cache.get(doc);
             }
         } catch (Exception ex) {
             this.logger.warn("Failed to access patient with id [{}]: {}", id, ex.getMessage(), ex);
@@ -109,7 +124,7 @@ public Patient getPatientByExternalId(String externalId)
             if (results.size() == 1) {
                 DocumentReference reference =
                     this.stringResolver.resolve(results.get(0), Patient.DEFAULT_DATA_SPACE);
-                return new PhenoTipsPatient((XWikiDocument) this.bridge.getDocument(reference));
+                return this.cache.get((XWikiDocument) this.bridge.getDocument(reference));
             }
         } catch (QueryException ex) {
             this.logger.warn("Failed to search for the patient with external id [{}]: {}", externalId, ex.getMessage(),
@@ -139,44 +154,22 @@ public synchronized Patient createNewPatient(DocumentReference creator)
             String prefix = "P";
 
             XWikiContext context = (XWikiContext) this.execution.getContext().getProperty("xwikicontext");
-            long id = getLastUsedId();
+            long id = Math.max(getLastUsedId(), this.lastReservedId);
             DocumentReference newDoc;
             do {
                 newDoc = this.referenceResolver.resolve(new EntityReference(
                     prefix + String.format("%07d", ++id), EntityType.DOCUMENT, Patient.DEFAULT_DATA_SPACE));
             } while (this.bridge.exists(newDoc));
-            XWikiDocument doc = (XWikiDocument) this.bridge.getDocument(newDoc);
-            doc.readFromTemplate(this.referenceResolver.resolve(PhenoTipsPatient.TEMPLATE_REFERENCE), context);
-            doc.setTitle(newDoc.getName());
-            doc.getXObject(Patient.CLASS_REFERENCE).setLongValue("identifier", id);
-            if (creator != null) {
-                doc.setCreatorReference(creator);
-                doc.setAuthorReference(creator);
-                doc.setContentAuthorReference(creator);
-            }
-            context.getWiki().saveDocument(doc, context);
+            this.lastReservedId = id;
 
-            Patient patient = new PhenoTipsPatient(doc);
-            List<PatientRecordInitializer> initializers = Collections.emptyList();
+            this.unitOfWork.begin();
             try {
-                initializers = ComponentManagerRegistry.getContextComponentManager().getInstanceList(
-                    PatientRecordInitializer.class);
-            } catch (ComponentLookupException e) {
-                this.logger.error("Failed to get initializers", e);
+                Patient patient = initializeNewPatient(newDoc, id, creator, context);
+                this.unitOfWork.commit("Created patient");
+                return patient;
+            } finally {
+                this.unitOfWork.end();
             }
-
-            for (PatientRecordInitializer initializer : initializers) {
-                try {
-                    initializer.initialize(patient);
-                } catch (Exception ex) {
-                    // Initializers shouldn't block the creation of a new patient, especially since the new patient
-                    // has already been saved...
-                    this.logger.warn("Patient initializer [{}] failed: {}", initializer.getClass().getName(),
-                        ex.getMessage(), ex);
-                }
-            }
-
-            return patient;
         } catch (Exception ex) {
             this.logger.warn("Failed to create patient: {}", ex.getMessage(), ex);
             return null;
@@ -189,6 +182,42 @@ public synchronized Patient createNewPatient()
         return createNewPatient(this.bridge.getCurrentUserReference());
     }
 
+    private Patient initializeNewPatient(DocumentReference newDoc, long id, DocumentReference creator,
+        XWikiContext context) throws Exception
+    {
+        XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(newDoc);
+        doc.readFromTemplate(this.referenceResolver.resolve(PhenoTipsPatient.TEMPLATE_REFERENCE), context);
+        doc.setTitle(newDoc.getName());
+        doc.getXObject(Patient.CLASS_REFERENCE).setLongValue("identifier", id);
+        if (creator != null) {
+            doc.setCreatorReference(creator);
+            doc.setAuthorReference(creator);
+            doc.setContentAuthorReference(creator);
+        }
+        this.unitOfWork.save(doc, "Created patient");
+
+        Patient patient = new PhenoTipsPatient(doc);
+        List<PatientRecordInitializer> initializers = Collections.emptyList();
+        try {
+            initializers = ComponentManagerRegistry.getContextComponentManager().getInstanceList(
+                PatientRecordInitializer.class);
+        } catch (ComponentLookupException e) {
+            this.logger.error("Failed to get initializers", e);
+        }
+
+        for (PatientRecordInitializer initializer : initializers) {
+            try {
+                initializer.initialize(patient);
+            } catch (Exception ex) {
+                // Initializers shouldn't block the creation of a new patient
+                this.logger.warn("Patient initializer [{}] failed: {}", initializer.getClass().getName(),
+                    ex.getMessage(), ex);
+            }
+        }
+
+        return patient;
+    }
+
     private long getLastUsedId() throws QueryException
     {
         long crtMaxID = 0;
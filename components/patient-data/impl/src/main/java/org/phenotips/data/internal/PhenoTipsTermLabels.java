@@ -0,0 +1,86 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The vocabulary properties of a patient whose labels are resolved together: the first time the label of one of them
+ * is needed, all the terms are resolved with a single batched vocabulary call. Patients that are only loaded to be
+ * checked or saved never need their labels, so they don't query the vocabularies at all.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+final class PhenoTipsTermLabels
+{
+    /** The properties sharing this batch, until their labels are resolved. */
+    private List<AbstractPhenoTipsVocabularyProperty> properties = new ArrayList<>();
+
+    /**
+     * Add a property to this batch.
+     *
+     * @param property the property to add, its label will be resolved together with the others; if the batch was
+     *            already resolved, the property is not added, and will resolve its own label when needed
+     */
+    synchronized void add(AbstractPhenoTipsVocabularyProperty property)
+    {
+        if (this.properties == null) {
+            return;
+        }
+        property.labels = this;
+        this.properties.add(property);
+    }
+
+    /** Resolve the labels of all the properties in this batch which don't have one yet, if not already done. */
+    synchronized void resolve()
+    {
+        if (this.properties == null) {
+            return;
+        }
+        List<AbstractPhenoTipsVocabularyProperty> toResolve = this.properties;
+        this.properties = null;
+
+        Set<String> ids = new LinkedHashSet<>();
+        for (AbstractPhenoTipsVocabularyProperty property : toResolve) {
+            if (property.name == null && StringUtils.isNotEmpty(property.id)) {
+                ids.add(property.id);
+            }
+        }
+        VocabularyManager vm = AbstractPhenoTipsVocabularyProperty.VOCABULARY_MANAGER.get();
+        if (ids.isEmpty() || vm == null) {
+            return;
+        }
+        Map<String, VocabularyTerm> terms = vm.resolveTerms(ids);
+        for (AbstractPhenoTipsVocabularyProperty property : toResolve) {
+            VocabularyTerm term = terms.get(property.id);
+            if (property.name == null && term != null && StringUtils.isNotEmpty(term.getName())) {
+                property.name = term.getName();
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.VocabularyProperty;
 import org.phenotips.data.internal.AbstractPhenoTipsVocabularyProperty;
 
@@ -67,6 +68,10 @@
     @Inject
     protected DocumentAccessBridge documentAccessBridge;
 
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
+    @Inject
+    protected PatientUnitOfWork unitOfWork;
+
     /** Logging helper object. */
     @Inject
     private Logger logger;
@@ -277,7 +282,7 @@ public void writeJSON(Patient patient, JSONObject json)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             BaseObject dataHolder = doc.getXObject(getXClassReference());
             PatientData<T> data = patient.getData(this.getName());
             if (dataHolder == null && data != null) {
@@ -302,8 +307,7 @@ public void save(Patient patient)
                 }
             }
 
-            context.getWiki()
-                .saveDocument(doc, String.format("Updated %s history from JSON", this.getName()), true, context);
+            this.unitOfWork.save(doc, String.format("Updated %s history from JSON", this.getName()));
         } catch (Exception ex) {
             this.logger.error("Could not save patient document or some unknown error has occurred", ex.getMessage());
         }
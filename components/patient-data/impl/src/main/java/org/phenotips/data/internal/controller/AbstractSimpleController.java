@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 
@@ -32,13 +33,11 @@
 import java.util.Map.Entry;
 
 import javax.inject.Inject;
-import javax.inject.Provider;
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -54,13 +53,13 @@ public abstract class AbstractSimpleController implements PatientDataController<
     @Inject
     protected DocumentAccessBridge documentAccessBridge;
 
-    /** Logging helper object. */
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
     @Inject
-    private Logger logger;
+    protected PatientUnitOfWork unitOfWork;
 
-    /** Provides access to the current execution context. */
+    /** Logging helper object. */
     @Inject
-    private Provider<XWikiContext> contextProvider;
+    private Logger logger;
 
     @Override
     public PatientData<String> load(Patient patient)
@@ -90,7 +89,7 @@ public PatientData<String> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             BaseObject xwikiDataObject = doc.getXObject(Patient.CLASS_REFERENCE);
             if (xwikiDataObject == null) {
                 throw new IllegalArgumentException(ERROR_MESSAGE_NO_PATIENT_CLASS);
@@ -104,9 +103,8 @@ public void save(Patient patient)
                 xwikiDataObject.setStringValue(property, data.get(property));
             }
 
-            XWikiContext context = this.contextProvider.get();
             String comment = String.format("Updated %s from JSON", this.getName());
-            context.getWiki().saveDocument(doc, comment, true, context);
+            this.unitOfWork.save(doc, comment);
         } catch (Exception e) {
             this.logger.error("Failed to save {}: [{}]", this.getName(), e.getMessage());
         }
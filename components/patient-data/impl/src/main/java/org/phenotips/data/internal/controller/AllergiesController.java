@@ -22,6 +22,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
@@ -74,6 +75,10 @@ public class AllergiesController implements PatientDataController<String>
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
+    @Inject
+    private PatientUnitOfWork unitOfWork;
+
     @Override
     public String getName()
     {
@@ -131,12 +136,12 @@ public void save(Patient patient)
                 }
             }
 
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             BaseObject xobject = doc.getXObject(CLASS_REFERENCE, true, this.xcontext.get());
             xobject.setIntValue(NKDA, nkda ? 1 : 0);
             xobject.setDBStringListValue(DATA_NAME, allergies);
 
-            this.xcontext.get().getWiki().saveDocument(doc, "Updated allergies from JSON", true, this.xcontext.get());
+            this.unitOfWork.save(doc, "Updated allergies from JSON");
         } catch (Exception ex) {
             this.logger.error("Could not access requested document or some unforeseen error has occurred during save.",
                 ex);
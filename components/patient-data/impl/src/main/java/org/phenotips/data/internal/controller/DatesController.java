@@ -22,10 +22,10 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.context.Execution;
 
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -46,7 +46,6 @@
 import org.json.JSONObject;
 import org.slf4j.Logger;
 
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -78,12 +77,12 @@ public class DatesController implements PatientDataController<Date>
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
     @Inject
-    private RecordConfigurationManager configurationManager;
+    private PatientUnitOfWork unitOfWork;
 
-    /** Provides access to the current execution context. */
     @Inject
-    private Execution execution;
+    private RecordConfigurationManager configurationManager;
 
     @Override
     public PatientData<Date> load(Patient patient)
@@ -113,7 +112,7 @@ public PatientData<Date> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 throw new NullPointerException(ERROR_MESSAGE_NO_PATIENT_CLASS);
@@ -130,8 +129,7 @@ public void save(Patient patient)
                 }
             }
 
-            XWikiContext context = (XWikiContext) this.execution.getContext().getProperty("xwikicontext");
-            context.getWiki().saveDocument(doc, "Updated dates from JSON", true, context);
+            this.unitOfWork.save(doc, "Updated dates from JSON");
         } catch (Exception e) {
             this.logger.error("Failed to save dates: [{}]", e.getMessage());
         }
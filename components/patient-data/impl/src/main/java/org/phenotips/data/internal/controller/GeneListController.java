@@ -320,7 +320,7 @@ public void save(Patient patient)
                 return;
             }
 
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             if (doc == null) {
                 throw new NullPointerException(ERROR_MESSAGE_NO_PATIENT_CLASS);
             }
@@ -343,7 +343,7 @@ public void save(Patient patient)
                 }
             }
 
-            context.getWiki().saveDocument(doc, "Updated genes from JSON", true, context);
+            this.unitOfWork.save(doc, "Updated genes from JSON");
         } catch (Exception e) {
             this.logger.error("Failed to save genes: [{}]", e.getMessage());
         }
@@ -33,6 +33,7 @@
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -88,19 +89,34 @@ public PatientData<List<VocabularyTerm>> load(Patient patient)
             if (data == null) {
                 return null;
             }
-            Map<String, List<VocabularyTerm>> result = new LinkedHashMap<>();
+            // Collect all the identifiers first, so that they can be resolved at once
+            Map<String, List<String>> ids = new LinkedHashMap<>();
+            Collection<String> allIds = new LinkedHashSet<>();
             for (String propertyName : getProperties()) {
                 Object propertyValue = data.get(propertyName);
-                List<VocabularyTerm> holder = new LinkedList<>();
+                List<String> propertyIds = new LinkedList<>();
                 if (propertyValue instanceof StringProperty) {
-                    String propertyValueString = data.getStringValue(propertyName);
-                    addTerms(propertyValueString, holder);
+                    addId(data.getStringValue(propertyName), propertyIds);
                 } else if (propertyValue instanceof DBStringListProperty) {
                     for (String item : ((DBStringListProperty) propertyValue).getList()) {
-                        addTerms(item, holder);
+                        addId(item, propertyIds);
+                    }
+                }
+                ids.put(propertyName, propertyIds);
+                allIds.addAll(propertyIds);
+            }
+            Map<String, VocabularyTerm> terms = this.vocabularyManager.resolveTerms(allIds);
+
+            Map<String, List<VocabularyTerm>> result = new LinkedHashMap<>();
+            for (Entry<String, List<String>> propertyIds : ids.entrySet()) {
+                List<VocabularyTerm> holder = new LinkedList<>();
+                for (String id : propertyIds.getValue()) {
+                    VocabularyTerm term = terms.get(id);
+                    if (term != null) {
+                        holder.add(term);
                     }
                 }
-                result.put(propertyName, holder);
+                result.put(propertyIds.getKey(), holder);
             }
 
             return new DictionaryPatientData<>(DATA_NAME, result);
@@ -187,23 +203,34 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
     public PatientData<List<VocabularyTerm>> readJSON(JSONObject json)
     {
         try {
-            Map<String, List<VocabularyTerm>> result = new HashMap<>();
+            Map<String, List<String>> ids = new HashMap<>();
+            Collection<String> allIds = new LinkedHashSet<>();
             for (String property : this.getProperties()) {
                 JSONArray elements = json.optJSONArray(property);
                 if (elements != null) {
-                    List<VocabularyTerm> propertyTerms = new LinkedList<>();
+                    List<String> propertyIds = new LinkedList<>();
                     Iterator<Object> elementsIterator = elements.iterator();
                     while (elementsIterator.hasNext()) {
                         JSONObject element = (JSONObject) elementsIterator.next();
                         String termId = element.optString(ID_NAME);
                         if (termId != null) {
-                            VocabularyTerm term = vocabularyManager.resolveTerm(termId);
-                            propertyTerms.add(term);
+                            propertyIds.add(termId);
                         }
                     }
-                    result.put(property, propertyTerms);
+                    ids.put(property, propertyIds);
+                    allIds.addAll(propertyIds);
                 }
             }
+            Map<String, VocabularyTerm> terms = this.vocabularyManager.resolveTerms(allIds);
+
+            Map<String, List<VocabularyTerm>> result = new HashMap<>();
+            for (Entry<String, List<String>> propertyIds : ids.entrySet()) {
+                List<VocabularyTerm> propertyTerms = new LinkedList<>();
+                for (String id : propertyIds.getValue()) {
+                    propertyTerms.add(terms.get(id));
+                }
+                result.put(propertyIds.getKey(), propertyTerms);
+            }
             return new DictionaryPatientData<>(DATA_NAME, result);
         } catch (Exception ex) {
             // must be in a wrong format
@@ -222,13 +249,10 @@ protected List<String> getProperties()
         return Arrays.asList("global_age_of_onset", "global_mode_of_inheritance");
     }
 
-    private void addTerms(String item, List<VocabularyTerm> holder)
+    private void addId(String item, List<String> holder)
     {
         if (StringUtils.isNotBlank(item)) {
-            VocabularyTerm term = this.vocabularyManager.resolveTerm(item);
-            if (term != null) {
-                holder.add(term);
-            }
+            holder.add(item);
         }
     }
 }
@@ -21,10 +21,10 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.context.Execution;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -42,7 +42,6 @@
 import org.json.JSONObject;
 import org.slf4j.Logger;
 
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -72,9 +71,9 @@ public class IdentifiersController implements PatientDataController<String>
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
-    /** Provides access to the current execution context. */
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
     @Inject
-    private Execution execution;
+    private PatientUnitOfWork unitOfWork;
 
     @Override
     public PatientData<String> load(Patient patient)
@@ -101,7 +100,7 @@ public PatientData<String> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 throw new NullPointerException(ERROR_MESSAGE_NO_PATIENT_CLASS);
@@ -116,8 +115,7 @@ public void save(Patient patient)
                 data.setStringValue(idProperty, externalId);
             }
 
-            XWikiContext context = (XWikiContext) this.execution.getContext().getProperty("xwikicontext");
-            context.getWiki().saveDocument(doc, "Updated identifiers from JSON", true, context);
+            this.unitOfWork.save(doc, "Updated identifiers from JSON");
         } catch (Exception e) {
             this.logger.error("Failed to save identifiers: [{}]", e.getMessage());
         }
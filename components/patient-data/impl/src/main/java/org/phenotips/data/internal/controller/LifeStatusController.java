@@ -20,6 +20,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.SimpleValuePatientData;
 
 import org.xwiki.bridge.DocumentAccessBridge;
@@ -33,14 +34,12 @@
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.codehaus.plexus.util.StringUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -77,9 +76,9 @@ public class LifeStatusController implements PatientDataController<String>
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
-    /** Provides access to the current execution context. */
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
     @Inject
-    private Provider<XWikiContext> xcontext;
+    private PatientUnitOfWork unitOfWork;
 
     @Override
     public PatientData<String> load(Patient patient)
@@ -115,7 +114,7 @@ public PatientData<String> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 throw new NullPointerException(ERROR_MESSAGE_NO_PATIENT_CLASS);
@@ -135,7 +134,7 @@ public void save(Patient patient)
 
             data.setIntValue(PATIENT_UNKNOWN_DATEOFDEATH_FIELDNAME, deathDateUnknown);
 
-            this.xcontext.get().getWiki().saveDocument(doc, "Updated life status from JSON", true, this.xcontext.get());
+            this.unitOfWork.save(doc, "Updated life status from JSON");
         } catch (Exception e) {
             this.logger.error("Failed to save life status: [{}]", e.getMessage());
         }
@@ -22,6 +22,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
@@ -91,6 +92,10 @@ public class ObstetricHistoryController implements PatientDataController<Integer
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
+    @Inject
+    private PatientUnitOfWork unitOfWork;
+
     @Override
     public String getName()
     {
@@ -128,7 +133,7 @@ public PatientData<Integer> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
 
             PatientData<Integer> data = patient.getData(getName());
             if (data == null || !data.isNamed()) {
@@ -140,7 +145,7 @@ public void save(Patient patient)
                 o.set(PREFIX + property, data.get(property), context);
             }
 
-            context.getWiki().saveDocument(doc, "Updated obstetric history from JSON", true, context);
+            this.unitOfWork.save(doc, "Updated obstetric history from JSON");
         } catch (Exception ex) {
             this.logger.error("Failed to save obstetric history: [{}]", ex.getMessage());
         }
@@ -22,6 +22,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
@@ -77,6 +78,10 @@ public class ParentalAgeController implements PatientDataController<Integer>
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
+    @Inject
+    private PatientUnitOfWork unitOfWork;
+
     @Override
     public String getName()
     {
@@ -114,7 +119,7 @@ public PatientData<Integer> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
 
             PatientData<Integer> data = patient.getData(getName());
             if (data == null || !data.isNamed()) {
@@ -126,7 +131,7 @@ public void save(Patient patient)
                 o.set(property, data.get(property), context);
             }
 
-            context.getWiki().saveDocument(doc, "Updated parental age from JSON", true, context);
+            this.unitOfWork.save(doc, "Updated parental age from JSON");
         } catch (Exception ex) {
             this.logger.error("Failed to save parental age: [{}]", ex.getMessage());
         }
@@ -17,7 +17,6 @@
  */
 package org.phenotips.data.internal.controller;
 
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -35,7 +34,6 @@
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import javax.inject.Provider;
 import javax.inject.Singleton;
 import org.json.JSONException;
 
@@ -48,6 +46,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 import static org.phenotips.data.PatientDataController.ERROR_MESSAGE_NO_PATIENT_CLASS;
 import org.slf4j.Logger;
 import org.xwiki.bridge.DocumentAccessBridge;
@@ -74,13 +73,13 @@ public class SampleInformationController implements PatientDataController<Object
     @Inject
     protected DocumentAccessBridge documentAccessBridge;
 
-    /** Logging helper object. */
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
     @Inject
-    private Logger logger;
+    private PatientUnitOfWork unitOfWork;
 
-    /** Provides access to the current execution context. */
+    /** Logging helper object. */
     @Inject
-    private Provider<XWikiContext> contextProvider;
+    private Logger logger;
 
     @Inject
     private RecordConfigurationManager configurationManager;
@@ -122,7 +121,7 @@ public PatientData<Object> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             BaseObject xwikiDataObject = doc.getXObject(Patient.CLASS_REFERENCE);
             if (xwikiDataObject == null) {
                 throw new IllegalArgumentException(ERROR_MESSAGE_NO_PATIENT_CLASS);
@@ -141,9 +140,8 @@ public void save(Patient patient)
                 xwikiDataObject.setStringValue(identifierName, (String) data.get(identifierName));
             }
 
-            XWikiContext context = this.contextProvider.get();
             String comment = String.format("Updated %s from JSON", this.getName());
-            context.getWiki().saveDocument(doc, comment, true, context);
+            this.unitOfWork.save(doc, comment);
         } catch (Exception e) {
             this.logger.error("Failed to save {}: [{}]", this.getName(), e.getMessage());
         }
@@ -20,11 +20,11 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.SimpleValuePatientData;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.context.Execution;
 
 import java.util.Collection;
 
@@ -36,7 +36,6 @@
 import org.json.JSONObject;
 import org.slf4j.Logger;
 
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -71,9 +70,9 @@ public class SexController implements PatientDataController<String>
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
-    /** Provides access to the current execution context. */
+    /** Collects the changes to the patient document, so that a whole patient update is saved only once. */
     @Inject
-    private Execution execution;
+    private PatientUnitOfWork unitOfWork;
 
     private String parseGender(String gender)
     {
@@ -103,7 +102,7 @@ public PatientData<String> load(Patient patient)
     public void save(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 throw new NullPointerException(ERROR_MESSAGE_NO_PATIENT_CLASS);
@@ -113,8 +112,7 @@ public void save(Patient patient)
 
             data.setStringValue(INTERNAL_PROPERTY_NAME, gender);
 
-            XWikiContext context = (XWikiContext) this.execution.getContext().getProperty("xwikicontext");
-            context.getWiki().saveDocument(doc, "Updated gender from JSON", true, context);
+            this.unitOfWork.save(doc, "Updated gender from JSON");
         } catch (Exception e) {
             this.logger.error("Failed to save patient gender: [{}]", e.getMessage());
         }
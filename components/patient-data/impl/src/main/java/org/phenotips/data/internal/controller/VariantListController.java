@@ -389,7 +389,7 @@ public void save(Patient patient)
                 return;
             }
 
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = (XWikiDocument) this.unitOfWork.getDocument(patient.getDocument());
             if (doc == null) {
                 throw new NullPointerException(ERROR_MESSAGE_NO_PATIENT_CLASS);
             }
@@ -413,7 +413,7 @@ public void save(Patient patient)
                 }
             }
 
-            context.getWiki().saveDocument(doc, "Updated variants from JSON", true, context);
+            this.unitOfWork.save(doc, "Updated variants from JSON");
         } catch (Exception e) {
             this.logger.error("Failed to save variants: [{}]", e.getMessage());
         }
@@ -0,0 +1,203 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientUnitOfWork;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPatientUnitOfWork} component.
+ *
+ * @version $Id$
+ */
+public class DefaultPatientUnitOfWorkTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<PatientUnitOfWork> mocker =
+        new MockitoComponentMockingRule<PatientUnitOfWork>(DefaultPatientUnitOfWork.class);
+
+    private final DocumentReference reference = new DocumentReference("wiki", "data", "P0000001");
+
+    private XWikiDocument doc;
+
+    private XWikiContext context;
+
+    private XWiki xwiki;
+
+    private PatientUnitOfWork unitOfWork;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.unitOfWork = this.mocker.getComponentUnderTest();
+        this.doc = mock(XWikiDocument.class);
+        when(this.doc.getDocumentReference()).thenReturn(this.reference);
+        DocumentAccessBridge bridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        when(bridge.getDocument(this.reference)).thenReturn(this.doc, mock(XWikiDocument.class));
+
+        Provider<XWikiContext> provider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        this.context = provider.get();
+        this.xwiki = mock(XWiki.class);
+        when(this.context.getWiki()).thenReturn(this.xwiki);
+    }
+
+    @Test
+    public void documentsAreSavedRightAwayOutsideAUnitOfWork() throws Exception
+    {
+        Assert.assertFalse(this.unitOfWork.isActive());
+        this.unitOfWork.save(this.unitOfWork.getDocument(this.reference), "Updated");
+        verify(this.xwiki).saveDocument(this.doc, "Updated", true, this.context);
+    }
+
+    @Test
+    public void changedDocumentsAreSavedOnceOnCommit() throws Exception
+    {
+        this.unitOfWork.begin();
+        try {
+            Assert.assertTrue(this.unitOfWork.isActive());
+            this.unitOfWork.save(this.unitOfWork.getDocument(this.reference), "Updated features");
+            // The same instance is returned to all the callers
+            Assert.assertSame(this.doc, this.unitOfWork.getDocument(this.reference));
+            this.unitOfWork.save(this.unitOfWork.getDocument(this.reference), "Updated disorders");
+            verify(this.xwiki, never()).saveDocument(any(XWikiDocument.class), anyString(), anyBoolean(),
+                any(XWikiContext.class));
+
+            this.unitOfWork.commit("Updated patient");
+        } finally {
+            this.unitOfWork.end();
+        }
+        verify(this.xwiki, times(1)).saveDocument(any(XWikiDocument.class), anyString(), anyBoolean(),
+            any(XWikiContext.class));
+        verify(this.xwiki).saveDocument(this.doc, "Updated patient", true, this.context);
+        Assert.assertFalse(this.unitOfWork.isActive());
+    }
+
+    @Test
+    public void onlyTheOutermostUnitOfWorkSaves() throws Exception
+    {
+        this.unitOfWork.begin();
+        try {
+            this.unitOfWork.begin();
+            try {
+                this.unitOfWork.save(this.unitOfWork.getDocument(this.reference), "Updated features");
+                this.unitOfWork.commit("Inner");
+            } finally {
+                this.unitOfWork.end();
+            }
+            Assert.assertTrue(this.unitOfWork.isActive());
+            verify(this.xwiki, never()).saveDocument(any(XWikiDocument.class), anyString(), anyBoolean(),
+                any(XWikiContext.class));
+
+            this.unitOfWork.commit("Outer");
+        } finally {
+            this.unitOfWork.end();
+        }
+        verify(this.xwiki).saveDocument(this.doc, "Outer", true, this.context);
+    }
+
+    @Test
+    public void documentsChangedWhileCommittingAreAlsoSaved() throws Exception
+    {
+        final XWikiDocument other = mock(XWikiDocument.class);
+        when(other.getDocumentReference()).thenReturn(new DocumentReference("wiki", "data", "P0000002"));
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                // A listener updating another document in the same thread
+                DefaultPatientUnitOfWorkTest.this.unitOfWork.save(other, "Related");
+                return null;
+            }
+        }).when(this.xwiki).saveDocument(this.doc, "Updated patient", true, this.context);
+
+        this.unitOfWork.begin();
+        try {
+            this.unitOfWork.save(this.unitOfWork.getDocument(this.reference), "Updated features");
+            this.unitOfWork.commit("Updated patient");
+        } finally {
+            this.unitOfWork.end();
+        }
+        verify(this.xwiki).saveDocument(this.doc, "Updated patient", true, this.context);
+        verify(this.xwiki).saveDocument(other, "Updated patient", true, this.context);
+    }
+
+    @Test
+    public void changesAreKeptWhenCommitFails() throws Exception
+    {
+        doThrow(new XWikiException()).doNothing().when(this.xwiki).saveDocument(this.doc, "Updated patient", true,
+            this.context);
+
+        this.unitOfWork.begin();
+        try {
+            this.unitOfWork.save(this.unitOfWork.getDocument(this.reference), "Updated features");
+            try {
+                this.unitOfWork.commit("Updated patient");
+                Assert.fail("The failure to save should be reported");
+            } catch (XWikiException ex) {
+                // Expected
+            }
+            this.unitOfWork.commit("Updated patient");
+        } finally {
+            this.unitOfWork.end();
+        }
+        verify(this.xwiki, times(2)).saveDocument(this.doc, "Updated patient", true, this.context);
+    }
+
+    @Test
+    public void uncommittedChangesAreDiscarded() throws Exception
+    {
+        this.unitOfWork.begin();
+        try {
+            this.unitOfWork.save(this.unitOfWork.getDocument(this.reference), "Updated features");
+        } finally {
+            this.unitOfWork.end();
+        }
+        Assert.assertFalse(this.unitOfWork.isActive());
+        verify(this.xwiki, never()).saveDocument(any(XWikiDocument.class), anyString(), anyBoolean(),
+            any(XWikiContext.class));
+    }
+}
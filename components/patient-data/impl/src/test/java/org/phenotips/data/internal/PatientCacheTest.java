@@ -0,0 +1,160 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PatientCache} component.
+ *
+ * @version $Id$
+ */
+public class PatientCacheTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<PatientCache> mocker =
+        new MockitoComponentMockingRule<PatientCache>(PatientCache.class);
+
+    private final DocumentReference reference = new DocumentReference("wiki", "data", "P0000001");
+
+    private final Map<String, Object> entries = new HashMap<>();
+
+    private PatientCache cache;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception
+    {
+        Cache<Object> storage = mock(Cache.class);
+        when(storage.get(anyString())).thenAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation)
+            {
+                return PatientCacheTest.this.entries.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                PatientCacheTest.this.entries.put((String) invocation.getArguments()[0],
+                    invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(storage).set(anyString(), any());
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                PatientCacheTest.this.entries.remove(invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(storage).remove(anyString());
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.createNewLocalCache(any(CacheConfiguration.class))).thenReturn(storage);
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.reference)).thenReturn("wiki:data.P0000001");
+
+        this.cache = this.mocker.getComponentUnderTest();
+        // Initialize again, now that the cache manager is set up
+        this.cache.initialize();
+    }
+
+    @Test
+    public void sameVersionIsServedFromTheCache()
+    {
+        XWikiDocument doc = mockDocument("1.1");
+        Patient first = this.cache.get(doc);
+        Patient second = this.cache.get(doc);
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, this.cache.getHits());
+        Assert.assertEquals(1, this.cache.getMisses());
+        Assert.assertEquals(0.5, this.cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void newVersionsAreLoadedAgain()
+    {
+        Patient first = this.cache.get(mockDocument("1.1"));
+        Patient second = this.cache.get(mockDocument("2.1"));
+
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(second, this.cache.get(mockDocument("2.1")));
+        Assert.assertEquals(2, this.cache.getMisses());
+    }
+
+    @Test
+    public void invalidatedPatientsAreLoadedAgain()
+    {
+        XWikiDocument doc = mockDocument("1.1");
+        Patient first = this.cache.get(doc);
+        this.cache.invalidate(this.reference);
+        this.cache.invalidate(this.reference);
+
+        Assert.assertNotSame(first, this.cache.get(doc));
+        Assert.assertEquals(1, this.cache.getInvalidations());
+    }
+
+    @Test
+    public void newDocumentsAreNotCached()
+    {
+        XWikiDocument doc = mockDocument("1.1");
+        when(doc.isNew()).thenReturn(true);
+
+        Assert.assertNotSame(this.cache.get(doc), this.cache.get(doc));
+        Assert.assertTrue(this.entries.isEmpty());
+        Assert.assertEquals(0, this.cache.getMisses());
+    }
+
+    private XWikiDocument mockDocument(String version)
+    {
+        XWikiDocument doc = mock(XWikiDocument.class);
+        when(doc.getDocumentReference()).thenReturn(this.reference);
+        when(doc.getVersion()).thenReturn(version);
+        return doc;
+    }
+}
@@ -32,7 +32,9 @@
 import org.xwiki.model.reference.EntityReference;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -43,8 +45,11 @@
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
@@ -54,6 +59,8 @@
 import com.xpn.xwiki.web.Utils;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class PhenoTipsFeatureTest
@@ -104,6 +111,23 @@ public void setup() throws ComponentLookupException
         when(this.hp0012211.getId()).thenReturn("HP:0012211");
         when(this.hp0012211.getName()).thenReturn("Abnormal renal physiology");
         when(this.vm.resolveTerm("HP:0012211")).thenReturn(this.hp0012211);
+
+        when(this.vm.resolveTerms(Matchers.anyCollectionOf(String.class)))
+            .thenAnswer(new Answer<Map<String, VocabularyTerm>>()
+            {
+                @Override
+                public Map<String, VocabularyTerm> answer(InvocationOnMock invocation)
+                {
+                    Map<String, VocabularyTerm> result = new LinkedHashMap<>();
+                    for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+                        VocabularyTerm term = PhenoTipsFeatureTest.this.vm.resolveTerm((String) id);
+                        if (term != null) {
+                            result.put((String) id, term);
+                        }
+                    }
+                    return result;
+                }
+            });
     }
 
     @Test
@@ -626,4 +650,46 @@ public void noCategoriesWithNullObjectList() throws XWikiException
 
         Assert.assertFalse(new PhenoTipsFeature(doc, prop, "HP:0000100").toJSON().has("categories"));
     }
+
+    @Test
+    public void indexedObjectsAreSharedBetweenFeatures() throws XWikiException
+    {
+        XWikiDocument doc = mock(XWikiDocument.class);
+        ListProperty positive = mock(ListProperty.class);
+        when(positive.getName()).thenReturn("phenotype");
+        ListProperty negative = mock(ListProperty.class);
+        when(negative.getName()).thenReturn("negative_phenotype");
+        List<BaseObject> metas = new ArrayList<BaseObject>();
+        metas.add(null);
+        metas.add(mockTargetObject("phenotype", "HP:0000100", "Positive comments"));
+        metas.add(mockTargetObject("negative_phenotype", "HP:0000082", "Negative comments"));
+        metas.add(mockTargetObject("phenotype", "HP:0000100", "Duplicate comments"));
+        when(doc.getXObjects(FeatureMetadatum.CLASS_REFERENCE)).thenReturn(metas);
+
+        PhenoTipsFeatureObjects objects = new PhenoTipsFeatureObjects(doc);
+        Feature f1 = new PhenoTipsFeature(objects, positive, "HP:0000100");
+        Feature f2 = new PhenoTipsFeature(objects, negative, "HP:0000082");
+        Feature f3 = new PhenoTipsFeature(objects, positive, "HP:0000082");
+
+        Assert.assertEquals("Positive comments", f1.getNotes());
+        Assert.assertTrue(f1.isPresent());
+        Assert.assertEquals("Negative comments", f2.getNotes());
+        Assert.assertFalse(f2.isPresent());
+        Assert.assertEquals("phenotype", f2.getType());
+        Assert.assertEquals("", f3.getNotes());
+        verify(doc, times(1)).getXObjects(FeatureMetadatum.CLASS_REFERENCE);
+    }
+
+    private BaseObject mockTargetObject(String propertyName, String value, String comments) throws XWikiException
+    {
+        BaseObject result = mock(BaseObject.class);
+        StringProperty temp = new StringProperty();
+        temp.setValue(propertyName);
+        when(result.get("target_property_name")).thenReturn(temp);
+        temp = new StringProperty();
+        temp.setValue(value);
+        when(result.get("target_property_value")).thenReturn(temp);
+        when(result.getLargeStringValue("comments")).thenReturn(comments);
+        return result;
+    }
 }
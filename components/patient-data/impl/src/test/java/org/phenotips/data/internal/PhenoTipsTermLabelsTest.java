@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.ListProperty;
+import com.xpn.xwiki.objects.StringProperty;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PhenoTipsTermLabels} class.
+ *
+ * @version $Id$
+ */
+public class PhenoTipsTermLabelsTest
+{
+    @Mock
+    private ComponentManager cm;
+
+    @Mock
+    private Provider<ComponentManager> mockProvider;
+
+    @Mock
+    private VocabularyManager vm;
+
+    @Mock
+    private VocabularyTerm hp0000082;
+
+    @Mock
+    private VocabularyTerm hp0003678;
+
+    private PhenoTipsFeatureObjects objects;
+
+    private ListProperty property;
+
+    @Before
+    public void setup() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionUtils.setFieldValue(new ComponentManagerRegistry(), "cmProvider", this.mockProvider);
+        when(this.mockProvider.get()).thenReturn(this.cm);
+        when(this.cm.getInstance(VocabularyManager.class)).thenReturn(this.vm);
+
+        when(this.hp0000082.getName()).thenReturn("Decreased renal function");
+        when(this.hp0003678.getName()).thenReturn("Rapidly progressive");
+        Map<String, VocabularyTerm> terms = new HashMap<>();
+        terms.put("HP:0000082", this.hp0000082);
+        terms.put("HP:0003678", this.hp0003678);
+        when(this.vm.resolveTerms(Matchers.anyCollectionOf(String.class))).thenReturn(terms);
+
+        this.objects = new PhenoTipsFeatureObjects(mock(XWikiDocument.class));
+        this.property = mock(ListProperty.class);
+        when(this.property.getName()).thenReturn("phenotype");
+    }
+
+    @Test
+    public void labelsAreResolvedTogetherOnFirstAccess()
+    {
+        PhenoTipsFeature known = new PhenoTipsFeature(this.objects, this.property, "HP:0000082");
+        PhenoTipsFeature missing = new PhenoTipsFeature(this.objects, this.property, "HP:0000100");
+        PhenoTipsFeature custom = new PhenoTipsFeature(this.objects, this.property, "Custom");
+        StringProperty pace = new StringProperty();
+        pace.setName("pace_of_progression");
+        pace.setValue("HP:0003678");
+        PhenoTipsFeatureMetadatum metadatum = new PhenoTipsFeatureMetadatum(pace);
+
+        PhenoTipsTermLabels labels = new PhenoTipsTermLabels();
+        for (AbstractPhenoTipsVocabularyProperty p : Arrays.asList(known, missing, custom, metadatum)) {
+            labels.add(p);
+        }
+        verify(this.vm, never()).resolveTerms(Matchers.anyCollectionOf(String.class));
+
+        Assert.assertEquals("HP:0000100", missing.getName());
+        Assert.assertEquals("Decreased renal function", known.getName());
+        Assert.assertEquals("Custom", custom.getName());
+        Assert.assertEquals("Rapidly progressive", metadatum.getName());
+        verify(this.vm, times(1)).resolveTerms(
+            new LinkedHashSet<>(Arrays.asList("HP:0000082", "HP:0000100", "HP:0003678")));
+        verify(this.vm, never()).resolveTerm(Matchers.anyString());
+    }
+
+    @Test
+    public void orderingDoesntNeedLabels()
+    {
+        Set<PhenoTipsFeature> features = new TreeSet<>();
+        features.add(new PhenoTipsFeature(this.objects, this.property, "HP:0003678"));
+        features.add(new PhenoTipsFeature(this.objects, this.property, "Custom"));
+        features.add(new PhenoTipsFeature(this.objects, this.property, "HP:0000082"));
+        features.add(new PhenoTipsFeature(this.objects, this.property, "HP:0000082"));
+
+        Assert.assertEquals(3, features.size());
+        verify(this.vm, never()).resolveTerm(Matchers.anyString());
+        verify(this.vm, never()).resolveTerms(Matchers.anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void propertiesAddedAfterResolvingUseTheirOwnLookup()
+    {
+        PhenoTipsTermLabels labels = new PhenoTipsTermLabels();
+        labels.resolve();
+        PhenoTipsFeature late = new PhenoTipsFeature(this.objects, this.property, "HP:0000082");
+        labels.add(late);
+        when(this.vm.resolveTerm("HP:0000082")).thenReturn(this.hp0000082);
+
+        Assert.assertEquals("Decreased renal function", late.getName());
+        verify(this.vm, never()).resolveTerms(Matchers.anyCollectionOf(String.class));
+    }
+}
@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.SimpleValuePatientData;
 
 import org.xwiki.bridge.DocumentAccessBridge;
@@ -33,8 +34,6 @@
 import java.util.LinkedList;
 import java.util.Map;
 
-import javax.inject.Provider;
-
 import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
@@ -43,14 +42,11 @@
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import com.xpn.xwiki.XWiki;
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -75,10 +71,7 @@
 
     private DocumentAccessBridge documentAccessBridge;
 
-    private XWikiContext xcontext;
-
-    @Mock
-    protected XWiki xWiki;
+    private PatientUnitOfWork unitOfWork;
 
     @Mock
     protected Patient patient;
@@ -95,13 +88,12 @@ public void setUp() throws Exception
         MockitoAnnotations.initMocks(this);
 
         this.documentAccessBridge = this.mocker.getInstance(DocumentAccessBridge.class);
-        Provider<XWikiContext> provider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
-        this.xcontext = provider.get();
-        doReturn(this.xWiki).when(this.xcontext).getWiki();
+        this.unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
 
         DocumentReference patientDocument = new DocumentReference("wiki", "patient", "00000001");
         doReturn(patientDocument).when(this.patient).getDocument();
         doReturn(this.doc).when(this.documentAccessBridge).getDocument(patientDocument);
+        doReturn(this.doc).when(this.unitOfWork).getDocument(patientDocument);
         doReturn(this.data).when(this.doc).getXObject(Patient.CLASS_REFERENCE);
     }
 
@@ -174,7 +166,7 @@ public void loadIgnoresBlankFields() throws ComponentLookupException
     public void saveCatchesExceptionFromDocumentAccess() throws Exception
     {
         Exception exception = new Exception();
-        doThrow(exception).when(this.documentAccessBridge).getDocument(any(DocumentReference.class));
+        doThrow(exception).when(this.unitOfWork).getDocument(any(DocumentReference.class));
 
         this.mocker.getComponentUnderTest().save(this.patient);
 
@@ -193,11 +185,10 @@ public void saveCatchesExceptionWhenPatientDoesNotHavePatientClass() throws Comp
     }
 
     @Test
-    public void saveCatchesExceptionFromSaveDocument() throws XWikiException, ComponentLookupException
+    public void saveCatchesExceptionFromSaveDocument() throws Exception
     {
         XWikiException exception = new XWikiException();
-        doThrow(exception).when(this.xWiki).saveDocument(any(XWikiDocument.class),
-            anyString(), anyBoolean(), any(XWikiContext.class));
+        doThrow(exception).when(this.unitOfWork).save(any(XWikiDocument.class), anyString());
         Map<String, String> map = new LinkedHashMap<String, String>();
         map.put(PROPERTY_1, "datum1");
         map.put(PROPERTY_2, "datum2");
@@ -207,13 +198,12 @@ public void saveCatchesExceptionFromSaveDocument() throws XWikiException, Compon
 
         this.mocker.getComponentUnderTest().save(this.patient);
 
-        verify(this.xWiki).saveDocument(any(XWikiDocument.class),
-            anyString(), anyBoolean(), any(XWikiContext.class));
+        verify(this.unitOfWork).save(any(XWikiDocument.class), anyString());
         verify(this.mocker.getMockedLogger()).error("Failed to save {}: [{}]", DATA_NAME, exception.getMessage());
     }
 
     @Test
-    public void saveReturnsWithoutSavingWhenDataIsNotKeyValueBased() throws ComponentLookupException, XWikiException
+    public void saveReturnsWithoutSavingWhenDataIsNotKeyValueBased() throws Exception
     {
         PatientData<String> patientData = new SimpleValuePatientData<String>(DATA_NAME, "datum");
         doReturn(patientData).when(this.patient).getData(DATA_NAME);
@@ -221,12 +211,11 @@ public void saveReturnsWithoutSavingWhenDataIsNotKeyValueBased() throws Componen
         this.mocker.getComponentUnderTest().save(this.patient);
 
         verify(this.data, never()).setStringValue(anyString(), anyString());
-        verify(this.xWiki, never()).saveDocument(any(XWikiDocument.class),
-            anyString(), anyBoolean(), any(XWikiContext.class));
+        verify(this.unitOfWork, never()).save(any(XWikiDocument.class), anyString());
     }
 
     @Test
-    public void saveSetsAllFields() throws XWikiException, ComponentLookupException
+    public void saveSetsAllFields() throws Exception
     {
         Map<String, String> map = new LinkedHashMap<String, String>();
         map.put(PROPERTY_1, "datum1");
@@ -237,7 +226,7 @@ public void saveSetsAllFields() throws XWikiException, ComponentLookupException
 
         this.mocker.getComponentUnderTest().save(this.patient);
 
-        verify(this.xWiki).saveDocument(this.doc, "Updated test from JSON", true, this.xcontext);
+        verify(this.unitOfWork).save(this.doc, "Updated test from JSON");
         verify(this.data).setStringValue(PROPERTY_1, "datum1");
         verify(this.data).setStringValue(PROPERTY_2, "datum2");
         verify(this.data).setStringValue(PROPERTY_3, "datum3");
@@ -23,11 +23,10 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.manager.ComponentLookupException;
-import org.xwiki.context.Execution;
-import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
@@ -47,15 +46,12 @@
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import com.xpn.xwiki.XWiki;
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -76,20 +72,11 @@
 
     private RecordConfigurationManager configurationManager;
 
-    private Execution execution;
+    private PatientUnitOfWork unitOfWork;
 
     @Mock
     private RecordConfiguration configuration;
 
-    @Mock
-    private ExecutionContext executionContext;
-
-    @Mock
-    private XWikiContext xWikiContext;
-
-    @Mock
-    private XWiki xWiki;
-
     @Mock
     private BaseObject data;
 
@@ -113,20 +100,17 @@ public void setUp() throws Exception
 
         this.documentAccessBridge = this.mocker.getInstance(DocumentAccessBridge.class);
         this.configurationManager = this.mocker.getInstance(RecordConfigurationManager.class);
-        this.execution = this.mocker.getInstance(Execution.class);
+        this.unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
 
         DocumentReference patientDocument = new DocumentReference("wiki", "patient", "00000001");
         doReturn(patientDocument).when(this.patient).getDocument();
         doReturn(this.doc).when(this.documentAccessBridge).getDocument(patientDocument);
+        doReturn(this.doc).when(this.unitOfWork).getDocument(patientDocument);
         doReturn(this.data).when(this.doc).getXObject(Patient.CLASS_REFERENCE);
 
         this.dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
         doReturn(this.configuration).when(this.configurationManager).getActiveConfiguration();
         doReturn("yyyy-MM-dd'T'HH:mm:ss.SSSZ").when(this.configuration).getISODateFormat();
-
-        doReturn(this.executionContext).when(this.execution).getContext();
-        doReturn(this.xWikiContext).when(this.executionContext).getProperty("xwikicontext");
-        doReturn(this.xWiki).when(this.xWikiContext).getWiki();
     }
 
     @Test
@@ -211,14 +195,13 @@ public void saveDoesNotAddNullDates() throws ComponentLookupException
     }
 
     @Test
-    public void saveCatchesXWikiException() throws XWikiException, ComponentLookupException
+    public void saveCatchesXWikiException() throws Exception
     {
         doReturn(this.dateData).when(this.patient).getData(DATA_NAME);
         doReturn(true).when(this.dateData).isNamed();
         doReturn(null).when(this.dateData).get(anyString());
         XWikiException exception = new XWikiException();
-        doThrow(exception).when(this.xWiki).saveDocument(any(XWikiDocument.class),
-            anyString(), any(Boolean.class), any(XWikiContext.class));
+        doThrow(exception).when(this.unitOfWork).save(any(XWikiDocument.class), anyString());
 
         this.mocker.getComponentUnderTest().save(this.patient);
 
@@ -226,7 +209,7 @@ public void saveCatchesXWikiException() throws XWikiException, ComponentLookupEx
     }
 
     @Test
-    public void saveAddsAllDates() throws XWikiException, ComponentLookupException
+    public void saveAddsAllDates() throws Exception
     {
         Map<String, Date> datesMap = new LinkedHashMap<String, Date>();
         Date birthDate = new Date(0);
@@ -244,7 +227,7 @@ public void saveAddsAllDates() throws XWikiException, ComponentLookupException
         verify(this.data).setDateValue(DatesController.PATIENT_DATEOFDEATH_FIELDNAME, deathDate);
         verify(this.data).setDateValue(DatesController.PATIENT_EXAMDATE_FIELDNAME, examDate);
 
-        verify(this.xWiki).saveDocument(same(this.doc), anyString(), eq(true), same(this.xWikiContext));
+        verify(this.unitOfWork).save(same(this.doc), anyString());
     }
 
     @Test
@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.SimpleValuePatientData;
 
 import org.xwiki.bridge.DocumentAccessBridge;
@@ -51,9 +52,7 @@
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
-import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
-import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.BaseStringProperty;
@@ -80,6 +79,8 @@
 
     private DocumentAccessBridge documentAccessBridge;
 
+    private PatientUnitOfWork unitOfWork;
+
     @Mock
     private Patient patient;
 
@@ -108,10 +109,12 @@ public void setUp() throws Exception
         MockitoAnnotations.initMocks(this);
 
         this.documentAccessBridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        this.unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
 
         DocumentReference patientDocument = new DocumentReference("wiki", "patient", "00000001");
         doReturn(patientDocument).when(this.patient).getDocument();
         doReturn(this.doc).when(this.documentAccessBridge).getDocument(patientDocument);
+        doReturn(this.doc).when(this.unitOfWork).getDocument(patientDocument);
         this.geneXWikiObjects = new LinkedList<>();
         doReturn(this.geneXWikiObjects).when(this.doc).getXObjects(any(EntityReference.class));
     }
@@ -464,21 +467,19 @@ public void saveWithWrongTypeOfDataDoesNothing() throws ComponentLookupException
     }
 
     @Test
-    public void saveWithEmptyDataClearsGenes() throws ComponentLookupException
+    public void saveWithEmptyDataClearsGenes() throws Exception
     {
         when(this.patient.getData(CONTROLLER_NAME))
             .thenReturn(new IndexedPatientData<>(CONTROLLER_NAME, Collections.emptyList()));
-        Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
-        XWikiContext context = xcontextProvider.get();
-        when(context.getWiki()).thenReturn(mock(XWiki.class));
         this.mocker.getComponentUnderTest().save(this.patient);
         verify(this.doc).removeXObjects(GeneListController.GENE_CLASS_REFERENCE);
+        verify(this.unitOfWork).save(this.doc, "Updated genes from JSON");
 
         Mockito.verifyNoMoreInteractions(this.doc);
     }
 
     @Test
-    public void saveUpdatesGenes() throws ComponentLookupException, XWikiException
+    public void saveUpdatesGenes() throws Exception
     {
         List<Map<String, String>> data = new LinkedList<>();
         Map<String, String> item = new HashMap<>();
@@ -493,7 +494,6 @@ public void saveUpdatesGenes() throws ComponentLookupException, XWikiException
 
         Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
         XWikiContext context = xcontextProvider.get();
-        when(context.getWiki()).thenReturn(mock(XWiki.class));
 
         BaseObject o1 = mock(BaseObject.class);
         BaseObject o2 = mock(BaseObject.class);
@@ -506,6 +506,7 @@ public void saveUpdatesGenes() throws ComponentLookupException, XWikiException
         verify(o1).set("comments", "Notes1", context);
         verify(o2).set("gene", "GENE2", context);
         verify(o2, Mockito.never()).set(eq("comments"), anyString(), eq(context));
+        verify(this.unitOfWork).save(this.doc, "Updated genes from JSON");
     }
 
     // ----------------------------------------Private methods----------------------------------------
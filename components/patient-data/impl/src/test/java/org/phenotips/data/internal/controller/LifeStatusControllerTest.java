@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.SimpleValuePatientData;
 
 import org.xwiki.bridge.DocumentAccessBridge;
@@ -34,8 +35,6 @@
 import java.util.LinkedList;
 import java.util.Map;
 
-import javax.inject.Provider;
-
 import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
@@ -44,14 +43,11 @@
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import com.xpn.xwiki.XWiki;
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -79,10 +75,7 @@
 
     private DocumentAccessBridge documentAccessBridge;
 
-    private XWikiContext xcontext;
-
-    @Mock
-    private XWiki xwiki;
+    private PatientUnitOfWork unitOfWork;
 
     @Mock
     private Patient patient;
@@ -105,9 +98,8 @@ public void setUp() throws Exception
         doReturn(this.doc).when(this.documentAccessBridge).getDocument(patientDocument);
         doReturn(this.data).when(this.doc).getXObject(Patient.CLASS_REFERENCE);
 
-        Provider<XWikiContext> provider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
-        this.xcontext = provider.get();
-        doReturn(this.xwiki).when(this.xcontext).getWiki();
+        this.unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
+        doReturn(this.doc).when(this.unitOfWork).getDocument(patientDocument);
     }
 
     @Test
@@ -171,7 +163,7 @@ public void loadReturnsAliveWhenDateOfDeathIsNullAndUnknownDateOfDeathIsNotSet()
     @Test
     public void saveCatchesExceptionFromDocumentAccess() throws Exception
     {
-        doThrow(Exception.class).when(this.documentAccessBridge).getDocument(any(DocumentReference.class));
+        doThrow(Exception.class).when(this.unitOfWork).getDocument(any(DocumentReference.class));
 
         this.mocker.getComponentUnderTest().save(this.patient);
 
@@ -190,22 +182,21 @@ public void saveCatchesExceptionWhenPatientDoesNotHavePatientClass() throws Comp
     }
 
     @Test
-    public void saveCatchesExceptionFromSaveDocument() throws XWikiException, ComponentLookupException
+    public void saveCatchesExceptionFromSaveDocument() throws Exception
     {
         XWikiException exception = new XWikiException();
-        doThrow(exception).when(this.xwiki).saveDocument(any(XWikiDocument.class), anyString(), anyBoolean(),
-            any(XWikiContext.class));
+        doThrow(exception).when(this.unitOfWork).save(any(XWikiDocument.class), anyString());
         doReturn(null).when(this.patient).getData(DATA_NAME);
         doReturn(null).when(this.patient).getData("dates");
 
         this.mocker.getComponentUnderTest().save(this.patient);
 
-        verify(this.xwiki).saveDocument(any(XWikiDocument.class), anyString(), anyBoolean(), any(XWikiContext.class));
+        verify(this.unitOfWork).save(any(XWikiDocument.class), anyString());
         verify(this.mocker.getMockedLogger()).error("Failed to save life status: [{}]", exception.getMessage());
     }
 
     @Test
-    public void saveSetsDateOfDeathUnknownWhenDeceasedAndDatesNull() throws XWikiException, ComponentLookupException
+    public void saveSetsDateOfDeathUnknownWhenDeceasedAndDatesNull() throws Exception
     {
         PatientData<String> lifeStatus = new SimpleValuePatientData<String>(DATA_NAME, DECEASED);
         doReturn(lifeStatus).when(this.patient).getData(DATA_NAME);
@@ -214,12 +205,11 @@ public void saveSetsDateOfDeathUnknownWhenDeceasedAndDatesNull() throws XWikiExc
         this.mocker.getComponentUnderTest().save(this.patient);
 
         verify(this.data).setIntValue(PATIENT_UNKNOWN_DATEOFDEATH_FIELDNAME, 1);
-        verify(this.xwiki).saveDocument(this.doc, "Updated life status from JSON", true, this.xcontext);
+        verify(this.unitOfWork).save(this.doc, "Updated life status from JSON");
     }
 
     @Test
-    public void saveSetsDateOfDeathUnknownWhenDeceasedAndDateOfDeathNull() throws XWikiException,
-        ComponentLookupException
+    public void saveSetsDateOfDeathUnknownWhenDeceasedAndDateOfDeathNull() throws Exception
     {
         PatientData<String> lifeStatus = new SimpleValuePatientData<String>(DATA_NAME, DECEASED);
         doReturn(lifeStatus).when(this.patient).getData(DATA_NAME);
@@ -231,11 +221,11 @@ public void saveSetsDateOfDeathUnknownWhenDeceasedAndDateOfDeathNull() throws XW
         this.mocker.getComponentUnderTest().save(this.patient);
 
         verify(this.data).setIntValue(PATIENT_UNKNOWN_DATEOFDEATH_FIELDNAME, 1);
-        verify(this.xwiki).saveDocument(this.doc, "Updated life status from JSON", true, this.xcontext);
+        verify(this.unitOfWork).save(this.doc, "Updated life status from JSON");
     }
 
     @Test
-    public void saveClearsDateOfDeathUnknownByDefault() throws XWikiException, ComponentLookupException
+    public void saveClearsDateOfDeathUnknownByDefault() throws Exception
     {
         doReturn(null).when(this.patient).getData(DATA_NAME);
         doReturn(null).when(this.patient).getData("dates");
@@ -243,11 +233,11 @@ public void saveClearsDateOfDeathUnknownByDefault() throws XWikiException, Compo
         this.mocker.getComponentUnderTest().save(this.patient);
 
         verify(this.data).setIntValue(PATIENT_UNKNOWN_DATEOFDEATH_FIELDNAME, 0);
-        verify(this.xwiki).saveDocument(this.doc, "Updated life status from JSON", true, this.xcontext);
+        verify(this.unitOfWork).save(this.doc, "Updated life status from JSON");
     }
 
     @Test
-    public void saveClearsDateOfDeathUnknownWhenAlive() throws XWikiException, ComponentLookupException
+    public void saveClearsDateOfDeathUnknownWhenAlive() throws Exception
     {
         PatientData<String> lifeStatus = new SimpleValuePatientData<String>(DATA_NAME, ALIVE);
         doReturn(lifeStatus).when(this.patient).getData(DATA_NAME);
@@ -256,12 +246,11 @@ public void saveClearsDateOfDeathUnknownWhenAlive() throws XWikiException, Compo
         this.mocker.getComponentUnderTest().save(this.patient);
 
         verify(this.data).setIntValue(PATIENT_UNKNOWN_DATEOFDEATH_FIELDNAME, 0);
-        verify(this.xwiki).saveDocument(this.doc, "Updated life status from JSON", true, this.xcontext);
+        verify(this.unitOfWork).save(this.doc, "Updated life status from JSON");
     }
 
     @Test
-    public void saveClearsDateOfDeathUnknownWhenDeceasedAndDateOfDeathDefined() throws XWikiException,
-        ComponentLookupException
+    public void saveClearsDateOfDeathUnknownWhenDeceasedAndDateOfDeathDefined() throws Exception
     {
         PatientData<String> lifeStatus = new SimpleValuePatientData<String>(DATA_NAME, DECEASED);
         doReturn(lifeStatus).when(this.patient).getData(DATA_NAME);
@@ -273,11 +262,11 @@ public void saveClearsDateOfDeathUnknownWhenDeceasedAndDateOfDeathDefined() thro
         this.mocker.getComponentUnderTest().save(this.patient);
 
         verify(this.data).setIntValue(PATIENT_UNKNOWN_DATEOFDEATH_FIELDNAME, 0);
-        verify(this.xwiki).saveDocument(this.doc, "Updated life status from JSON", true, this.xcontext);
+        verify(this.unitOfWork).save(this.doc, "Updated life status from JSON");
     }
 
     @Test
-    public void saveIgnoresDatesWhenDatesIsNotKeyValueBased() throws XWikiException, ComponentLookupException
+    public void saveIgnoresDatesWhenDatesIsNotKeyValueBased() throws Exception
     {
         PatientData<String> lifeStatus = new SimpleValuePatientData<String>(DATA_NAME, DECEASED);
         doReturn(lifeStatus).when(this.patient).getData(DATA_NAME);
@@ -287,7 +276,7 @@ public void saveIgnoresDatesWhenDatesIsNotKeyValueBased() throws XWikiException,
         this.mocker.getComponentUnderTest().save(this.patient);
 
         verify(this.data).setIntValue(PATIENT_UNKNOWN_DATEOFDEATH_FIELDNAME, 1);
-        verify(this.xwiki).saveDocument(this.doc, "Updated life status from JSON", true, this.xcontext);
+        verify(this.unitOfWork).save(this.doc, "Updated life status from JSON");
     }
 
     @Test
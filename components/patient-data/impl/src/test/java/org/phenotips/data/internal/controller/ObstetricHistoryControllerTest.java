@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.model.reference.DocumentReference;
@@ -44,9 +45,7 @@
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 
-import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
-import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -110,8 +109,7 @@
 
     private XWikiContext xWikiContext;
 
-    @Mock
-    private XWiki xwiki;
+    private PatientUnitOfWork unitOfWork;
 
     @Before
     public void setUp() throws Exception
@@ -124,12 +122,13 @@ public void setUp() throws Exception
 
         this.provider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
         this.xWikiContext = this.provider.get();
-        doReturn(this.xwiki).when(this.xWikiContext).getWiki();
 
         this.documentAccessBridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        this.unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
 
         doReturn(this.patientDocument).when(this.patient).getDocument();
         doReturn(this.doc).when(this.documentAccessBridge).getDocument(this.patientDocument);
+        doReturn(this.doc).when(this.unitOfWork).getDocument(this.patientDocument);
     }
 
     @Test
@@ -185,19 +184,18 @@ public void loadCatchesUnforeseenExceptions() throws Exception
     }
 
     @Test
-    public void saveHandlesEmptyPatientTest() throws XWikiException
+    public void saveHandlesEmptyPatientTest() throws Exception
     {
         doReturn(null).when(this.patient).getData(this.obstetricHistoryController.getName());
 
         this.obstetricHistoryController.save(this.patient);
 
         verifyNoMoreInteractions(this.data);
-        verify(this.xWikiContext.getWiki(), never()).saveDocument(this.doc,
-            "Updated obstetric history from JSON", true, this.xWikiContext);
+        verify(this.unitOfWork, never()).save(this.doc, "Updated obstetric history from JSON");
     }
 
     @Test
-    public void saveDefaultBehaviourTest() throws XWikiException
+    public void saveDefaultBehaviourTest() throws Exception
     {
         doReturn(this.mockPatientData).when(this.patient).getData(this.obstetricHistoryController.getName());
         doReturn(true).when(this.mockPatientData).isNamed();
@@ -214,15 +212,14 @@ public void saveDefaultBehaviourTest() throws XWikiException
 
         this.obstetricHistoryController.save(this.patient);
 
-        verify(this.xWikiContext.getWiki()).saveDocument(this.doc, "Updated obstetric history from JSON", true,
-            this.xWikiContext);
+        verify(this.unitOfWork).save(this.doc, "Updated obstetric history from JSON");
     }
 
     @Test
     public void saveHandlesExceptionsTest() throws Exception
     {
         Exception testException = new Exception("Test Exception");
-        doThrow(testException).when(this.documentAccessBridge).getDocument(this.patientDocument);
+        doThrow(testException).when(this.unitOfWork).getDocument(this.patientDocument);
 
         this.obstetricHistoryController.save(this.patient);
 
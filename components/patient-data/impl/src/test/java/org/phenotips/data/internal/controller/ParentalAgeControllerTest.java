@@ -22,6 +22,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.model.EntityType;
@@ -45,9 +46,7 @@
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 
-import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
-import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -91,8 +90,7 @@
 
     private ParentalAgeController parentalAgeController;
 
-    @Mock
-    private XWiki xwiki;
+    private PatientUnitOfWork unitOfWork;
 
     @Mock
     private Patient patient;
@@ -113,10 +111,11 @@ public void setUp() throws Exception
 
         this.provider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
         this.xWikiContext = this.provider.get();
-        doReturn(this.xwiki).when(this.xWikiContext).getWiki();
         this.documentAccessBridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        this.unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
         doReturn(this.patientDocument).when(this.patient).getDocument();
         doReturn(this.doc).when(this.documentAccessBridge).getDocument(this.patientDocument);
+        doReturn(this.doc).when(this.unitOfWork).getDocument(this.patientDocument);
     }
 
     @Test
@@ -201,18 +200,17 @@ public void loadHandlesExceptions() throws Exception
     }
 
     @Test
-    public void saveEmptyPatientTest() throws XWikiException
+    public void saveEmptyPatientTest() throws Exception
     {
         doReturn(this.patientData).when(this.patient).getData(this.parentalAgeController.getName());
         doReturn(false).when(this.patientData).isNamed();
         this.parentalAgeController.save(this.patient);
         verifyNoMoreInteractions(this.doc);
-        verify(this.xWikiContext.getWiki(), never()).saveDocument(this.doc,
-            "Updated parental age from JSON", true, this.xWikiContext);
+        verify(this.unitOfWork, never()).save(this.doc, "Updated parental age from JSON");
     }
 
     @Test
-    public void saveDefaultBehaviourTest() throws XWikiException
+    public void saveDefaultBehaviourTest() throws Exception
     {
         BaseObject data = mock(BaseObject.class);
         doReturn(this.patientData).when(this.patient).getData(this.parentalAgeController.getName());
@@ -226,15 +224,14 @@ public void saveDefaultBehaviourTest() throws XWikiException
 
         verify(data).set(MATERNAL_AGE, AGE_NON_ZERO, this.xWikiContext);
         verify(data).set(PATERNAL_AGE, AGE_NON_ZERO, this.xWikiContext);
-        verify(this.xWikiContext.getWiki()).saveDocument(this.doc,
-            "Updated parental age from JSON", true, this.xWikiContext);
+        verify(this.unitOfWork).save(this.doc, "Updated parental age from JSON");
     }
 
     @Test
     public void saveHandlesExceptions() throws Exception
     {
         Exception testException = new Exception("Test Exception");
-        doThrow(testException).when(this.documentAccessBridge).getDocument(this.patientDocument);
+        doThrow(testException).when(this.unitOfWork).getDocument(this.patientDocument);
 
         this.parentalAgeController.save(this.patient);
         verify(this.logger).error("Failed to save parental age: [{}]", testException.getMessage());
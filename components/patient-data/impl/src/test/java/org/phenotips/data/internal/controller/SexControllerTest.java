@@ -20,12 +20,11 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.SimpleValuePatientData;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.manager.ComponentLookupException;
-import org.xwiki.context.Execution;
-import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
@@ -41,14 +40,11 @@
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
-import com.xpn.xwiki.XWiki;
-import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -66,16 +62,7 @@
 
     private DocumentAccessBridge documentAccessBridge;
 
-    private Execution execution;
-
-    @Mock
-    private ExecutionContext executionContext;
-
-    @Mock
-    private XWikiContext xcontext;
-
-    @Mock
-    private XWiki xwiki;
+    private PatientUnitOfWork unitOfWork;
 
     @Mock
     private Patient patient;
@@ -104,16 +91,13 @@ public void setUp() throws Exception
         MockitoAnnotations.initMocks(this);
 
         this.documentAccessBridge = this.mocker.getInstance(DocumentAccessBridge.class);
-        this.execution = this.mocker.getInstance(Execution.class);
+        this.unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
 
         DocumentReference patientDocument = new DocumentReference("wiki", "patient", "00000001");
         doReturn(patientDocument).when(this.patient).getDocument();
         doReturn(this.doc).when(this.documentAccessBridge).getDocument(patientDocument);
+        doReturn(this.doc).when(this.unitOfWork).getDocument(patientDocument);
         doReturn(this.data).when(this.doc).getXObject(Patient.CLASS_REFERENCE);
-
-        doReturn(this.executionContext).when(this.execution).getContext();
-        doReturn(this.xcontext).when(this.executionContext).getProperty("xwikicontext");
-        doReturn(this.xwiki).when(this.xcontext).getWiki();
     }
 
     @Test
@@ -172,7 +156,7 @@ public void loadReturnsSexUnknown() throws ComponentLookupException
     @Test
     public void saveCatchesExceptionFromDocumentAccess() throws Exception
     {
-        doThrow(Exception.class).when(this.documentAccessBridge).getDocument(any(DocumentReference.class));
+        doThrow(Exception.class).when(this.unitOfWork).getDocument(any(DocumentReference.class));
 
         this.mocker.getComponentUnderTest().save(this.patient);
 
@@ -191,52 +175,46 @@ public void saveCatchesExceptionWhenPatientDoesNotHavePatientClass() throws Comp
     }
 
     @Test
-    public void saveCatchesExceptionFromSaveDocument() throws XWikiException, ComponentLookupException
+    public void saveCatchesExceptionFromSaveDocument() throws Exception
     {
         XWikiException exception = new XWikiException();
-        doThrow(exception).when(this.xwiki).saveDocument(any(XWikiDocument.class),
-            anyString(), anyBoolean(), any(XWikiContext.class));
+        doThrow(exception).when(this.unitOfWork).save(any(XWikiDocument.class), anyString());
         doReturn(new SimpleValuePatientData<String>(DATA_NAME, SEX_MALE)).when(this.patient).getData(DATA_NAME);
 
         this.mocker.getComponentUnderTest().save(this.patient);
 
-        verify(this.xwiki).saveDocument(any(XWikiDocument.class),
-            anyString(), anyBoolean(), any(XWikiContext.class));
+        verify(this.unitOfWork).save(any(XWikiDocument.class), anyString());
         verify(this.mocker.getMockedLogger()).error("Failed to save patient gender: [{}]",
             exception.getMessage());
     }
 
     @Test
-    public void saveSetsCorrectSex() throws XWikiException, ComponentLookupException
+    public void saveSetsCorrectSex() throws Exception
     {
         doReturn(new SimpleValuePatientData<String>(DATA_NAME, SEX_MALE)).when(this.patient).getData(DATA_NAME);
         this.mocker.getComponentUnderTest().save(this.patient);
         verify(this.data).setStringValue(INTERNAL_PROPERTY_NAME, SEX_MALE);
-        verify(this.xwiki).saveDocument(this.doc, "Updated gender from JSON", true, this.xcontext);
+        verify(this.unitOfWork).save(this.doc, "Updated gender from JSON");
 
-        Mockito.reset(this.xwiki);
         doReturn(new SimpleValuePatientData<String>(DATA_NAME, SEX_FEMALE)).when(this.patient).getData(DATA_NAME);
         this.mocker.getComponentUnderTest().save(this.patient);
         verify(this.data).setStringValue(INTERNAL_PROPERTY_NAME, SEX_FEMALE);
-        verify(this.xwiki).saveDocument(this.doc, "Updated gender from JSON", true, this.xcontext);
+        verify(this.unitOfWork, Mockito.times(2)).save(this.doc, "Updated gender from JSON");
 
-        Mockito.reset(this.xwiki);
         doReturn(new SimpleValuePatientData<String>(DATA_NAME, SEX_OTHER)).when(this.patient).getData(DATA_NAME);
         this.mocker.getComponentUnderTest().save(this.patient);
         verify(this.data).setStringValue(INTERNAL_PROPERTY_NAME, SEX_OTHER);
-        verify(this.xwiki).saveDocument(this.doc, "Updated gender from JSON", true, this.xcontext);
+        verify(this.unitOfWork, Mockito.times(3)).save(this.doc, "Updated gender from JSON");
 
-        Mockito.reset(this.xwiki);
         doReturn(new SimpleValuePatientData<String>(DATA_NAME, SEX_UNKNOWN)).when(this.patient).getData(DATA_NAME);
         this.mocker.getComponentUnderTest().save(this.patient);
         verify(this.data).setStringValue(INTERNAL_PROPERTY_NAME, SEX_UNKNOWN);
-        verify(this.xwiki).saveDocument(this.doc, "Updated gender from JSON", true, this.xcontext);
+        verify(this.unitOfWork, Mockito.times(4)).save(this.doc, "Updated gender from JSON");
 
-        Mockito.reset(this.xwiki);
         doReturn(new SimpleValuePatientData<String>(DATA_NAME, null)).when(this.patient).getData(DATA_NAME);
         this.mocker.getComponentUnderTest().save(this.patient);
         verify(this.data).setStringValue(INTERNAL_PROPERTY_NAME, null);
-        verify(this.xwiki).saveDocument(this.doc, "Updated gender from JSON", true, this.xcontext);
+        verify(this.unitOfWork, Mockito.times(5)).save(this.doc, "Updated gender from JSON");
     }
 
     @Test
@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A patient found to be phenotypically similar to a reference patient, along with the score of the match and the
+ * terms explaining it.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+public class SimilarPatient
+{
+    /** @see #getPatient() */
+    private final Patient patient;
+
+    /** @see #getScore() */
+    private final double score;
+
+    /** @see #getSharedFeatures() */
+    private final Map<String, Double> sharedFeatures;
+
+    /**
+     * Default constructor passing all the required information.
+     *
+     * @param patient the matched patient
+     * @param score the similarity score, must be a number between 0 and 1 (inclusive)
+     * @param sharedFeatures the most specific terms shared by the two patients, each with its information content, in
+     *            descending order of information content
+     */
+    public SimilarPatient(Patient patient, double score, Map<String, Double> sharedFeatures)
+    {
+        this.patient = patient;
+        this.score = score;
+        this.sharedFeatures = Collections.unmodifiableMap(sharedFeatures);
+    }
+
+    /**
+     * The matched patient.
+     *
+     * @return the patient, never {@code null}
+     */
+    public Patient getPatient()
+    {
+        return this.patient;
+    }
+
+    /**
+     * How similar the matched patient is to the reference patient, where 0 means that they have nothing in common, and
+     * 1 means that they have the same phenotype.
+     *
+     * @return a number between {@code 0.0} and {@code 1.0} (inclusive)
+     */
+    public double getScore()
+    {
+        return this.score;
+    }
+
+    /**
+     * The terms explaining the match: the most specific phenotypes, or phenotype categories, present in both patients.
+     * Each term is mapped to its information content, i.e. how rare the term is among the indexed patients, and the
+     * most informative terms come first.
+     *
+     * @return an unmodifiable map, empty if nothing explains the match
+     */
+    public Map<String, Double> getSharedFeatures()
+    {
+        return this.sharedFeatures;
+    }
+}
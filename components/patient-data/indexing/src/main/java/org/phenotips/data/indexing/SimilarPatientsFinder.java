@@ -0,0 +1,47 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.List;
+
+/**
+ * Searches the local patients for the ones most phenotypically similar to a reference patient.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+@Role
+public interface SimilarPatientsFinder
+{
+    /**
+     * Find the patients most similar to a reference patient, among the patients that the current user is allowed to
+     * see.
+     *
+     * @param reference the patient to match, which doesn't have to be indexed itself
+     * @param limit the maximum number of patients to return
+     * @return the matched patients, most similar first; an empty list if the reference patient has no phenotypes or
+     *         nothing matches
+     */
+    List<SimilarPatient> findSimilarPatients(Patient reference, int limit);
+}
@@ -25,7 +25,6 @@
 import org.phenotips.data.permissions.PermissionsManager;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.Vocabulary;
-import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
@@ -131,11 +130,8 @@ public void index(Patient patient)
             if (StringUtils.isNotBlank(termId)) {
                 input.addField(fieldName, termId);
                 // Add ancestors of the term
-                VocabularyTerm term = this.ontologyService.getTerm(termId);
-                if (term != null) {
-                    for (VocabularyTerm ancestor : term.getAncestorsAndSelf()) {
-                        input.addField(ancestorFieldName, ancestor.getId());
-                    }
+                for (String ancestorId : this.ontologyService.getAncestorAndSelfIds(termId)) {
+                    input.addField(ancestorFieldName, ancestorId);
                 }
             }
         }
@@ -0,0 +1,568 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.SimilarPatient;
+import org.phenotips.data.indexing.SimilarPatientsFinder;
+import org.phenotips.data.permissions.AccessLevel;
+import org.phenotips.data.permissions.PermissionsManager;
+import org.phenotips.vocabulary.SolrCoreContainerHandler;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.internal.solr.HumanPhenotypeOntologyKeys;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.slf4j.Logger;
+
+/**
+ * Finds similar patients in the local Solr patients index. The phenotypes of each patient are expanded to all their
+ * ancestors in the HPO, and two patients are compared using the simGIC measure: the total information content of the
+ * terms present in both expanded sets, divided by the total information content of the terms present in either of
+ * them. The information content of a term is computed from the number of indexed patients having that term in their
+ * {@code extended_phenotype} field, so that rare findings weigh more than common ones.
+ * <p>
+ * Only the patients sharing at least one informative term with the reference patient are scored, and among them only
+ * the best ranked by Solr. Their expanded phenotypes are stored as sorted arrays of numeric term identifiers, which
+ * makes the comparison a simple merge, and the candidates are scored in parallel. The patients that the current user
+ * cannot view are skipped.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Component
+@Singleton
+public class SolrSimilarPatientsFinder implements SimilarPatientsFinder, Initializable, Disposable
+{
+    private static final String DOCUMENT_FIELD = "document";
+
+    private static final String EXTENDED_PHENOTYPE_FIELD = "extended_phenotype";
+
+    /** Matches the stored fields holding the direct phenotypes, both observed and negative. */
+    private static final String PHENOTYPE_FIELDS = "*henotype";
+
+    private static final String NEGATIVE_PREFIX = "negative_";
+
+    /** The maximum number of terms used for finding candidates, below Solr's limit of 1024 boolean clauses. */
+    private static final int MAX_QUERY_TERMS = 1000;
+
+    /** How many candidates are scored for each requested result, since some of them may not be visible. */
+    private static final int CANDIDATES_PER_RESULT = 10;
+
+    /** The minimum number of candidates scored, however few results are requested. */
+    private static final int MIN_CANDIDATES = 200;
+
+    /** Splitting fewer candidates than this between threads isn't worth it. */
+    private static final int MIN_CANDIDATES_PER_THREAD = 50;
+
+    /** The maximum number of threads scoring candidates at the same time. */
+    private static final int MAX_PARALLEL_SCORERS = 4;
+
+    /** How long an idle scoring thread is kept, in seconds. */
+    private static final long THREAD_KEEP_ALIVE = 60;
+
+    /** How long the information content computed from the index is reused, in milliseconds. */
+    private static final long INFORMATION_CONTENT_LIFETIME = TimeUnit.MINUTES.toMillis(10);
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private SolrCoreContainerHandler cores;
+
+    /** Provides access to patients. */
+    @Inject
+    private PatientRepository patientRepository;
+
+    @Inject
+    private PermissionsManager permissions;
+
+    /** The access level needed for a patient to be returned. */
+    @Inject
+    @Named("view")
+    private AccessLevel viewAccess;
+
+    /** Provides access to the HPO ontology. */
+    @Inject
+    @Named("hpo")
+    private Vocabulary ontologyService;
+
+    /** The Solr server instance used. */
+    private SolrClient server;
+
+    /** Scores the candidates in parallel. */
+    private ThreadPoolExecutor executor;
+
+    /** The information content of the indexed terms, recomputed once it is older than its lifetime. */
+    private volatile InformationContent informationContent;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.server = new EmbeddedSolrServer(this.cores.getContainer(), "patients");
+        // When all threads are busy, the requesting thread scores the remaining candidates itself
+        this.executor = new ThreadPoolExecutor(0, MAX_PARALLEL_SCORERS, THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new BasicThreadFactory.Builder().namingPattern("patient-similarity-%d").daemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public List<SimilarPatient> findSimilarPatients(Patient reference, int limit)
+    {
+        List<SimilarPatient> result = new ArrayList<>();
+        int[] query = getClosure(getPresentTerms(reference));
+        if (query.length == 0 || limit <= 0) {
+            return result;
+        }
+        try {
+            InformationContent content = getInformationContent();
+            List<Candidate> candidates = getCandidates(reference, query, content, limit);
+            score(query, candidates, content);
+            for (Candidate candidate : candidates) {
+                if (result.size() >= limit || candidate.score <= 0) {
+                    break;
+                }
+                Patient patient = this.patientRepository.getPatientById(candidate.document);
+                if (patient != null && this.permissions.getPatientAccess(patient).hasAccessLevel(this.viewAccess)) {
+                    result.add(new SimilarPatient(patient, candidate.score,
+                        explain(query, candidate.closure, content)));
+                }
+            }
+        } catch (SolrServerException ex) {
+            this.logger.warn("Failed to search for similar patients: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Error occurred while searching for similar patients: {}", ex.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Find the indexed patients sharing the most informative terms with the reference patient.
+     *
+     * @return the candidates, in no particular order, with their direct phenotypes but not yet expanded or scored
+     */
+    private List<Candidate> getCandidates(Patient reference, int[] query, final InformationContent content,
+        int limit) throws SolrServerException, IOException
+    {
+        List<Integer> terms = new ArrayList<>(query.length);
+        for (int term : query) {
+            // Terms that all patients have, like the root of the ontology, don't help
+            if (content.get(term) > 0) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Collections.sort(terms, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                return Double.compare(content.get(b), content.get(a));
+            }
+        });
+
+        StringBuilder q = new StringBuilder(EXTENDED_PHENOTYPE_FIELD).append(":(");
+        for (Integer term : terms.subList(0, Math.min(terms.size(), MAX_QUERY_TERMS))) {
+            q.append(ClientUtils.escapeQueryChars(HumanPhenotypeOntologyKeys.toTermId(term))).append(" OR ");
+        }
+        q.setLength(q.length() - 4);
+        q.append(')');
+
+        SolrQuery solrQuery = new SolrQuery(q.toString());
+        solrQuery.setFields(DOCUMENT_FIELD, PHENOTYPE_FIELDS);
+        solrQuery.setRows(Math.max(MIN_CANDIDATES, limit * CANDIDATES_PER_RESULT));
+        if (reference.getDocument() != null) {
+            solrQuery.addFilterQuery(
+                "-" + DOCUMENT_FIELD + ':' + ClientUtils.escapeQueryChars(reference.getDocument().toString()));
+        }
+
+        List<Candidate> result = new ArrayList<>();
+        for (SolrDocument document : this.server.query(solrQuery).getResults()) {
+            Set<String> phenotypes = new HashSet<>();
+            for (String field : document.getFieldNames()) {
+                if (field.endsWith("phenotype") && !field.startsWith(NEGATIVE_PREFIX)) {
+                    for (Object value : document.getFieldValues(field)) {
+                        phenotypes.add(String.valueOf(value));
+                    }
+                }
+            }
+            result.add(new Candidate((String) document.getFieldValue(DOCUMENT_FIELD), phenotypes));
+        }
+        return result;
+    }
+
+    /**
+     * Expand and score all the candidates, splitting them between several threads if there are many.
+     *
+     * @param candidates the candidates to score, sorted in descending order of their score when this returns
+     */
+    private void score(int[] query, List<Candidate> candidates, InformationContent content)
+    {
+        double queryContent = content.sum(query);
+        int threads = Math.min(MAX_PARALLEL_SCORERS,
+            (candidates.size() + MIN_CANDIDATES_PER_THREAD - 1) / MIN_CANDIDATES_PER_THREAD);
+        int chunkSize = threads > 0 ? (candidates.size() + threads - 1) / threads : 0;
+        List<Future<Void>> pending = new ArrayList<>(threads);
+        for (int start = 0; start < candidates.size(); start += chunkSize) {
+            Scorer task = new Scorer(query, queryContent,
+                candidates.subList(start, Math.min(candidates.size(), start + chunkSize)), content);
+            if (start + chunkSize >= candidates.size()) {
+                // The last chunk is scored by the requesting thread while the others are busy
+                task.call();
+            } else {
+                pending.add(this.executor.submit(task));
+            }
+        }
+        for (Future<Void> chunk : pending) {
+            waitFor(chunk);
+        }
+        Collections.sort(candidates, new Comparator<Candidate>()
+        {
+            @Override
+            public int compare(Candidate a, Candidate b)
+            {
+                return Double.compare(b.score, a.score);
+            }
+        });
+    }
+
+    private void waitFor(Future<Void> chunk)
+    {
+        try {
+            chunk.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            // The candidates of this chunk keep a score of 0, and are not returned
+            this.logger.warn("Failed to score similar patients: {}", ex.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Compute the simGIC similarity between two expanded phenotypes.
+     *
+     * @param query the sorted expanded phenotype of the reference patient
+     * @param queryContent the total information content of {@code query}
+     * @param candidate the sorted expanded phenotype of the candidate patient
+     * @param content the information content of the terms
+     * @return a number between {@code 0.0} and {@code 1.0} (inclusive)
+     */
+    private static double similarity(int[] query, double queryContent, int[] candidate, InformationContent content)
+    {
+        double shared = 0;
+        double candidateContent = 0;
+        int i = 0;
+        for (int term : candidate) {
+            double termContent = content.get(term);
+            candidateContent += termContent;
+            while (i < query.length && query[i] < term) {
+                ++i;
+            }
+            if (i < query.length && query[i] == term) {
+                shared += termContent;
+            }
+        }
+        double union = queryContent + candidateContent - shared;
+        return union > 0 ? shared / union : 0;
+    }
+
+    /**
+     * List the most specific informative terms shared by two expanded phenotypes, i.e. the shared terms which aren't
+     * ancestors of other shared terms.
+     *
+     * @return the shared terms, mapped to their information content, most informative first
+     */
+    private Map<String, Double> explain(int[] query, int[] candidate, InformationContent content)
+    {
+        List<String> shared = new ArrayList<>();
+        Set<String> ancestors = new HashSet<>();
+        int i = 0;
+        for (int term : candidate) {
+            while (i < query.length && query[i] < term) {
+                ++i;
+            }
+            if (i < query.length && query[i] == term && content.get(term) > 0) {
+                String termId = HumanPhenotypeOntologyKeys.toTermId(term);
+                shared.add(termId);
+                ancestors.addAll(this.ontologyService.getAncestorIds(termId));
+            }
+        }
+        shared.removeAll(ancestors);
+        final Map<String, Double> result = new LinkedHashMap<>();
+        for (String termId : shared) {
+            result.put(termId, content.get(HumanPhenotypeOntologyKeys.toKey(termId)));
+        }
+        Collections.sort(shared, new Comparator<String>()
+        {
+            @Override
+            public int compare(String a, String b)
+            {
+                int byContent = Double.compare(result.get(b), result.get(a));
+                return byContent != 0 ? byContent : a.compareTo(b);
+            }
+        });
+        Map<String, Double> sorted = new LinkedHashMap<>();
+        for (String termId : shared) {
+            sorted.put(termId, result.get(termId));
+        }
+        return sorted;
+    }
+
+    private Set<String> getPresentTerms(Patient patient)
+    {
+        Set<String> result = new HashSet<>();
+        for (Feature feature : patient.getFeatures()) {
+            if (feature.isPresent() && StringUtils.isNotBlank(feature.getId())) {
+                result.add(feature.getId());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Expand terms to all their ancestors.
+     *
+     * @param termIds the terms to expand
+     * @return the numeric identifiers of the terms and their ancestors, sorted and without duplicates; terms that
+     *         aren't HPO terms are ignored
+     */
+    private int[] getClosure(Collection<String> termIds)
+    {
+        Set<Integer> keys = new HashSet<>();
+        for (String termId : termIds) {
+            for (String ancestorId : this.ontologyService.getAncestorAndSelfIds(termId)) {
+                int key = HumanPhenotypeOntologyKeys.toKey(ancestorId);
+                if (key >= 0) {
+                    keys.add(key);
+                }
+            }
+        }
+        int[] result = new int[keys.size()];
+        int i = 0;
+        for (Integer key : keys) {
+            result[i++] = key;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private InformationContent getInformationContent() throws SolrServerException, IOException
+    {
+        InformationContent result = this.informationContent;
+        if (result == null || result.isExpired()) {
+            synchronized (this) {
+                result = this.informationContent;
+                if (result == null || result.isExpired()) {
+                    result = computeInformationContent();
+                    this.informationContent = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Count how many indexed patients have each term in their expanded phenotype. */
+    private InformationContent computeInformationContent() throws SolrServerException, IOException
+    {
+        SolrQuery query = new SolrQuery("*:*");
+        query.setRows(0);
+        query.setFacet(true);
+        query.addFacetField(EXTENDED_PHENOTYPE_FIELD);
+        query.setFacetLimit(-1);
+        query.setFacetMinCount(1);
+        QueryResponse response = this.server.query(query);
+
+        Map<Integer, Long> counts = new TreeMap<>();
+        FacetField facet = response.getFacetField(EXTENDED_PHENOTYPE_FIELD);
+        if (facet != null && facet.getValues() != null) {
+            for (FacetField.Count count : facet.getValues()) {
+                int key = HumanPhenotypeOntologyKeys.toKey(count.getName());
+                if (key >= 0) {
+                    counts.put(key, count.getCount());
+                }
+            }
+        }
+        return new InformationContent(counts, response.getResults().getNumFound());
+    }
+
+    /**
+     * Expands and scores a chunk of candidates.
+     *
+     * @version $Id$
+     */
+    private final class Scorer implements Callable<Void>
+    {
+        private final int[] query;
+
+        private final double queryContent;
+
+        private final List<Candidate> candidates;
+
+        private final InformationContent content;
+
+        Scorer(int[] query, double queryContent, List<Candidate> candidates, InformationContent content)
+        {
+            this.query = query;
+            this.queryContent = queryContent;
+            this.candidates = candidates;
+            this.content = content;
+        }
+
+        @Override
+        public Void call()
+        {
+            for (Candidate candidate : this.candidates) {
+                candidate.closure = getClosure(candidate.phenotypes);
+                candidate.score = similarity(this.query, this.queryContent, candidate.closure, this.content);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A patient being scored.
+     *
+     * @version $Id$
+     */
+    private static final class Candidate
+    {
+        /** The serialized reference of the patient document. */
+        private final String document;
+
+        /** The direct phenotypes of the patient. */
+        private final Set<String> phenotypes;
+
+        /** The sorted numeric identifiers of the phenotypes and all their ancestors, set when scored. */
+        private int[] closure;
+
+        /** The similarity to the reference patient, set when scored. */
+        private double score;
+
+        Candidate(String document, Set<String> phenotypes)
+        {
+            this.document = document;
+            this.phenotypes = phenotypes;
+        }
+    }
+
+    /**
+     * The information content of terms, {@code -log(p)} where {@code p} is the fraction of the indexed patients which
+     * have the term in their expanded phenotype. Counts are smoothed, so that terms not yet used by any patient have a
+     * high but finite information content, and terms used by all the patients have none.
+     *
+     * @version $Id$
+     */
+    private static final class InformationContent
+    {
+        /** The numeric identifiers of the terms used by at least one patient, sorted. */
+        private final int[] terms;
+
+        /** The information content of each term in {@link #terms}, at the same position. */
+        private final double[] content;
+
+        /** The information content of the terms not used by any patient. */
+        private final double unusedContent;
+
+        /** When was this computed. */
+        private final long timestamp = System.currentTimeMillis();
+
+        InformationContent(Map<Integer, Long> counts, long total)
+        {
+            this.terms = new int[counts.size()];
+            this.content = new double[counts.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Long> count : counts.entrySet()) {
+                this.terms[i] = count.getKey();
+                this.content[i] = Math.max(0, Math.log((total + 1.0) / (count.getValue() + 1.0)));
+                ++i;
+            }
+            this.unusedContent = Math.log(total + 1.0);
+        }
+
+        double get(int term)
+        {
+            int position = Arrays.binarySearch(this.terms, term);
+            return position >= 0 ? this.content[position] : this.unusedContent;
+        }
+
+        double sum(int[] closure)
+        {
+            double result = 0;
+            for (int term : closure) {
+                result += get(term);
+            }
+            return result;
+        }
+
+        boolean isExpired()
+        {
+            return System.currentTimeMillis() - this.timestamp > INFORMATION_CONTENT_LIFETIME;
+        }
+    }
+}
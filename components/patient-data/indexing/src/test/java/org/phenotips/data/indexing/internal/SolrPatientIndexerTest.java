@@ -30,7 +30,6 @@
 import org.phenotips.data.permissions.internal.visibility.PublicVisibility;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.Vocabulary;
-import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.util.ReflectionUtils;
@@ -42,6 +41,7 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -123,20 +123,9 @@ public void setupVocabulary() throws ComponentLookupException
         // Setup the vocabulary
         Vocabulary hpo = this.mocker.getInstance(Vocabulary.class, "hpo");
 
-        // Setup mock term
-        String[] ancestorIds = { "HP:0011842", "HP:0000924", "HP:0000118", "HP:0000001" };
-        Set<VocabularyTerm> ancestors = new HashSet<VocabularyTerm>();
-        for (String id : ancestorIds) {
-            VocabularyTerm ancestor = mock(VocabularyTerm.class);
-            when(ancestor.getId()).thenReturn(id);
-            ancestors.add(ancestor);
-        }
-        VocabularyTerm term = mock(VocabularyTerm.class);
-        when(term.getId()).thenReturn("HP:0001367");
-        ancestors.add(term);
-
-        when(term.getAncestorsAndSelf()).thenReturn(ancestors);
-        when(hpo.getTerm(term.getId())).thenReturn(term);
+        // Setup mock term ancestors
+        String[] ancestorIds = { "HP:0001367", "HP:0011842", "HP:0000924", "HP:0000118", "HP:0000001" };
+        when(hpo.getAncestorAndSelfIds("HP:0001367")).thenReturn(new HashSet<String>(Arrays.asList(ancestorIds)));
     }
 
     @Test
@@ -0,0 +1,326 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.SimilarPatient;
+import org.phenotips.data.indexing.SimilarPatientsFinder;
+import org.phenotips.data.permissions.AccessLevel;
+import org.phenotips.data.permissions.PatientAccess;
+import org.phenotips.data.permissions.PermissionsManager;
+import org.phenotips.vocabulary.SolrCoreContainerHandler;
+import org.phenotips.vocabulary.Vocabulary;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.core.CoreContainer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link SolrSimilarPatientsFinder} component.
+ *
+ * @version $Id$
+ */
+public class SolrSimilarPatientsFinderTest
+{
+    private static final String ROOT = "HP:0000001";
+
+    private static final String ABNORMALITY = "HP:0000118";
+
+    private static final String NERVOUS = "HP:0000707";
+
+    private static final String SEIZURES = "HP:0001250";
+
+    private static final String EYE = "HP:0000478";
+
+    private static final String VISUAL_IMPAIRMENT = "HP:0000505";
+
+    private static final String HEAD = "HP:0000152";
+
+    @Rule
+    public final MockitoComponentMockingRule<SimilarPatientsFinder> mocker =
+        new MockitoComponentMockingRule<SimilarPatientsFinder>(SolrSimilarPatientsFinder.class);
+
+    private final Map<String, String> parents = new HashMap<>();
+
+    /** The indexed patients, mapped to their direct phenotypes. */
+    private final Map<String, List<String>> indexed = new LinkedHashMap<>();
+
+    private final Map<String, Patient> patients = new HashMap<>();
+
+    private final Map<String, PatientAccess> accesses = new HashMap<>();
+
+    private SolrClient server;
+
+    private PermissionsManager permissions;
+
+    private AccessLevel view;
+
+    private Vocabulary hpo;
+
+    @Before
+    public void setUp() throws ComponentLookupException, SolrServerException, IOException
+    {
+        SolrCoreContainerHandler cores = this.mocker.getInstance(SolrCoreContainerHandler.class);
+        when(cores.getContainer()).thenReturn(mock(CoreContainer.class));
+        this.permissions = this.mocker.getInstance(PermissionsManager.class);
+        this.view = this.mocker.getInstance(AccessLevel.class, "view");
+        this.hpo = this.mocker.getInstance(Vocabulary.class, "hpo");
+
+        this.parents.put(ABNORMALITY, ROOT);
+        this.parents.put(NERVOUS, ABNORMALITY);
+        this.parents.put(SEIZURES, NERVOUS);
+        this.parents.put(EYE, ABNORMALITY);
+        this.parents.put(VISUAL_IMPAIRMENT, EYE);
+        this.parents.put(HEAD, ABNORMALITY);
+        when(this.hpo.getAncestorAndSelfIds(any(String.class))).thenAnswer(new Answer<Set<String>>()
+        {
+            @Override
+            public Set<String> answer(InvocationOnMock invocation)
+            {
+                return getAncestors((String) invocation.getArguments()[0], true);
+            }
+        });
+        when(this.hpo.getAncestorIds(any(String.class))).thenAnswer(new Answer<Set<String>>()
+        {
+            @Override
+            public Set<String> answer(InvocationOnMock invocation)
+            {
+                return getAncestors((String) invocation.getArguments()[0], false);
+            }
+        });
+
+        index("P0000001", SEIZURES, VISUAL_IMPAIRMENT);
+        index("P0000002", SEIZURES, VISUAL_IMPAIRMENT);
+        index("P0000003", SEIZURES);
+        index("P0000004", HEAD);
+        index("P0000005", SEIZURES, VISUAL_IMPAIRMENT);
+        allowView("P0000002", "P0000003", "P0000004");
+
+        this.server = mock(SolrClient.class);
+        when(this.server.query(any(SolrParams.class))).thenAnswer(new Answer<QueryResponse>()
+        {
+            @Override
+            public QueryResponse answer(InvocationOnMock invocation)
+            {
+                return search((SolrQuery) invocation.getArguments()[0]);
+            }
+        });
+        ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "server", this.server);
+    }
+
+    @Test
+    public void mostSimilarVisiblePatientsAreReturned() throws ComponentLookupException
+    {
+        List<SimilarPatient> result =
+            this.mocker.getComponentUnderTest().findSimilarPatients(this.patients.get("P0000001"), 10);
+
+        // P0000005 is identical, but not visible; P0000004 only shares terms that all patients have
+        Assert.assertEquals(2, result.size());
+        Assert.assertSame(this.patients.get("P0000002"), result.get(0).getPatient());
+        Assert.assertEquals(1.0, result.get(0).getScore(), 1.0E-9);
+        Assert.assertSame(this.patients.get("P0000003"), result.get(1).getPatient());
+        Assert.assertTrue(result.get(1).getScore() > 0 && result.get(1).getScore() < 1);
+
+        // Visual impairment is rarer than seizures, so it explains more of the match
+        Assert.assertEquals(Arrays.asList(VISUAL_IMPAIRMENT, SEIZURES),
+            new ArrayList<>(result.get(0).getSharedFeatures().keySet()));
+        Assert.assertEquals(Math.log(6.0 / 4.0), result.get(0).getSharedFeatures().get(VISUAL_IMPAIRMENT), 1.0E-9);
+        Assert.assertEquals(Math.log(6.0 / 5.0), result.get(0).getSharedFeatures().get(SEIZURES), 1.0E-9);
+        Assert.assertEquals(Arrays.asList(SEIZURES), new ArrayList<>(result.get(1).getSharedFeatures().keySet()));
+    }
+
+    @Test
+    public void resultsAreLimited() throws ComponentLookupException
+    {
+        List<SimilarPatient> result =
+            this.mocker.getComponentUnderTest().findSimilarPatients(this.patients.get("P0000001"), 1);
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertSame(this.patients.get("P0000002"), result.get(0).getPatient());
+        verify(this.accesses.get("P0000003"), never()).hasAccessLevel(this.view);
+    }
+
+    @Test
+    public void informationContentIsReusedBetweenSearches() throws ComponentLookupException, SolrServerException,
+        IOException
+    {
+        this.mocker.getComponentUnderTest().findSimilarPatients(this.patients.get("P0000001"), 10);
+        this.mocker.getComponentUnderTest().findSimilarPatients(this.patients.get("P0000003"), 10);
+
+        // One facet query, and one candidates query for each search
+        verify(this.server, times(3)).query(any(SolrParams.class));
+    }
+
+    @Test
+    public void patientsWithoutPhenotypesDontMatchAnything() throws ComponentLookupException, SolrServerException,
+        IOException
+    {
+        Patient empty = mock(Patient.class);
+        when(empty.getFeatures()).thenReturn(new HashSet<Feature>());
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().findSimilarPatients(empty, 10).isEmpty());
+        verify(this.server, never()).query(any(SolrParams.class));
+    }
+
+    @Test
+    public void searchFailuresAreLogged() throws ComponentLookupException, SolrServerException, IOException
+    {
+        when(this.server.query(any(SolrParams.class))).thenThrow(new SolrServerException("down"));
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest()
+            .findSimilarPatients(this.patients.get("P0000001"), 10).isEmpty());
+        verify(this.mocker.getMockedLogger()).warn("Failed to search for similar patients: {}", "down");
+    }
+
+    @Test
+    public void indexErrorsAreLogged() throws ComponentLookupException, SolrServerException, IOException
+    {
+        when(this.server.query(any(SolrParams.class))).thenThrow(new IOException("closed"));
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest()
+            .findSimilarPatients(this.patients.get("P0000001"), 10).isEmpty());
+        verify(this.mocker.getMockedLogger()).warn("Error occurred while searching for similar patients: {}",
+            "closed");
+    }
+
+    private Set<String> getAncestors(String termId, boolean includeSelf)
+    {
+        Set<String> result = new LinkedHashSet<>();
+        if (includeSelf) {
+            result.add(termId);
+        }
+        String parent = this.parents.get(termId);
+        while (parent != null) {
+            result.add(parent);
+            parent = this.parents.get(parent);
+        }
+        return result;
+    }
+
+    private void index(String id, String... phenotypes)
+    {
+        this.indexed.put(id, Arrays.asList(phenotypes));
+
+        Patient patient = mock(Patient.class);
+        when(patient.getDocument()).thenReturn(new DocumentReference("xwiki", "data", id));
+        Set<Feature> features = new HashSet<>();
+        for (String phenotype : phenotypes) {
+            Feature feature = mock(Feature.class);
+            when(feature.getId()).thenReturn(phenotype);
+            when(feature.isPresent()).thenReturn(true);
+            features.add(feature);
+        }
+        when(patient.getFeatures()).thenReturn(features);
+        this.patients.put(id, patient);
+        PatientAccess access = mock(PatientAccess.class);
+        when(this.permissions.getPatientAccess(patient)).thenReturn(access);
+        this.accesses.put(id, access);
+        try {
+            when(this.mocker.getInstance(PatientRepository.class).getPatientById("xwiki:data." + id))
+                .thenReturn(patient);
+        } catch (ComponentLookupException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void allowView(String... ids)
+    {
+        for (String id : ids) {
+            when(this.accesses.get(id).hasAccessLevel(this.view)).thenReturn(true);
+        }
+    }
+
+    /** A very simple imitation of the patients index, enough for the queries sent by the component. */
+    private QueryResponse search(SolrQuery query)
+    {
+        QueryResponse response = mock(QueryResponse.class);
+        SolrDocumentList results = new SolrDocumentList();
+        if (query.getFacetFields() != null) {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (List<String> phenotypes : this.indexed.values()) {
+                Set<String> closure = new HashSet<>();
+                for (String phenotype : phenotypes) {
+                    closure.addAll(getAncestors(phenotype, true));
+                }
+                for (String term : closure) {
+                    counts.put(term, counts.containsKey(term) ? counts.get(term) + 1 : 1);
+                }
+            }
+            FacetField facet = new FacetField("extended_phenotype");
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                facet.add(count.getKey(), count.getValue());
+            }
+            when(response.getFacetField("extended_phenotype")).thenReturn(facet);
+        } else {
+            for (Map.Entry<String, List<String>> patient : this.indexed.entrySet()) {
+                String document = "xwiki:data." + patient.getKey();
+                if (query.getFilterQueries()[0].endsWith(ClientUtils.escapeQueryChars(document))) {
+                    continue;
+                }
+                SolrDocument result = new SolrDocument();
+                result.setField("document", document);
+                for (String phenotype : patient.getValue()) {
+                    result.addField("phenotype", phenotype);
+                }
+                result.addField("negative_phenotype", HEAD);
+                results.add(result);
+            }
+        }
+        results.setNumFound(this.indexed.size());
+        when(response.getResults()).thenReturn(results);
+        return response;
+    }
+}
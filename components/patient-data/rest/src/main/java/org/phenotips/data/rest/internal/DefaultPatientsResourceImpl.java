@@ -19,6 +19,7 @@
 
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientRepository;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.rest.DomainObjectFactory;
 import org.phenotips.data.rest.PatientResource;
 import org.phenotips.data.rest.PatientsResource;
@@ -88,6 +89,10 @@ public class DefaultPatientsResourceImpl extends XWikiResource implements Patien
     @Inject
     private DomainObjectFactory factory;
 
+    /** Collects the changes to the new patient, so that it is saved only once, with all the imported data. */
+    @Inject
+    private PatientUnitOfWork unitOfWork;
+
     @Override
     public Response addPatient(String json)
     {
@@ -101,8 +106,15 @@ public Response addPatient(String json)
         try {
             JSONObject jsonInput = json == null ? null : new JSONObject(json);
 
-            Patient patient = this.repository.createNewPatient();
-            patient.updateFromJSON(jsonInput);
+            Patient patient;
+            this.unitOfWork.begin();
+            try {
+                patient = this.repository.createNewPatient();
+                patient.updateFromJSON(jsonInput);
+                this.unitOfWork.commit("Created patient from JSON");
+            } finally {
+                this.unitOfWork.end();
+            }
 
             URI targetURI =
                 UriBuilder.fromUri(this.uriInfo.getBaseUri()).path(PatientResource.class).build(patient.getId());
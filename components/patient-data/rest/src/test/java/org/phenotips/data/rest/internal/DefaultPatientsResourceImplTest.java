@@ -19,6 +19,7 @@
 
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientRepository;
+import org.phenotips.data.PatientUnitOfWork;
 import org.phenotips.data.rest.DomainObjectFactory;
 import org.phenotips.data.rest.PatientsResource;
 import org.phenotips.data.rest.model.PatientSummary;
@@ -56,7 +57,9 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 
@@ -179,7 +182,7 @@ public void creatingPatientFails()
     }
 
     @Test
-    public void addPatientAsJSON()
+    public void addPatientAsJSON() throws Exception
     {
         doReturn(true).when(this.access).hasAccess(eq(Right.EDIT), any(DocumentReference.class),
             any(EntityReference.class));
@@ -188,6 +191,13 @@ public void addPatientAsJSON()
         Response response = this.patientsResource.addPatient(jsonPatient.toString());
         Assert.assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
         verify(this.logger).debug("Importing new patient from JSON via REST: {}", jsonPatient.toString());
+        PatientUnitOfWork unitOfWork = this.mocker.getInstance(PatientUnitOfWork.class);
+        InOrder order = Mockito.inOrder(unitOfWork, this.repository, this.patient);
+        order.verify(unitOfWork).begin();
+        order.verify(this.repository).createNewPatient();
+        order.verify(this.patient).updateFromJSON(any(JSONObject.class));
+        order.verify(unitOfWork).commit(anyString());
+        order.verify(unitOfWork).end();
     }
 
     @Test
@@ -328,6 +328,18 @@ public Set<VocabularyTerm> getAncestors()
             return null;
         }
 
+        @Override
+        public Set<String> getAncestorIds()
+        {
+            return null;
+        }
+
+        @Override
+        public Set<String> getAncestorAndSelfIds()
+        {
+            return null;
+        }
+
         @Override
         public Object get(String name)
         {
@@ -17,6 +17,9 @@
  */
 package org.phenotips.solr;
 
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+
 import org.xwiki.component.annotation.Component;
 
 import java.util.Collections;
@@ -28,6 +31,7 @@
 import java.util.Queue;
 import java.util.Set;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
@@ -52,6 +56,10 @@ public class HPOScriptService extends AbstractSolrScriptService
      */
     protected static final String ALTERNATIVE_ID_FIELD_NAME = "alt_id";
 
+    /** Provides access to the HPO vocabulary, which can answer structural queries without fetching documents. */
+    @Inject
+    private VocabularyManager vocabularies;
+
     /**
      * Get the HPO IDs of the specified phenotype and all its ancestors.
      *
@@ -61,6 +69,10 @@ public class HPOScriptService extends AbstractSolrScriptService
     @SuppressWarnings("unchecked")
     public Set<String> getAllAncestorsAndSelfIDs(final String id)
     {
+        Vocabulary hpo = this.vocabularies.getVocabulary(getName());
+        if (hpo != null) {
+            return new HashSet<String>(hpo.getAncestorAndSelfIds(id));
+        }
         Set<String> results = new HashSet<String>();
         Queue<SolrDocument> nodes = new LinkedList<SolrDocument>();
         SolrDocument crt = this.get(id);
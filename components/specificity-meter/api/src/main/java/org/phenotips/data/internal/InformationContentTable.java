@@ -0,0 +1,170 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.vocabulary.internal.solr.HumanPhenotypeOntologyKeys;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Immutable table of the information content of HPO terms, computed from how many entries of an annotated vocabulary
+ * use each term. The terms are identified by the seven digit numeric part of their identifier, kept in a sorted array,
+ * with the information content of each term in a parallel array, so that a lookup is a binary search over primitives.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+final class InformationContentTable
+{
+    /** The version of the annotated vocabulary from which the table was computed. */
+    private final String version;
+
+    /** The numeric identifiers of the annotated terms, in ascending order. */
+    private final int[] terms;
+
+    /** The information content of each of the {@link #terms}. */
+    private final double[] content;
+
+    private InformationContentTable(String version, int[] terms, double[] content)
+    {
+        this.version = version;
+        this.terms = terms;
+        this.content = content;
+    }
+
+    /**
+     * Compute the information content of the annotated terms.
+     *
+     * @param version the version of the annotated vocabulary
+     * @param counts how many entries are annotated with each term, including through a descendant
+     * @param total the total number of annotated entries
+     * @return the computed table
+     */
+    static InformationContentTable build(String version, Map<String, Long> counts, long total)
+    {
+        Map<Integer, Double> sorted = new TreeMap<>();
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            int term = HumanPhenotypeOntologyKeys.toKey(count.getKey());
+            if (term >= 0 && count.getValue() > 0 && total > 0) {
+                sorted.put(term, -Math.log((count.getValue() * 1.0) / total) / Math.log(2));
+            }
+        }
+        int[] terms = new int[sorted.size()];
+        double[] content = new double[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Double> term : sorted.entrySet()) {
+            terms[i] = term.getKey();
+            content[i++] = term.getValue();
+        }
+        return new InformationContentTable(version, terms, content);
+    }
+
+    /**
+     * Read a table previously {@link #write(Path) written} to a file.
+     *
+     * @param file the file to read
+     * @return the table read from the file
+     * @throws IOException if the file cannot be read, or is invalid
+     */
+    static InformationContentTable read(Path file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            String version = in.readUTF();
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("Invalid information content table: " + file);
+            }
+            int[] terms = new int[size];
+            double[] content = new double[size];
+            for (int i = 0; i < size; ++i) {
+                terms[i] = in.readInt();
+                content[i] = in.readDouble();
+            }
+            return new InformationContentTable(version, terms, content);
+        }
+    }
+
+    /**
+     * Write this table to a file, replacing the previous file in a single step.
+     *
+     * @param file the file to write
+     * @throws IOException if writing the file fails
+     */
+    void write(Path file) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeUTF(StringUtils.defaultString(this.version));
+            out.writeInt(this.terms.length);
+            for (int i = 0; i < this.terms.length; ++i) {
+                out.writeInt(this.terms[i]);
+                out.writeDouble(this.content[i]);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The version of the annotated vocabulary from which the table was computed.
+     *
+     * @return a version identifier, may be empty if the version is not known
+     */
+    String getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * Get the information content of a term.
+     *
+     * @param termId the term identifier, for example {@code HP:0001250}
+     * @return the information content, or {@code 0} if the term doesn't annotate anything
+     */
+    double get(String termId)
+    {
+        int term = HumanPhenotypeOntologyKeys.toKey(termId);
+        if (term < 0) {
+            return 0;
+        }
+        int position = Arrays.binarySearch(this.terms, term);
+        return position >= 0 ? this.content[position] : 0;
+    }
+
+    /**
+     * The number of annotated terms in the table.
+     *
+     * @return a positive number, or {@code 0} if the table is empty
+     */
+    int size()
+    {
+        return this.terms.length;
+    }
+}
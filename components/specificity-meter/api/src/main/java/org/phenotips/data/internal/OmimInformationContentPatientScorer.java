@@ -23,16 +23,29 @@
 import org.phenotips.data.PatientSpecificity;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.VocabularyVersionRegistry;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
 import java.util.TimeZone;
 
 import javax.inject.Inject;
@@ -42,10 +55,15 @@
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
 
 /**
  * Patient scorer that computes a local score based on the information content provided by the selected positive and
  * negative features with regards to identifying OMIM disorders.
+ * <p>
+ * The information content of all the HPO terms is computed at once from the OMIM index, each time a new OMIM index is
+ * built, and stored in the permanent directory, so that scoring a patient doesn't need to query the index.
+ * </p>
  *
  * @version $Id$
  * @since 1.0M12
@@ -53,10 +71,19 @@
 @Component
 @Named("omimInformationContent")
 @Singleton
-public class OmimInformationContentPatientScorer implements PatientScorer, Initializable
+public class OmimInformationContentPatientScorer implements PatientScorer, Initializable, Disposable
 {
     private static final String SEARCH_FOR = "symptom";
 
+    /** The root of the HPO phenotypes, which is a symptom of all the disorders that have symptoms. */
+    private static final String ROOT_PHENOTYPE = "HP:0000001";
+
+    /** The name of the listener rebuilding the information content table when OMIM is reindexed. */
+    private static final String LISTENER_NAME = "omim-information-content";
+
+    /** Where to store the information content table, relative to the permanent directory. */
+    private static final String TABLE_FILE = "cache/specificity/omim-information-content.bin";
+
     /** Provides access to the OMIM ontology, where the information content is checked. */
     @Inject
     @Named("omim")
@@ -67,13 +94,45 @@ public class OmimInformationContentPatientScorer implements PatientScorer, Initi
     @Named("hpo")
     private Vocabulary hpo;
 
-    /** The total information present in OMIM that is reachable through phenotypes. */
-    private double totalTerms;
+    /** Tells when the OMIM index changed, and the information content must be computed again. */
+    @Inject
+    private VocabularyVersionRegistry versions;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    /** Provides access to the permanent directory, where the information content table is stored. */
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Logger logger;
+
+    /** The information content of the HPO terms in the current OMIM index, loaded when first needed. */
+    private volatile InformationContentTable table;
 
     @Override
     public void initialize() throws InitializationException
     {
-        this.totalTerms = this.omim.count(Collections.singletonMap(SEARCH_FOR, "HP:0000001"));
+        this.observationManager.addListener(new AbstractEventListener(LISTENER_NAME,
+            new VocabularyVersionChangedEvent())
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                if (source == OmimInformationContentPatientScorer.this.omim) {
+                    // Compute the new table right away, once the new index has been published, instead of during a
+                    // request; the version is asked directly, since the version registry may not have been notified yet
+                    rebuildTable(((Vocabulary) source).getVersion());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.observationManager.removeListener(LISTENER_NAME);
     }
 
     @Override
@@ -120,41 +179,119 @@ private Pair<Double, Integer> process(Patient p, boolean presentFeatures)
     /**
      * How much information is captured by a feature? In other words, how many diseases are selected by a feature out of
      * the total selectable diseases. If a feature doesn't select any diseases at all, the information content of its
-     * nearest represented ancestor is considered, with a slight boost for even more specificity.
+     * most informative represented ancestor is considered.
      *
      * @param f the target feature to measure
      * @return the information content captured by this term
      */
     private double informationContent(Feature f)
     {
-        String toSearch = f.getId();
-        double ic = informationContent(this.omim.count(Collections.singletonMap(SEARCH_FOR, toSearch)));
-        int i = 0;
-
-        while (ic == 0 && ++i < 5) {
-            VocabularyTerm term = this.hpo.getTerm(toSearch);
-            if (term == null) {
-                break;
+        InformationContentTable ic = getTable();
+        double result = ic.get(f.getId());
+        if (result == 0) {
+            for (String ancestor : this.hpo.getAncestorIds(f.getId())) {
+                result = Math.max(result, ic.get(ancestor));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the information content table for the current OMIM index, either already loaded, stored on disk, or computed
+     * from the index if the OMIM index changed.
+     *
+     * @return the information content table, may be empty if the OMIM index is not available
+     */
+    private InformationContentTable getTable()
+    {
+        InformationContentTable result = this.table;
+        if (result == null) {
+            synchronized (this) {
+                result = this.table;
+                if (result == null) {
+                    result = loadTable(this.versions.getVersion(this.omim));
+                    // An empty table means that the OMIM index isn't available yet, try again next time
+                    if (result.size() > 0) {
+                        this.table = result;
+                    }
+                }
             }
-            Set<VocabularyTerm> parents = term.getParents();
-            if (parents.isEmpty()) {
-                break;
+        }
+        return result;
+    }
+
+    private synchronized void rebuildTable(String version)
+    {
+        InformationContentTable result = loadTable(version);
+        this.table = result.size() > 0 ? result : null;
+    }
+
+    private InformationContentTable loadTable(String omimVersion)
+    {
+        String version = StringUtils.defaultString(omimVersion);
+        Path file = getTableFile();
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                InformationContentTable stored = InformationContentTable.read(file);
+                if (StringUtils.isNotEmpty(version) && version.equals(stored.getVersion())) {
+                    return stored;
+                }
+            } catch (IOException ex) {
+                this.logger.warn("Failed to read the stored information content table: {}", ex.getMessage());
             }
-            toSearch = parents.iterator().next().getId();
-            ic = informationContent(this.omim.count(Collections.singletonMap(SEARCH_FOR, toSearch)));
         }
-        return ic * (1 + i / 5);
+
+        InformationContentTable result = computeTable(version);
+        if (file != null && StringUtils.isNotEmpty(version) && result.size() > 0) {
+            try {
+                result.write(file);
+            } catch (IOException ex) {
+                this.logger.warn("Failed to store the information content table: {}", ex.getMessage());
+            }
+        }
+        return result;
     }
 
     /**
-     * How much information is contained in {@code n} terms out of the whole ontology?
+     * Count how many disorders are annotated with each phenotype. The symptoms of a disorder are indexed together with
+     * all their ancestors, so the counts are already propagated up the HPO DAG.
      *
-     * @param n the number of selected terms
-     * @return the information content captured by the selected terms
+     * @param version the current version of the OMIM index
+     * @return the computed table
      */
-    private double informationContent(long n)
+    private InformationContentTable computeTable(String version)
+    {
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, String> rootQuery = Collections.singletonMap(SEARCH_FOR, ROOT_PHENOTYPE);
+        long total = this.omim.count(rootQuery);
+        if (total > 0) {
+            Map<String, String> options = new HashMap<>();
+            options.put("rows", String.valueOf(total));
+            options.put("fl", SEARCH_FOR);
+            for (VocabularyTerm disorder : this.omim.search(rootQuery, options)) {
+                Object symptoms = disorder.get(SEARCH_FOR);
+                if (symptoms instanceof Collection) {
+                    for (Object symptom : (Collection<?>) symptoms) {
+                        increment(counts, String.valueOf(symptom));
+                    }
+                } else if (symptoms != null) {
+                    increment(counts, String.valueOf(symptoms));
+                }
+            }
+        }
+        return InformationContentTable.build(version, counts, total);
+    }
+
+    private void increment(Map<String, Long> counts, String termId)
+    {
+        Long count = counts.get(termId);
+        counts.put(termId, count == null ? 1L : count + 1);
+    }
+
+    private Path getTableFile()
     {
-        return n == 0 ? 0 : -Math.log((n * 1.0) / this.totalTerms) / Math.log(2);
+        File permanentDirectory = this.environment.getPermanentDirectory();
+        return permanentDirectory == null ? null : new File(permanentDirectory, TABLE_FILE).toPath();
     }
 
     private Date now()
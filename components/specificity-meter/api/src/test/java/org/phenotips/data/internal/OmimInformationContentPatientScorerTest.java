@@ -23,19 +23,32 @@
 import org.phenotips.data.PatientSpecificity;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.VocabularyVersionRegistry;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
 
 import org.xwiki.cache.CacheException;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.environment.Environment;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -45,6 +58,8 @@
 
 public class OmimInformationContentPatientScorerTest
 {
+    private static final Map<String, String> ROOT_QUERY = Collections.singletonMap("symptom", "HP:0000001");
+
     @Mock
     private Patient patient;
 
@@ -54,24 +69,29 @@
 
     private Vocabulary omim;
 
+    private VocabularyVersionRegistry versions;
+
     @Rule
     public final MockitoComponentMockingRule<PatientScorer> mocker =
         new MockitoComponentMockingRule<PatientScorer>(OmimInformationContentPatientScorer.class);
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setup() throws CacheException, ComponentLookupException
     {
         MockitoAnnotations.initMocks(this);
         Feature feature = mock(Feature.class);
-        when(feature.getId()).thenReturn("HP:1");
+        when(feature.getId()).thenReturn("HP:0000101");
         when(feature.isPresent()).thenReturn(true);
         this.features.add(feature);
         feature = mock(Feature.class);
-        when(feature.getId()).thenReturn("HP:2");
+        when(feature.getId()).thenReturn("HP:0000102");
         when(feature.isPresent()).thenReturn(false);
         this.features.add(feature);
         feature = mock(Feature.class);
-        when(feature.getId()).thenReturn("HP:3");
+        when(feature.getId()).thenReturn("HP:0000103");
         when(feature.isPresent()).thenReturn(true);
         this.features.add(feature);
         feature = mock(Feature.class);
@@ -79,18 +99,22 @@ public void setup() throws CacheException, ComponentLookupException
         this.features.add(feature);
 
         this.hpo = this.mocker.getInstance(Vocabulary.class, "hpo");
-        VocabularyTerm hp3 = mock(VocabularyTerm.class);
-        VocabularyTerm hp4 = mock(VocabularyTerm.class);
-        when(this.hpo.getTerm("HP:3")).thenReturn(hp3);
-        when(hp3.getParents()).thenReturn(Collections.singleton(hp4));
-        when(hp4.getId()).thenReturn("HP:4");
+        when(this.hpo.getAncestorIds("HP:0000103"))
+            .thenReturn(new LinkedHashSet<>(Arrays.asList("HP:0000104", "HP:0000001")));
 
+        // 60 disorders with symptoms: 3 with HP:0000101, 1 with HP:0000102, 2 with HP:0000104, 0 with HP:0000103
         this.omim = this.mocker.getInstance(Vocabulary.class, "omim");
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:0000001"))).thenReturn(60L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:1"))).thenReturn(3L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:2"))).thenReturn(1L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:3"))).thenReturn(0L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:4"))).thenReturn(2L);
+        List<VocabularyTerm> disorders = new ArrayList<>();
+        addDisorders(disorders, 3, "HP:0000101");
+        addDisorders(disorders, 1, "HP:0000102");
+        addDisorders(disorders, 2, "HP:0000104");
+        addDisorders(disorders, 54, null);
+        when(this.omim.count(ROOT_QUERY)).thenReturn(60L);
+        when(this.omim.search(Matchers.eq(ROOT_QUERY), Matchers.anyMapOf(String.class, String.class)))
+            .thenReturn(disorders);
+
+        this.versions = this.mocker.getInstance(VocabularyVersionRegistry.class);
+        when(this.versions.getVersion(this.omim)).thenReturn("1");
     }
 
     @Test
@@ -130,39 +154,12 @@ public void getSpecificityUsesInformationContent() throws Exception
     @Test
     public void getScoreWithNonInformativeFeaturesReturns0() throws ComponentLookupException
     {
-        VocabularyTerm hp10 = mock(VocabularyTerm.class);
-        VocabularyTerm hp11 = mock(VocabularyTerm.class);
-        VocabularyTerm hp12 = mock(VocabularyTerm.class);
-        VocabularyTerm hp13 = mock(VocabularyTerm.class);
-        VocabularyTerm hp14 = mock(VocabularyTerm.class);
-        VocabularyTerm hp15 = mock(VocabularyTerm.class);
-        when(this.hpo.getTerm("HP:10")).thenReturn(hp10);
-        when(this.hpo.getTerm("HP:11")).thenReturn(hp11);
-        when(this.hpo.getTerm("HP:12")).thenReturn(hp12);
-        when(this.hpo.getTerm("HP:13")).thenReturn(hp13);
-        when(this.hpo.getTerm("HP:14")).thenReturn(hp14);
-        when(this.hpo.getTerm("HP:15")).thenReturn(hp15);
-        when(hp10.getId()).thenReturn("HP:10");
-        when(hp11.getId()).thenReturn("HP:11");
-        when(hp12.getId()).thenReturn("HP:12");
-        when(hp13.getId()).thenReturn("HP:13");
-        when(hp14.getId()).thenReturn("HP:14");
-        when(hp15.getId()).thenReturn("HP:15");
-        when(hp10.getParents()).thenReturn(Collections.singleton(hp11));
-        when(hp11.getParents()).thenReturn(Collections.singleton(hp12));
-        when(hp12.getParents()).thenReturn(Collections.singleton(hp13));
-        when(hp13.getParents()).thenReturn(Collections.singleton(hp14));
-        when(hp14.getParents()).thenReturn(Collections.singleton(hp15));
-
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:10"))).thenReturn(0L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:11"))).thenReturn(0L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:12"))).thenReturn(0L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:13"))).thenReturn(0L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:14"))).thenReturn(0L);
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:15"))).thenReturn(0L);
+        when(this.hpo.getAncestorIds("HP:0000110"))
+            .thenReturn(new LinkedHashSet<>(
+                Arrays.asList("HP:0000111", "HP:0000112", "HP:0000113", "HP:0000114", "HP:0000115")));
 
         Feature feature = mock(Feature.class);
-        when(feature.getId()).thenReturn("HP:10");
+        when(feature.getId()).thenReturn("HP:0000110");
         when(feature.isPresent()).thenReturn(true);
         Mockito.doReturn(Collections.singleton(feature)).when(this.patient).getFeatures();
 
@@ -172,17 +169,77 @@ public void getScoreWithNonInformativeFeaturesReturns0() throws ComponentLookupE
     @Test
     public void getScoreWithParentlessTermDoesntThrowException() throws ComponentLookupException
     {
-        VocabularyTerm hp10 = mock(VocabularyTerm.class);
-        when(this.hpo.getTerm("HP:10")).thenReturn(hp10);
-        when(hp10.getId()).thenReturn("HP:10");
-        when(hp10.getParents()).thenReturn(Collections.<VocabularyTerm>emptySet());
-        when(this.omim.count(Collections.singletonMap("symptom", "HP:10"))).thenReturn(0L);
+        when(this.hpo.getAncestorIds("HP:0000110")).thenReturn(Collections.<String>emptySet());
 
         Feature feature = mock(Feature.class);
-        when(feature.getId()).thenReturn("HP:10");
+        when(feature.getId()).thenReturn("HP:0000110");
         when(feature.isPresent()).thenReturn(true);
         Mockito.doReturn(Collections.singleton(feature)).when(this.patient).getFeatures();
 
         Assert.assertEquals(0.0, this.mocker.getComponentUnderTest().getScore(this.patient), 0.0);
     }
+
+    @Test
+    public void informationContentIsComputedOnce() throws ComponentLookupException
+    {
+        Mockito.doReturn(this.features).when(this.patient).getFeatures();
+        this.mocker.getComponentUnderTest().getScore(this.patient);
+        this.mocker.getComponentUnderTest().getScore(this.patient);
+        this.mocker.getComponentUnderTest().getSpecificity(this.patient);
+        Mockito.verify(this.omim, Mockito.times(1)).search(Matchers.eq(ROOT_QUERY),
+            Matchers.anyMapOf(String.class, String.class));
+        Mockito.verify(this.omim, Mockito.never()).getTerm(Matchers.anyString());
+        Mockito.verify(this.hpo, Mockito.never()).getTerm(Matchers.anyString());
+    }
+
+    @Test
+    public void storedInformationContentIsReusedForTheSameVersion() throws Exception
+    {
+        when(this.mocker.<Environment>getInstance(Environment.class).getPermanentDirectory())
+            .thenReturn(this.folder.getRoot());
+        Mockito.doReturn(this.features).when(this.patient).getFeatures();
+        this.mocker.getComponentUnderTest().getScore(this.patient);
+
+        PatientScorer other = new OmimInformationContentPatientScorer();
+        for (String field : Arrays.asList("omim", "hpo", "versions", "environment", "logger")) {
+            ReflectionUtils.setFieldValue(other, field,
+                ReflectionUtils.getFieldValue(this.mocker.getComponentUnderTest(), field));
+        }
+        Assert.assertEquals(0.56, other.getScore(this.patient), 0.01);
+        Mockito.verify(this.omim, Mockito.times(1)).search(Matchers.eq(ROOT_QUERY),
+            Matchers.anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void informationContentIsRecomputedWhenOmimIsReindexed() throws Exception
+    {
+        Mockito.doReturn(this.features).when(this.patient).getFeatures();
+        this.mocker.getComponentUnderTest().getScore(this.patient);
+
+        ArgumentCaptor<EventListener> listener = ArgumentCaptor.forClass(EventListener.class);
+        Mockito.verify(this.mocker.<ObservationManager>getInstance(ObservationManager.class))
+            .addListener(listener.capture());
+        when(this.omim.getVersion()).thenReturn("2");
+        listener.getValue().onEvent(new VocabularyVersionChangedEvent("omim"), this.omim, null);
+        listener.getValue().onEvent(new VocabularyVersionChangedEvent("hpo"), this.hpo, null);
+
+        Mockito.verify(this.omim, Mockito.times(2)).search(Matchers.eq(ROOT_QUERY),
+            Matchers.anyMapOf(String.class, String.class));
+        Assert.assertEquals(0.56, this.mocker.getComponentUnderTest().getScore(this.patient), 0.01);
+        Mockito.verify(this.omim, Mockito.times(2)).search(Matchers.eq(ROOT_QUERY),
+            Matchers.anyMapOf(String.class, String.class));
+    }
+
+    private void addDisorders(List<VocabularyTerm> disorders, int count, String symptom)
+    {
+        for (int i = 0; i < count; ++i) {
+            VocabularyTerm disorder = mock(VocabularyTerm.class);
+            if (symptom == null) {
+                when(disorder.get("symptom")).thenReturn("HP:0000001");
+            } else {
+                when(disorder.get("symptom")).thenReturn(Arrays.asList("HP:0000001", symptom));
+            }
+            disorders.add(disorder);
+        }
+    }
 }
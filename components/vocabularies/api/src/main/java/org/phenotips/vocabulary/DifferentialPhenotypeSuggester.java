@@ -0,0 +1,48 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Suggests phenotypes to investigate next in a patient, chosen so that their presence or absence best tells apart the
+ * disorders matching the phenotypes already known.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+@Role
+public interface DifferentialPhenotypeSuggester
+{
+    /**
+     * Compute a list of phenotypes to investigate, which maximize the probability of getting more accurate automatic
+     * diagnosis suggestions.
+     *
+     * @param phenotypes the HPO identifiers of the phenotypes observed in the patient
+     * @param negativePhenotypes the HPO identifiers of the phenotypes not observed in the patient
+     * @param limit the maximum number of phenotypes to return
+     * @return the suggested phenotypes, best first; an empty list if nothing can be suggested
+     */
+    List<PhenotypeSuggestion> getDifferentialPhenotypes(Collection<String> phenotypes,
+        Collection<String> negativePhenotypes, int limit);
+}
@@ -0,0 +1,90 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * A phenotype worth investigating in a patient, as suggested by a {@link DifferentialPhenotypeSuggester}.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+public final class PhenotypeSuggestion
+{
+    /** @see #getId() */
+    private final String id;
+
+    /** @see #getName() */
+    private final String name;
+
+    /** @see #getScore() */
+    private final double score;
+
+    /**
+     * Constructor initializing all the required fields.
+     *
+     * @param id the HPO identifier of the phenotype
+     * @param name the name of the phenotype
+     * @param score how useful investigating this phenotype is
+     */
+    public PhenotypeSuggestion(String id, String name, double score)
+    {
+        this.id = id;
+        this.name = name;
+        this.score = score;
+    }
+
+    /**
+     * The identifier of the suggested phenotype.
+     *
+     * @return an HPO identifier, in the {@code HP:1234567} format
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * The name of the suggested phenotype.
+     *
+     * @return the name of the phenotype in the HPO
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * How useful investigating this phenotype is for telling apart the disorders matching the patient; only meaningful
+     * when compared to the scores of the other suggestions made for the same patient.
+     *
+     * @return a positive number, higher is better
+     */
+    public double getScore()
+    {
+        return this.score;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.id + " (" + this.score + ')';
+    }
+}
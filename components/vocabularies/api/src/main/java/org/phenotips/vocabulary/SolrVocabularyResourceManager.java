@@ -50,6 +50,14 @@
      */
     Cache<VocabularyTerm> getTermCache();
 
+    /**
+     * Get the usage statistics of the {@link #getTermCache() term cache}.
+     *
+     * @return the cache statistics, or {@code null} if the cache doesn't collect statistics
+     * @since 1.3M1
+     */
+    VocabularyCacheStatistics getTermCacheStatistics();
+
     /**
      * Get the Solr core used for the target vocabulary.
      *
@@ -127,6 +127,40 @@
      */
     long getDistance(VocabularyTerm fromTerm, VocabularyTerm toTerm);
 
+    /**
+     * Get the identifiers of the ancestors (both direct and indirect ancestors) of a term, without loading the actual
+     * ancestor terms.
+     *
+     * @param termId the identifier of the term whose ancestors are requested, in the format
+     *            {@code <vocabulary prefix>:<term id>}, for example {@code HP:0002066}
+     * @return a set of term identifiers, or an empty set if the term doesn't exist or doesn't have any ancestors
+     * @since 1.3M1
+     */
+    Set<String> getAncestorIds(String termId);
+
+    /**
+     * Get the identifiers of the ancestors (both direct and indirect ancestors) of a term, <em>and</em> the identifier
+     * of the term itself, without loading the actual ancestor terms.
+     *
+     * @param termId the identifier of the term whose ancestors are requested, in the format
+     *            {@code <vocabulary prefix>:<term id>}, for example {@code HP:0002066}
+     * @return a set of term identifiers, or an empty set if the term doesn't exist
+     * @since 1.3M1
+     */
+    Set<String> getAncestorAndSelfIds(String termId);
+
+    /**
+     * Get the identifiers of the descendants (both direct and indirect descendants) of a term, without loading the
+     * actual descendant terms.
+     *
+     * @param termId the identifier of the term whose descendants are requested, in the format
+     *            {@code <vocabulary prefix>:<term id>}, for example {@code HP:0002066}
+     * @return a set of term identifiers, or an empty set if the term doesn't exist, doesn't have any descendants, or
+     *         if this is an unstructured vocabulary
+     * @since 1.3M1
+     */
+    Set<String> getDescendantIds(String termId);
+
     /**
      * The identifier of the vocabulary, used internally to differentiate between different vocabularies and different
      * implementations of the same vocabulary.
@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.List;
+
+/**
+ * Usage statistics for the term cache of a vocabulary. Also used as the management interface exposed over JMX, so all
+ * the getters must stay simple values.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+public interface VocabularyCacheStatistics
+{
+    /**
+     * The number of lookups that were answered from the cache, including cached "term doesn't exist" answers.
+     *
+     * @return a positive number, {@code 0} if the cache wasn't used yet
+     */
+    long getHits();
+
+    /**
+     * The number of lookups that weren't answered from the cache, and required a query in the index.
+     *
+     * @return a positive number, {@code 0} if the cache wasn't used yet
+     */
+    long getMisses();
+
+    /**
+     * The fraction of lookups answered from the cache.
+     *
+     * @return a number between {@code 0} and {@code 1}
+     */
+    double getHitRatio();
+
+    /**
+     * The number of terms that were evicted from the cache because it was full, or because they expired.
+     *
+     * @return a positive number
+     */
+    long getEvictions();
+
+    /**
+     * The number of terms loaded into the cache after a miss.
+     *
+     * @return a positive number
+     */
+    long getLoads();
+
+    /**
+     * The average time needed to load a missing term from the index into the cache.
+     *
+     * @return the average load time, in milliseconds
+     */
+    double getAverageLoadTime();
+
+    /**
+     * The maximum number of terms that the cache will hold.
+     *
+     * @return a positive number
+     */
+    int getMaxSize();
+
+    /**
+     * The identifiers of the terms most often requested from the cache, in descending order of their usage.
+     *
+     * @param limit the maximum number of identifiers to return
+     * @return a list of term identifiers, may be empty
+     */
+    List<String> getMostRequestedTerms(int limit);
+
+    /** Reset all the counters to {@code 0}. */
+    void reset();
+}
@@ -56,7 +56,8 @@
 
     /**
      * Called for each term during vocabulary reindexing, this method modifies the parsed terms by changing, adding or
-     * removing fields.
+     * removing fields. Terms are extended in parallel, so this method may be called concurrently from several threads,
+     * for different terms.
      *
      * @param term the parsed term which can be altered
      * @param vocabulary the identifier of the vocabulary being indexed, the {@code @Named} hint used for its
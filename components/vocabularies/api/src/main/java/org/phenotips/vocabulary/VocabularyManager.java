@@ -20,7 +20,9 @@
 import org.xwiki.component.annotation.Role;
 import org.xwiki.stability.Unstable;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides access to the available vocabularies and their terms.
@@ -43,6 +45,19 @@
      */
     VocabularyTerm resolveTerm(String termId);
 
+    /**
+     * Retrieve several terms at once, possibly from different vocabularies. The identifiers are grouped by their
+     * vocabulary prefix, and each vocabulary is asked for all its terms at once, which is much faster than resolving
+     * the terms one by one.
+     *
+     * @param termIds the term identifiers, in the format {@code <vocabulary prefix>:<term id>}, for example
+     *            {@code HP:0002066}
+     * @return the found terms, keyed by the requested identifier, in the order of the requested identifiers; terms
+     *         that don't exist, or don't belong to an available vocabulary, are missing from the map
+     * @since 1.3M1
+     */
+    Map<String, VocabularyTerm> resolveTerms(Collection<String> termIds);
+
     /**
      * Retrieve a vocabulary given its identifier.
      *
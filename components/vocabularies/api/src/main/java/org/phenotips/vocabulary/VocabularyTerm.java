@@ -79,6 +79,26 @@
      */
     Set<VocabularyTerm> getAncestorsAndSelf();
 
+    /**
+     * Returns the identifiers of the ancestors (both direct and indirect ancestors) of this term. Unlike
+     * {@link #getAncestors()}, this doesn't need to load the actual terms from the vocabulary.
+     *
+     * @return a set of term identifiers, or an empty set if the term doesn't have any ancestors in the vocabulary
+     * @since 1.3M1
+     */
+    Set<String> getAncestorIds();
+
+    /**
+     * Returns the identifiers of the ancestors (both direct and indirect ancestors) of this term <em>and</em> the
+     * identifier of the term itself. Unlike {@link #getAncestorsAndSelf()}, this doesn't need to load the actual terms
+     * from the vocabulary.
+     *
+     * @return a set of term identifiers, or a set with one identifier (this term's) if the term doesn't have any
+     *         ancestors in the vocabulary
+     * @since 1.3M1
+     */
+    Set<String> getAncestorAndSelfIds();
+
     /**
      * Find the distance to another term in the same vocabulary, if the owner vocabulary is a structured ontology that
      * supports computing such a distance.
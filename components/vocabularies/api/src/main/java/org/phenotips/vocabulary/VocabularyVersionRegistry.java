@@ -0,0 +1,52 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.Map;
+
+/**
+ * Keeps the versions of the available vocabularies in memory, so that frequent version reads don't need to query the
+ * vocabularies. A version is read from the vocabulary when first requested, and updated whenever the vocabulary is
+ * reindexed, as signaled by a {@link org.phenotips.vocabulary.events.VocabularyVersionChangedEvent}.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+@Role
+public interface VocabularyVersionRegistry
+{
+    /**
+     * Get the current version of a vocabulary.
+     *
+     * @param vocabulary the vocabulary whose version is requested
+     * @return a version identifier, or {@code null} if the version cannot be determined
+     */
+    String getVersion(Vocabulary vocabulary);
+
+    /**
+     * Get the current versions of all the available vocabularies.
+     *
+     * @return a map with the vocabulary names as keys and their versions as values; vocabularies whose version cannot
+     *         be determined are not included
+     */
+    Map<String, String> getVersions();
+}
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.events;
+
+import org.xwiki.observation.event.Event;
+import org.xwiki.stability.Unstable;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Notifies that a vocabulary was reindexed, and its version may have changed. The event source is the reindexed
+ * {@link org.phenotips.vocabulary.Vocabulary}.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Unstable
+public class VocabularyVersionChangedEvent implements Event
+{
+    /** The identifier of the reindexed vocabulary, or {@code null} to match all vocabularies. */
+    private final String vocabularyId;
+
+    /** Default constructor, to be used for declaring the events a listener wants to observe. */
+    public VocabularyVersionChangedEvent()
+    {
+        this(null);
+    }
+
+    /**
+     * Simple constructor passing all the required information.
+     *
+     * @param vocabularyId the {@link org.phenotips.vocabulary.Vocabulary#getIdentifier() identifier} of the reindexed
+     *            vocabulary
+     */
+    public VocabularyVersionChangedEvent(String vocabularyId)
+    {
+        this.vocabularyId = vocabularyId;
+    }
+
+    /**
+     * The vocabulary that was reindexed.
+     *
+     * @return the identifier of the vocabulary, may be {@code null} for an event used as a filter
+     */
+    public String getVocabularyId()
+    {
+        return this.vocabularyId;
+    }
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        return otherEvent instanceof VocabularyVersionChangedEvent && (this.vocabularyId == null
+            || StringUtils.equals(this.vocabularyId, ((VocabularyVersionChangedEvent) otherEvent).getVocabularyId()));
+    }
+}
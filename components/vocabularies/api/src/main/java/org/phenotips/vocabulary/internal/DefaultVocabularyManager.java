@@ -22,18 +22,31 @@
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
 
 /**
  * Default implementation of the {@link VocabularyManager} component, which uses all the {@link Vocabulary vocabularies}
@@ -44,8 +57,18 @@
  */
 @Component
 @Singleton
-public class DefaultVocabularyManager implements VocabularyManager, Initializable
+public class DefaultVocabularyManager implements VocabularyManager, Initializable, Disposable
 {
+    /** The maximum number of vocabularies queried in parallel by {@link #resolveTerms(Collection)}. */
+    private static final int MAX_PARALLEL_QUERIES = 4;
+
+    /** How long an idle query thread is kept, in seconds. */
+    private static final long THREAD_KEEP_ALIVE = 60;
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
     /** The currently available vocabularies. */
     @Inject
     private Map<String, Vocabulary> vocabularies;
@@ -53,6 +76,12 @@ public class DefaultVocabularyManager implements VocabularyManager, Initializabl
     /** The available vocabularies, including keys for each of their aliases. */
     private Map<String, Vocabulary> aliasVocabularies;
 
+    /**
+     * Runs the queries for different vocabularies in parallel; when all the threads are busy, the query is run in the
+     * requesting thread instead.
+     */
+    private ThreadPoolExecutor executor;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -62,6 +91,18 @@ public void initialize() throws InitializationException
                 this.aliasVocabularies.put(alias, vocabulary);
             }
         }
+        this.executor = new ThreadPoolExecutor(0, MAX_PARALLEL_QUERIES, THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new BasicThreadFactory.Builder().namingPattern("vocabulary-query-%d").daemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
     }
 
     @Override
@@ -74,6 +115,56 @@ public VocabularyTerm resolveTerm(String termId)
         return null;
     }
 
+    @Override
+    public Map<String, VocabularyTerm> resolveTerms(Collection<String> termIds)
+    {
+        Map<String, VocabularyTerm> result = new LinkedHashMap<>();
+        if (termIds == null || termIds.isEmpty()) {
+            return result;
+        }
+        Map<Vocabulary, Set<String>> groups = new LinkedHashMap<>();
+        for (String termId : termIds) {
+            Vocabulary vocabulary = getVocabularyForTerm(termId);
+            if (vocabulary != null) {
+                Set<String> group = groups.get(vocabulary);
+                if (group == null) {
+                    group = new LinkedHashSet<>();
+                    groups.put(vocabulary, group);
+                }
+                group.add(termId);
+            }
+        }
+
+        Map<String, VocabularyTerm> found = new HashMap<>();
+        if (groups.size() == 1) {
+            Map.Entry<Vocabulary, Set<String>> group = groups.entrySet().iterator().next();
+            found.putAll(resolveVocabularyTerms(group.getKey(), group.getValue()));
+        } else {
+            List<Future<Map<String, VocabularyTerm>>> pending = new ArrayList<>(groups.size());
+            for (final Map.Entry<Vocabulary, Set<String>> group : groups.entrySet()) {
+                pending.add(this.executor.submit(new Callable<Map<String, VocabularyTerm>>()
+                {
+                    @Override
+                    public Map<String, VocabularyTerm> call()
+                    {
+                        return resolveVocabularyTerms(group.getKey(), group.getValue());
+                    }
+                }));
+            }
+            for (Future<Map<String, VocabularyTerm>> group : pending) {
+                found.putAll(waitFor(group));
+            }
+        }
+
+        for (String termId : termIds) {
+            VocabularyTerm term = found.get(termId);
+            if (term != null) {
+                result.put(termId, term);
+            }
+        }
+        return result;
+    }
+
     @Override
     public Vocabulary getVocabulary(String vocabularyId)
     {
@@ -86,6 +177,45 @@ public List<String> getAvailableVocabularies()
         return new ArrayList<String>(this.vocabularies.keySet());
     }
 
+    /**
+     * Resolves the terms belonging to one vocabulary with a single batch request. Identifiers not returned by the batch
+     * request, such as alternative identifiers, are resolved one by one.
+     *
+     * @param vocabulary the vocabulary to query
+     * @param termIds the identifiers of the terms to resolve
+     * @return the found terms, keyed by the requested identifier
+     */
+    private Map<String, VocabularyTerm> resolveVocabularyTerms(Vocabulary vocabulary, Set<String> termIds)
+    {
+        Map<String, VocabularyTerm> result = new HashMap<>();
+        for (VocabularyTerm term : vocabulary.getTerms(termIds)) {
+            if (term != null && termIds.contains(term.getId())) {
+                result.put(term.getId(), term);
+            }
+        }
+        for (String termId : termIds) {
+            if (!result.containsKey(termId)) {
+                VocabularyTerm term = vocabulary.getTerm(termId);
+                if (term != null) {
+                    result.put(termId, term);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Map<String, VocabularyTerm> waitFor(Future<Map<String, VocabularyTerm>> group)
+    {
+        try {
+            return group.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            this.logger.warn("Failed to resolve vocabulary terms: {}", ex.getCause().getMessage());
+        }
+        return new HashMap<>();
+    }
+
     /**
      * Finds the owner vocabulary given a term identifier. The vocabulary is identified by the term ID prefix, for
      * example {@code HP} in {@code HP:0002066}.
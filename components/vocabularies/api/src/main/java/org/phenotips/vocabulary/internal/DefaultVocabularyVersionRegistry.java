@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyVersionRegistry;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Default implementation of the {@link VocabularyVersionRegistry} component. Versions that cannot be determined aren't
+ * remembered, so they are requested again the next time.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Component
+@Singleton
+public class DefaultVocabularyVersionRegistry implements VocabularyVersionRegistry, Initializable, Disposable
+{
+    /** The name of the listener updating the versions when a vocabulary is reindexed. */
+    private static final String LISTENER_NAME = "vocabulary-version-registry";
+
+    /** The available vocabularies, with their names as keys. */
+    @Inject
+    private Map<String, Vocabulary> vocabularies;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    /** The known versions, with the vocabulary identifiers as keys. */
+    private final ConcurrentMap<String, String> versions = new ConcurrentHashMap<>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.observationManager.addListener(new AbstractEventListener(LISTENER_NAME,
+            new VocabularyVersionChangedEvent())
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                if (source instanceof Vocabulary) {
+                    readVersion((Vocabulary) source);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.observationManager.removeListener(LISTENER_NAME);
+    }
+
+    @Override
+    public String getVersion(Vocabulary vocabulary)
+    {
+        String version = this.versions.get(vocabulary.getIdentifier());
+        if (version == null) {
+            version = readVersion(vocabulary);
+        }
+        return version;
+    }
+
+    @Override
+    public Map<String, String> getVersions()
+    {
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, Vocabulary> vocabulary : this.vocabularies.entrySet()) {
+            String version = getVersion(vocabulary.getValue());
+            if (StringUtils.isNotBlank(version)) {
+                result.put(vocabulary.getKey(), version);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ask the vocabulary for its current version, and remember it.
+     *
+     * @param vocabulary the vocabulary to query
+     * @return the current version, may be {@code null}
+     */
+    private String readVersion(Vocabulary vocabulary)
+    {
+        String version = vocabulary.getVersion();
+        if (StringUtils.isNotBlank(version)) {
+            this.versions.put(vocabulary.getIdentifier(), version);
+        } else {
+            this.versions.remove(vocabulary.getIdentifier());
+        }
+        return version;
+    }
+}
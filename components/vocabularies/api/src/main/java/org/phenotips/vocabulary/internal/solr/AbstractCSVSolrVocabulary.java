@@ -24,8 +24,8 @@
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
 
 import org.apache.solr.client.solrj.SolrQuery;
@@ -47,8 +47,6 @@
 @Unstable
 public abstract class AbstractCSVSolrVocabulary extends AbstractSolrVocabulary
 {
-    protected static final String VERSION_FIELD_NAME = "version";
-
     protected static final String SYMBOL_EXACT = "symbolExact^100";
 
     /** The number of documents to be added and committed to Solr at a time. */
@@ -59,17 +57,10 @@ public abstract class AbstractCSVSolrVocabulary extends AbstractSolrVocabulary
     @Override
     public int reindex(String sourceUrl)
     {
-        this.clear();
-        return this.index(sourceUrl);
+        return reindexInShadowCore(sourceUrl);
     }
 
-    /**
-     * Add an ontology to the index.
-     *
-     * @param sourceUrl the URL to be indexed
-     * @return {@code 0} if the indexing succeeded, {@code 1} if writing to the Solr server failed, {@code 2} if the
-     *         specified URL is invalid
-     */
+    @Override
     protected int index(String sourceUrl)
     {
         Collection<SolrInputDocument> data = null;
@@ -82,14 +73,14 @@ protected int index(String sourceUrl)
             return 2;
         }
         try {
-            Collection<SolrInputDocument> termBatch = new HashSet<SolrInputDocument>();
+            Collection<SolrInputDocument> termBatch = new ArrayList<>(getSolrDocsPerBatch());
             Iterator<SolrInputDocument> dataIterator = data.iterator();
             int batchCounter = 0;
             while (dataIterator.hasNext()) {
                 /* Resetting when the batch fills */
                 if (batchCounter == getSolrDocsPerBatch()) {
-                    commitTerms(termBatch);
-                    termBatch = new HashSet<>();
+                    addTerms(termBatch);
+                    termBatch = new ArrayList<>(getSolrDocsPerBatch());
                     batchCounter = 0;
                 }
                 SolrInputDocument item = dataIterator.next();
@@ -108,32 +99,6 @@ protected int index(String sourceUrl)
         return 1;
     }
 
-    protected void commitTerms(Collection<SolrInputDocument> batch)
-        throws SolrServerException, IOException, OutOfMemoryError
-    {
-        this.externalServicesAccess.getSolrConnection().add(batch);
-        this.externalServicesAccess.getSolrConnection().commit();
-        this.externalServicesAccess.getTermCache().removeAll();
-    }
-
-    /**
-     * Delete all the data in the Solr index.
-     *
-     * @return {@code 0} if the command was successful, {@code 1} otherwise
-     */
-    protected int clear()
-    {
-        try {
-            this.externalServicesAccess.getSolrConnection().deleteByQuery("*:*");
-            return 0;
-        } catch (SolrServerException ex) {
-            this.logger.error("SolrServerException while clearing the Solr index", ex);
-        } catch (IOException ex) {
-            this.logger.error("IOException while clearing the Solr index", ex);
-        }
-        return 1;
-    }
-
     protected VocabularyTerm requestTerm(String queryString, String phraseFields)
     {
         QueryResponse response;
@@ -23,12 +23,20 @@
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -38,6 +46,7 @@
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
 
 /**
  * Ontologies processed from OBO files share much of the processing code.
@@ -52,40 +61,79 @@ public abstract class AbstractOBOSolrVocabulary extends AbstractSolrVocabulary
      */
     protected static final String ALTERNATIVE_ID_FIELD_NAME = "alt_id";
 
-    protected static final String VERSION_FIELD_NAME = "version";
+    /** The name of the field holding the direct parents of a term. */
+    protected static final String PARENT_FIELD_NAME = "is_a";
+
+    /** The name of the field holding the name of a term. */
+    protected static final String NAME_FIELD_NAME = "name";
+
+    /** The name of the field holding the synonyms of a term. */
+    protected static final String SYNONYM_FIELD_NAME = "synonym";
+
+    /** How many documents to fetch at once when loading the ontology structure from the index. */
+    private static final int GRAPH_LOADING_BATCH_SIZE = 10000;
+
+    /** How long to wait before trying again to load the ontology structure, after a failure, in milliseconds. */
+    private static final long GRAPH_RETRY_DELAY = 5 * 60 * 1000L;
+
+    /** The in-memory structure of the ontology, lazily loaded from the index and rebuilt after each reindex. */
+    private volatile OntologyGraph graph;
+
+    /** Lock used for loading the ontology structure, separate from the reindex lock so readers are never blocked. */
+    private final Object graphLock = new Object();
+
+    /** When the ontology structure may be loaded again after a failure, cleared once a new index is published. */
+    private volatile long graphRetryTime;
+
+    /** The structure of the ontology being reindexed, which replaces {@link #graph} once the new index is published. */
+    private OntologyGraph indexedGraph;
+
+    /** The in-memory prefix index of term labels, lazily loaded when first needed and rebuilt after each reindex. */
+    private volatile PrefixSuggester suggester;
+
+    /** Whether the suggester is being loaded; meanwhile, suggestions are answered by Solr instead of waiting. */
+    private final AtomicBoolean loadingSuggester = new AtomicBoolean();
+
+    /** The suggester for the ontology being reindexed, replacing {@link #suggester} once the new index is published. */
+    private PrefixSuggester indexedSuggester;
 
     /** The number of documents to be added and committed to Solr at a time. */
     protected abstract int getSolrDocsPerBatch();
 
     @Override
-    public VocabularyTerm getTerm(String id)
+    protected VocabularyTerm loadTerm(String id)
     {
-        VocabularyTerm result = super.getTerm(id);
+        VocabularyTerm result = super.loadTerm(id);
         if (result == null) {
             Map<String, String> queryParameters = new HashMap<>();
             queryParameters.put(ALTERNATIVE_ID_FIELD_NAME, id);
             List<VocabularyTerm> results = search(queryParameters);
             if (results != null && !results.isEmpty()) {
-                result = search(queryParameters).iterator().next();
+                result = results.get(0);
             }
         }
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Synchronized like {@link #reindexInShadowCore(String)}, so that the structures built for the new index are only
+     * released once, by the reindex which built them, and never while another reindex is using them.
+     * </p>
+     */
     @Override
-    public int reindex(String sourceUrl)
+    public synchronized int reindex(String sourceUrl)
     {
-        this.clear();
-        return this.index(sourceUrl);
+        try {
+            return reindexInShadowCore(sourceUrl);
+        } finally {
+            this.indexedGraph = null;
+            this.indexedSuggester = null;
+        }
     }
 
-    /**
-     * Add a vocabulary to the index.
-     *
-     * @param sourceUrl the address from where to get the vocabulary source file
-     * @return {@code 0} if the indexing succeeded, {@code 1} if writing to the Solr server failed, {@code 2} if the
-     *         specified URL is invalid
-     */
+    @Override
     protected int index(String sourceUrl)
     {
         String realOntologyUrl = StringUtils.defaultIfBlank(sourceUrl, getDefaultSourceLocation());
@@ -96,29 +144,30 @@ protected int index(String sourceUrl)
         if (data == null || data.isEmpty()) {
             return 2;
         }
+        // The structure is extracted before the terms are released while converting them into documents
+        this.indexedGraph = buildGraph(data);
+        if (this.suggester != null) {
+            // Only rebuild the suggester if it is used, otherwise it will be loaded from the index when first needed
+            this.indexedSuggester = buildSuggester(data, this.indexedGraph);
+        }
+        ExecutorService writer = Executors.newSingleThreadExecutor();
         try {
-            Collection<SolrInputDocument> termBatch = new HashSet<SolrInputDocument>();
+            // At most one batch is being written while the next one is prepared, so memory use stays bounded
+            Future<?> pendingBatch = null;
+            Collection<SolrInputDocument> termBatch = new ArrayList<>(getSolrDocsPerBatch());
             Iterator<Map.Entry<String, TermData>> dataIterator = data.entrySet().iterator();
-            int batchCounter = 0;
             while (dataIterator.hasNext()) {
-                /* Resetting when the batch fills */
-                if (batchCounter == getSolrDocsPerBatch()) {
-                    commitTerms(termBatch);
-                    termBatch = new HashSet<>();
-                    batchCounter = 0;
+                Map.Entry<String, TermData> term = dataIterator.next();
+                addAncestors(term.getKey(), term.getValue());
+                termBatch.add(toDocument(term.getValue()));
+                dataIterator.remove();
+                if (termBatch.size() == getSolrDocsPerBatch()) {
+                    pendingBatch = submitBatch(writer, pendingBatch, termBatch);
+                    termBatch = new ArrayList<>(getSolrDocsPerBatch());
                 }
-                Map.Entry<String, TermData> item = dataIterator.next();
-                SolrInputDocument doc = new SolrInputDocument();
-                for (Map.Entry<String, Collection<String>> property : item.getValue().entrySet()) {
-                    String name = property.getKey();
-                    for (String value : property.getValue()) {
-                        doc.addField(name, value, ParameterPreparer.DEFAULT_BOOST.floatValue());
-                    }
-                }
-                termBatch.add(doc);
-                batchCounter++;
             }
-            commitTerms(termBatch);
+            waitForBatch(submitBatch(writer, pendingBatch, termBatch));
+            getIndexingConnection().commit();
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index ontology: {}", ex.getMessage());
@@ -126,34 +175,310 @@ protected int index(String sourceUrl)
             this.logger.warn("Failed to communicate with the Solr server while indexing ontology: {}", ex.getMessage());
         } catch (OutOfMemoryError ex) {
             this.logger.warn("Failed to add terms to the Solr. Ran out of memory. {}", ex.getMessage());
+        } finally {
+            writer.shutdownNow();
         }
         return 1;
     }
 
-    protected void commitTerms(Collection<SolrInputDocument> batch)
-        throws SolrServerException, IOException, OutOfMemoryError
+    /**
+     * Add all the ancestors of a term, and the term itself, to its categories, which only list its direct parents as
+     * parsed. The ancestors are taken from the graph just built, so the closure is only computed once.
+     *
+     * @param id the identifier of the term
+     * @param term the parsed term
+     */
+    private void addAncestors(String id, TermData term)
+    {
+        if (this.indexedGraph.contains(id)) {
+            term.addTo(TERM_CATEGORY_FIELD_NAME, this.indexedGraph.getAncestorAndSelfIds(id));
+        }
+    }
+
+    private SolrInputDocument toDocument(TermData term)
     {
-        this.externalServicesAccess.getSolrConnection().add(batch);
-        this.externalServicesAccess.getSolrConnection().commit();
-        this.externalServicesAccess.getTermCache().removeAll();
+        SolrInputDocument doc = new SolrInputDocument();
+        for (Map.Entry<String, Collection<String>> property : term.entrySet()) {
+            String name = property.getKey();
+            for (String value : property.getValue()) {
+                doc.addField(name, value, ParameterPreparer.DEFAULT_BOOST.floatValue());
+            }
+        }
+        return doc;
     }
 
     /**
-     * Delete all the data in the Solr index.
+     * Wait for the previous batch to be written, then start writing a new batch in the background.
      *
-     * @return {@code 0} if the command was successful, {@code 1} otherwise
+     * @param writer the executor writing batches
+     * @param previousBatch the pending previous batch, may be {@code null}
+     * @param batch the new batch to write
+     * @return the pending new batch, or {@code null} if the batch is empty
+     * @throws SolrServerException if writing the previous batch failed
+     * @throws IOException if writing the previous batch failed
      */
-    protected int clear()
+    private Future<?> submitBatch(ExecutorService writer, Future<?> previousBatch,
+        final Collection<SolrInputDocument> batch) throws SolrServerException, IOException
     {
+        waitForBatch(previousBatch);
+        if (batch.isEmpty()) {
+            return null;
+        }
+        return writer.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws SolrServerException, IOException
+            {
+                addTerms(batch);
+                return null;
+            }
+        });
+    }
+
+    private void waitForBatch(Future<?> batch) throws SolrServerException, IOException
+    {
+        if (batch == null) {
+            return;
+        }
         try {
-            this.externalServicesAccess.getSolrConnection().deleteByQuery("*:*");
-            return 0;
-        } catch (SolrServerException ex) {
-            this.logger.error("SolrServerException while clearing the Solr index", ex);
-        } catch (IOException ex) {
-            this.logger.error("IOException while clearing the Solr index", ex);
+            batch.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SolrServerException) {
+                throw (SolrServerException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SolrServerException(cause);
         }
-        return 1;
+    }
+
+    @Override
+    protected void indexPublished()
+    {
+        this.graph = this.indexedGraph;
+        this.graphRetryTime = 0;
+        // If the suggester wasn't rebuilt, it will be loaded from the new index when needed
+        this.suggester = this.indexedSuggester;
+    }
+
+    @Override
+    protected OntologyGraph getGraph()
+    {
+        OntologyGraph result = this.graph;
+        if (result == null && System.currentTimeMillis() >= this.graphRetryTime) {
+            synchronized (this.graphLock) {
+                result = this.graph;
+                if (result == null && System.currentTimeMillis() >= this.graphRetryTime) {
+                    result = loadGraph();
+                    if (result == null) {
+                        // Don't read the whole index again on each access while it is failing
+                        this.graphRetryTime = System.currentTimeMillis() + GRAPH_RETRY_DELAY;
+                    }
+                    this.graph = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build the ontology structure from freshly parsed data, so that it doesn't have to be read back from the index.
+     *
+     * @param data the parsed terms, as returned by the {@link SolrUpdateGenerator}
+     * @return the ontology graph
+     */
+    private OntologyGraph buildGraph(Map<String, TermData> data)
+    {
+        Map<String, Collection<String>> parents = new LinkedHashMap<>(data.size() * 2);
+        for (Map.Entry<String, TermData> term : data.entrySet()) {
+            if (term.getValue().get(VERSION_FIELD_NAME) == null) {
+                parents.put(term.getKey(), term.getValue().get(PARENT_FIELD_NAME));
+            }
+        }
+        return OntologyGraph.build(parents);
+    }
+
+    /**
+     * Load the ontology structure from the index, fetching only the identifiers and direct parents of each term.
+     *
+     * @return the ontology graph, or {@code null} if the index couldn't be read
+     */
+    private OntologyGraph loadGraph()
+    {
+        long start = System.currentTimeMillis();
+        Map<String, Collection<Object>> parents = new LinkedHashMap<>();
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery("-" + VERSION_FIELD_NAME + ":*");
+        query.setFields(ID_FIELD_NAME, PARENT_FIELD_NAME);
+        query.setRows(GRAPH_LOADING_BATCH_SIZE);
+        query.set(CommonParams.SORT, ID_FIELD_NAME + " asc");
+        try {
+            long total;
+            int offset = 0;
+            do {
+                query.setStart(offset);
+                SolrDocumentList batch = this.externalServicesAccess.getSolrConnection().query(query).getResults();
+                total = batch.getNumFound();
+                for (SolrDocument doc : batch) {
+                    parents.put((String) doc.getFirstValue(ID_FIELD_NAME), doc.getFieldValues(PARENT_FIELD_NAME));
+                }
+                offset += batch.size();
+                if (batch.isEmpty()) {
+                    break;
+                }
+            } while (offset < total);
+        } catch (Exception ex) {
+            this.logger.warn("Failed to load the structure of [{}]: {}", getCoreName(), ex.getMessage());
+            return null;
+        }
+        OntologyGraph result = OntologyGraph.build(parents);
+        this.logger.debug("Loaded the structure of [{}] with {} terms in {}ms", getCoreName(), result.size(),
+            System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Suggest terms whose name or synonyms have a word starting with the given prefix, using the in-memory suggester.
+     *
+     * @param prefix the text typed so far
+     * @param maxResults the maximum number of terms to return
+     * @return the matching terms, best matches first, or {@code null} if the suggester isn't available yet
+     */
+    protected List<VocabularyTerm> suggest(String prefix, int maxResults)
+    {
+        PrefixSuggester crtSuggester = getSuggester();
+        if (crtSuggester == null) {
+            return null;
+        }
+        List<String> ids = crtSuggester.suggest(prefix, maxResults);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, VocabularyTerm> terms = new HashMap<>();
+        for (VocabularyTerm term : getTerms(ids)) {
+            terms.put(term.getId(), term);
+        }
+        List<VocabularyTerm> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            VocabularyTerm term = terms.get(id);
+            if (term != null) {
+                result.add(term);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decide whether a term should be offered as a suggestion. All terms are suggestable by default.
+     *
+     * @param termId the identifier of the term
+     * @param ontologyGraph the structure of the ontology the term belongs to
+     * @return {@code true} if the term may be suggested
+     */
+    protected boolean isSuggestable(String termId, OntologyGraph ontologyGraph)
+    {
+        return true;
+    }
+
+    /**
+     * Get the suggester, loading it from the index on the first call. While it is loading, other callers don't wait
+     * for it, and get {@code null} instead.
+     *
+     * @return the suggester, or {@code null} if it isn't available
+     */
+    private PrefixSuggester getSuggester()
+    {
+        PrefixSuggester result = this.suggester;
+        if (result == null && this.loadingSuggester.compareAndSet(false, true)) {
+            try {
+                result = this.suggester;
+                if (result == null) {
+                    result = loadSuggester();
+                    this.suggester = result;
+                }
+            } finally {
+                this.loadingSuggester.set(false);
+            }
+        }
+        return result;
+    }
+
+    private PrefixSuggester buildSuggester(Map<String, TermData> data, OntologyGraph ontologyGraph)
+    {
+        Map<String, Collection<String>> labels = new HashMap<>(data.size() * 2);
+        for (Map.Entry<String, TermData> term : data.entrySet()) {
+            if (term.getValue().get(VERSION_FIELD_NAME) == null && isSuggestable(term.getKey(), ontologyGraph)) {
+                labels.put(term.getKey(),
+                    getLabels(term.getValue().get(NAME_FIELD_NAME), term.getValue().get(SYNONYM_FIELD_NAME)));
+            }
+        }
+        return PrefixSuggester.build(labels);
+    }
+
+    /**
+     * Load the labels of all the terms from the index.
+     *
+     * @return the suggester, or {@code null} if the index couldn't be read
+     */
+    private PrefixSuggester loadSuggester()
+    {
+        long start = System.currentTimeMillis();
+        OntologyGraph ontologyGraph = getGraph();
+        if (ontologyGraph == null) {
+            return null;
+        }
+        Map<String, Collection<String>> labels = new HashMap<>(ontologyGraph.size() * 2);
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery("-" + VERSION_FIELD_NAME + ":*");
+        query.setFields(ID_FIELD_NAME, NAME_FIELD_NAME, SYNONYM_FIELD_NAME);
+        query.setRows(GRAPH_LOADING_BATCH_SIZE);
+        query.set(CommonParams.SORT, ID_FIELD_NAME + " asc");
+        try {
+            long total;
+            int offset = 0;
+            do {
+                query.setStart(offset);
+                SolrDocumentList batch = this.externalServicesAccess.getSolrConnection().query(query).getResults();
+                total = batch.getNumFound();
+                for (SolrDocument doc : batch) {
+                    String id = (String) doc.getFirstValue(ID_FIELD_NAME);
+                    if (isSuggestable(id, ontologyGraph)) {
+                        labels.put(id,
+                            getLabels(doc.getFieldValues(NAME_FIELD_NAME), doc.getFieldValues(SYNONYM_FIELD_NAME)));
+                    }
+                }
+                offset += batch.size();
+                if (batch.isEmpty()) {
+                    break;
+                }
+            } while (offset < total);
+        } catch (Exception ex) {
+            this.logger.warn("Failed to load the labels of [{}]: {}", getCoreName(), ex.getMessage());
+            return null;
+        }
+        PrefixSuggester result = PrefixSuggester.build(labels);
+        this.logger.debug("Loaded the suggester of [{}] with {} terms in {}ms", getCoreName(), result.size(),
+            System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /** The name, if any, followed by the synonyms. */
+    private Collection<String> getLabels(Collection<?> names, Collection<?> synonyms)
+    {
+        List<String> result = new ArrayList<>();
+        result.add(names == null || names.isEmpty() ? null : String.valueOf(names.iterator().next()));
+        if (synonyms != null) {
+            for (Object synonym : synonyms) {
+                result.add(String.valueOf(synonym));
+            }
+        }
+        return result;
     }
 
     @Override
@@ -17,30 +17,59 @@
  */
 package org.phenotips.vocabulary.internal.solr;
 
+import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyCacheStatistics;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
 
+import org.xwiki.cache.Cache;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.observation.ObservationManager;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.core.CoreContainer;
 import org.slf4j.Logger;
 
 /**
@@ -51,17 +80,32 @@
  * @version $Id$
  * @since 1.2M4 (under different names since 1.0M8)
  */
-public abstract class AbstractSolrVocabulary implements Vocabulary, Initializable
+public abstract class AbstractSolrVocabulary implements Vocabulary, Initializable, Disposable
 {
     /** The name of the ID field. */
     protected static final String ID_FIELD_NAME = "id";
 
+    /** The name of the field listing all the ancestors of a term. */
+    protected static final String TERM_CATEGORY_FIELD_NAME = "term_category";
+
+    /** The name of the field holding the version of the vocabulary, set on a special version document. */
+    protected static final String VERSION_FIELD_NAME = "version";
+
     /**
      * Object used to mark in the cache that a term doesn't exist, since null means that the cache doesn't contain the
      * requested entry.
      */
     private static final VocabularyTerm EMPTY_MARKER = new SolrVocabularyTerm(null, null);
 
+    /** The default number of most requested terms to preload in the cache. */
+    private static final int DEFAULT_WARMUP_SIZE = 1000;
+
+    /** How many terms to fetch with a single query, must stay below the Solr limit for boolean clauses. */
+    private static final int TERMS_BATCH_SIZE = 500;
+
+    /** Where to store the list of terms to preload, relative to the permanent directory. */
+    private static final String WARMUP_DIRECTORY = "cache/vocabularies";
+
     /** Logging helper object. */
     @Inject
     protected Logger logger;
@@ -70,10 +114,91 @@ public abstract class AbstractSolrVocabulary implements Vocabulary, Initializabl
     @Inject
     protected SolrVocabularyResourceManager externalServicesAccess;
 
+    /** Provides access to the permanent directory, where the list of terms to preload in the cache is stored. */
+    @Inject
+    private Environment environment;
+
+    /** Provides access to the cache settings configured in {@code xwiki.properties}. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** Provides access to the Solr cores, needed for building a new index in a shadow core. */
+    @Inject
+    private SolrCoreContainerHandler cores;
+
+    /** Used for announcing that the vocabulary was reindexed. */
+    @Inject
+    private ObservationManager observationManager;
+
+    /** Runs the vocabulary extensions on the terms being indexed. */
+    @Inject
+    private VocabularyExtensionPipeline extensions;
+
+    /** The name under which the cache statistics are registered in JMX, if they were registered. */
+    private ObjectName statisticsName;
+
+    /** The Solr client where new terms are written during a reindex; {@code null} when writing to the live core. */
+    private SolrClient indexingConnection;
+
+    /** Whether the live core must be cleared before the first batch of terms is written into it. */
+    private boolean clearBeforeIndexing;
+
+    /** Guards {@link #clearBeforeIndexing}, since batches may be written by several threads at once. */
+    private final Object clearLock = new Object();
+
+    /** The identifiers of the terms written during the current reindex, used for validating the new index. */
+    private final Set<String> indexedIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** Concurrent cache misses for the same term share a single query. */
+    private final RequestCoalescer<String, VocabularyTerm> termLoads = new RequestCoalescer<>();
+
+    /** Identical searches running at the same time share a single query. */
+    private final RequestCoalescer<String, SolrDocumentList> searches = new RequestCoalescer<>();
+
+    /** Concurrent requests for the other fields of the same compact term share a single query. */
+    private final RequestCoalescer<String, SolrVocabularyTerm> fullTermLoads = new RequestCoalescer<>();
+
+    /**
+     * The terms to preload in the cache when the vocabulary is first used, read from the list stored at shutdown;
+     * {@code null} once they were loaded. Loading them during initialization would open the Solr core right away.
+     */
+    private volatile List<String> pendingWarmUp;
+
+    /** Guards {@link #pendingWarmUp}, so that the stored terms are only preloaded once. */
+    private final Object warmUpLock = new Object();
+
     @Override
     public void initialize() throws InitializationException
     {
         this.externalServicesAccess.initialize(this.getCoreName());
+        registerCacheStatistics();
+        List<String> warmUpList = readWarmUpList();
+        this.pendingWarmUp = warmUpList.isEmpty() ? null : warmUpList;
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        writeWarmUpList();
+        if (this.statisticsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.statisticsName);
+            } catch (JMException ex) {
+                this.logger.debug("Failed to unregister the cache statistics for [{}]: {}", getCoreName(),
+                    ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the usage statistics of the term cache used by this vocabulary.
+     *
+     * @return the cache statistics, or {@code null} if they're not available
+     */
+    public VocabularyCacheStatistics getCacheStatistics()
+    {
+        return this.externalServicesAccess.getTermCacheStatistics();
     }
 
     // Dilemma:
@@ -88,45 +213,135 @@ public void initialize() throws InitializationException
     protected abstract String getCoreName();
 
     @Override
-    public VocabularyTerm getTerm(String id)
+    public VocabularyTerm getTerm(final String id)
     {
+        warmUpOnFirstUse();
         VocabularyTerm result = this.externalServicesAccess.getTermCache().get(id);
         if (result == null) {
-            ModifiableSolrParams params = new ModifiableSolrParams();
-            params.set(CommonParams.Q, ID_FIELD_NAME + ':' + ClientUtils.escapeQueryChars(id));
-            SolrDocumentList allResults = this.search(params);
-            if (allResults != null && !allResults.isEmpty()) {
-                result = new SolrVocabularyTerm(allResults.get(0), this);
-                this.externalServicesAccess.getTermCache().set(id, result);
-            } else {
-                this.externalServicesAccess.getTermCache().set(id, EMPTY_MARKER);
-            }
+            result = this.termLoads.get(id, new RequestCoalescer.Loader<VocabularyTerm>()
+            {
+                @Override
+                public VocabularyTerm load()
+                {
+                    return loadAndCacheTerm(id);
+                }
+            });
         }
         return (result == EMPTY_MARKER) ? null : result;
     }
 
+    /**
+     * Look for a term in the index, without using the cache. Called by {@link #getTerm(String)} on cache misses, at
+     * most once at a time for the same identifier. Vocabularies which accept other identifiers for their terms, such
+     * as alternative identifiers, may override this to look for them as well; the term found is cached under both the
+     * requested identifier and its own identifier. Terms backed by a Solr document are stored in the cache in their
+     * {@link CompactVocabularyTerm compact} form.
+     *
+     * @param id the identifier of the term to look for
+     * @return the term, or {@code null} if it cannot be found
+     */
+    protected VocabularyTerm loadTerm(String id)
+    {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set(CommonParams.Q, ID_FIELD_NAME + ':' + ClientUtils.escapeQueryChars(id));
+        SolrDocumentList allResults = this.search(params);
+        if (allResults != null && !allResults.isEmpty()) {
+            return new SolrVocabularyTerm(allResults.get(0), this);
+        }
+        return null;
+    }
+
+    /**
+     * Fetch all the indexed data of a term, without using the cache. The terms kept in the cache are
+     * {@link CompactVocabularyTerm compact}, and call this when a field which isn't kept in memory is requested.
+     * Concurrent requests for the same term share a single query.
+     *
+     * @param id the exact identifier of the term
+     * @return the full term, or {@code null} if it cannot be found
+     */
+    SolrVocabularyTerm loadFullTerm(final String id)
+    {
+        return this.fullTermLoads.get(id, new RequestCoalescer.Loader<SolrVocabularyTerm>()
+        {
+            @Override
+            public SolrVocabularyTerm load()
+            {
+                return fetchFullTerm(id);
+            }
+        });
+    }
+
+    private SolrVocabularyTerm fetchFullTerm(String id)
+    {
+        try {
+            SolrDocumentList documents = this.externalServicesAccess.getSolrConnection()
+                .query(getIdsQuery(Collections.singleton(id))).getResults();
+            if (documents != null && !documents.isEmpty()) {
+                return new SolrVocabularyTerm(documents.get(0), this);
+            }
+        } catch (Exception ex) {
+            this.logger.warn("Failed to load the term [{}] from [{}]: {}", id, getCoreName(), ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned terms are complete, since callers usually need more than their names. Terms missing from the cache,
+     * and the full form of cached compact terms, are fetched together with as few queries as possible, and the new
+     * terms are added to the cache in their compact form. The full terms are only returned, never kept in the cache.
+     * Identifiers not found aren't marked as missing in the cache, since they may still be valid alternative
+     * identifiers, which are only resolved by {@link #getTerm(String)}.
+     * </p>
+     */
     @Override
     public Set<VocabularyTerm> getTerms(Collection<String> ids)
     {
-        Set<VocabularyTerm> result = new LinkedHashSet<VocabularyTerm>();
-        StringBuilder query = new StringBuilder("id:(");
+        warmUpOnFirstUse();
+        Cache<VocabularyTerm> cache = this.externalServicesAccess.getTermCache();
+        // The term found for each requested identifier, or its own identifier if it must be loaded
+        Map<String, Object> found = new LinkedHashMap<>();
+        Set<String> alreadyCached = new HashSet<>();
+        Set<String> toLoad = new LinkedHashSet<>();
         for (String id : ids) {
-            VocabularyTerm cachedTerm = this.externalServicesAccess.getTermCache().get(id);
-            if (cachedTerm != null) {
-                if (cachedTerm != EMPTY_MARKER) {
-                    result.add(cachedTerm);
-                }
+            VocabularyTerm cachedTerm = cache.get(id);
+            if (cachedTerm == EMPTY_MARKER) {
+                continue;
+            } else if (cachedTerm instanceof CompactVocabularyTerm) {
+                found.put(id, cachedTerm.getId());
+                alreadyCached.add(cachedTerm.getId());
+                toLoad.add(cachedTerm.getId());
+            } else if (cachedTerm != null) {
+                found.put(id, cachedTerm);
             } else {
-                query.append(ClientUtils.escapeQueryChars(id));
-                query.append(' ');
+                found.put(id, id);
+                toLoad.add(id);
             }
         }
-        query.append(')');
 
-        // There's at least one more term not found in the cache
-        if (query.length() > 5) {
-            for (SolrDocument doc : this.search(SolrQueryUtils.transformQueryToSolrParams(query.toString()))) {
-                result.add(new SolrVocabularyTerm(doc, this));
+        Map<String, VocabularyTerm> loaded = new HashMap<>();
+        List<String> missing = new ArrayList<>(toLoad);
+        for (int i = 0; i < missing.size(); i += TERMS_BATCH_SIZE) {
+            SolrDocumentList documents =
+                this.search(getIdsQuery(missing.subList(i, Math.min(i + TERMS_BATCH_SIZE, missing.size()))));
+            if (documents == null) {
+                continue;
+            }
+            for (SolrDocument doc : documents) {
+                SolrVocabularyTerm term = new SolrVocabularyTerm(doc, this);
+                if (!alreadyCached.contains(term.getId())) {
+                    cache.set(term.getId(), new CompactVocabularyTerm(doc, this));
+                }
+                loaded.put(term.getId(), term);
+            }
+        }
+
+        Set<VocabularyTerm> result = new LinkedHashSet<VocabularyTerm>();
+        for (Object term : found.values()) {
+            VocabularyTerm resolved = (term instanceof String) ? loaded.get(term) : (VocabularyTerm) term;
+            if (resolved != null) {
+                result.add(resolved);
             }
         }
         return result;
@@ -168,6 +383,146 @@ public int reindex(String sourceUrl)
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Rebuild the index without disrupting readers. The new data is {@link #index(String) indexed} into a shadow core,
+     * checked, and then published into the live core in a single step, so that searches never run against a partial
+     * index. The term cache is flushed once, after the new index is published, and a
+     * {@link VocabularyVersionChangedEvent} is sent. If a shadow core cannot be used, the live core is cleared and
+     * rebuilt in place, but only once the new data is actually available.
+     *
+     * @param sourceUrl the address from where to get the vocabulary source file
+     * @return {@code 0} if the indexing succeeded, {@code 1} if writing to the Solr server failed, {@code 2} if the
+     *         specified URL is invalid
+     */
+    protected synchronized int reindexInShadowCore(String sourceUrl)
+    {
+        long start = System.currentTimeMillis();
+        ShadowSolrCore shadow = createShadowCore();
+        this.indexedIds.clear();
+        this.extensions.indexingStarted(this);
+        int result;
+        try {
+            if (shadow == null) {
+                this.clearBeforeIndexing = true;
+                result = index(sourceUrl);
+            } else {
+                this.indexingConnection = shadow.getClient();
+                result = index(sourceUrl);
+                if (result == 0) {
+                    result = publish(shadow);
+                }
+            }
+        } finally {
+            this.extensions.indexingEnded(this);
+            this.indexingConnection = null;
+            this.clearBeforeIndexing = false;
+            this.indexedIds.clear();
+            if (shadow != null) {
+                shadow.discard();
+            }
+        }
+        if (result == 0) {
+            indexPublished();
+            this.externalServicesAccess.getTermCache().removeAll();
+            this.pendingWarmUp = null;
+            warmUpCache();
+            this.logger.info("Reindexed [{}] in {}ms", getCoreName(), System.currentTimeMillis() - start);
+            this.observationManager.notify(new VocabularyVersionChangedEvent(getIdentifier()), this);
+        }
+        return result;
+    }
+
+    /**
+     * Parse the vocabulary source and write all its terms using {@link #commitTerms(Collection)}. This is called by
+     * {@link #reindexInShadowCore(String)}, and must not clear the index or the term cache by itself.
+     *
+     * @param sourceUrl the address from where to get the vocabulary source file
+     * @return {@code 0} if the indexing succeeded, {@code 1} if writing to the Solr server failed, {@code 2} if the
+     *         specified URL is invalid
+     */
+    protected int index(String sourceUrl)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Called after a new index was successfully published, before the term cache is flushed. Vocabularies keeping
+     * other data derived from the index should update it here.
+     */
+    protected void indexPublished()
+    {
+        // Nothing to do by default
+    }
+
+    /**
+     * Write a batch of terms into the index being built, without committing them. The terms are first passed through
+     * the {@link org.phenotips.vocabulary.VocabularyExtension vocabulary extensions} supporting this vocabulary. May be
+     * called concurrently by several indexing threads.
+     *
+     * @param batch the terms to write
+     * @throws SolrServerException if the Solr server refuses the terms
+     * @throws IOException if communicating with the Solr server fails
+     */
+    protected void addTerms(Collection<SolrInputDocument> batch) throws SolrServerException, IOException
+    {
+        this.extensions.extendTerms(batch, this);
+        synchronized (this.clearLock) {
+            if (this.clearBeforeIndexing) {
+                this.clearBeforeIndexing = false;
+                if (clear() != 0) {
+                    throw new SolrServerException("Failed to clear the index of " + getCoreName());
+                }
+            }
+        }
+        getIndexingConnection().add(batch);
+        for (SolrInputDocument doc : batch) {
+            this.indexedIds.add(String.valueOf(doc.getFieldValue(ID_FIELD_NAME)));
+        }
+    }
+
+    /**
+     * Write a batch of terms into the index being built, and commit all the terms written so far.
+     *
+     * @param batch the terms to write
+     * @throws SolrServerException if the Solr server refuses the terms
+     * @throws IOException if communicating with the Solr server fails
+     */
+    protected void commitTerms(Collection<SolrInputDocument> batch) throws SolrServerException, IOException
+    {
+        addTerms(batch);
+        getIndexingConnection().commit();
+    }
+
+    /**
+     * Delete all the data in the index being built.
+     *
+     * @return {@code 0} if the command was successful, {@code 1} otherwise
+     */
+    protected int clear()
+    {
+        try {
+            getIndexingConnection().deleteByQuery("*:*");
+            return 0;
+        } catch (SolrServerException ex) {
+            this.logger.error("SolrServerException while clearing the Solr index", ex);
+        } catch (IOException ex) {
+            this.logger.error("IOException while clearing the Solr index", ex);
+        }
+        return 1;
+    }
+
+    /**
+     * Get the Solr client where new terms must be written: the shadow core during a reindex, or the live core
+     * otherwise.
+     *
+     * @return a Solr client
+     */
+    protected SolrClient getIndexingConnection()
+    {
+        return this.indexingConnection != null ? this.indexingConnection : this.externalServicesAccess
+            .getSolrConnection();
+    }
+
     @Override
     public String getVersion()
     {
@@ -189,12 +544,134 @@ public long getDistance(VocabularyTerm fromTerm, VocabularyTerm toTerm)
         return fromTerm.getDistanceTo(toTerm);
     }
 
+    @Override
+    public Set<String> getAncestorIds(String termId)
+    {
+        OntologyGraph graph = getGraph();
+        if (graph != null && graph.contains(termId)) {
+            return graph.getAncestorIds(termId);
+        }
+        VocabularyTerm term = getTerm(termId);
+        return term != null ? term.getAncestorIds() : Collections.<String>emptySet();
+    }
+
+    @Override
+    public Set<String> getAncestorAndSelfIds(String termId)
+    {
+        OntologyGraph graph = getGraph();
+        if (graph != null && graph.contains(termId)) {
+            return graph.getAncestorAndSelfIds(termId);
+        }
+        VocabularyTerm term = getTerm(termId);
+        return term != null ? term.getAncestorAndSelfIds() : Collections.<String>emptySet();
+    }
+
+    @Override
+    public Set<String> getDescendantIds(String termId)
+    {
+        if (StringUtils.isBlank(termId)) {
+            return Collections.emptySet();
+        }
+        OntologyGraph graph = getGraph();
+        if (graph != null && graph.contains(termId)) {
+            return graph.getDescendantIds(termId);
+        }
+        // Every term lists all its ancestors in the category field, so a single projected query is enough
+        String query = TERM_CATEGORY_FIELD_NAME + ':' + ClientUtils.escapeQueryChars(termId) + " -" + ID_FIELD_NAME
+            + ':' + ClientUtils.escapeQueryChars(termId);
+        long total = count(query);
+        if (total <= 0) {
+            return Collections.emptySet();
+        }
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set(CommonParams.Q, query);
+        params.set(CommonParams.FL, ID_FIELD_NAME);
+        params.set(CommonParams.START, 0);
+        params.set(CommonParams.ROWS, (int) total);
+        Set<String> result = new LinkedHashSet<>();
+        try {
+            for (SolrDocument doc : this.externalServicesAccess.getSolrConnection().query(params).getResults()) {
+                result.add((String) doc.getFirstValue(ID_FIELD_NAME));
+            }
+        } catch (Exception ex) {
+            this.logger.error("Failed to list the descendants of [{}]: {}", termId, ex.getMessage(), ex);
+        }
+        return result;
+    }
+
     @Override
     public List<VocabularyTerm> search(String input, int maxResults, String sort, String customFilter)
     {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Preload in the term cache the terms that were most often requested so far. This should be called after the cache
+     * is cleared, for example after a reindex.
+     */
+    protected void warmUpCache()
+    {
+        VocabularyCacheStatistics statistics = getCacheStatistics();
+        if (statistics != null) {
+            warmUpCache(statistics.getMostRequestedTerms(getWarmUpSize()));
+        }
+    }
+
+    /** Preload the terms stored at shutdown, if this is the first time the term cache is used. */
+    private void warmUpOnFirstUse()
+    {
+        if (this.pendingWarmUp == null) {
+            return;
+        }
+        List<String> ids;
+        synchronized (this.warmUpLock) {
+            ids = this.pendingWarmUp;
+            this.pendingWarmUp = null;
+        }
+        warmUpCache(ids);
+    }
+
+    /**
+     * Preload some terms in the term cache, with as few queries as possible.
+     *
+     * @param ids the identifiers of the terms to load, may be empty
+     */
+    protected void warmUpCache(List<String> ids)
+    {
+        if (ids == null || ids.isEmpty() || getCacheStatistics() == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Cache<VocabularyTerm> cache = this.externalServicesAccess.getTermCache();
+        int loaded = 0;
+        for (int i = 0; i < ids.size(); i += TERMS_BATCH_SIZE) {
+            SolrParams params = getIdsQuery(ids.subList(i, Math.min(i + TERMS_BATCH_SIZE, ids.size())));
+            try {
+                for (SolrDocument doc : this.externalServicesAccess.getSolrConnection().query(params).getResults()) {
+                    VocabularyTerm term = new CompactVocabularyTerm(doc, this);
+                    cache.set(term.getId(), term);
+                    ++loaded;
+                }
+            } catch (Exception ex) {
+                this.logger.warn("Failed to preload terms in the [{}] cache: {}", getCoreName(), ex.getMessage());
+                return;
+            }
+        }
+        this.logger.debug("Preloaded {} terms in the [{}] cache in {}ms", loaded, getCoreName(),
+            System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Get the in-memory structure of this vocabulary, if this is a structured ontology which supports it.
+     *
+     * @return the ontology graph, or {@code null} if this vocabulary doesn't have a structure, or if the structure
+     *         couldn't be loaded
+     */
+    protected OntologyGraph getGraph()
+    {
+        return null;
+    }
+
     /**
      * Perform a search, falling back on the suggested spellchecked query if the original query fails to return any
      * results.
@@ -218,8 +695,27 @@ protected SolrDocumentList search(SolrParams params)
      */
     protected SolrDocumentList search(SolrParams params, Map<String, String> queryOptions)
     {
+        final SolrParams enhancedParams;
+        try {
+            enhancedParams = SolrQueryUtils.enhanceParams(params, queryOptions);
+        } catch (Exception ex) {
+            this.logger.error("Failed to search: {}", ex.getMessage(), ex);
+            return null;
+        }
+        return this.searches.get(enhancedParams.toString(), new RequestCoalescer.Loader<SolrDocumentList>()
+        {
+            @Override
+            public SolrDocumentList load()
+            {
+                return runSearch(enhancedParams);
+            }
+        });
+    }
+
+    private SolrDocumentList runSearch(SolrParams params)
+    {
+        SolrParams enhancedParams = params;
         try {
-            SolrParams enhancedParams = SolrQueryUtils.enhanceParams(params, queryOptions);
             this.logger.debug("Searching [{}] with query [{}]", getCoreName(), enhancedParams);
             QueryResponse response = this.externalServicesAccess.getSolrConnection().query(enhancedParams);
             SolrDocumentList results = response.getResults();
@@ -300,4 +796,179 @@ protected String generateLuceneQuery(Map<String, ?> fieldValues)
         }
         return query.toString();
     }
+
+    /** Build a query matching the terms with the given identifiers, returning all of them. */
+    private SolrParams getIdsQuery(Collection<String> ids)
+    {
+        StringBuilder query = new StringBuilder(ID_FIELD_NAME + ":(");
+        for (String id : ids) {
+            query.append(ClientUtils.escapeQueryChars(id)).append(' ');
+        }
+        query.append(')');
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set(CommonParams.Q, query.toString());
+        params.set(CommonParams.ROWS, ids.size());
+        return params;
+    }
+
+    /** Load a term, store its compact form in the cache, and return the full term to the caller. */
+    private VocabularyTerm loadAndCacheTerm(String id)
+    {
+        Cache<VocabularyTerm> cache = this.externalServicesAccess.getTermCache();
+        VocabularyTerm result = loadTerm(id);
+        if (result == null) {
+            cache.set(id, EMPTY_MARKER);
+            return EMPTY_MARKER;
+        }
+        VocabularyTerm cached = compact(result);
+        cache.set(id, cached);
+        if (StringUtils.isNotEmpty(result.getId()) && !id.equals(result.getId())) {
+            // Found through an alternative identifier, the term can also be requested with its own identifier
+            cache.set(result.getId(), cached);
+        }
+        return result;
+    }
+
+    /** Get the compact form of a term backed by a full Solr document, to be stored in the cache. */
+    private VocabularyTerm compact(VocabularyTerm term)
+    {
+        if (term instanceof SolrVocabularyTerm) {
+            SolrDocument doc = ((SolrVocabularyTerm) term).getDocument();
+            if (doc != null && doc.getFirstValue(ID_FIELD_NAME) != null) {
+                return new CompactVocabularyTerm(doc, this);
+            }
+        }
+        return term;
+    }
+
+    /** Expose the cache statistics as a JMX bean, if the cache collects statistics. */
+    private void registerCacheStatistics()
+    {
+        VocabularyCacheStatistics statistics = getCacheStatistics();
+        if (statistics == null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("org.phenotips:type=VocabularyTermCache,name=" + getCoreName());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(statistics, VocabularyCacheStatistics.class), name);
+            this.statisticsName = name;
+        } catch (JMException ex) {
+            this.logger.warn("Failed to register the cache statistics for [{}]: {}", getCoreName(), ex.getMessage());
+        }
+    }
+
+    /**
+     * Get the number of most requested terms to preload in the cache, configured in the
+     * {@code phenotips.vocabularies.<vocabulary>.cache.warmupSize} property.
+     *
+     * @return a positive number, {@code 0} if warming up the cache is disabled
+     */
+    private int getWarmUpSize()
+    {
+        Integer size = this.configuration.getProperty(
+            "phenotips.vocabularies." + getCoreName() + ".cache.warmupSize", Integer.class);
+        return size == null ? DEFAULT_WARMUP_SIZE : Math.max(size, 0);
+    }
+
+    private File getWarmUpFile()
+    {
+        File permanentDirectory = this.environment.getPermanentDirectory();
+        if (permanentDirectory == null) {
+            return null;
+        }
+        return new File(new File(permanentDirectory, WARMUP_DIRECTORY), getCoreName() + ".warmup");
+    }
+
+    private List<String> readWarmUpList()
+    {
+        File file = getWarmUpFile();
+        if (file == null || !file.isFile()) {
+            return Collections.emptyList();
+        }
+        try {
+            List<String> ids = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            int size = getWarmUpSize();
+            return ids.size() > size ? ids.subList(0, size) : ids;
+        } catch (IOException ex) {
+            this.logger.warn("Failed to read the list of terms to preload for [{}]: {}", getCoreName(),
+                ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private void writeWarmUpList()
+    {
+        VocabularyCacheStatistics statistics = getCacheStatistics();
+        File file = getWarmUpFile();
+        if (statistics == null || file == null) {
+            return;
+        }
+        List<String> ids = statistics.getMostRequestedTerms(getWarmUpSize());
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), ids, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            this.logger.warn("Failed to store the list of terms to preload for [{}]: {}", getCoreName(),
+                ex.getMessage());
+        }
+    }
+
+    /**
+     * Create a shadow core for building the new index, if the Solr container is accessible.
+     *
+     * @return the new shadow core, or {@code null} if the index must be rebuilt in place
+     */
+    ShadowSolrCore createShadowCore()
+    {
+        CoreContainer container = this.cores.getContainer();
+        if (container == null) {
+            return null;
+        }
+        try {
+            return ShadowSolrCore.create(container, getCoreName());
+        } catch (IOException | RuntimeException ex) {
+            this.logger.warn("Cannot build [{}] in a shadow core, reindexing in place: {}", getCoreName(),
+                ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Check that the shadow core holds exactly the terms written during the reindex, and a version if the live core
+     * has one, then publish it into the live core.
+     *
+     * @param shadow the shadow core holding the new index
+     * @return {@code 0} if the new index was published, {@code 1} otherwise
+     */
+    private int publish(ShadowSolrCore shadow)
+    {
+        try {
+            ModifiableSolrParams params = new ModifiableSolrParams();
+            params.set(CommonParams.Q, "*:*");
+            params.set(CommonParams.ROWS, 0);
+            long found = shadow.getClient().query(params).getResults().getNumFound();
+            if (found == 0 || found != this.indexedIds.size()) {
+                this.logger.error("The new index of [{}] has {} documents instead of {}, keeping the old index",
+                    getCoreName(), found, this.indexedIds.size());
+                return 1;
+            }
+            params.set(CommonParams.Q, VERSION_FIELD_NAME + ":*");
+            if (getVersion() != null && shadow.getClient().query(params).getResults().getNumFound() == 0) {
+                this.logger.error("The new index of [{}] has no version, keeping the old index", getCoreName());
+                return 1;
+            }
+            shadow.publish();
+            return 0;
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            this.logger.error("Failed to publish the new index of [{}]: {}", getCoreName(), ex.getMessage(), ex);
+        }
+        return 1;
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.common.SolrDocument;
+import org.json.JSONObject;
+
+/**
+ * Compact, immutable implementation for {@link VocabularyTerm}, used for the terms kept in the vocabulary caches.
+ * Instead of the whole Solr document, only the identifier and the name are kept, both interned, since the same
+ * strings appear in many places. The structure of the vocabulary is taken from the {@link OntologyGraph in-memory
+ * graph} when the vocabulary has one, and otherwise the identifiers of the parents and ancestors are kept in plain
+ * arrays. All the other fields, such as the definition, synonyms or cross references, are fetched from the index each
+ * time they are requested, and are never kept in the cached term, so that cached terms stay small.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+public final class CompactVocabularyTerm implements VocabularyTerm
+{
+    private static final String ID = "id";
+
+    private static final String NAME = "name";
+
+    private static final String TERM_CATEGORY = "term_category";
+
+    private static final String IS_A = "is_a";
+
+    private static final String[] NONE = new String[0];
+
+    /** The identifier of this term, interned. */
+    private final String id;
+
+    /** The name of this term, interned. */
+    private final String name;
+
+    /** The owner vocabulary, used for loading related terms and the fields not kept in memory. */
+    private final AbstractSolrVocabulary vocabulary;
+
+    /** The structure of the vocabulary, if it contains this term, {@code null} otherwise. */
+    private final OntologyGraph graph;
+
+    /** The identifiers of the direct parents, used only if the {@link #graph} isn't available. */
+    private final String[] parentIds;
+
+    /** The identifiers of all the ancestors, excluding this term, used only if the {@link #graph} isn't available. */
+    private final String[] ancestorIds;
+
+    /**
+     * Constructor extracting the data to keep from the Solr document representing this term. The document itself is
+     * not referenced afterwards.
+     *
+     * @param doc the Solr document representing this term
+     * @param vocabulary the owner vocabulary
+     */
+    public CompactVocabularyTerm(SolrDocument doc, AbstractSolrVocabulary vocabulary)
+    {
+        this.id = intern(doc.getFirstValue(ID));
+        this.name = intern(doc.getFirstValue(NAME));
+        this.vocabulary = vocabulary;
+        OntologyGraph vocabularyGraph = vocabulary.getGraph();
+        if (vocabularyGraph != null && vocabularyGraph.contains(this.id)) {
+            this.graph = vocabularyGraph;
+            this.parentIds = NONE;
+            this.ancestorIds = NONE;
+        } else {
+            this.graph = null;
+            this.parentIds = toIds(doc.getFieldValues(IS_A));
+            this.ancestorIds = toIds(doc.getFieldValues(TERM_CATEGORY));
+        }
+    }
+
+    @Override
+    public String getId()
+    {
+        return this.id;
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.name;
+    }
+
+    @Override
+    public String getDescription()
+    {
+        SolrVocabularyTerm full = getFullTerm();
+        return full != null ? full.getDescription() : null;
+    }
+
+    @Override
+    public Set<VocabularyTerm> getParents()
+    {
+        return toTerms(this.graph != null ? this.graph.getParentIds(this.id) : Arrays.asList(this.parentIds));
+    }
+
+    @Override
+    public Set<VocabularyTerm> getAncestors()
+    {
+        return toTerms(getAncestorIds());
+    }
+
+    @Override
+    public Set<VocabularyTerm> getAncestorsAndSelf()
+    {
+        return toTerms(getAncestorAndSelfIds());
+    }
+
+    @Override
+    public Set<String> getAncestorIds()
+    {
+        if (this.graph != null) {
+            return this.graph.getAncestorIds(this.id);
+        }
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(this.ancestorIds)));
+    }
+
+    @Override
+    public Set<String> getAncestorAndSelfIds()
+    {
+        if (this.graph != null) {
+            return this.graph.getAncestorAndSelfIds(this.id);
+        }
+        Set<String> result = new LinkedHashSet<>(this.ancestorIds.length + 1);
+        result.add(this.id);
+        result.addAll(Arrays.asList(this.ancestorIds));
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public Object get(String fieldName)
+    {
+        if (ID.equals(fieldName)) {
+            return this.id;
+        } else if (NAME.equals(fieldName)) {
+            return this.name;
+        }
+        SolrVocabularyTerm full = getFullTerm();
+        return full != null ? full.get(fieldName) : null;
+    }
+
+    @Override
+    public Vocabulary getVocabulary()
+    {
+        return this.vocabulary;
+    }
+
+    @Override
+    public long getDistanceTo(VocabularyTerm other)
+    {
+        return SolrVocabularyTerm.getDistance(this, other);
+    }
+
+    @Override
+    public JSONObject toJSON()
+    {
+        SolrVocabularyTerm full = getFullTerm();
+        if (full != null) {
+            return full.toJSON();
+        }
+        // The term is no longer in the index, only the data kept in memory is available
+        JSONObject json = new JSONObject();
+        json.put(ID, this.id);
+        json.putOpt(NAME, this.name);
+        return json;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[" + this.id + "] " + this.name;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.id != null ? this.id.hashCode() : 0;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof VocabularyTerm)) {
+            return false;
+        }
+        return StringUtils.equals(this.id, ((VocabularyTerm) obj).getId());
+    }
+
+    /**
+     * Fetch the full term from the index. It is only returned to the caller, and not kept in this term.
+     *
+     * @return the full term, or {@code null} if it cannot be loaded
+     */
+    private SolrVocabularyTerm getFullTerm()
+    {
+        return this.vocabulary.loadFullTerm(this.id);
+    }
+
+    private Set<VocabularyTerm> toTerms(Collection<String> ids)
+    {
+        return new LazySolrTermSet(new ArrayList<Object>(ids), this.vocabulary);
+    }
+
+    /** Extract the distinct identifiers from a list of values, ignoring any label following them, and this term. */
+    private String[] toIds(Collection<Object> values)
+    {
+        if (values == null || values.isEmpty()) {
+            return NONE;
+        }
+        Set<String> result = new LinkedHashSet<>(values.size());
+        for (Object value : values) {
+            result.add(intern(StringUtils.substringBefore(String.valueOf(value), " ")));
+        }
+        // Some vocabularies also list the term itself among its ancestors
+        result.remove(this.id);
+        return result.isEmpty() ? NONE : result.toArray(new String[result.size()]);
+    }
+
+    private static String intern(Object value)
+    {
+        return value != null ? String.valueOf(value).intern() : null;
+    }
+}
@@ -23,17 +23,34 @@
 import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.environment.Environment;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.slf4j.Logger;
 
 /**
  * Default implementation of {@link SolrCoreContainerHandler}, looking for the Solr configuration in a subdirectory of
  * the permanent directory called {@code solr}.
+ * <p>
+ * The cores shipped with PhenoTips are declared with {@code loadOnStartup=false}, so loading the container only
+ * registers them, and each core is opened by Solr the first time it is used. The cores listed in the
+ * {@code phenotips.solr.preloadedCores} property, by default just the HPO, are opened right away in a background
+ * thread, so that the first requests don't have to wait for them. Once preloading is done, a report of the time and
+ * heap memory used for opening each preloaded core is logged, along with the cores left to be opened on demand.
+ * </p>
  *
  * @version $Id$
  * @since 1.2M4 (under a different package since 1.0M13)
@@ -41,19 +58,53 @@
 @Component
 public class DefaultSolrCoreContainerHandler implements SolrCoreContainerHandler, Initializable, Disposable
 {
+    /** The cores opened at startup when not configured otherwise. */
+    private static final String DEFAULT_PRELOADED_CORES = "hpo";
+
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
     /** Provides access to the configured permanent directory. */
     @Inject
     private Environment environment;
 
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
     /** The initialized core container. */
     private CoreContainer cores;
 
+    /** Opens the preloaded cores, {@code null} if nothing is preloaded. */
+    private Thread preloader;
+
     @Override
     public void initialize()
     {
+        long start = System.currentTimeMillis();
         File solrHome = new File(this.environment.getPermanentDirectory().getAbsolutePath(), "solr");
         this.cores = new CoreContainer(solrHome.getAbsolutePath());
         this.cores.load();
+        this.logger.info("Loaded the Solr core container in {}ms, cores opened so far: {}",
+            System.currentTimeMillis() - start, this.cores.getCoreNames());
+
+        final Collection<String> preloaded = Arrays.asList(StringUtils.split(
+            this.configuration.getProperty("phenotips.solr.preloadedCores", DEFAULT_PRELOADED_CORES), ", "));
+        if (!preloaded.isEmpty()) {
+            this.preloader = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    preload(preloaded);
+                }
+            }, "solr-core-preloader");
+            this.preloader.setDaemon(true);
+            this.preloader.start();
+        }
     }
 
     @Override
@@ -65,6 +116,51 @@ public CoreContainer getContainer()
     @Override
     public void dispose() throws ComponentLifecycleException
     {
+        if (this.preloader != null) {
+            this.preloader.interrupt();
+        }
         this.cores.shutdown();
     }
+
+    /**
+     * Open cores, one after the other, and log how long opening each core took and how much the used heap grew
+     * meanwhile. The memory figures are only estimates, since other threads allocate memory at the same time.
+     *
+     * @param names the names of the cores to open
+     */
+    void preload(Collection<String> names)
+    {
+        Map<String, String> report = new LinkedHashMap<>();
+        Runtime runtime = Runtime.getRuntime();
+        for (String name : names) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (!this.cores.getAllCoreNames().contains(name)) {
+                this.logger.warn("Cannot preload the unknown Solr core [{}]", name);
+                continue;
+            }
+            long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+            long start = System.currentTimeMillis();
+            SolrCore core = this.cores.getCore(name);
+            if (core == null) {
+                this.logger.warn("Failed to preload the Solr core [{}]", name);
+                continue;
+            }
+            core.close();
+            long duration = System.currentTimeMillis() - start;
+            long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+            report.put(name, String.format("opened in %dms, heap grew by about %dMB", duration,
+                Math.max(0, usedAfter - usedBefore) / BYTES_PER_MEGABYTE));
+        }
+
+        Collection<String> lazy = new TreeSet<>(this.cores.getAllCoreNames());
+        lazy.removeAll(this.cores.getCoreNames());
+        StringBuilder message = new StringBuilder("Solr cores preloaded:");
+        for (Map.Entry<String, String> core : report.entrySet()) {
+            message.append("\n  [").append(core.getKey()).append("] ").append(core.getValue());
+        }
+        message.append("\nSolr cores to be opened when first used: ").append(lazy);
+        this.logger.info(message.toString());
+    }
 }
@@ -19,18 +19,23 @@
 
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.VocabularyCacheStatistics;
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.EntryEvictionConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
@@ -45,11 +50,20 @@
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
 public class DefaultSolrVocabularyResourceManager implements SolrVocabularyResourceManager
 {
+    /** The default maximum number of terms to keep in the cache. */
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** The default number of seconds after which a cached "term doesn't exist" answer expires. */
+    private static final int DEFAULT_MISS_TIME_TO_LIVE = 3600;
+
+    /** The maximum number of "term doesn't exist" answers to cache, relative to the size of the main cache. */
+    private static final int MISS_CACHE_RATIO = 10;
+
     /** @see #getSolrConnection() */
     private SolrClient core;
 
     /** @see #getTermCache() */
-    private Cache<VocabularyTerm> cache;
+    private InstrumentedTermCache cache;
 
     /** Provides access to the Solr cores. */
     @Inject
@@ -59,12 +73,17 @@ public class DefaultSolrVocabularyResourceManager implements SolrVocabularyResou
     @Inject
     private CacheManager cacheFactory;
 
+    /** Provides access to the cache settings configured in {@code xwiki.properties}. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
     @Override
     public void initialize(String vocabularyName) throws InitializationException
     {
         try {
             this.core = new EmbeddedSolrServer(this.cores.getContainer(), vocabularyName);
-            this.cache = this.cacheFactory.createNewLocalCache(new CacheConfiguration());
+            this.cache = createCache(vocabularyName);
         } catch (RuntimeException ex) {
             throw new InitializationException("Invalid Solr core: " + ex.getMessage());
         } catch (final CacheException ex) {
@@ -78,9 +97,50 @@ public Cache<VocabularyTerm> getTermCache()
         return this.cache;
     }
 
+    @Override
+    public VocabularyCacheStatistics getTermCacheStatistics()
+    {
+        return this.cache;
+    }
+
     @Override
     public SolrClient getSolrConnection()
     {
         return this.core;
     }
+
+    /**
+     * Create the term cache for a vocabulary, using the {@code phenotips.vocabularies.<vocabulary>.cache.maxEntries}
+     * and {@code phenotips.vocabularies.<vocabulary>.cache.missTimeToLive} configuration parameters.
+     *
+     * @param vocabularyName the name of the vocabulary being managed
+     * @return a new cache instance
+     * @throws CacheException if creating the underlying caches fails
+     */
+    private InstrumentedTermCache createCache(String vocabularyName) throws CacheException
+    {
+        String prefix = "phenotips.vocabularies." + vocabularyName + ".cache.";
+        int maxEntries = getIntProperty(prefix + "maxEntries", DEFAULT_MAX_ENTRIES);
+        int missTimeToLive = getIntProperty(prefix + "missTimeToLive", DEFAULT_MISS_TIME_TO_LIVE);
+
+        EntryEvictionConfiguration termsConfig = new LRUEvictionConfiguration(maxEntries);
+        CacheConfiguration termsCacheConfig = new CacheConfiguration(termsConfig);
+        termsCacheConfig.setConfigurationId("vocabulary." + vocabularyName + ".terms");
+        Cache<VocabularyTerm> terms = this.cacheFactory.createNewLocalCache(termsCacheConfig);
+
+        EntryEvictionConfiguration missesConfig =
+            new LRUEvictionConfiguration(Math.max(1, maxEntries / MISS_CACHE_RATIO));
+        missesConfig.setTimeToLive(missTimeToLive);
+        CacheConfiguration missesCacheConfig = new CacheConfiguration(missesConfig);
+        missesCacheConfig.setConfigurationId("vocabulary." + vocabularyName + ".misses");
+        Cache<VocabularyTerm> misses = this.cacheFactory.createNewLocalCache(missesCacheConfig);
+
+        return new InstrumentedTermCache(terms, misses, maxEntries);
+    }
+
+    private int getIntProperty(String key, int defaultValue)
+    {
+        Integer value = this.configuration.getProperty(key, Integer.class);
+        return (value == null || value <= 0) ? defaultValue : value;
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Converts canonical HPO identifiers, such as {@code HP:0000118}, to and from compact numeric keys, such as
+ * {@code 118}, for the in-memory tables indexed by phenotype.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+public final class HumanPhenotypeOntologyKeys
+{
+    /** Marker for identifiers that aren't canonical HPO identifiers. */
+    public static final int NOT_FOUND = -1;
+
+    private static final String TERM_PREFIX = "HP:";
+
+    /** The number of digits of a canonical HPO identifier. */
+    private static final int TERM_DIGITS = 7;
+
+    private HumanPhenotypeOntologyKeys()
+    {
+        // Utility class, don't instantiate
+    }
+
+    /**
+     * Convert a canonical HPO identifier into a number, for example {@code HP:0000118} into {@code 118}.
+     *
+     * @param termId the identifier to convert
+     * @return a positive number, or {@link #NOT_FOUND} if the identifier isn't a canonical HPO identifier
+     */
+    public static int toKey(String termId)
+    {
+        if (termId == null || termId.length() != TERM_PREFIX.length() + TERM_DIGITS || !termId.startsWith(TERM_PREFIX)
+            || !StringUtils.isNumeric(termId.substring(TERM_PREFIX.length()))) {
+            return NOT_FOUND;
+        }
+        return Integer.parseInt(termId.substring(TERM_PREFIX.length()));
+    }
+
+    /**
+     * Convert a number back into an HPO identifier, for example {@code 118} into {@code HP:0000118}.
+     *
+     * @param key the numeric identifier
+     * @return the canonical HPO identifier
+     */
+    public static String toTermId(int key)
+    {
+        return TERM_PREFIX + StringUtils.leftPad(String.valueOf(key), TERM_DIGITS, '0');
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.VocabularyCacheStatistics;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Term cache which keeps usage statistics. Existing terms are stored in a size-bounded cache, while the markers for
+ * terms that don't exist are kept in a separate, smaller cache whose entries expire, so that a term added by a reindex
+ * isn't reported as missing forever.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+public class InstrumentedTermCache implements Cache<VocabularyTerm>, VocabularyCacheStatistics
+{
+    /** How many more keys than the cache size are tracked for computing the most requested terms. */
+    private static final int USAGE_TRACKING_FACTOR = 4;
+
+    /** How much of the usage tracking capacity is kept once the usage counters are decayed. */
+    private static final double USAGE_DECAY_TARGET = 0.75;
+
+    /** Nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** The cache holding existing terms. */
+    private final Cache<VocabularyTerm> terms;
+
+    /** The cache holding markers for terms that don't exist. */
+    private final Cache<VocabularyTerm> misses;
+
+    /** @see #getMaxSize() */
+    private final int maxSize;
+
+    /** @see #getHits() */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** @see #getMisses() */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** @see #getEvictions() */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /** @see #getLoads() */
+    private final AtomicLong loadCount = new AtomicLong();
+
+    /** The total time spent loading missing terms, in nanoseconds. */
+    private final AtomicLong totalLoadTime = new AtomicLong();
+
+    /** How many times each term was requested, decayed when too many terms are tracked, see {@link #decayUsage()}. */
+    private final ConcurrentMap<String, AtomicLong> usage = new ConcurrentHashMap<>();
+
+    /** When did a cache miss happen for terms that weren't loaded yet. */
+    private final ConcurrentMap<String, Long> pendingLoads = new ConcurrentHashMap<>();
+
+    /** Marks that the current thread is explicitly removing entries, so removal events aren't counted as evictions. */
+    private final ThreadLocal<Boolean> removing = new ThreadLocal<>();
+
+    /**
+     * Simple constructor passing the underlying caches.
+     *
+     * @param terms the cache to use for existing terms, should be size-bounded
+     * @param misses the cache to use for markers of missing terms, should have a time to live
+     * @param maxSize the maximum size of the {@code terms} cache
+     */
+    public InstrumentedTermCache(Cache<VocabularyTerm> terms, Cache<VocabularyTerm> misses, int maxSize)
+    {
+        this.terms = terms;
+        this.misses = misses;
+        this.maxSize = maxSize;
+        CacheEntryListener<VocabularyTerm> evictionCounter = new EvictionCounter();
+        this.terms.addCacheEntryListener(evictionCounter);
+        this.misses.addCacheEntryListener(evictionCounter);
+    }
+
+    @Override
+    public void set(String key, VocabularyTerm value)
+    {
+        if (value == null || value.getId() == null) {
+            this.misses.set(key, value);
+        } else {
+            this.terms.set(key, value);
+        }
+        Long start = this.pendingLoads.remove(key);
+        if (start != null) {
+            this.loadCount.incrementAndGet();
+            this.totalLoadTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public VocabularyTerm get(String key)
+    {
+        VocabularyTerm result = this.terms.get(key);
+        if (result == null) {
+            result = this.misses.get(key);
+        }
+        if (result == null) {
+            this.missCount.incrementAndGet();
+            if (this.pendingLoads.size() > this.maxSize) {
+                // Lookups that are never followed by a load shouldn't leak memory
+                this.pendingLoads.clear();
+            }
+            this.pendingLoads.put(key, System.nanoTime());
+        } else {
+            this.hitCount.incrementAndGet();
+        }
+        recordUsage(key);
+        return result;
+    }
+
+    @Override
+    public void remove(String key)
+    {
+        this.removing.set(Boolean.TRUE);
+        try {
+            this.terms.remove(key);
+            this.misses.remove(key);
+        } finally {
+            this.removing.remove();
+        }
+    }
+
+    @Override
+    public void removeAll()
+    {
+        this.removing.set(Boolean.TRUE);
+        try {
+            this.terms.removeAll();
+            this.misses.removeAll();
+            this.pendingLoads.clear();
+        } finally {
+            this.removing.remove();
+        }
+    }
+
+    @Override
+    public void addCacheEntryListener(CacheEntryListener<VocabularyTerm> listener)
+    {
+        this.terms.addCacheEntryListener(listener);
+        this.misses.addCacheEntryListener(listener);
+    }
+
+    @Override
+    public void removeCacheEntryListener(CacheEntryListener<VocabularyTerm> listener)
+    {
+        this.terms.removeCacheEntryListener(listener);
+        this.misses.removeCacheEntryListener(listener);
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.terms.dispose();
+        this.misses.dispose();
+    }
+
+    @Override
+    public long getHits()
+    {
+        return this.hitCount.get();
+    }
+
+    @Override
+    public long getMisses()
+    {
+        return this.missCount.get();
+    }
+
+    @Override
+    public double getHitRatio()
+    {
+        long hits = this.hitCount.get();
+        long total = hits + this.missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getEvictions()
+    {
+        return this.evictionCount.get();
+    }
+
+    @Override
+    public long getLoads()
+    {
+        return this.loadCount.get();
+    }
+
+    @Override
+    public double getAverageLoadTime()
+    {
+        long loads = this.loadCount.get();
+        return loads == 0 ? 0 : this.totalLoadTime.get() / NANOS_PER_MILLI / loads;
+    }
+
+    @Override
+    public int getMaxSize()
+    {
+        return this.maxSize;
+    }
+
+    @Override
+    public List<String> getMostRequestedTerms(int limit)
+    {
+        // Take a snapshot of the counters, since they may change while sorting
+        final Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : this.usage.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        List<String> result = new ArrayList<>(counts.keySet());
+        Collections.sort(result, new Comparator<String>()
+        {
+            @Override
+            public int compare(String o1, String o2)
+            {
+                return Long.compare(counts.get(o2), counts.get(o1));
+            }
+        });
+        return result.size() > limit ? new ArrayList<>(result.subList(0, Math.max(limit, 0))) : result;
+    }
+
+    @Override
+    public void reset()
+    {
+        this.hitCount.set(0);
+        this.missCount.set(0);
+        this.evictionCount.set(0);
+        this.loadCount.set(0);
+        this.totalLoadTime.set(0);
+        this.usage.clear();
+    }
+
+    private void recordUsage(String key)
+    {
+        AtomicLong counter = this.usage.get(key);
+        if (counter == null) {
+            if (this.usage.size() >= getUsageTrackingLimit()) {
+                decayUsage();
+            }
+            AtomicLong newCounter = new AtomicLong();
+            counter = this.usage.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    private long getUsageTrackingLimit()
+    {
+        return (long) this.maxSize * USAGE_TRACKING_FACTOR;
+    }
+
+    /**
+     * Make room for tracking new terms by halving all the usage counters, and forgetting the terms whose counter drops
+     * to {@code 0}, until enough terms are forgotten. Terms requested often keep their rank, while terms which were
+     * only requested long ago are forgotten. Increments done concurrently may be lost, which is acceptable for
+     * statistics.
+     */
+    private void decayUsage()
+    {
+        synchronized (this.usage) {
+            long target = (long) (getUsageTrackingLimit() * USAGE_DECAY_TARGET);
+            while (this.usage.size() > target) {
+                Iterator<AtomicLong> counters = this.usage.values().iterator();
+                while (counters.hasNext()) {
+                    AtomicLong counter = counters.next();
+                    long decayed = counter.get() / 2;
+                    if (decayed == 0) {
+                        counters.remove();
+                    } else {
+                        counter.set(decayed);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Counts the entries removed from the cache without an explicit request. */
+    private final class EvictionCounter implements CacheEntryListener<VocabularyTerm>
+    {
+        @Override
+        public void cacheEntryAdded(CacheEntryEvent<VocabularyTerm> event)
+        {
+            // Not interesting
+        }
+
+        @Override
+        public void cacheEntryRemoved(CacheEntryEvent<VocabularyTerm> event)
+        {
+            if (InstrumentedTermCache.this.removing.get() == null) {
+                InstrumentedTermCache.this.evictionCount.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void cacheEntryModified(CacheEntryEvent<VocabularyTerm> event)
+        {
+            // Not interesting
+        }
+    }
+}
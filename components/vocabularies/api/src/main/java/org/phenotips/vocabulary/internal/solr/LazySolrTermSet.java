@@ -37,7 +37,7 @@
 public class LazySolrTermSet implements Set<VocabularyTerm>
 {
     /** The original set of term identifiers. */
-    private Collection<String> identifiers;
+    private Set<String> identifiers;
 
     /** The loaded terms, {@code null} until it is actually needed. */
     private Collection<VocabularyTerm> terms;
@@ -66,6 +66,17 @@ public LazySolrTermSet(Collection<Object> identifiers, Vocabulary ontology)
         this.ontology = ontology;
     }
 
+    /**
+     * Get the identifiers of the terms in this set, without loading the actual terms.
+     *
+     * @return an unmodifiable set of term identifiers, possibly empty
+     * @since 1.3M1
+     */
+    public Set<String> getIdentifiers()
+    {
+        return Collections.unmodifiableSet(this.identifiers);
+    }
+
     @Override
     public int size()
     {
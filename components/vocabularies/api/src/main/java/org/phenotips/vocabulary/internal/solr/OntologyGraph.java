@@ -0,0 +1,448 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Immutable in-memory representation of the structure of an ontology. Each term identifier is mapped to a dense
+ * integer index, the direct parent/child relations are kept in primitive arrays, and the transitive closure of the
+ * {@code is_a} relation is precomputed once, as a sorted array of ancestor indexes for each term. This allows answering
+ * structural questions, such as "what are the ancestors of this term" or "how far apart are these two terms", without
+ * querying the Solr index.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+public final class OntologyGraph
+{
+    /** Marker for unknown terms. */
+    public static final int NOT_FOUND = -1;
+
+    private static final int[] EMPTY = new int[0];
+
+    /** Maps term identifiers to their index. */
+    private final Map<String, Integer> index;
+
+    /** Maps term indexes back to their identifier. */
+    private final String[] ids;
+
+    /** The direct parents of each term, as indexes. */
+    private final int[][] parents;
+
+    /** The direct children of each term, as indexes. */
+    private final int[][] children;
+
+    /** The ancestors of each term, not including the term itself, as sorted arrays of indexes. */
+    private final int[][] ancestors;
+
+    private OntologyGraph(Map<String, Integer> index, String[] ids, int[][] parents, int[][] children)
+    {
+        this.index = index;
+        this.ids = ids;
+        this.parents = parents;
+        this.children = children;
+        this.ancestors = new int[ids.length][];
+        computeAncestors();
+    }
+
+    /**
+     * Build a graph from the list of direct parents of each term. Parents that are not themselves listed as terms are
+     * ignored. Parent identifiers may be followed by a label, as in {@code HP:0000118 ! Phenotypic abnormality}, in
+     * which case only the identifier is used.
+     *
+     * @param termParents a map whose keys are all the term identifiers, and whose values are the (possibly empty or
+     *            {@code null}) collections of direct parent identifiers
+     * @return the new graph
+     */
+    public static OntologyGraph build(Map<String, ? extends Collection<?>> termParents)
+    {
+        int size = termParents.size();
+        Map<String, Integer> index = new HashMap<>(size * 2);
+        String[] ids = new String[size];
+        int i = 0;
+        for (String id : termParents.keySet()) {
+            ids[i] = id;
+            index.put(id, i++);
+        }
+
+        int[][] parents = new int[size][];
+        int[] childrenCount = new int[size];
+        for (Map.Entry<String, ? extends Collection<?>> term : termParents.entrySet()) {
+            int crt = index.get(term.getKey());
+            parents[crt] = toIndexes(term.getValue(), index);
+            for (int parent : parents[crt]) {
+                ++childrenCount[parent];
+            }
+        }
+
+        int[][] children = new int[size][];
+        for (i = 0; i < size; ++i) {
+            children[i] = childrenCount[i] == 0 ? EMPTY : new int[childrenCount[i]];
+            childrenCount[i] = 0;
+        }
+        for (i = 0; i < size; ++i) {
+            for (int parent : parents[i]) {
+                children[parent][childrenCount[parent]++] = i;
+            }
+        }
+
+        return new OntologyGraph(index, ids, parents, children);
+    }
+
+    /**
+     * The number of terms in this graph.
+     *
+     * @return a positive number, or {@code 0} for an empty graph
+     */
+    public int size()
+    {
+        return this.ids.length;
+    }
+
+    /**
+     * Get the dense index assigned to a term.
+     *
+     * @param id the term identifier
+     * @return the index of the term, or {@link #NOT_FOUND} if the term isn't part of this graph
+     */
+    public int getIndex(String id)
+    {
+        Integer result = id == null ? null : this.index.get(id);
+        return result == null ? NOT_FOUND : result;
+    }
+
+    /**
+     * Get the identifier of a term given its index.
+     *
+     * @param termIndex a valid term index, as returned by {@link #getIndex(String)}
+     * @return the term identifier
+     */
+    public String getId(int termIndex)
+    {
+        return this.ids[termIndex];
+    }
+
+    /**
+     * Check if a term is part of this graph.
+     *
+     * @param id the term identifier to check
+     * @return {@code true} if the term is known
+     */
+    public boolean contains(String id)
+    {
+        return id != null && this.index.containsKey(id);
+    }
+
+    /**
+     * Get the indexes of the ancestors of a term, not including the term itself. The returned array must not be
+     * modified.
+     *
+     * @param termIndex a valid term index
+     * @return a sorted array of indexes, possibly empty
+     */
+    public int[] getAncestorIndexes(int termIndex)
+    {
+        return this.ancestors[termIndex];
+    }
+
+    /**
+     * Get the identifiers of the direct parents of a term.
+     *
+     * @param id the term identifier
+     * @return an unmodifiable set of identifiers, empty if the term is unknown or has no parents
+     */
+    public Set<String> getParentIds(String id)
+    {
+        int crt = getIndex(id);
+        return crt == NOT_FOUND ? Collections.<String>emptySet() : toIds(this.parents[crt], null);
+    }
+
+    /**
+     * Get the identifiers of the direct children of a term.
+     *
+     * @param id the term identifier
+     * @return an unmodifiable set of identifiers, empty if the term is unknown or has no children
+     */
+    public Set<String> getChildIds(String id)
+    {
+        int crt = getIndex(id);
+        return crt == NOT_FOUND ? Collections.<String>emptySet() : toIds(this.children[crt], null);
+    }
+
+    /**
+     * Get the identifiers of all the ancestors of a term, not including the term itself.
+     *
+     * @param id the term identifier
+     * @return an unmodifiable set of identifiers, empty if the term is unknown or is a root
+     */
+    public Set<String> getAncestorIds(String id)
+    {
+        int crt = getIndex(id);
+        return crt == NOT_FOUND ? Collections.<String>emptySet() : toIds(this.ancestors[crt], null);
+    }
+
+    /**
+     * Get the identifiers of all the ancestors of a term, including the term itself.
+     *
+     * @param id the term identifier
+     * @return an unmodifiable set of identifiers, empty if the term is unknown
+     */
+    public Set<String> getAncestorAndSelfIds(String id)
+    {
+        int crt = getIndex(id);
+        return crt == NOT_FOUND ? Collections.<String>emptySet() : toIds(this.ancestors[crt], this.ids[crt]);
+    }
+
+    /**
+     * Get the identifiers of all the descendants of a term, not including the term itself.
+     *
+     * @param id the term identifier
+     * @return an unmodifiable set of identifiers, empty if the term is unknown or is a leaf
+     */
+    public Set<String> getDescendantIds(String id)
+    {
+        int crt = getIndex(id);
+        if (crt == NOT_FOUND) {
+            return Collections.emptySet();
+        }
+        BitSet visited = new BitSet(this.ids.length);
+        int[] queue = new int[this.ids.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = crt;
+        visited.set(crt);
+        while (head < tail) {
+            for (int child : this.children[queue[head++]]) {
+                if (!visited.get(child)) {
+                    visited.set(child);
+                    queue[tail++] = child;
+                }
+            }
+        }
+        return toIds(Arrays.copyOfRange(queue, 1, tail), null);
+    }
+
+    /**
+     * Check if a term is an ancestor of another term.
+     *
+     * @param ancestorId the identifier of the potential ancestor
+     * @param descendantId the identifier of the potential descendant
+     * @return {@code true} if both terms are known and the first one is a (direct or indirect) ancestor of the second
+     *         one; a term is not considered its own ancestor
+     */
+    public boolean isAncestor(String ancestorId, String descendantId)
+    {
+        int ancestor = getIndex(ancestorId);
+        int descendant = getIndex(descendantId);
+        return ancestor != NOT_FOUND && descendant != NOT_FOUND
+            && Arrays.binarySearch(this.ancestors[descendant], ancestor) >= 0;
+    }
+
+    /**
+     * Find the distance between two terms, defined as the minimum number of {@code is_a} edges that must be followed
+     * upwards from both terms until a common ancestor is reached.
+     *
+     * @param fromId the identifier of the first term
+     * @param toId the identifier of the second term
+     * @return the distance between the two terms, or {@code -1} if at least one of the terms is unknown or if they
+     *         don't have a common ancestor
+     */
+    public long getDistance(String fromId, String toId)
+    {
+        int from = getIndex(fromId);
+        int to = getIndex(toId);
+        if (from == NOT_FOUND || to == NOT_FOUND) {
+            return -1;
+        }
+        if (from == to) {
+            return 0;
+        }
+        int[] fromClosure = closureWithSelf(from);
+        int[] toClosure = closureWithSelf(to);
+        int[] fromDistances = upwardDistances(from, fromClosure);
+        int[] toDistances = upwardDistances(to, toClosure);
+
+        // Both closures are sorted, so common ancestors are found with a simple merge
+        long result = Long.MAX_VALUE;
+        int i = 0;
+        int j = 0;
+        while (i < fromClosure.length && j < toClosure.length) {
+            if (fromClosure[i] < toClosure[j]) {
+                ++i;
+            } else if (fromClosure[i] > toClosure[j]) {
+                ++j;
+            } else {
+                result = Math.min(result, (long) fromDistances[i] + toDistances[j]);
+                ++i;
+                ++j;
+            }
+        }
+        return result == Long.MAX_VALUE ? -1 : result;
+    }
+
+    /**
+     * Computes the sorted ancestor closure of a term, including the term itself.
+     *
+     * @param termIndex a valid term index
+     * @return a new sorted array of indexes
+     */
+    private int[] closureWithSelf(int termIndex)
+    {
+        int[] closure = this.ancestors[termIndex];
+        int[] result = Arrays.copyOf(closure, closure.length + 1);
+        result[closure.length] = termIndex;
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Computes the shortest upward distance from a term to each of the terms in its closure, with a breadth-first walk
+     * over the parent arrays.
+     *
+     * @param start the term from which distances are computed
+     * @param closure the sorted closure of the start term, including the term itself
+     * @return an array aligned with {@code closure}, holding at each position the distance to the corresponding term
+     */
+    private int[] upwardDistances(int start, int[] closure)
+    {
+        int[] distances = new int[closure.length];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[closure.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        distances[Arrays.binarySearch(closure, start)] = 0;
+        while (head < tail) {
+            int crt = queue[head++];
+            int crtDistance = distances[Arrays.binarySearch(closure, crt)];
+            for (int parent : this.parents[crt]) {
+                int position = Arrays.binarySearch(closure, parent);
+                if (position >= 0 && distances[position] == -1) {
+                    distances[position] = crtDistance + 1;
+                    queue[tail++] = parent;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Computes the ancestor closure of every term in a single pass, memoizing the closure of each term so that shared
+     * ancestors are only walked once. Cycles, which shouldn't appear in a valid ontology, are broken arbitrarily.
+     */
+    private void computeAncestors()
+    {
+        // 0 = not visited, 1 = in progress, 2 = done
+        byte[] state = new byte[this.ids.length];
+        BitSet scratch = new BitSet(this.ids.length);
+        int[] stack = new int[this.ids.length];
+        int[] stackPosition = new int[this.ids.length];
+        for (int root = 0; root < this.ids.length; ++root) {
+            if (state[root] != 0) {
+                continue;
+            }
+            // Iterative post-order walk, so that deep hierarchies don't overflow the call stack
+            int top = 0;
+            stack[top] = root;
+            stackPosition[top] = 0;
+            state[root] = 1;
+            while (top >= 0) {
+                int crt = stack[top];
+                if (stackPosition[top] < this.parents[crt].length) {
+                    int parent = this.parents[crt][stackPosition[top]++];
+                    if (state[parent] == 0) {
+                        state[parent] = 1;
+                        stack[++top] = parent;
+                        stackPosition[top] = 0;
+                    }
+                } else {
+                    this.ancestors[crt] = mergeParentClosures(crt, scratch);
+                    state[crt] = 2;
+                    --top;
+                }
+            }
+        }
+    }
+
+    private int[] mergeParentClosures(int termIndex, BitSet scratch)
+    {
+        if (this.parents[termIndex].length == 0) {
+            return EMPTY;
+        }
+        scratch.clear();
+        for (int parent : this.parents[termIndex]) {
+            scratch.set(parent);
+            // The closure of the parent may still be missing if there's a cycle
+            if (this.ancestors[parent] != null) {
+                for (int ancestor : this.ancestors[parent]) {
+                    scratch.set(ancestor);
+                }
+            }
+        }
+        scratch.clear(termIndex);
+        int[] result = new int[scratch.cardinality()];
+        int i = 0;
+        for (int bit = scratch.nextSetBit(0); bit >= 0; bit = scratch.nextSetBit(bit + 1)) {
+            result[i++] = bit;
+        }
+        return result;
+    }
+
+    private Set<String> toIds(int[] indexes, String self)
+    {
+        Set<String> result = new LinkedHashSet<>(indexes.length + 1, 1f);
+        if (self != null) {
+            result.add(self);
+        }
+        for (int i : indexes) {
+            result.add(this.ids[i]);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    private static int[] toIndexes(Collection<?> identifiers, Map<String, Integer> index)
+    {
+        if (identifiers == null || identifiers.isEmpty()) {
+            return EMPTY;
+        }
+        List<Integer> found = new ArrayList<>(identifiers.size());
+        for (Object identifier : identifiers) {
+            Integer parent = index.get(StringUtils.substringBefore(String.valueOf(identifier), " "));
+            if (parent != null && !found.contains(parent)) {
+                found.add(parent);
+            }
+        }
+        int[] result = new int[found.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = found.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable in-memory index of term labels, answering "which terms have a name or synonym containing a word that
+ * starts with this prefix" without querying Solr. Every label is normalized (lowercase, punctuation replaced by
+ * spaces), and each of its suffixes starting at a word boundary is stored in a sorted array, so that all the labels
+ * matching a prefix form a contiguous range found by binary search. The best terms for common prefixes, which match
+ * large ranges, are computed in advance, so that a lookup never scans more than a few hundred keys.
+ * <p>
+ * Matches are ranked by: matching the start of the label first, names before synonyms, shorter labels first, and
+ * finally by term identifier.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+public final class PrefixSuggester
+{
+    /** Prefixes matching more keys than this have their best terms computed in advance. */
+    private static final int PRECOMPUTED_RANGE_SIZE = 256;
+
+    /** How many terms are kept for each precomputed prefix. */
+    private static final int PRECOMPUTED_RESULTS = 100;
+
+    /** Ranks and term indexes are packed together in a long, with the rank in the high bits. */
+    private static final int RANK_SHIFT = 32;
+
+    /** Extracts the term index from a packed rank. */
+    private static final long TERM_MASK = 0xFFFFFFFFL;
+
+    /** Rank penalty for matches which don't start at the beginning of the label. */
+    private static final int INNER_WORD_PENALTY = 1 << 20;
+
+    /** Rank penalty for matches in a synonym instead of the name. */
+    private static final int SYNONYM_PENALTY = 1 << 19;
+
+    /** The length of a label is the last ranking criterion, but it must not overflow into the other criteria. */
+    private static final int MAX_LENGTH_RANK = SYNONYM_PENALTY - 1;
+
+    /** Used for sizing the temporary lists, most terms have a few labels of a few words. */
+    private static final int EXPECTED_KEYS_PER_TERM = 8;
+
+    /** Maps term indexes to their identifier. */
+    private final String[] ids;
+
+    /** The normalized label suffixes, sorted. */
+    private final String[] keys;
+
+    /** The index of the term owning each key. */
+    private final int[] terms;
+
+    /** The rank of each key, lower is better. */
+    private final int[] ranks;
+
+    /** The best terms for each short prefix, already sorted by rank. */
+    private final Map<String, int[]> topTerms = new HashMap<>();
+
+    private PrefixSuggester(String[] ids, String[] keys, int[] terms, int[] ranks)
+    {
+        this.ids = ids;
+        this.keys = keys;
+        this.terms = terms;
+        this.ranks = ranks;
+        precomputeTopTerms();
+    }
+
+    /**
+     * Build a suggester from the labels of each term.
+     *
+     * @param termLabels a map whose keys are the term identifiers, and whose values are the labels of each term, with
+     *            the name first and then the synonyms; {@code null} or blank labels are ignored
+     * @return the new suggester
+     */
+    public static PrefixSuggester build(Map<String, ? extends Collection<?>> termLabels)
+    {
+        // Term indexes follow the order of the identifiers, so that sorting by index breaks ties by identifier
+        String[] ids = termLabels.keySet().toArray(new String[termLabels.size()]);
+        Arrays.sort(ids);
+        final List<String> keys = new ArrayList<>(termLabels.size() * EXPECTED_KEYS_PER_TERM);
+        List<Integer> owners = new ArrayList<>(termLabels.size() * EXPECTED_KEYS_PER_TERM);
+        List<Integer> ranks = new ArrayList<>(termLabels.size() * EXPECTED_KEYS_PER_TERM);
+        for (int termIndex = 0; termIndex < ids.length; ++termIndex) {
+            Collection<?> labels = termLabels.get(ids[termIndex]);
+            if (labels != null) {
+                boolean isName = true;
+                for (Object label : labels) {
+                    String normalized = label == null ? "" : normalize(String.valueOf(label));
+                    int baseRank = Math.min(normalized.length(), MAX_LENGTH_RANK) + (isName ? 0 : SYNONYM_PENALTY);
+                    isName = false;
+                    for (int start = 0; start < normalized.length(); ++start) {
+                        if (start == 0 || normalized.charAt(start - 1) == ' ') {
+                            keys.add(normalized.substring(start));
+                            owners.add(termIndex);
+                            ranks.add(baseRank + (start == 0 ? 0 : INNER_WORD_PENALTY));
+                        }
+                    }
+                }
+            }
+        }
+
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer o1, Integer o2)
+            {
+                return keys.get(o1).compareTo(keys.get(o2));
+            }
+        });
+        String[] sortedKeys = new String[order.length];
+        int[] sortedTerms = new int[order.length];
+        int[] sortedRanks = new int[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            sortedKeys[i] = keys.get(order[i]);
+            sortedTerms[i] = owners.get(order[i]);
+            sortedRanks[i] = ranks.get(order[i]);
+        }
+        return new PrefixSuggester(ids, sortedKeys, sortedTerms, sortedRanks);
+    }
+
+    /**
+     * Normalize a label or a query in the same way: lowercase, with any sequence of characters other than letters and
+     * digits replaced by a single space.
+     *
+     * @param text the text to normalize
+     * @return the normalized text, may be empty
+     */
+    public static String normalize(String text)
+    {
+        StringBuilder result = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && result.length() > 0) {
+                    result.append(' ');
+                }
+                pendingSpace = false;
+                result.append(c);
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return result.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The number of terms known by this suggester.
+     *
+     * @return a positive number, or {@code 0} for an empty suggester
+     */
+    public int size()
+    {
+        return this.ids.length;
+    }
+
+    /**
+     * Find the best terms having a label with a word starting with the given prefix. The prefix may contain several
+     * words, in which case they must appear consecutively in a label, and only the last one may be incomplete.
+     *
+     * @param prefix the text typed so far, normalized by this method
+     * @param limit the maximum number of terms to return
+     * @return the identifiers of the matching terms, best matches first; may be empty
+     */
+    public List<String> suggest(String prefix, int limit)
+    {
+        String normalized = prefix == null ? "" : normalize(prefix);
+        if (normalized.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int[] best = this.topTerms.get(normalized);
+        if (best == null || (best.length == PRECOMPUTED_RESULTS && limit > PRECOMPUTED_RESULTS)) {
+            int start = lowerBound(normalized);
+            best = findBestTerms(start, upperBound(normalized, start), limit);
+        }
+        List<String> result = new ArrayList<>(Math.min(limit, best.length));
+        for (int i = 0; i < best.length && i < limit; ++i) {
+            result.add(this.ids[best[i]]);
+        }
+        return result;
+    }
+
+    private void precomputeTopTerms()
+    {
+        precomputeTopTerms(0, this.keys.length, 1);
+    }
+
+    /**
+     * Compute the best terms for all the prefixes of a given length found in a range of keys sharing a shorter
+     * prefix, and descend into the ranges that are still large.
+     *
+     * @param start the first key in the range
+     * @param end the position after the last key in the range
+     * @param length the length of the prefixes to compute
+     */
+    private void precomputeTopTerms(int start, int end, int length)
+    {
+        int i = start;
+        while (i < end) {
+            if (this.keys[i].length() < length) {
+                ++i;
+                continue;
+            }
+            String prefix = this.keys[i].substring(0, length);
+            int rangeEnd = i + 1;
+            while (rangeEnd < end && this.keys[rangeEnd].startsWith(prefix)) {
+                ++rangeEnd;
+            }
+            if (rangeEnd - i > PRECOMPUTED_RANGE_SIZE) {
+                this.topTerms.put(prefix, findBestTerms(i, rangeEnd, PRECOMPUTED_RESULTS));
+                precomputeTopTerms(i, rangeEnd, length + 1);
+            }
+            i = rangeEnd;
+        }
+    }
+
+    /**
+     * Select the best terms among a range of keys.
+     *
+     * @param start the first key in the range
+     * @param end the position after the last key in the range
+     * @param limit the maximum number of terms to return
+     * @return the indexes of the best terms, sorted by rank
+     */
+    private int[] findBestTerms(int start, int end, int limit)
+    {
+        long[] candidates = new long[end - start];
+        for (int i = start; i < end; ++i) {
+            candidates[i - start] = ((long) this.ranks[i] << RANK_SHIFT) | this.terms[i];
+        }
+        Arrays.sort(candidates);
+        // A term may match through several keys, only its best match counts
+        Set<Integer> found = new LinkedHashSet<>();
+        for (int i = 0; i < candidates.length && found.size() < limit; ++i) {
+            found.add((int) (candidates[i] & TERM_MASK));
+        }
+        int[] result = new int[found.size()];
+        int i = 0;
+        for (Integer term : found) {
+            result[i++] = term;
+        }
+        return result;
+    }
+
+    /** The position after the last key starting with the prefix, knowing the position of the first one. */
+    private int upperBound(String prefix, int start)
+    {
+        int low = start;
+        int high = this.keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.keys[middle].startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** The position of the first key greater than or equal to the prefix. */
+    private int lowerBound(String prefix)
+    {
+        int position = Arrays.binarySearch(this.keys, prefix);
+        if (position < 0) {
+            return -position - 1;
+        }
+        // Several identical keys may exist, go back to the first one
+        while (position > 0 && this.keys[position - 1].equals(prefix)) {
+            --position;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Makes concurrent requests for the same key share a single execution: the first thread asking for a key performs
+ * the load, while the others arriving before it finishes wait for its result instead of repeating the work. Nothing is
+ * remembered once the load is finished, caching the result is up to the caller.
+ *
+ * @param <K> the type of the keys identifying requests
+ * @param <V> the type of the loaded values
+ * @version $Id$
+ * @since 1.3M1
+ */
+public final class RequestCoalescer<K, V>
+{
+    /** The loads currently in progress. */
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the value for a request.
+     *
+     * @param <V> the type of the loaded values
+     * @version $Id$
+     */
+    public interface Loader<V>
+    {
+        /**
+         * Compute the value.
+         *
+         * @return the loaded value, may be {@code null}
+         */
+        V load();
+    }
+
+    /**
+     * Get the value for a key, either by performing the load in the current thread, or by waiting for the same load
+     * already started by another thread.
+     *
+     * @param key the key identifying the request
+     * @param loader computes the value, only called if no load is in progress for the same key
+     * @return the loaded value, may be {@code null}
+     * @throws RuntimeException if the load failed, the same exception is thrown to all the waiting threads
+     */
+    public V get(K key, final Loader<V> loader)
+    {
+        FutureTask<V> task = new FutureTask<>(new Callable<V>()
+        {
+            @Override
+            public V call()
+            {
+                return loader.load();
+            }
+        });
+        FutureTask<V> pending = this.inFlight.putIfAbsent(key, task);
+        if (pending == null) {
+            try {
+                task.run();
+            } finally {
+                this.inFlight.remove(key, task);
+            }
+            pending = task;
+        }
+        return waitFor(pending);
+    }
+
+    /**
+     * The number of loads currently in progress.
+     *
+     * @return a positive number, or {@code 0} if nothing is being loaded
+     */
+    public int size()
+    {
+        return this.inFlight.size();
+    }
+
+    private V waitFor(FutureTask<V> task)
+    {
+        // The load is performed by another request thread, which can't be cancelled by interrupting this one
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+import org.apache.solr.core.SolrCore;
+
+/**
+ * A temporary Solr core, used for building a new version of a vocabulary index while the live core keeps serving the
+ * old data. Once the new index is complete, it is {@link #publish() published} into the live core in a single step,
+ * so that readers never see a partial index.
+ * <p>
+ * The shadow core lives in its own instance directory, {@code <solr home>/<live core>.shadow}, with a copy of the live
+ * core's configuration. Publishing doesn't rename the cores, since that would change the {@code core.properties} files
+ * of the shipped configuration; instead, the committed index files are linked into the data directory of the live
+ * core, and the live core is switched to them through {@code index.properties}, the same way Solr replication installs
+ * a new index.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+public class ShadowSolrCore
+{
+    /** The suffix added to the live core name to obtain the shadow core name. */
+    private static final String SHADOW_SUFFIX = ".shadow";
+
+    /** The name of the configuration directory of a core. */
+    private static final String CONF_DIRECTORY = "conf";
+
+    /** The file which tells Solr which directory holds the current index of a core. */
+    private static final String INDEX_PROPERTIES = "index.properties";
+
+    /** The Lucene lock file, which must not be copied into the live index. */
+    private static final String LOCK_FILE = "write.lock";
+
+    /** The container holding both the live and the shadow core. */
+    private final CoreContainer container;
+
+    /** The name of the live core. */
+    private final String liveName;
+
+    /** The name of the shadow core. */
+    private final String shadowName;
+
+    /** The client connected to the shadow core. */
+    private final SolrClient client;
+
+    ShadowSolrCore(CoreContainer container, String liveName, String shadowName)
+    {
+        this.container = container;
+        this.liveName = liveName;
+        this.shadowName = shadowName;
+        this.client = new EmbeddedSolrServer(container, shadowName);
+    }
+
+    /**
+     * Create a new, empty shadow core for a live core, discarding any leftover shadow core from a previous failed
+     * reindex.
+     *
+     * @param container the container holding the live core
+     * @param liveName the name of the live core
+     * @return the new shadow core
+     * @throws IOException if the shadow core cannot be created
+     */
+    public static ShadowSolrCore create(CoreContainer container, String liveName) throws IOException
+    {
+        String shadowName = liveName + SHADOW_SUFFIX;
+        if (container.getCoreNames().contains(shadowName)) {
+            container.unload(shadowName, true, true, true);
+        }
+        Path liveInstanceDir;
+        SolrCore live = container.getCore(liveName);
+        if (live == null) {
+            throw new IOException("Unknown Solr core: " + liveName);
+        }
+        try {
+            liveInstanceDir = Paths.get(live.getCoreDescriptor().getInstanceDir());
+        } finally {
+            live.close();
+        }
+        Path shadowInstanceDir = Paths.get(container.getSolrHome(), shadowName);
+        delete(shadowInstanceDir);
+        copy(liveInstanceDir.resolve(CONF_DIRECTORY), shadowInstanceDir.resolve(CONF_DIRECTORY));
+        try {
+            container.create(new CoreDescriptor(container, shadowName, shadowInstanceDir.toString()));
+        } catch (RuntimeException ex) {
+            delete(shadowInstanceDir);
+            throw new IOException("Failed to create the shadow core " + shadowName + ": " + ex.getMessage(), ex);
+        }
+        return new ShadowSolrCore(container, liveName, shadowName);
+    }
+
+    /**
+     * Get a client connected to the shadow core, to be used for writing the new index.
+     *
+     * @return a Solr client
+     */
+    public SolrClient getClient()
+    {
+        return this.client;
+    }
+
+    /**
+     * Replace the index of the live core with the committed index of the shadow core. The live core keeps serving its
+     * old index until the new one is completely installed.
+     *
+     * @throws IOException if installing the new index fails; the live core is switched back to its previous index in
+     *             this case
+     */
+    public void publish() throws IOException
+    {
+        Path shadowIndex;
+        SolrCore shadow = this.container.getCore(this.shadowName);
+        try {
+            shadowIndex = Paths.get(shadow.getIndexDir());
+        } finally {
+            shadow.close();
+        }
+
+        final SolrCore live = this.container.getCore(this.liveName);
+        try {
+            install(shadowIndex, Paths.get(live.getDataDir()), Paths.get(live.getIndexDir()), new IndexSwitch()
+            {
+                @Override
+                public void reopen() throws IOException
+                {
+                    // Reopen the writer on the current index directory, then open and register a searcher over it
+                    live.getUpdateHandler().newIndexWriter(true);
+                    live.getSearcher(true, false, null);
+                }
+            });
+        } finally {
+            live.close();
+        }
+    }
+
+    /**
+     * Unload the shadow core and delete all its files. Must always be called once the shadow core is no longer needed,
+     * whether it was published or not.
+     */
+    public void discard()
+    {
+        // The client must not be closed, since closing an embedded client shuts down the whole container
+        if (this.container.getCoreNames().contains(this.shadowName)) {
+            this.container.unload(this.shadowName, true, true, true);
+        }
+    }
+
+    /**
+     * Install a new index in the data directory of a core, and switch the core to it. If the core cannot be switched,
+     * the previous {@code index.properties} is restored and the core is switched back to its old index, which is only
+     * deleted once the new one is in use.
+     *
+     * @param newIndexSource the directory holding the committed new index
+     * @param dataDir the data directory of the core
+     * @param oldIndex the index directory currently used by the core
+     * @param core switches the core to the index named in its {@code index.properties}
+     * @throws IOException if the new index cannot be installed
+     */
+    static void install(Path newIndexSource, Path dataDir, Path oldIndex, IndexSwitch core) throws IOException
+    {
+        String newIndexName = "index." + new SimpleDateFormat("yyyyMMddHHmmssSSS", Locale.ROOT).format(new Date());
+        Path newIndex = dataDir.resolve(newIndexName);
+        Path properties = dataDir.resolve(INDEX_PROPERTIES);
+        byte[] previousProperties = Files.exists(properties) ? Files.readAllBytes(properties) : null;
+        linkOrCopyIndex(newIndexSource, newIndex);
+        try {
+            writeIndexProperties(dataDir, newIndexName);
+            core.reopen();
+        } catch (IOException | RuntimeException ex) {
+            restoreIndexProperties(dataDir, previousProperties);
+            try {
+                core.reopen();
+            } catch (IOException | RuntimeException reopenEx) {
+                // The old index is still named in index.properties, and will be used when the core is next loaded
+            }
+            try {
+                delete(newIndex);
+            } catch (IOException deleteEx) {
+                // Not used by the core, it will be removed by the next reindex
+            }
+            throw new IOException("Failed to switch to the new index: " + ex.getMessage(), ex);
+        }
+
+        if (!oldIndex.equals(newIndex)) {
+            try {
+                delete(oldIndex);
+            } catch (IOException ex) {
+                // Files still used by the old searcher may not be deletable on some systems; Solr will ignore them
+            }
+        }
+    }
+
+    /**
+     * Lucene index files are never modified once written, so they can be safely shared through hard links; files are
+     * copied instead on filesystems which don't support links.
+     */
+    private static void linkOrCopyIndex(Path source, Path target) throws IOException
+    {
+        Files.createDirectories(target);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(source)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (LOCK_FILE.equals(name) || Files.isDirectory(file)) {
+                    continue;
+                }
+                Path targetFile = target.resolve(name);
+                try {
+                    Files.createLink(targetFile, file);
+                } catch (IOException | UnsupportedOperationException ex) {
+                    Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException ex) {
+            delete(target);
+            throw ex;
+        }
+    }
+
+    private static void writeIndexProperties(Path dataDir, String indexName) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("index", indexName);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        properties.store(content, null);
+        write(dataDir.resolve(INDEX_PROPERTIES), content.toByteArray());
+    }
+
+    private static void restoreIndexProperties(Path dataDir, byte[] previousContent) throws IOException
+    {
+        if (previousContent == null) {
+            // The default index directory was used before
+            Files.deleteIfExists(dataDir.resolve(INDEX_PROPERTIES));
+        } else {
+            write(dataDir.resolve(INDEX_PROPERTIES), previousContent);
+        }
+    }
+
+    /** Replace the content of a file in a single step, so that Solr never reads a partially written file. */
+    private static void write(Path file, byte[] content) throws IOException
+    {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, content);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void copy(final Path source, final Path target) throws IOException
+    {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+            {
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+            {
+                Files.copy(file, target.resolve(source.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void delete(Path path) throws IOException
+    {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+            {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+            {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Switches a core to the index named in its {@code index.properties} file.
+     *
+     * @version $Id$
+     */
+    interface IndexSwitch
+    {
+        /**
+         * Reopen the index writer and searcher of the core.
+         *
+         * @throws IOException if the index cannot be opened
+         */
+        void reopen() throws IOException;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyInputTerm;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Implementation for {@link VocabularyInputTerm} based on a Solr document being prepared for indexing. All changes are
+ * written directly into the backing document.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+public class SolrVocabularyInputTerm implements VocabularyInputTerm
+{
+    private static final String ID = "id";
+
+    private static final String NAME = "name";
+
+    private static final String DEF = "def";
+
+    private static final String TERM_CATEGORY = "term_category";
+
+    private static final String IS_A = "is_a";
+
+    /** The Solr document representing this term. */
+    private final SolrInputDocument doc;
+
+    /** The vocabulary being indexed. */
+    private final Vocabulary vocabulary;
+
+    /**
+     * Constructor that provides the backing {@link #doc Solr document} and the {@link #vocabulary owner vocabulary}.
+     *
+     * @param doc the {@link #doc Solr document} representing this term
+     * @param vocabulary the {@link #vocabulary vocabulary} being indexed
+     */
+    public SolrVocabularyInputTerm(SolrInputDocument doc, Vocabulary vocabulary)
+    {
+        this.doc = doc;
+        this.vocabulary = vocabulary;
+    }
+
+    @Override
+    public String getId()
+    {
+        return getString(ID);
+    }
+
+    @Override
+    public String getName()
+    {
+        return getString(NAME);
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return getString(DEF);
+    }
+
+    @Override
+    public Set<VocabularyTerm> getParents()
+    {
+        return new LazySolrTermSet(this.doc.getFieldValues(IS_A), this.vocabulary);
+    }
+
+    @Override
+    public Set<VocabularyTerm> getAncestors()
+    {
+        return new LazySolrTermSet(new ArrayList<Object>(getAncestorIds()), this.vocabulary);
+    }
+
+    @Override
+    public Set<VocabularyTerm> getAncestorsAndSelf()
+    {
+        return new LazySolrTermSet(new ArrayList<Object>(getAncestorAndSelfIds()), this.vocabulary);
+    }
+
+    @Override
+    public Set<String> getAncestorIds()
+    {
+        Set<String> result = new LinkedHashSet<>();
+        Collection<Object> values = this.doc.getFieldValues(TERM_CATEGORY);
+        if (values != null) {
+            for (Object value : values) {
+                result.add(StringUtils.substringBefore(String.valueOf(value), " "));
+            }
+        }
+        result.remove(getId());
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public Set<String> getAncestorAndSelfIds()
+    {
+        Set<String> result = new LinkedHashSet<>();
+        result.add(getId());
+        result.addAll(getAncestorIds());
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public Object get(String name)
+    {
+        SolrInputField field = this.doc.getField(name);
+        return field != null ? field.getValue() : null;
+    }
+
+    @Override
+    public Vocabulary getVocabulary()
+    {
+        return this.vocabulary;
+    }
+
+    @Override
+    public long getDistanceTo(VocabularyTerm other)
+    {
+        return SolrVocabularyTerm.getDistance(this, other);
+    }
+
+    @Override
+    public JSONObject toJSON()
+    {
+        JSONObject json = new JSONObject();
+        Iterator<SolrInputField> fields = this.doc.iterator();
+        while (fields.hasNext()) {
+            SolrInputField field = fields.next();
+            Object value = field.getValue();
+            if (value instanceof Collection) {
+                json.put(field.getName(), new JSONArray((Collection<?>) value));
+            } else {
+                json.put(field.getName(), value);
+            }
+        }
+        return json;
+    }
+
+    @Override
+    public VocabularyInputTerm setId(String id)
+    {
+        return set(ID, id);
+    }
+
+    @Override
+    public VocabularyInputTerm setName(String name)
+    {
+        return set(NAME, name);
+    }
+
+    @Override
+    public VocabularyInputTerm setDescription(String description)
+    {
+        return set(DEF, description);
+    }
+
+    @Override
+    public VocabularyInputTerm setParents(Set<VocabularyTerm> parents)
+    {
+        if (parents == null || parents.isEmpty()) {
+            return set(IS_A, null);
+        }
+        List<String> ids = new ArrayList<>(parents.size());
+        for (VocabularyTerm parent : parents) {
+            ids.add(parent.getId());
+        }
+        return set(IS_A, ids);
+    }
+
+    @Override
+    public VocabularyInputTerm set(String name, Object value)
+    {
+        if (value == null) {
+            this.doc.removeField(name);
+        } else {
+            this.doc.setField(name, value);
+        }
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public VocabularyInputTerm append(String name, Object value)
+    {
+        if (value == null || (value instanceof Collection && ((Collection<?>) value).isEmpty())) {
+            return this;
+        }
+        Object stored = get(name);
+        if (stored == null) {
+            return set(name, value);
+        }
+        if (stored instanceof Collection) {
+            Collection<Object> storedValues = (Collection<Object>) stored;
+            try {
+                addValues(storedValues, value);
+            } catch (UnsupportedOperationException ex) {
+                // Read-only collection, replace it with a copy
+                storedValues = new ArrayList<>(storedValues);
+                addValues(storedValues, value);
+                set(name, storedValues);
+            }
+        } else if (value instanceof Collection) {
+            ((Collection<Object>) value).add(stored);
+            set(name, value);
+        } else {
+            Set<Object> values = new LinkedHashSet<>();
+            values.add(stored);
+            values.add(value);
+            set(name, values);
+        }
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[" + this.getId() + "] " + this.getName();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        String id = getId();
+        return (id != null ? id.hashCode() : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof VocabularyTerm)) {
+            return false;
+        }
+        return StringUtils.equals(getId(), ((VocabularyTerm) obj).getId());
+    }
+
+    private String getString(String name)
+    {
+        Object value = this.doc.getFieldValue(name);
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addValues(Collection<Object> target, Object value)
+    {
+        if (value instanceof Collection) {
+            target.addAll((Collection<Object>) value);
+        } else {
+            target.add(value);
+        }
+    }
+}
@@ -20,6 +20,7 @@
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -67,21 +68,21 @@ public class SolrVocabularyTerm implements VocabularyTerm
      *
      * @see #getParents()
      */
-    private Set<VocabularyTerm> parents;
+    private LazySolrTermSet parents;
 
     /**
      * The ancestors of this term, transformed from a set of IDs into a real set of terms.
      *
      * @see #getAncestors()
      */
-    private Set<VocabularyTerm> ancestors;
+    private LazySolrTermSet ancestors;
 
     /**
      * A set containing the term itself and its ancestors, transformed from a set of IDs into a real set of terms.
      *
      * @see #getAncestorsAndSelf()
      */
-    private Set<VocabularyTerm> ancestorsAndSelf;
+    private LazySolrTermSet ancestorsAndSelf;
 
     /**
      * Constructor that provides the backing {@link #doc Solr document} and the {@link #ontology owner ontology}.
@@ -91,35 +92,72 @@ public class SolrVocabularyTerm implements VocabularyTerm
      */
     public SolrVocabularyTerm(SolrDocument doc, Vocabulary ontology)
     {
-        this.doc = doc;
+        this.doc = withoutSelfDuplicate(doc);
         this.ontology = ontology;
-        if (doc != null) {
-            this.removeSelfDuplicate();
-            this.parents = new LazySolrTermSet(doc.getFieldValues(IS_A), ontology);
-            this.ancestors = new LazySolrTermSet(doc.getFieldValues(TERM_CATEGORY), ontology);
+        OntologyGraph graph = getGraph(ontology, getId());
+        if (graph != null) {
+            // The structure is shared by all the terms, there's no need to extract it from each document
+            this.parents = new LazySolrTermSet(new ArrayList<Object>(graph.getParentIds(getId())), ontology);
+            this.ancestors = new LazySolrTermSet(new ArrayList<Object>(graph.getAncestorIds(getId())), ontology);
+            this.ancestorsAndSelf =
+                new LazySolrTermSet(new ArrayList<Object>(graph.getAncestorAndSelfIds(getId())), ontology);
+        } else if (this.doc != null) {
+            this.parents = new LazySolrTermSet(this.doc.getFieldValues(IS_A), ontology);
+            this.ancestors = new LazySolrTermSet(this.doc.getFieldValues(TERM_CATEGORY), ontology);
             Collection<Object> termSet = new HashSet<Object>();
             termSet.add(this.getId());
-            if (doc.getFieldValues(TERM_CATEGORY) != null) {
-                termSet.addAll(doc.getFieldValues(TERM_CATEGORY));
+            if (this.doc.getFieldValues(TERM_CATEGORY) != null) {
+                termSet.addAll(this.doc.getFieldValues(TERM_CATEGORY));
             }
             this.ancestorsAndSelf = new LazySolrTermSet(termSet, this.ontology);
         }
     }
 
     /**
-     * The field "term_category" in {@code this.doc} can contain the term itself. It appears that this only happens with
-     * HPO. To avoid this problem, and to avoid writing a separate implementation for HPO specifically, this method
-     * checks for existence of the term in the term_category and takes it out.
+     * Get the in-memory structure of the owner vocabulary, if it has one which contains this term.
+     *
+     * @param ontology the owner vocabulary
+     * @param id the identifier of the term
+     * @return the vocabulary graph, or {@code null} if it isn't available or doesn't contain this term
      */
-    private void removeSelfDuplicate()
+    private static OntologyGraph getGraph(Vocabulary ontology, String id)
     {
-        Object value = this.doc.getFieldValue(TERM_CATEGORY);
-        if (!(value instanceof List)) {
-            return;
+        if (id != null && ontology instanceof AbstractSolrVocabulary) {
+            OntologyGraph graph = ((AbstractSolrVocabulary) ontology).getGraph();
+            if (graph != null && graph.contains(id)) {
+                return graph;
+            }
         }
-        @SuppressWarnings("unchecked")
-        List<String> listValue = (List<String>) value;
-        listValue.remove(this.getId());
+        return null;
+    }
+
+    /**
+     * The field "term_category" in a document can contain the term itself. It appears that this only happens with HPO.
+     * To avoid this problem, and to avoid writing a separate implementation for HPO specifically, this method checks
+     * for existence of the term in the term_category and takes it out. Search results may be shared between several
+     * concurrent requests, so the original document is never changed; a copy is made instead, only when needed.
+     *
+     * @param doc the Solr document representing a term, may be {@code null}
+     * @return the same document if it doesn't list the term among its ancestors, a cleaned up copy otherwise
+     */
+    private static SolrDocument withoutSelfDuplicate(SolrDocument doc)
+    {
+        if (doc == null) {
+            return null;
+        }
+        Object value = doc.getFieldValue(TERM_CATEGORY);
+        Object id = doc.getFirstValue(ID);
+        if (!(value instanceof Collection) || !((Collection<?>) value).contains(id)) {
+            return doc;
+        }
+        SolrDocument result = new SolrDocument();
+        for (String field : doc.getFieldNames()) {
+            result.setField(field, doc.getFieldValue(field));
+        }
+        List<Object> ancestors = new ArrayList<Object>((Collection<?>) value);
+        ancestors.remove(id);
+        result.setField(TERM_CATEGORY, ancestors);
+        return result;
     }
 
     @Override
@@ -158,12 +196,35 @@ public Set<VocabularyTerm> getAncestorsAndSelf()
         return this.ancestorsAndSelf != null ? this.ancestorsAndSelf : Collections.<VocabularyTerm>emptySet();
     }
 
+    @Override
+    public Set<String> getAncestorIds()
+    {
+        return this.ancestors != null ? this.ancestors.getIdentifiers() : Collections.<String>emptySet();
+    }
+
+    @Override
+    public Set<String> getAncestorAndSelfIds()
+    {
+        return this.ancestorsAndSelf != null ? this.ancestorsAndSelf.getIdentifiers()
+            : Collections.<String>emptySet();
+    }
+
     @Override
     public Object get(String name)
     {
         return this.doc != null ? this.doc.getFieldValue(name) : null;
     }
 
+    /**
+     * The Solr document backing this term.
+     *
+     * @return the document, or {@code null} for an empty term
+     */
+    SolrDocument getDocument()
+    {
+        return this.doc;
+    }
+
     @Override
     public Vocabulary getVocabulary()
     {
@@ -178,23 +239,43 @@ public String toString()
 
     @Override
     public long getDistanceTo(final VocabularyTerm other)
+    {
+        return getDistance(this, other);
+    }
+
+    /**
+     * Compute the distance between two terms of the same vocabulary, using the in-memory structure of the vocabulary
+     * when available, or walking up the parents of both terms otherwise.
+     *
+     * @param term the term to start from
+     * @param other the term to measure the distance to
+     * @return the length of the shortest path between the two terms, or {@code -1} if they are not connected
+     */
+    static long getDistance(final VocabularyTerm term, final VocabularyTerm other)
     {
         if (other == null) {
             return -1;
         }
-        if (this.equals(other)) {
+        if (term.equals(other)) {
             return 0;
         }
 
+        if (term.getVocabulary() instanceof AbstractSolrVocabulary) {
+            OntologyGraph graph = ((AbstractSolrVocabulary) term.getVocabulary()).getGraph();
+            if (graph != null && graph.contains(term.getId()) && graph.contains(other.getId())) {
+                return graph.getDistance(term.getId(), other.getId());
+            }
+        }
+
         long distance = Integer.MAX_VALUE;
 
         Map<String, Integer> myLevelMap = new HashMap<String, Integer>();
-        myLevelMap.put(getId(), 0);
+        myLevelMap.put(term.getId(), 0);
         Map<String, Integer> otherLevelMap = new HashMap<String, Integer>();
         otherLevelMap.put(other.getId(), 0);
 
         Set<VocabularyTerm> myCrtLevel = new HashSet<VocabularyTerm>();
-        myCrtLevel.add(this);
+        myCrtLevel.add(term);
         Set<VocabularyTerm> otherCrtLevel = new HashSet<VocabularyTerm>();
         otherCrtLevel.add(other);
 
@@ -205,7 +286,7 @@ public long getDistanceTo(final VocabularyTerm other)
         return distance == Integer.MAX_VALUE ? -1 : distance;
     }
 
-    private long processAncestorsAtDistance(int localDistance, Set<VocabularyTerm> sourceUnprocessedAncestors,
+    private static long processAncestorsAtDistance(int localDistance, Set<VocabularyTerm> sourceUnprocessedAncestors,
         Map<String, Integer> sourceDistanceMap, Map<String, Integer> targetDistanceMap)
     {
         long minDistance = Integer.MAX_VALUE;
@@ -0,0 +1,405 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyExtension;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+
+/**
+ * Runs the {@link VocabularyExtension vocabulary extensions} on the terms of a vocabulary being reindexed. Each batch
+ * of terms is extended before it is written into the index, with the terms of a batch processed in parallel on a
+ * bounded pool of worker threads, while the batches themselves are still written in their original order. Every term
+ * is passed through all the extensions supporting the vocabulary, in turn, working on a copy of the term which only
+ * replaces the original term once all the extensions are done with it.
+ * <p>
+ * Extensions are isolated from each other and from the indexing process. An exception thrown by an extension doesn't
+ * stop the other extensions from processing the term, and an extension failing too often is disabled for the rest of
+ * the reindex. When the time allowed for a batch runs out, the extension holding up the batch is disabled for the rest
+ * of the reindex as well. The other terms still being extended get a short grace period to finish, and an extension
+ * is only disabled if it was already working on one of them before that. Terms which couldn't be extended in time are
+ * indexed without any extensions. When all the worker threads are busy, terms are extended in the indexing thread
+ * itself, without a time limit.
+ * </p>
+ * <p>
+ * The number of worker threads is configured with the {@code phenotips.vocabularies.extensions.threads} property, and
+ * the number of seconds allowed for extending a batch with {@code phenotips.vocabularies.extensions.batchTimeout}.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Component(roles = { VocabularyExtensionPipeline.class })
+@Singleton
+public class VocabularyExtensionPipeline implements Initializable, Disposable
+{
+    private static final String CONFIGURATION_PREFIX = "phenotips.vocabularies.extensions.";
+
+    private static final int DEFAULT_BATCH_TIMEOUT = 300;
+
+    /**
+     * Once the time allowed for a batch runs out, how many milliseconds the terms still being extended are given to
+     * finish, since they may only have been waiting for a free thread behind the slow term.
+     */
+    private static final long GRACE_PERIOD = 1000;
+
+    /** After this many failures, an extension is no longer used for the rest of the reindex. */
+    private static final int MAX_FAILURES = 100;
+
+    /** How long an idle worker thread is kept, in seconds. */
+    private static final long THREAD_KEEP_ALIVE = 60;
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
+    /** Used for looking up the available extensions each time a reindex starts. */
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManager;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** The extensions used by the reindexes in progress, with the vocabulary identifier as the key. */
+    private final ConcurrentMap<String, List<ActiveExtension>> runs = new ConcurrentHashMap<>();
+
+    /** Runs the extensions on terms; when all the threads are busy, the indexing thread is used instead. */
+    private ThreadPoolExecutor executor;
+
+    /** The number of milliseconds allowed for extending a batch of terms. */
+    private long batchTimeout;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int threads = getIntProperty("threads", Runtime.getRuntime().availableProcessors());
+        this.batchTimeout = TimeUnit.SECONDS.toMillis(getIntProperty("batchTimeout", DEFAULT_BATCH_TIMEOUT));
+        this.executor = new ThreadPoolExecutor(0, threads, THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new BasicThreadFactory.Builder().namingPattern("vocabulary-extension-%d").daemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Prepare the extensions supporting a vocabulary for a new reindex. Extensions failing to start are not used.
+     *
+     * @param vocabulary the vocabulary being reindexed
+     */
+    public void indexingStarted(Vocabulary vocabulary)
+    {
+        String vocabularyId = vocabulary.getIdentifier();
+        List<ActiveExtension> active = new ArrayList<>();
+        for (VocabularyExtension extension : getExtensions()) {
+            try {
+                Collection<String> supported = extension.getSupportedVocabularies();
+                if (supported != null && supported.contains(vocabularyId)) {
+                    extension.indexingStarted(vocabularyId);
+                    active.add(new ActiveExtension(extension));
+                }
+            } catch (RuntimeException ex) {
+                this.logger.warn("Vocabulary extension [{}] failed to start indexing [{}], it will not be used: {}",
+                    getName(extension), vocabularyId, ex.getMessage(), ex);
+            }
+        }
+        if (active.isEmpty()) {
+            this.runs.remove(vocabularyId);
+        } else {
+            this.runs.put(vocabularyId, Collections.unmodifiableList(active));
+        }
+    }
+
+    /**
+     * Pass each term of a batch through the extensions prepared for its vocabulary. The terms are modified in place,
+     * and the batch keeps its order. May be called concurrently for different batches.
+     *
+     * @param batch the terms about to be written into the index
+     * @param vocabulary the vocabulary being reindexed
+     */
+    public void extendTerms(Collection<SolrInputDocument> batch, Vocabulary vocabulary)
+    {
+        List<ActiveExtension> extensions = this.runs.get(vocabulary.getIdentifier());
+        if (extensions == null || batch.isEmpty() || !hasEnabledExtensions(extensions)) {
+            return;
+        }
+        List<SolrInputDocument> originals = new ArrayList<>(batch);
+        List<TermExtender> extenders = new ArrayList<>(originals.size());
+        List<Future<SolrInputDocument>> results = new ArrayList<>(originals.size());
+        for (SolrInputDocument original : originals) {
+            TermExtender extender = new TermExtender(original.deepCopy(), vocabulary, extensions);
+            extenders.add(extender);
+            results.add(this.executor.submit(extender));
+        }
+
+        long deadline = System.currentTimeMillis() + this.batchTimeout;
+        // Set once the time allowed for the batch ran out, as returned by System.nanoTime()
+        long graceStart = 0;
+        boolean expired = false;
+        for (int i = 0; i < originals.size(); ++i) {
+            Future<SolrInputDocument> result = results.get(i);
+            try {
+                SolrInputDocument extended =
+                    result.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                SolrInputDocument original = originals.get(i);
+                original.clear();
+                original.putAll(extended);
+            } catch (TimeoutException ex) {
+                result.cancel(true);
+                TermExtender extender = extenders.get(i);
+                if (!expired) {
+                    // This term held up the whole batch
+                    disableSlowExtension(extender.getCurrentExtension(), vocabulary);
+                    expired = true;
+                    graceStart = System.nanoTime();
+                    deadline = System.currentTimeMillis() + GRACE_PERIOD;
+                } else {
+                    // Only blame the extension if it was already running on this term before the grace period
+                    disableSlowExtension(extender.getExtensionRunningSince(graceStart), vocabulary);
+                }
+            } catch (ExecutionException ex) {
+                this.logger.warn("Failed to extend a term of [{}]: {}", vocabulary.getIdentifier(), ex.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                for (Future<SolrInputDocument> pending : results) {
+                    pending.cancel(true);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Let the extensions used for a vocabulary know that the reindex is done, so that they can free their resources.
+     *
+     * @param vocabulary the vocabulary that was reindexed
+     */
+    public void indexingEnded(Vocabulary vocabulary)
+    {
+        String vocabularyId = vocabulary.getIdentifier();
+        List<ActiveExtension> extensions = this.runs.remove(vocabularyId);
+        if (extensions == null) {
+            return;
+        }
+        for (ActiveExtension active : extensions) {
+            this.logger.info("Vocabulary extension [{}] processed {} terms of [{}] in {}ms, with {} failures{}",
+                getName(active.extension), active.processed.get(), vocabularyId,
+                TimeUnit.NANOSECONDS.toMillis(active.time.get()), active.failures.get(),
+                active.disabled ? ", and was disabled" : "");
+            try {
+                active.extension.indexingEnded(vocabularyId);
+            } catch (RuntimeException ex) {
+                this.logger.warn("Vocabulary extension [{}] failed to finish indexing [{}]: {}",
+                    getName(active.extension), vocabularyId, ex.getMessage());
+            }
+        }
+    }
+
+    private List<VocabularyExtension> getExtensions()
+    {
+        try {
+            return this.componentManager.get().getInstanceList(VocabularyExtension.class);
+        } catch (ComponentLookupException ex) {
+            this.logger.warn("Failed to look up the vocabulary extensions: {}", ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private boolean hasEnabledExtensions(List<ActiveExtension> extensions)
+    {
+        for (ActiveExtension extension : extensions) {
+            if (!extension.disabled) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void disableSlowExtension(ActiveExtension extension, Vocabulary vocabulary)
+    {
+        if (extension != null && !extension.disabled) {
+            extension.disabled = true;
+            this.logger.warn("Vocabulary extension [{}] is too slow, it will not be used for the rest of [{}]",
+                getName(extension.extension), vocabulary.getIdentifier());
+        }
+    }
+
+    private void extensionFailed(ActiveExtension extension, Vocabulary vocabulary, String termId,
+        RuntimeException ex)
+    {
+        int failures = extension.failures.incrementAndGet();
+        if (failures == 1) {
+            this.logger.warn("Vocabulary extension [{}] failed to extend [{}]: {}", getName(extension.extension),
+                termId, ex.getMessage(), ex);
+        } else {
+            this.logger.debug("Vocabulary extension [{}] failed to extend [{}]: {}", getName(extension.extension),
+                termId, ex.getMessage());
+        }
+        if (failures == MAX_FAILURES) {
+            extension.disabled = true;
+            this.logger.warn("Vocabulary extension [{}] failed {} times, it will not be used for the rest of [{}]",
+                getName(extension.extension), failures, vocabulary.getIdentifier());
+        }
+    }
+
+    private static String getName(VocabularyExtension extension)
+    {
+        return extension.getClass().getName();
+    }
+
+    private int getIntProperty(String key, int defaultValue)
+    {
+        Integer value = this.configuration.getProperty(CONFIGURATION_PREFIX + key, Integer.class);
+        return (value == null || value < 1) ? defaultValue : value;
+    }
+
+    /**
+     * An extension used during a reindex, with its usage statistics.
+     *
+     * @version $Id$
+     */
+    private static final class ActiveExtension
+    {
+        private final VocabularyExtension extension;
+
+        private final AtomicInteger processed = new AtomicInteger();
+
+        private final AtomicInteger failures = new AtomicInteger();
+
+        /** The total time spent in this extension, in nanoseconds. */
+        private final AtomicLong time = new AtomicLong();
+
+        /** Set when the extension is too slow or fails too often. */
+        private volatile boolean disabled;
+
+        ActiveExtension(VocabularyExtension extension)
+        {
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * Passes one term through all the enabled extensions.
+     *
+     * @version $Id$
+     */
+    private final class TermExtender implements Callable<SolrInputDocument>
+    {
+        /** A copy of the term, which can be safely abandoned if the extensions take too long. */
+        private final SolrInputDocument doc;
+
+        private final Vocabulary vocabulary;
+
+        private final List<ActiveExtension> extensions;
+
+        /** The extension currently running, if any. */
+        private volatile ActiveExtension currentExtension;
+
+        /** When the {@link #currentExtension current extension} started working on this term, in nanoseconds. */
+        private volatile long currentStart;
+
+        TermExtender(SolrInputDocument doc, Vocabulary vocabulary, List<ActiveExtension> extensions)
+        {
+            this.doc = doc;
+            this.vocabulary = vocabulary;
+            this.extensions = extensions;
+        }
+
+        @Override
+        public SolrInputDocument call()
+        {
+            SolrVocabularyInputTerm term = new SolrVocabularyInputTerm(this.doc, this.vocabulary);
+            String vocabularyId = this.vocabulary.getIdentifier();
+            for (ActiveExtension active : this.extensions) {
+                if (active.disabled || Thread.currentThread().isInterrupted()) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                this.currentStart = start;
+                this.currentExtension = active;
+                try {
+                    active.extension.extendTerm(term, vocabularyId);
+                    active.processed.incrementAndGet();
+                } catch (RuntimeException ex) {
+                    extensionFailed(active, this.vocabulary, term.getId(), ex);
+                } finally {
+                    active.time.addAndGet(System.nanoTime() - start);
+                }
+            }
+            this.currentExtension = null;
+            return this.doc;
+        }
+
+        ActiveExtension getCurrentExtension()
+        {
+            return this.currentExtension;
+        }
+
+        /**
+         * Get the extension currently running, only if it started working on this term before the given time.
+         *
+         * @param time a time, as returned by {@link System#nanoTime()}
+         * @return the current extension, or {@code null} if there's none, or if it started later
+         */
+        ActiveExtension getExtensionRunningSince(long time)
+        {
+            ActiveExtension current = this.currentExtension;
+            return current != null && this.currentStart - time <= 0 ? current : null;
+        }
+    }
+}
@@ -18,13 +18,19 @@
 package org.phenotips.vocabulary.script;
 
 import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyCacheStatistics;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.internal.solr.AbstractSolrVocabulary;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.script.service.ScriptService;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
 import org.xwiki.stability.Unstable;
 
+import java.util.List;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -45,6 +51,10 @@ public class VocabularyScriptService implements ScriptService
     @Inject
     private VocabularyManager manager;
 
+    /** Used for checking that the cache statistics are only available to administrators. */
+    @Inject
+    private ContextualAuthorizationManager authorization;
+
     /**
      * Retrieve a term from its owner vocabulary. For this to work properly, the term identifier must contain a known
      * vocabulary prefix.
@@ -85,4 +95,95 @@ public Vocabulary get(String vocabularyId)
     {
         return this.manager.getVocabulary(vocabularyId);
     }
+
+    /**
+     * Get the usage statistics of the term cache used by a vocabulary. Only available to administrators, and read-only:
+     * the statistics cannot be {@link VocabularyCacheStatistics#reset() reset} from scripts.
+     *
+     * @param vocabularyId the vocabulary identifier, or a {@link Vocabulary#getAliases() known alias} for it
+     * @return the cache statistics, or {@code null} if the current user doesn't have administration rights, if the
+     *         vocabulary doesn't exist, or if it doesn't use a cache with statistics
+     * @since 1.3M1
+     */
+    public VocabularyCacheStatistics getCacheStatistics(String vocabularyId)
+    {
+        if (!this.authorization.hasAccess(Right.ADMIN)) {
+            return null;
+        }
+        Vocabulary vocabulary = this.manager.getVocabulary(vocabularyId);
+        if (vocabulary instanceof AbstractSolrVocabulary) {
+            VocabularyCacheStatistics statistics = ((AbstractSolrVocabulary) vocabulary).getCacheStatistics();
+            return statistics != null ? new ReadOnlyCacheStatistics(statistics) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Exposes the cache statistics to scripts, without allowing them to be reset.
+     *
+     * @version $Id$
+     */
+    private static final class ReadOnlyCacheStatistics implements VocabularyCacheStatistics
+    {
+        private final VocabularyCacheStatistics statistics;
+
+        ReadOnlyCacheStatistics(VocabularyCacheStatistics statistics)
+        {
+            this.statistics = statistics;
+        }
+
+        @Override
+        public long getHits()
+        {
+            return this.statistics.getHits();
+        }
+
+        @Override
+        public long getMisses()
+        {
+            return this.statistics.getMisses();
+        }
+
+        @Override
+        public double getHitRatio()
+        {
+            return this.statistics.getHitRatio();
+        }
+
+        @Override
+        public long getEvictions()
+        {
+            return this.statistics.getEvictions();
+        }
+
+        @Override
+        public long getLoads()
+        {
+            return this.statistics.getLoads();
+        }
+
+        @Override
+        public double getAverageLoadTime()
+        {
+            return this.statistics.getAverageLoadTime();
+        }
+
+        @Override
+        public int getMaxSize()
+        {
+            return this.statistics.getMaxSize();
+        }
+
+        @Override
+        public List<String> getMostRequestedTerms(int limit)
+        {
+            return this.statistics.getMostRequestedTerms(limit);
+        }
+
+        @Override
+        public void reset()
+        {
+            throw new UnsupportedOperationException("The cache statistics cannot be reset from scripts");
+        }
+    }
 }
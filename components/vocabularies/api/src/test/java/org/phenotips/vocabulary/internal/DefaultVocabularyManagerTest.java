@@ -0,0 +1,139 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultVocabularyManager} component.
+ *
+ * @version $Id$
+ */
+public class DefaultVocabularyManagerTest
+{
+    private DefaultVocabularyManager manager;
+
+    private Vocabulary hpo;
+
+    private Vocabulary omim;
+
+    private VocabularyTerm hp1;
+
+    private VocabularyTerm hp2;
+
+    private VocabularyTerm mim1;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.hpo = mock(Vocabulary.class);
+        when(this.hpo.getAliases()).thenReturn(new LinkedHashSet<>(Arrays.asList("HP", "HPO")));
+        this.omim = mock(Vocabulary.class);
+        when(this.omim.getAliases()).thenReturn(Collections.singleton("MIM"));
+        this.hp1 = mockTerm("HP:0000001");
+        this.hp2 = mockTerm("HP:0000002");
+        this.mim1 = mockTerm("MIM:100001");
+
+        Map<String, Vocabulary> vocabularies = new HashMap<>();
+        vocabularies.put("hpo", this.hpo);
+        vocabularies.put("omim", this.omim);
+        this.manager = new DefaultVocabularyManager();
+        ReflectionUtils.setFieldValue(this.manager, "vocabularies", vocabularies);
+        ReflectionUtils.setFieldValue(this.manager, "logger", mock(Logger.class));
+        this.manager.initialize();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.manager.dispose();
+    }
+
+    @Test
+    public void resolveTermsQueriesEachVocabularyOnce()
+    {
+        when(this.hpo.getTerms(Matchers.<Collection<String>>any()))
+            .thenReturn(new LinkedHashSet<>(Arrays.asList(this.hp2, this.hp1)));
+        when(this.omim.getTerms(Matchers.<Collection<String>>any()))
+            .thenReturn(Collections.singleton(this.mim1));
+
+        Map<String, VocabularyTerm> result =
+            this.manager.resolveTerms(Arrays.asList("HP:0000001", "MIM:100001", "HP:0000002", "HP:0000001"));
+
+        Assert.assertEquals(Arrays.asList("HP:0000001", "MIM:100001", "HP:0000002"),
+            Arrays.asList(result.keySet().toArray()));
+        Assert.assertSame(this.hp1, result.get("HP:0000001"));
+        Assert.assertSame(this.hp2, result.get("HP:0000002"));
+        Assert.assertSame(this.mim1, result.get("MIM:100001"));
+        Set<String> hpoIds = new LinkedHashSet<>(Arrays.asList("HP:0000001", "HP:0000002"));
+        Mockito.verify(this.hpo).getTerms(hpoIds);
+        Mockito.verify(this.omim).getTerms(Collections.singleton("MIM:100001"));
+        Mockito.verify(this.hpo, Mockito.never()).getTerm(Matchers.anyString());
+    }
+
+    @Test
+    public void resolveTermsFallsBackToSingleLookupsForUnmatchedIds()
+    {
+        when(this.hpo.getTerms(Matchers.<Collection<String>>any())).thenReturn(Collections.singleton(this.hp1));
+        when(this.hpo.getTerm("HP:0000003")).thenReturn(this.hp2);
+
+        Map<String, VocabularyTerm> result =
+            this.manager.resolveTerms(Arrays.asList("HP:0000001", "HP:0000003", "HP:0000004", "UNKNOWN:1", "none"));
+
+        Assert.assertEquals(2, result.size());
+        Assert.assertSame(this.hp1, result.get("HP:0000001"));
+        Assert.assertSame(this.hp2, result.get("HP:0000003"));
+        Mockito.verify(this.hpo, Mockito.never()).getTerm("HP:0000001");
+    }
+
+    @Test
+    public void resolveTermsWithNoIdsReturnsEmptyMap()
+    {
+        Assert.assertTrue(this.manager.resolveTerms(Collections.<String>emptyList()).isEmpty());
+        Assert.assertTrue(this.manager.resolveTerms(null).isEmpty());
+    }
+
+    private VocabularyTerm mockTerm(String id)
+    {
+        VocabularyTerm term = mock(VocabularyTerm.class);
+        when(term.getId()).thenReturn(id);
+        return term;
+    }
+}
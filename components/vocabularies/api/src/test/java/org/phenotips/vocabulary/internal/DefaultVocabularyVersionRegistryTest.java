@@ -0,0 +1,105 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultVocabularyVersionRegistry} component.
+ *
+ * @version $Id$
+ */
+public class DefaultVocabularyVersionRegistryTest
+{
+    private DefaultVocabularyVersionRegistry registry;
+
+    private ObservationManager observationManager;
+
+    private Vocabulary hpo;
+
+    private Vocabulary omim;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.hpo = mock(Vocabulary.class);
+        when(this.hpo.getIdentifier()).thenReturn("hpo");
+        when(this.hpo.getVersion()).thenReturn("2016-01-01");
+        this.omim = mock(Vocabulary.class);
+        when(this.omim.getIdentifier()).thenReturn("omim");
+        Map<String, Vocabulary> vocabularies = new HashMap<>();
+        vocabularies.put("hpo", this.hpo);
+        vocabularies.put("omim", this.omim);
+        this.observationManager = mock(ObservationManager.class);
+
+        this.registry = new DefaultVocabularyVersionRegistry();
+        ReflectionUtils.setFieldValue(this.registry, "vocabularies", vocabularies);
+        ReflectionUtils.setFieldValue(this.registry, "observationManager", this.observationManager);
+        this.registry.initialize();
+    }
+
+    @Test
+    public void versionsAreOnlyReadOnce()
+    {
+        Assert.assertEquals("2016-01-01", this.registry.getVersion(this.hpo));
+        Map<String, String> versions = this.registry.getVersions();
+        Assert.assertEquals(1, versions.size());
+        Assert.assertEquals("2016-01-01", versions.get("hpo"));
+        this.registry.getVersions();
+        Mockito.verify(this.hpo, Mockito.times(1)).getVersion();
+    }
+
+    @Test
+    public void missingVersionsAreReadAgain()
+    {
+        Assert.assertNull(this.registry.getVersion(this.omim));
+        when(this.omim.getVersion()).thenReturn("2016-02-02");
+        Assert.assertEquals("2016-02-02", this.registry.getVersion(this.omim));
+    }
+
+    @Test
+    public void versionsAreUpdatedWhenVocabulariesAreReindexed()
+    {
+        ArgumentCaptor<EventListener> listener = ArgumentCaptor.forClass(EventListener.class);
+        Mockito.verify(this.observationManager).addListener(listener.capture());
+        Assert.assertTrue(listener.getValue().getEvents().get(0).matches(new VocabularyVersionChangedEvent("hpo")));
+
+        Assert.assertEquals("2016-01-01", this.registry.getVersion(this.hpo));
+        when(this.hpo.getVersion()).thenReturn("2016-03-03");
+        listener.getValue().onEvent(new VocabularyVersionChangedEvent("hpo"), this.hpo, null);
+        Assert.assertEquals("2016-03-03", this.registry.getVersion(this.hpo));
+        Mockito.verify(this.hpo, Mockito.times(2)).getVersion();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.VocabularyCacheStatistics;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the shadow core reindexing of {@link AbstractSolrVocabulary}.
+ *
+ * @version $Id$
+ */
+public class AbstractSolrVocabularyTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestVocabulary vocabulary = new TestVocabulary();
+
+    private ShadowSolrCore shadow = mock(ShadowSolrCore.class);
+
+    private SolrClient shadowClient = mock(SolrClient.class);
+
+    private Cache<VocabularyTerm> cache;
+
+    private ObservationManager observationManager = mock(ObservationManager.class);
+
+    private SolrVocabularyResourceManager resources = mock(SolrVocabularyResourceManager.class);
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+    {
+        this.cache = mock(Cache.class);
+        when(this.resources.getTermCache()).thenReturn(this.cache);
+        ReflectionUtils.setFieldValue(this.vocabulary, "externalServicesAccess", this.resources);
+        ReflectionUtils.setFieldValue(this.vocabulary, "logger", mock(Logger.class));
+        ReflectionUtils.setFieldValue(this.vocabulary, "extensions", mock(VocabularyExtensionPipeline.class));
+        ReflectionUtils.setFieldValue(this.vocabulary, "observationManager", this.observationManager);
+        when(this.shadow.getClient()).thenReturn(this.shadowClient);
+    }
+
+    @Test
+    public void failedIndexKeepsTheLiveCore() throws IOException
+    {
+        this.vocabulary.indexResult = 1;
+
+        Assert.assertEquals(1, this.vocabulary.reindexInShadowCore("file:/test.obo"));
+
+        verify(this.shadow, never()).publish();
+        verify(this.shadow).discard();
+        verify(this.cache, never()).removeAll();
+        verify(this.observationManager, never()).notify(any(Event.class), any());
+    }
+
+    @Test
+    public void incompleteIndexIsNotPublished() throws IOException, SolrServerException
+    {
+        this.vocabulary.indexResult = 0;
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(new SolrDocumentList());
+        when(this.shadowClient.query(any(SolrParams.class))).thenReturn(response);
+
+        Assert.assertEquals(1, this.vocabulary.reindexInShadowCore("file:/test.obo"));
+
+        verify(this.shadow, never()).publish();
+        verify(this.shadow).discard();
+        verify(this.cache, never()).removeAll();
+        verify(this.observationManager, never()).notify(any(Event.class), any());
+    }
+
+    @Test
+    public void storedTermsArePreloadedOnFirstUse() throws Exception
+    {
+        File list = new File(this.folder.getRoot(), "cache/vocabularies/test.warmup");
+        Files.createDirectories(list.getParentFile().toPath());
+        Files.write(list.toPath(), Collections.singletonList("T:1"), StandardCharsets.UTF_8);
+        Environment environment = mock(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.folder.getRoot());
+        ReflectionUtils.setFieldValue(this.vocabulary, "environment", environment);
+        ReflectionUtils.setFieldValue(this.vocabulary, "configuration", mock(ConfigurationSource.class));
+        when(this.resources.getTermCacheStatistics()).thenReturn(mock(VocabularyCacheStatistics.class));
+        SolrClient live = mock(SolrClient.class);
+        when(this.resources.getSolrConnection()).thenReturn(live);
+        SolrDocument doc = new SolrDocument();
+        doc.setField("id", "T:1");
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.add(doc);
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(documents);
+        when(live.query(any(SolrParams.class))).thenReturn(response);
+
+        this.vocabulary.initialize();
+        // The core isn't opened during initialization
+        verify(live, never()).query(any(SolrParams.class));
+
+        this.vocabulary.getTerms(Collections.<String>emptySet());
+        this.vocabulary.getTerms(Collections.<String>emptySet());
+        verify(live, times(1)).query(any(SolrParams.class));
+        verify(this.cache).set(eq("T:1"), any(CompactVocabularyTerm.class));
+        this.vocabulary.dispose();
+    }
+
+    /**
+     * A vocabulary whose indexing result is fixed, and which uses a mock shadow core.
+     */
+    private final class TestVocabulary extends AbstractSolrVocabulary
+    {
+        private int indexResult;
+
+        @Override
+        protected String getCoreName()
+        {
+            return "test";
+        }
+
+        @Override
+        public String getIdentifier()
+        {
+            return "test";
+        }
+
+        @Override
+        public String getName()
+        {
+            return "Test vocabulary";
+        }
+
+        @Override
+        public Set<String> getAliases()
+        {
+            return Collections.singleton("test");
+        }
+
+        @Override
+        public String getDefaultSourceLocation()
+        {
+            return "file:/test.obo";
+        }
+
+        @Override
+        protected int index(String sourceUrl)
+        {
+            return this.indexResult;
+        }
+
+        @Override
+        ShadowSolrCore createShadowCore()
+        {
+            return AbstractSolrVocabularyTest.this.shadow;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.solr.common.SolrDocument;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link CompactVocabularyTerm} class.
+ *
+ * @version $Id$
+ */
+public class CompactVocabularyTermTest
+{
+    private AbstractSolrVocabulary vocabulary;
+
+    private SolrDocument doc;
+
+    @Before
+    public void setUp()
+    {
+        this.vocabulary = mock(AbstractSolrVocabulary.class);
+        this.doc = new SolrDocument();
+        this.doc.setField("id", new String("HP:0000003"));
+        this.doc.setField("name", new String("Multicystic kidney dysplasia"));
+        this.doc.setField("def", "Multicystic dysplasia of the kidney is characterized by multiple cysts.");
+        this.doc.setField("synonym", Arrays.asList("Multicystic dysplastic kidney"));
+        this.doc.setField("is_a", Arrays.asList("HP:0000107 ! Renal cyst"));
+        this.doc.setField("term_category", new ArrayList<>(Arrays.asList("HP:0000003", "HP:0000107", "HP:0000001")));
+    }
+
+    @Test
+    public void identifierAndNameAreInterned()
+    {
+        CompactVocabularyTerm term = new CompactVocabularyTerm(this.doc, this.vocabulary);
+        Assert.assertSame("HP:0000003", term.getId());
+        Assert.assertSame("Multicystic kidney dysplasia", term.getName());
+        Assert.assertSame("HP:0000003", term.get("id"));
+        Assert.assertSame(this.vocabulary, term.getVocabulary());
+        Assert.assertEquals("[HP:0000003] Multicystic kidney dysplasia", term.toString());
+        verify(this.vocabulary, never()).loadFullTerm("HP:0000003");
+    }
+
+    @Test
+    public void otherFieldsAreLoadedOnDemand()
+    {
+        when(this.vocabulary.loadFullTerm("HP:0000003")).thenReturn(new SolrVocabularyTerm(this.doc, this.vocabulary));
+        CompactVocabularyTerm term = new CompactVocabularyTerm(this.doc, this.vocabulary);
+        verify(this.vocabulary, never()).loadFullTerm("HP:0000003");
+
+        Assert.assertEquals(Arrays.asList("Multicystic dysplastic kidney"), term.get("synonym"));
+        Assert.assertTrue(term.getDescription().startsWith("Multicystic dysplasia"));
+        JSONObject json = term.toJSON();
+        Assert.assertEquals("HP:0000003", json.getString("id"));
+        Assert.assertEquals("Multicystic dysplastic kidney", json.getJSONArray("synonym").getString(0));
+        // The full term isn't kept in the compact term, which stays small
+        verify(this.vocabulary, times(3)).loadFullTerm("HP:0000003");
+    }
+
+    @Test
+    public void toJSONFallsBackOnTheKeptDataWhenTheTermCannotBeLoaded()
+    {
+        CompactVocabularyTerm term = new CompactVocabularyTerm(this.doc, this.vocabulary);
+        JSONObject json = term.toJSON();
+        Assert.assertEquals(2, json.length());
+        Assert.assertEquals("HP:0000003", json.getString("id"));
+        Assert.assertEquals("Multicystic kidney dysplasia", json.getString("name"));
+        Assert.assertNull(term.get("synonym"));
+        Assert.assertNull(term.getDescription());
+    }
+
+    @Test
+    public void structureIsTakenFromTheDocumentWithoutAGraph()
+    {
+        CompactVocabularyTerm term = new CompactVocabularyTerm(this.doc, this.vocabulary);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("HP:0000107", "HP:0000001")), term.getAncestorIds());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("HP:0000003", "HP:0000107", "HP:0000001")),
+            term.getAncestorAndSelfIds());
+        Assert.assertEquals(1, term.getParents().size());
+        Assert.assertTrue(term.getParents().contains("HP:0000107"));
+        Assert.assertEquals(2, term.getAncestors().size());
+        Assert.assertFalse(term.getAncestors().contains("HP:0000003"));
+    }
+
+    @Test
+    public void structureIsTakenFromTheGraphWhenAvailable()
+    {
+        Map<String, Collection<String>> parents = new LinkedHashMap<>();
+        parents.put("HP:0000001", null);
+        parents.put("HP:0000118", Arrays.asList("HP:0000001"));
+        parents.put("HP:0000107", Arrays.asList("HP:0000118"));
+        parents.put("HP:0000003", Arrays.asList("HP:0000107"));
+        when(this.vocabulary.getGraph()).thenReturn(OntologyGraph.build(parents));
+
+        CompactVocabularyTerm term = new CompactVocabularyTerm(this.doc, this.vocabulary);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("HP:0000107", "HP:0000118", "HP:0000001")),
+            term.getAncestorIds());
+        Assert.assertTrue(term.getAncestorAndSelfIds().contains("HP:0000003"));
+        Assert.assertTrue(term.getParents().contains("HP:0000107"));
+        Assert.assertEquals(1, term.getParents().size());
+    }
+
+    @Test
+    public void termsAreEqualToOtherTermsWithTheSameIdentifier()
+    {
+        CompactVocabularyTerm term = new CompactVocabularyTerm(this.doc, this.vocabulary);
+        SolrVocabularyTerm full = new SolrVocabularyTerm(this.doc, this.vocabulary);
+        Assert.assertEquals(term, full);
+        Assert.assertEquals(full.hashCode(), term.hashCode());
+        Assert.assertEquals(0, term.getDistanceTo(full));
+        Assert.assertEquals(-1, term.getDistanceTo(null));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.util.Arrays;
+
+import org.apache.solr.core.CoreContainer;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the core preloading of {@link DefaultSolrCoreContainerHandler}.
+ *
+ * @version $Id$
+ */
+public class DefaultSolrCoreContainerHandlerTest
+{
+    private DefaultSolrCoreContainerHandler handler = new DefaultSolrCoreContainerHandler();
+
+    private CoreContainer container = mock(CoreContainer.class);
+
+    private Logger logger = mock(Logger.class);
+
+    @Before
+    public void setUp()
+    {
+        ReflectionUtils.setFieldValue(this.handler, "cores", this.container);
+        ReflectionUtils.setFieldValue(this.handler, "logger", this.logger);
+        when(this.container.getAllCoreNames()).thenReturn(Arrays.asList("hpo", "omim", "patients"));
+        when(this.container.getCoreNames()).thenReturn(Arrays.asList("hpo"));
+    }
+
+    @Test
+    public void onlyTheRequestedCoresAreOpened()
+    {
+        this.handler.preload(Arrays.asList("omim", "chebi"));
+
+        verify(this.container).getCore("omim");
+        verify(this.container, never()).getCore("hpo");
+        verify(this.container, never()).getCore("patients");
+    }
+
+    @Test
+    public void unknownCoresAreSkipped()
+    {
+        this.handler.preload(Arrays.asList("chebi"));
+
+        verify(this.logger).warn("Cannot preload the unknown Solr core [{}]", "chebi");
+        verify(this.container, never()).getCore("chebi");
+    }
+
+    @Test
+    public void coresFailingToOpenAreReported()
+    {
+        this.handler.preload(Arrays.asList("omim"));
+
+        verify(this.logger).warn("Failed to preload the Solr core [{}]", "omim");
+    }
+
+    @Test
+    public void coresNotOpenedYetAreReported()
+    {
+        this.handler.preload(Arrays.asList("omim"));
+
+        ArgumentCaptor<String> report = ArgumentCaptor.forClass(String.class);
+        verify(this.logger).info(report.capture());
+        assertTrue(report.getValue().endsWith("when first used: [omim, patients]"));
+    }
+}
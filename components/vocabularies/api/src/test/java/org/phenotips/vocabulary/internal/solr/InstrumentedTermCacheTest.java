@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link InstrumentedTermCache} class.
+ *
+ * @version $Id$
+ */
+public class InstrumentedTermCacheTest
+{
+    private Cache<VocabularyTerm> terms;
+
+    private Cache<VocabularyTerm> misses;
+
+    private InstrumentedTermCache cache;
+
+    private VocabularyTerm term;
+
+    private VocabularyTerm emptyMarker;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp()
+    {
+        this.terms = mock(Cache.class);
+        this.misses = mock(Cache.class);
+        this.cache = new InstrumentedTermCache(this.terms, this.misses, 10);
+        this.term = mock(VocabularyTerm.class);
+        when(this.term.getId()).thenReturn("HP:1");
+        this.emptyMarker = mock(VocabularyTerm.class);
+    }
+
+    @Test
+    public void existingTermsAndMissingTermsAreStoredSeparately()
+    {
+        this.cache.set("HP:1", this.term);
+        this.cache.set("HP:2", this.emptyMarker);
+        verify(this.terms).set("HP:1", this.term);
+        verify(this.misses).set("HP:2", this.emptyMarker);
+        verify(this.terms, never()).set("HP:2", this.emptyMarker);
+    }
+
+    @Test
+    public void hitsAndMissesAreCounted()
+    {
+        when(this.terms.get("HP:1")).thenReturn(this.term);
+        when(this.misses.get("HP:2")).thenReturn(this.emptyMarker);
+
+        Assert.assertSame(this.term, this.cache.get("HP:1"));
+        Assert.assertSame(this.emptyMarker, this.cache.get("HP:2"));
+        Assert.assertNull(this.cache.get("HP:3"));
+        this.cache.set("HP:3", this.term);
+
+        Assert.assertEquals(2, this.cache.getHits());
+        Assert.assertEquals(1, this.cache.getMisses());
+        Assert.assertEquals(1, this.cache.getLoads());
+        Assert.assertEquals(2.0 / 3, this.cache.getHitRatio(), 0.0001);
+        Assert.assertTrue(this.cache.getAverageLoadTime() >= 0);
+
+        this.cache.reset();
+        Assert.assertEquals(0, this.cache.getHits());
+        Assert.assertEquals(0, this.cache.getMisses());
+        Assert.assertEquals(0, this.cache.getHitRatio(), 0);
+    }
+
+    @Test
+    public void mostRequestedTermsAreSortedByUsage()
+    {
+        this.cache.get("HP:1");
+        this.cache.get("HP:2");
+        this.cache.get("HP:2");
+        this.cache.get("HP:3");
+        this.cache.get("HP:3");
+        this.cache.get("HP:3");
+        Assert.assertEquals(Arrays.asList("HP:3", "HP:2"), this.cache.getMostRequestedTerms(2));
+        Assert.assertEquals(Arrays.asList("HP:3", "HP:2", "HP:1"), this.cache.getMostRequestedTerms(5));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void newTermsAreTrackedOnceTheUsageLimitIsReached()
+    {
+        // Up to 40 terms are tracked for a cache of size 10
+        for (int i = 0; i < 10; ++i) {
+            this.cache.get("HP:1");
+        }
+        for (int i = 2; i <= 40; ++i) {
+            this.cache.get("HP:" + i);
+        }
+        this.cache.get("HP:41");
+        this.cache.get("HP:41");
+
+        // The terms requested once were forgotten, the others kept their rank
+        Assert.assertEquals(Arrays.asList("HP:1", "HP:41"), this.cache.getMostRequestedTerms(5));
+    }
+
+    @Test
+    public void onlyImplicitRemovalsAreCountedAsEvictions()
+    {
+        ArgumentCaptor<CacheEntryListener<VocabularyTerm>> listener =
+            ArgumentCaptor.forClass((Class<CacheEntryListener<VocabularyTerm>>) (Class<?>) CacheEntryListener.class);
+        verify(this.terms).addCacheEntryListener(listener.capture());
+
+        listener.getValue().cacheEntryRemoved(null);
+        Assert.assertEquals(1, this.cache.getEvictions());
+
+        this.cache.removeAll();
+        verify(this.terms).removeAll();
+        verify(this.misses).removeAll();
+        Assert.assertEquals(1, this.cache.getEvictions());
+        verify(this.misses).addCacheEntryListener(any(CacheEntryListener.class));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link OntologyGraph} class.
+ *
+ * @version $Id$
+ */
+public class OntologyGraphTest
+{
+    private OntologyGraph graph;
+
+    /**
+     * Builds the following structure, where the edges point from a term to its parents.
+     *
+     * <pre>
+     *        A
+     *       / \
+     *      B   C
+     *     / \ /
+     *    D   E
+     *    |
+     *    F
+     * </pre>
+     */
+    @Before
+    public void setUp()
+    {
+        Map<String, Collection<String>> parents = new LinkedHashMap<>();
+        parents.put("A", null);
+        parents.put("B", Arrays.asList("A ! Root"));
+        parents.put("C", Arrays.asList("A"));
+        parents.put("D", Arrays.asList("B"));
+        parents.put("E", Arrays.asList("B", "C", "X"));
+        parents.put("F", Arrays.asList("D"));
+        this.graph = OntologyGraph.build(parents);
+    }
+
+    @Test
+    public void sizeCountsAllTerms()
+    {
+        Assert.assertEquals(6, this.graph.size());
+        Assert.assertTrue(this.graph.contains("F"));
+        Assert.assertFalse(this.graph.contains("X"));
+        Assert.assertFalse(this.graph.contains(null));
+        Assert.assertEquals(OntologyGraph.NOT_FOUND, this.graph.getIndex("X"));
+    }
+
+    @Test
+    public void parentsAndChildrenAreDirectLinks()
+    {
+        Assert.assertEquals(set("B", "C"), this.graph.getParentIds("E"));
+        Assert.assertEquals(set("A"), this.graph.getParentIds("B"));
+        Assert.assertEquals(set("D", "E"), this.graph.getChildIds("B"));
+        Assert.assertTrue(this.graph.getParentIds("A").isEmpty());
+        Assert.assertTrue(this.graph.getChildIds("F").isEmpty());
+        Assert.assertTrue(this.graph.getParentIds("X").isEmpty());
+    }
+
+    @Test
+    public void ancestorsAreTransitive()
+    {
+        Assert.assertEquals(set("D", "B", "A"), this.graph.getAncestorIds("F"));
+        Assert.assertEquals(set("F", "D", "B", "A"), this.graph.getAncestorAndSelfIds("F"));
+        Assert.assertEquals(set("A", "B", "C"), this.graph.getAncestorIds("E"));
+        Assert.assertTrue(this.graph.getAncestorIds("A").isEmpty());
+        Assert.assertEquals(set("A"), this.graph.getAncestorAndSelfIds("A"));
+        Assert.assertTrue(this.graph.getAncestorAndSelfIds("X").isEmpty());
+    }
+
+    @Test
+    public void descendantsAreTransitive()
+    {
+        Assert.assertEquals(set("B", "C", "D", "E", "F"), this.graph.getDescendantIds("A"));
+        Assert.assertEquals(set("E"), this.graph.getDescendantIds("C"));
+        Assert.assertTrue(this.graph.getDescendantIds("F").isEmpty());
+    }
+
+    @Test
+    public void isAncestorChecksClosure()
+    {
+        Assert.assertTrue(this.graph.isAncestor("A", "F"));
+        Assert.assertTrue(this.graph.isAncestor("C", "E"));
+        Assert.assertFalse(this.graph.isAncestor("C", "F"));
+        Assert.assertFalse(this.graph.isAncestor("F", "A"));
+        Assert.assertFalse(this.graph.isAncestor("A", "A"));
+        Assert.assertFalse(this.graph.isAncestor("X", "A"));
+    }
+
+    @Test
+    public void distanceUsesClosestCommonAncestor()
+    {
+        Assert.assertEquals(0, this.graph.getDistance("E", "E"));
+        Assert.assertEquals(1, this.graph.getDistance("F", "D"));
+        Assert.assertEquals(3, this.graph.getDistance("F", "A"));
+        Assert.assertEquals(2, this.graph.getDistance("D", "E"));
+        Assert.assertEquals(3, this.graph.getDistance("F", "E"));
+        Assert.assertEquals(3, this.graph.getDistance("E", "F"));
+        Assert.assertEquals(2, this.graph.getDistance("B", "C"));
+        Assert.assertEquals(-1, this.graph.getDistance("F", "X"));
+        Assert.assertEquals(-1, this.graph.getDistance(null, "A"));
+    }
+
+    @Test
+    public void disconnectedTermsHaveNoDistance()
+    {
+        Map<String, Collection<String>> parents = new LinkedHashMap<>();
+        parents.put("A", Collections.<String>emptySet());
+        parents.put("B", Collections.<String>emptySet());
+        OntologyGraph forest = OntologyGraph.build(parents);
+        Assert.assertEquals(-1, forest.getDistance("A", "B"));
+    }
+
+    private static Set<String> set(String... ids)
+    {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link PrefixSuggester} class.
+ *
+ * @version $Id$
+ */
+public class PrefixSuggesterTest
+{
+    private PrefixSuggester suggester;
+
+    @Before
+    public void setUp()
+    {
+        Map<String, Collection<String>> labels = new LinkedHashMap<>();
+        labels.put("HP:0000005", Arrays.asList("Seizure-like episodes"));
+        labels.put("HP:0000001", Arrays.asList("Seizures", "Epileptic seizures", "Fits"));
+        labels.put("HP:0000002", Arrays.asList("Focal seizures"));
+        labels.put("HP:0000003", Arrays.asList("Abnormality of the eye", "Eye anomaly"));
+        labels.put("HP:0000004", null);
+        this.suggester = PrefixSuggester.build(labels);
+    }
+
+    @Test
+    public void labelsAreNormalized()
+    {
+        Assert.assertEquals("seizure like episodes", PrefixSuggester.normalize(" Seizure-like  episodes!"));
+        Assert.assertEquals("", PrefixSuggester.normalize("--"));
+        Assert.assertEquals(5, this.suggester.size());
+    }
+
+    @Test
+    public void matchesAtTheStartOfTheLabelComeFirst()
+    {
+        Assert.assertEquals(Arrays.asList("HP:0000001", "HP:0000005", "HP:0000002"),
+            this.suggester.suggest("sei", 10));
+        Assert.assertEquals(Arrays.asList("HP:0000001", "HP:0000005", "HP:0000002"),
+            this.suggester.suggest("SEIZ", 10));
+    }
+
+    @Test
+    public void namesComeBeforeSynonyms()
+    {
+        Assert.assertEquals(Arrays.asList("HP:0000003"), this.suggester.suggest("eye", 10));
+        Assert.assertEquals(Arrays.asList("HP:0000001"), this.suggester.suggest("fit", 10));
+        Assert.assertEquals(Arrays.asList("HP:0000001", "HP:0000005"), this.suggester.suggest("sei", 2));
+    }
+
+    @Test
+    public void multipleWordsMustBeConsecutive()
+    {
+        Assert.assertEquals(Arrays.asList("HP:0000005"), this.suggester.suggest("seizure li", 10));
+        Assert.assertEquals(Arrays.asList("HP:0000003"), this.suggester.suggest("of the e", 10));
+        Assert.assertTrue(this.suggester.suggest("abnormality eye", 10).isEmpty());
+    }
+
+    @Test
+    public void emptyInputsReturnNothing()
+    {
+        Assert.assertTrue(this.suggester.suggest("", 10).isEmpty());
+        Assert.assertTrue(this.suggester.suggest(" ", 10).isEmpty());
+        Assert.assertTrue(this.suggester.suggest(null, 10).isEmpty());
+        Assert.assertTrue(this.suggester.suggest("sei", 0).isEmpty());
+        Assert.assertTrue(this.suggester.suggest("xyz", 10).isEmpty());
+    }
+
+    @Test
+    public void largeRangesAreRankedLikeSmallOnes()
+    {
+        Map<String, Collection<String>> labels = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            labels.put(String.format("HP:%07d", i), Arrays.asList("Abnormality of the organ number " + (999 - i)));
+        }
+        labels.put("HP:1000000", Arrays.asList("Abnormal"));
+        labels.put("HP:1000001", Arrays.asList("Eye", "Abnormally shaped eye"));
+        PrefixSuggester large = PrefixSuggester.build(labels);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("HP:1000000");
+        // Shorter labels first, then by identifier
+        for (int i = 990; i < 1000; ++i) {
+            expected.add(String.format("HP:%07d", i));
+        }
+        Assert.assertEquals(expected.subList(0, 5), large.suggest("a", 5));
+        Assert.assertEquals(expected.subList(0, 5), large.suggest("abnormal", 5));
+        Assert.assertEquals(expected.subList(1, 6), large.suggest("abnormali", 5));
+        Assert.assertEquals(200, large.suggest("abn", 200).size());
+        Assert.assertEquals(Arrays.asList("HP:1000001"), large.suggest("abnormally", 5));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link RequestCoalescer} class.
+ *
+ * @version $Id$
+ */
+public class RequestCoalescerTest
+{
+    private final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+
+    @Test
+    public void concurrentRequestsForTheSameKeyShareOneLoad() throws InterruptedException
+    {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RequestCoalescer.Loader<String> loader = new RequestCoalescer.Loader<String>()
+        {
+            @Override
+            public String load()
+            {
+                loads.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return "value";
+            }
+        };
+        final List<String> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    String result = RequestCoalescerTest.this.coalescer.get("HP:1", loader);
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+            if (i == 0) {
+                Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            }
+        }
+        // Wait until all the other threads are waiting for the first load
+        for (Thread thread : threads.subList(1, threads.size())) {
+            while (thread.getState() != Thread.State.WAITING && thread.isAlive()) {
+                Thread.sleep(10);
+            }
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(5, results.size());
+        for (String result : results) {
+            Assert.assertEquals("value", result);
+        }
+        Assert.assertEquals(0, this.coalescer.size());
+    }
+
+    @Test
+    public void finishedLoadsAreNotRemembered()
+    {
+        final AtomicInteger loads = new AtomicInteger();
+        RequestCoalescer.Loader<String> loader = new RequestCoalescer.Loader<String>()
+        {
+            @Override
+            public String load()
+            {
+                return "value" + loads.incrementAndGet();
+            }
+        };
+        Assert.assertEquals("value1", this.coalescer.get("HP:1", loader));
+        Assert.assertEquals("value2", this.coalescer.get("HP:1", loader));
+        Assert.assertEquals(0, this.coalescer.size());
+    }
+
+    @Test
+    public void nullValuesAreReturned()
+    {
+        Assert.assertNull(this.coalescer.get("HP:1", new RequestCoalescer.Loader<String>()
+        {
+            @Override
+            public String load()
+            {
+                return null;
+            }
+        }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failuresAreRethrown()
+    {
+        this.coalescer.get("HP:1", new RequestCoalescer.Loader<String>()
+        {
+            @Override
+            public String load()
+            {
+                throw new IllegalArgumentException();
+            }
+        });
+    }
+}
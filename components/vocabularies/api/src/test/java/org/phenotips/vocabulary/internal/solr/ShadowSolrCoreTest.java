@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.apache.solr.core.CoreContainer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link ShadowSolrCore} class.
+ *
+ * @version $Id$
+ */
+public class ShadowSolrCoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path shadowIndex;
+
+    private Path dataDir;
+
+    private Path oldIndex;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.shadowIndex = this.folder.newFolder("hpo.shadow", "data", "index").toPath();
+        Files.write(this.shadowIndex.resolve("segments_2"), "new".getBytes(StandardCharsets.UTF_8));
+        Files.write(this.shadowIndex.resolve("write.lock"), new byte[0]);
+
+        this.dataDir = this.folder.newFolder("hpo", "data").toPath();
+        this.oldIndex = Files.createDirectory(this.dataDir.resolve("index.20150101000000000"));
+        Files.write(this.oldIndex.resolve("segments_1"), "old".getBytes(StandardCharsets.UTF_8));
+        Files.write(this.dataDir.resolve("index.properties"),
+            "index=index.20150101000000000\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void publishSwitchesTheLiveCoreToTheNewIndex() throws IOException
+    {
+        RecordingSwitch core = new RecordingSwitch(0);
+        ShadowSolrCore.install(this.shadowIndex, this.dataDir, this.oldIndex, core);
+
+        Assert.assertEquals(1, core.calls);
+        Path newIndex = this.dataDir.resolve(core.indexNames[0]);
+        Assert.assertFalse(newIndex.equals(this.oldIndex));
+        Assert.assertEquals("new", new String(Files.readAllBytes(newIndex.resolve("segments_2")),
+            StandardCharsets.UTF_8));
+        Assert.assertFalse(Files.exists(newIndex.resolve("write.lock")));
+        Assert.assertEquals(core.indexNames[0], getIndexName());
+        Assert.assertFalse(Files.exists(this.oldIndex));
+        // The shadow index itself is left for discard()
+        Assert.assertTrue(Files.exists(this.shadowIndex.resolve("segments_2")));
+    }
+
+    @Test
+    public void failedPublishKeepsTheOldIndex() throws IOException
+    {
+        RecordingSwitch core = new RecordingSwitch(1);
+        try {
+            ShadowSolrCore.install(this.shadowIndex, this.dataDir, this.oldIndex, core);
+            Assert.fail("The failure to open the new index should be reported");
+        } catch (IOException ex) {
+            // Expected
+        }
+
+        // The core was switched back to the old index, which is untouched
+        Assert.assertEquals(2, core.calls);
+        Assert.assertEquals("index.20150101000000000", core.indexNames[1]);
+        Assert.assertEquals("index.20150101000000000", getIndexName());
+        Assert.assertEquals("old", new String(Files.readAllBytes(this.oldIndex.resolve("segments_1")),
+            StandardCharsets.UTF_8));
+        Assert.assertFalse(Files.exists(this.dataDir.resolve(core.indexNames[0])));
+    }
+
+    @Test
+    public void failedPublishRestoresTheDefaultIndex() throws IOException
+    {
+        Files.delete(this.dataDir.resolve("index.properties"));
+        Path defaultIndex = Files.createDirectory(this.dataDir.resolve("index"));
+
+        RecordingSwitch core = new RecordingSwitch(1);
+        try {
+            ShadowSolrCore.install(this.shadowIndex, this.dataDir, defaultIndex, core);
+            Assert.fail("The failure to open the new index should be reported");
+        } catch (IOException ex) {
+            // Expected
+        }
+
+        Assert.assertFalse(Files.exists(this.dataDir.resolve("index.properties")));
+        Assert.assertTrue(Files.exists(defaultIndex));
+    }
+
+    @Test
+    public void discardUnloadsTheShadowCore()
+    {
+        CoreContainer container = mock(CoreContainer.class);
+        when(container.getCoreNames()).thenReturn(Arrays.asList("hpo", "hpo.shadow"));
+
+        new ShadowSolrCore(container, "hpo", "hpo.shadow").discard();
+
+        verify(container).unload("hpo.shadow", true, true, true);
+        verify(container, never()).unload("hpo", true, true, true);
+    }
+
+    @Test
+    public void discardIgnoresMissingShadowCores()
+    {
+        CoreContainer container = mock(CoreContainer.class);
+        when(container.getCoreNames()).thenReturn(Collections.singletonList("hpo"));
+
+        new ShadowSolrCore(container, "hpo", "hpo.shadow").discard();
+
+        verify(container, never()).unload("hpo.shadow", true, true, true);
+    }
+
+    private String getIndexName() throws IOException
+    {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(this.dataDir.resolve("index.properties"))) {
+            properties.load(in);
+        }
+        return properties.getProperty("index");
+    }
+
+    /**
+     * Records the index named in {@code index.properties} each time the core is reopened, failing a number of times.
+     */
+    private final class RecordingSwitch implements ShadowSolrCore.IndexSwitch
+    {
+        private final String[] indexNames = new String[2];
+
+        private int failures;
+
+        private int calls;
+
+        RecordingSwitch(int failures)
+        {
+            this.failures = failures;
+        }
+
+        @Override
+        public void reopen() throws IOException
+        {
+            this.indexNames[this.calls++] = Files.exists(ShadowSolrCoreTest.this.dataDir.resolve("index.properties"))
+                ? getIndexName() : "index";
+            if (this.failures-- > 0) {
+                throw new IOException("Cannot open the index");
+            }
+        }
+    }
+}
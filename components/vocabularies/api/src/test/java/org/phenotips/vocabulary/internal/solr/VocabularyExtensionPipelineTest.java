@@ -0,0 +1,294 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyExtension;
+import org.phenotips.vocabulary.VocabularyInputTerm;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link VocabularyExtensionPipeline} component.
+ *
+ * @version $Id$
+ */
+public class VocabularyExtensionPipelineTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<VocabularyExtensionPipeline> mocker =
+        new MockitoComponentMockingRule<>(VocabularyExtensionPipeline.class);
+
+    private Vocabulary vocabulary = mock(Vocabulary.class);
+
+    private ComponentManager componentManager;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        when(this.vocabulary.getIdentifier()).thenReturn("hpo");
+        this.componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+    }
+
+    @Test
+    public void termsAreExtendedInPlaceAndKeepTheirOrder() throws Exception
+    {
+        VocabularyExtension extension = extension("hpo");
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                VocabularyInputTerm term = (VocabularyInputTerm) invocation.getArguments()[0];
+                term.set("extended_id", term.getId());
+                return null;
+            }
+        }).when(extension).extendTerm(any(VocabularyInputTerm.class), anyString());
+        VocabularyExtension other = extension("omim");
+        setExtensions(extension, other);
+
+        VocabularyExtensionPipeline pipeline = this.mocker.getComponentUnderTest();
+        pipeline.indexingStarted(this.vocabulary);
+        List<SolrInputDocument> batch = batch(50);
+        List<SolrInputDocument> originals = new ArrayList<>(batch);
+        pipeline.extendTerms(batch, this.vocabulary);
+        pipeline.indexingEnded(this.vocabulary);
+
+        for (int i = 0; i < batch.size(); ++i) {
+            Assert.assertSame(originals.get(i), batch.get(i));
+            Assert.assertEquals("HP:" + i, batch.get(i).getFieldValue("id"));
+            Assert.assertEquals("HP:" + i, batch.get(i).getFieldValue("extended_id"));
+        }
+        verify(extension).indexingStarted("hpo");
+        verify(extension).indexingEnded("hpo");
+        verify(other, never()).indexingStarted(anyString());
+        verify(other, never()).extendTerm(any(VocabularyInputTerm.class), anyString());
+    }
+
+    @Test
+    public void failingExtensionsDontAffectTheOthers() throws Exception
+    {
+        VocabularyExtension failing = extension("hpo");
+        doThrow(new IllegalStateException("broken")).when(failing).extendTerm(any(VocabularyInputTerm.class),
+            anyString());
+        VocabularyExtension working = appendingExtension("frequency", "frequent");
+        setExtensions(failing, working);
+
+        VocabularyExtensionPipeline pipeline = this.mocker.getComponentUnderTest();
+        pipeline.indexingStarted(this.vocabulary);
+        List<SolrInputDocument> batch = batch(10);
+        pipeline.extendTerms(batch, this.vocabulary);
+        pipeline.indexingEnded(this.vocabulary);
+
+        for (SolrInputDocument doc : batch) {
+            Assert.assertEquals("frequent", doc.getFieldValue("frequency"));
+        }
+        verify(failing).indexingEnded("hpo");
+    }
+
+    @Test
+    public void extensionsFailingToStartAreNotUsed() throws Exception
+    {
+        VocabularyExtension failing = extension("hpo");
+        doThrow(new IllegalStateException("broken")).when(failing).indexingStarted("hpo");
+        setExtensions(failing);
+
+        VocabularyExtensionPipeline pipeline = this.mocker.getComponentUnderTest();
+        pipeline.indexingStarted(this.vocabulary);
+        pipeline.extendTerms(batch(10), this.vocabulary);
+        pipeline.indexingEnded(this.vocabulary);
+
+        verify(failing, never()).extendTerm(any(VocabularyInputTerm.class), anyString());
+        verify(failing, never()).indexingEnded(anyString());
+    }
+
+    @Test
+    public void slowExtensionsAreDisabled() throws Exception
+    {
+        VocabularyExtension slow = extension("hpo");
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                VocabularyInputTerm term = (VocabularyInputTerm) invocation.getArguments()[0];
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException ex) {
+                    // Cancelled, as expected
+                }
+                term.set("slow", true);
+                return null;
+            }
+        }).when(slow).extendTerm(any(VocabularyInputTerm.class), anyString());
+        VocabularyExtension fast = appendingExtension("fast", true);
+        setExtensions(slow, fast);
+
+        VocabularyExtensionPipeline pipeline = this.mocker.getComponentUnderTest();
+        ReflectionUtils.setFieldValue(pipeline, "batchTimeout", 100L);
+        pipeline.indexingStarted(this.vocabulary);
+        List<SolrInputDocument> first = batch(1);
+        pipeline.extendTerms(first, this.vocabulary);
+        List<SolrInputDocument> second = batch(1);
+        pipeline.extendTerms(second, this.vocabulary);
+        pipeline.indexingEnded(this.vocabulary);
+
+        // The term being extended when the time ran out is indexed as it was parsed
+        Assert.assertNull(first.get(0).getFieldValue("slow"));
+        Assert.assertNull(first.get(0).getFieldValue("fast"));
+        // Afterwards, only the slow extension is skipped
+        Assert.assertNull(second.get(0).getFieldValue("slow"));
+        Assert.assertEquals(true, second.get(0).getFieldValue("fast"));
+        verify(slow, times(1)).extendTerm(any(VocabularyInputTerm.class), anyString());
+    }
+
+    @Test
+    public void onlyTheExtensionHoldingUpABatchIsDisabled() throws Exception
+    {
+        VocabularyExtension stuck = extension("hpo");
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                if ("HP:0".equals(((VocabularyInputTerm) invocation.getArguments()[0]).getId())) {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return null;
+            }
+        }).when(stuck).extendTerm(any(VocabularyInputTerm.class), anyString());
+        VocabularyExtension steady = extension("hpo");
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException
+            {
+                // Slower than the batch timeout, but not blocked
+                Thread.sleep(250);
+                ((VocabularyInputTerm) invocation.getArguments()[0]).set("steady", true);
+                return null;
+            }
+        }).when(steady).extendTerm(any(VocabularyInputTerm.class), anyString());
+        setExtensions(stuck, steady);
+
+        VocabularyExtensionPipeline pipeline = this.mocker.getComponentUnderTest();
+        ReflectionUtils.setFieldValue(pipeline, "batchTimeout", 100L);
+        ReflectionUtils.setFieldValue(pipeline, "executor", Executors.newFixedThreadPool(3));
+        pipeline.indexingStarted(this.vocabulary);
+        List<SolrInputDocument> first = batch(3);
+        pipeline.extendTerms(first, this.vocabulary);
+        List<SolrInputDocument> second = batch(1);
+        pipeline.extendTerms(second, this.vocabulary);
+        pipeline.indexingEnded(this.vocabulary);
+        pipeline.dispose();
+
+        // The terms extended alongside the stuck one still get the steady extension
+        Assert.assertNull(first.get(0).getFieldValue("steady"));
+        Assert.assertEquals(true, first.get(1).getFieldValue("steady"));
+        Assert.assertEquals(true, first.get(2).getFieldValue("steady"));
+        // And only the stuck extension is disabled
+        Assert.assertEquals(true, second.get(0).getFieldValue("steady"));
+        verify(stuck, times(3)).extendTerm(any(VocabularyInputTerm.class), anyString());
+    }
+
+    @Test
+    public void batchesAreUnchangedWithoutExtensions() throws Exception
+    {
+        when(this.componentManager.<VocabularyExtension>getInstanceList(VocabularyExtension.class))
+            .thenThrow(new ComponentLookupException("none"));
+
+        VocabularyExtensionPipeline pipeline = this.mocker.getComponentUnderTest();
+        pipeline.indexingStarted(this.vocabulary);
+        List<SolrInputDocument> batch = batch(3);
+        pipeline.extendTerms(batch, this.vocabulary);
+        pipeline.indexingEnded(this.vocabulary);
+
+        Assert.assertEquals(1, batch.get(2).size());
+        Assert.assertEquals("HP:2", batch.get(2).getFieldValue("id"));
+    }
+
+    private VocabularyExtension extension(String vocabularyId)
+    {
+        VocabularyExtension result = mock(VocabularyExtension.class);
+        when(result.getSupportedVocabularies()).thenReturn(Collections.singleton(vocabularyId));
+        return result;
+    }
+
+    private VocabularyExtension appendingExtension(final String field, final Object value)
+    {
+        VocabularyExtension result = extension("hpo");
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                ((VocabularyInputTerm) invocation.getArguments()[0]).append(field, value);
+                return null;
+            }
+        }).when(result).extendTerm(any(VocabularyInputTerm.class), anyString());
+        return result;
+    }
+
+    private void setExtensions(VocabularyExtension... extensions) throws ComponentLookupException
+    {
+        when(this.componentManager.<VocabularyExtension>getInstanceList(VocabularyExtension.class))
+            .thenReturn(Arrays.asList(extensions));
+    }
+
+    private List<SolrInputDocument> batch(int size)
+    {
+        List<SolrInputDocument> result = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.setField("id", "HP:" + i);
+            result.add(doc);
+        }
+        return result;
+    }
+}
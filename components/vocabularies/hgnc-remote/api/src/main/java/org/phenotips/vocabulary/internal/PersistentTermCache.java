@@ -0,0 +1,244 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+
+/**
+ * A size-bounded store of terms fetched from a remote vocabulary, kept on disk so that it survives restarts. Entries
+ * are kept in memory in least-recently-used order, and each new entry is also appended to a journal file, one per
+ * line: the term identifier, the time when it was fetched, and the JSON data of the term, separated by tabs; empty
+ * data means that the term doesn't exist. Later lines replace earlier lines for the same term, and the journal is
+ * rewritten without the outdated lines once it grows too much. Accesses aren't written to the journal, so after a
+ * restart the entries are ordered by the time when they were last stored.
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+public final class PersistentTermCache
+{
+    /** Separates the fields of a journal line; escaped by JSON, and never used in identifiers. */
+    private static final char SEPARATOR = '\t';
+
+    /** The number of fields of a journal line. */
+    private static final int FIELDS = 3;
+
+    /** The journal is rewritten when it contains this many times more lines than the maximum number of entries. */
+    private static final int COMPACTION_RATIO = 2;
+
+    /** The journal file. */
+    private final Path file;
+
+    /** The maximum number of terms kept. */
+    private final int maxEntries;
+
+    /** The known entries, in access order. */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /** The number of lines currently in the journal. */
+    private int journalLines;
+
+    /**
+     * Simple constructor; the entries already in the journal are not loaded until {@link #load()} is called.
+     *
+     * @param file the journal file, which will be created if needed
+     * @param maxEntries the maximum number of terms to keep, the least recently used are discarded first
+     */
+    public PersistentTermCache(Path file, final int maxEntries)
+    {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>(maxEntries, 1, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Read the entries stored in the journal. Invalid lines, for example a line partially written when the server was
+     * stopped, are ignored.
+     *
+     * @throws IOException if reading the journal fails
+     */
+    public synchronized void load() throws IOException
+    {
+        this.entries.clear();
+        this.journalLines = 0;
+        if (!Files.isRegularFile(this.file)) {
+            return;
+        }
+        try (BufferedReader in = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                ++this.journalLines;
+                String[] fields = StringUtils.splitPreserveAllTokens(line, SEPARATOR);
+                if (fields.length != FIELDS || StringUtils.isEmpty(fields[0])) {
+                    continue;
+                }
+                try {
+                    this.entries.put(fields[0], new Entry(fields[2], Long.parseLong(fields[1])));
+                } catch (NumberFormatException ex) {
+                    // Corrupted line, ignore it
+                }
+            }
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Get a stored entry, however old.
+     *
+     * @param id the identifier of the term
+     * @return the stored entry, or {@code null} if the term is not stored
+     */
+    public synchronized Entry get(String id)
+    {
+        return this.entries.get(id);
+    }
+
+    /**
+     * Store a freshly fetched term, replacing any older entry.
+     *
+     * @param id the identifier of the term
+     * @param data the JSON data of the term, or {@code null} if the term doesn't exist
+     * @throws IOException if writing to the journal fails; the entry is still kept in memory in this case
+     */
+    public synchronized void set(String id, JSONObject data) throws IOException
+    {
+        if (StringUtils.isEmpty(id) || StringUtils.containsAny(id, SEPARATOR, '\r', '\n')) {
+            return;
+        }
+        Entry entry = new Entry(data == null ? "" : data.toString(), System.currentTimeMillis());
+        this.entries.put(id, entry);
+        Files.createDirectories(this.file.getParent());
+        Files.write(this.file, Collections.singleton(toLine(id, entry)), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        ++this.journalLines;
+        compactIfNeeded();
+    }
+
+    /**
+     * Mark all the entries as outdated, so that they are fetched again when next needed, while still being available
+     * if the remote service cannot be reached.
+     *
+     * @throws IOException if rewriting the journal fails
+     */
+    public synchronized void expireAll() throws IOException
+    {
+        for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+            entry.setValue(new Entry(entry.getValue().data, 0));
+        }
+        compact();
+    }
+
+    /**
+     * The number of stored terms.
+     *
+     * @return a positive number, or {@code 0} if nothing is stored
+     */
+    public synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    private void compactIfNeeded() throws IOException
+    {
+        if (this.journalLines > COMPACTION_RATIO * this.maxEntries) {
+            compact();
+        }
+    }
+
+    /** Rewrite the journal with only the current entries, replacing the old journal in a single step. */
+    private void compact() throws IOException
+    {
+        Files.createDirectories(this.file.getParent());
+        Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                out.write(toLine(entry.getKey(), entry.getValue()));
+                out.newLine();
+            }
+        }
+        Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.journalLines = this.entries.size();
+    }
+
+    private static String toLine(String id, Entry entry)
+    {
+        return id + SEPARATOR + entry.timestamp + SEPARATOR + entry.data;
+    }
+
+    /**
+     * A stored term.
+     *
+     * @version $Id$
+     */
+    public static final class Entry
+    {
+        /** The serialized JSON data, or an empty string for a term that doesn't exist. */
+        private final String data;
+
+        /** When was the term fetched. */
+        private final long timestamp;
+
+        Entry(String data, long timestamp)
+        {
+            this.data = data;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * The data of the term, as returned by the remote service.
+         *
+         * @return the parsed data, or {@code null} if the term doesn't exist
+         */
+        public JSONObject getData()
+        {
+            return this.data.isEmpty() ? null : new JSONObject(this.data);
+        }
+
+        /**
+         * The age of this entry.
+         *
+         * @return the number of milliseconds since the term was fetched
+         */
+        public long getAge()
+        {
+            return System.currentTimeMillis() - this.timestamp;
+        }
+    }
+}
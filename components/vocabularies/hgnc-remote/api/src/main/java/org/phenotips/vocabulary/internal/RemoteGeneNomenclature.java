@@ -19,6 +19,7 @@
 
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
@@ -27,10 +28,14 @@
 import org.xwiki.cache.eviction.EntryEvictionConfiguration;
 import org.xwiki.cache.eviction.LRUEvictionConfiguration;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.observation.ObservationManager;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -38,11 +43,17 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -52,11 +63,19 @@
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Consts;
 import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.params.CommonParams;
 import org.json.JSONArray;
@@ -66,6 +85,20 @@
 
 /**
  * Provides access to the HUGO Gene Nomenclature Committee's GeneNames nomenclature. The prefix is {@code HGNC}.
+ * <p>
+ * The remote service can only fetch one symbol per request, so {@link #getTerms(Collection)} sends all the requests
+ * for the terms missing from the cache at once, through a non-blocking client, and then waits for all of them. The
+ * number of concurrent connections is limited by {@code phenotips.ontologies.hgnc.maxConnections}, and each request
+ * times out after {@code phenotips.ontologies.hgnc.timeout} milliseconds. Concurrent lookups of the same symbol share
+ * a single remote request.
+ * </p>
+ * <p>
+ * Fetched terms are also kept on disk, in the permanent directory, so that they don't need to be fetched again after
+ * a restart. Stored terms are considered fresh for {@code phenotips.ontologies.hgnc.cache.timeToLive} seconds; older
+ * terms are still returned right away, but they are refreshed in the background. At most
+ * {@code phenotips.ontologies.hgnc.cache.maxEntries} terms are kept. When the remote service cannot be reached, or
+ * when {@code phenotips.ontologies.hgnc.offline} is {@code true}, only the stored terms are used.
+ * </p>
  *
  * @version $Id$
  * @since 1.0RC1
@@ -73,7 +106,7 @@
 @Component
 @Named("hgnc")
 @Singleton
-public class RemoteGeneNomenclature implements Vocabulary, Initializable
+public class RemoteGeneNomenclature implements Vocabulary, Initializable, Disposable
 {
     /**
      * Object used to mark in the cache that a term doesn't exist, since null means that the cache doesn't contain the
@@ -93,6 +126,20 @@ public class RemoteGeneNomenclature implements Vocabulary, Initializable
 
     private static final Map<String, String> QUERY_OPERATORS = new HashMap<>();
 
+    private static final String CONFIGURATION_PREFIX = "phenotips.ontologies.hgnc.";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /** One week, in seconds. */
+    private static final int DEFAULT_TIME_TO_LIVE = 604800;
+
+    /** How long to wait before contacting the remote service again after a failed request, in milliseconds. */
+    private static final long RETRY_DELAY = 60000;
+
     @Inject
     @Named("xwikiproperties")
     private ConfigurationSource configuration;
@@ -105,12 +152,43 @@ public class RemoteGeneNomenclature implements Vocabulary, Initializable
 
     private String fetchServiceURL;
 
-    /** Performs HTTP requests to the remote REST service. */
-    private final CloseableHttpClient client = HttpClients.createSystem();
+    /** Timeouts applied to all the remote requests. */
+    private RequestConfig requestConfig;
+
+    /** The maximum number of simultaneous connections to the remote service, for each of the two clients. */
+    private int maxConnections;
+
+    /** Performs blocking HTTP requests to the remote REST service. */
+    private CloseableHttpClient client;
+
+    /** Performs non-blocking HTTP requests to the remote REST service, started only when first needed. */
+    private CloseableHttpAsyncClient asyncClient;
+
+    /** Terms fetched earlier, kept on disk across restarts; {@code null} if there's no permanent directory. */
+    private PersistentTermCache store;
+
+    /** How long stored terms are considered fresh, in milliseconds. */
+    private long timeToLive;
+
+    /** Whether the remote service must never be used for fetching terms. */
+    private boolean offline;
+
+    /** After a failed request, the remote service isn't used for fetching terms until this time. */
+    private volatile long unreachableUntil;
+
+    /** The remote lookups currently in progress, so that concurrent lookups for the same term share one request. */
+    private final ConcurrentMap<String, Future<VocabularyTerm>> pendingFetches = new ConcurrentHashMap<>();
 
     @Inject
     private Logger logger;
 
+    @Inject
+    private Environment environment;
+
+    /** Used for announcing that the vocabulary was reindexed. */
+    @Inject
+    private ObservationManager observationManager;
+
     /**
      * Cache for the recently accessed terms; useful since the ontology rarely changes, so a search should always return
      * the same thing.
@@ -133,7 +211,22 @@ public void initialize() throws InitializationException
             this.searchServiceURL = this.baseServiceURL + "search/";
             this.infoServiceURL = this.baseServiceURL + "info";
             this.fetchServiceURL = this.baseServiceURL + "fetch/";
-            this.cache = this.cacheFactory.createNewLocalCache(new CacheConfiguration());
+            int timeout = getIntProperty(CONFIGURATION_PREFIX + "timeout", DEFAULT_TIMEOUT);
+            this.requestConfig = RequestConfig.custom().setConnectTimeout(timeout).setSocketTimeout(timeout).build();
+            this.maxConnections = getIntProperty(CONFIGURATION_PREFIX + "maxConnections", DEFAULT_MAX_CONNECTIONS);
+            if (this.client == null) {
+                this.client = HttpClients.custom().useSystemProperties().setDefaultRequestConfig(this.requestConfig)
+                    .setMaxConnTotal(this.maxConnections).setMaxConnPerRoute(this.maxConnections).build();
+            }
+            int cacheSize = getIntProperty(CONFIGURATION_PREFIX + "cache.maxEntries", DEFAULT_CACHE_SIZE);
+            int termsTimeToLive = getIntProperty(CONFIGURATION_PREFIX + "cache.timeToLive", DEFAULT_TIME_TO_LIVE);
+            this.timeToLive = TimeUnit.SECONDS.toMillis(termsTimeToLive);
+            this.offline =
+                Boolean.TRUE.equals(this.configuration.getProperty(CONFIGURATION_PREFIX + "offline", Boolean.class));
+            EntryEvictionConfiguration termsConfig = new LRUEvictionConfiguration(cacheSize);
+            termsConfig.setTimeToLive(termsTimeToLive);
+            this.cache = this.cacheFactory.createNewLocalCache(new CacheConfiguration(termsConfig));
+            this.store = openStore(cacheSize);
             EntryEvictionConfiguration infoConfig = new LRUEvictionConfiguration(1);
             infoConfig.setTimeToLive(300);
             this.infoCache = this.cacheFactory.createNewLocalCache(new CacheConfiguration(infoConfig));
@@ -145,33 +238,31 @@ public void initialize() throws InitializationException
         QUERY_OPERATORS.put("NOT", "-");
     }
 
+    @Override
+    public void dispose()
+    {
+        try {
+            this.client.close();
+            synchronized (this) {
+                if (this.asyncClient != null) {
+                    this.asyncClient.close();
+                    this.asyncClient = null;
+                }
+            }
+        } catch (IOException ex) {
+            this.logger.warn("Failed to close the HGNC connections: {}", ex.getMessage());
+        }
+    }
+
     @Override
     public VocabularyTerm getTerm(String id)
     {
         VocabularyTerm result = this.cache.get(id);
-        String safeID;
         if (result == null) {
-            try {
-                safeID = URLEncoder.encode(id, Consts.UTF_8.name());
-            } catch (UnsupportedEncodingException e) {
-                safeID = id.replaceAll("\\s", "");
-                this.logger.warn("Could not find the encoding: {}", Consts.UTF_8.name());
-            }
-            HttpGet method = new HttpGet(this.fetchServiceURL + "symbol/" + safeID);
-            method.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
-            try (CloseableHttpResponse httpResponse = this.client.execute(method)) {
-                String response = IOUtils.toString(httpResponse.getEntity().getContent(), Consts.UTF_8);
-                JSONObject responseJSON = new JSONObject(response);
-                JSONArray docs = responseJSON.getJSONObject(RESPONSE_KEY).getJSONArray(DATA_KEY);
-                if (docs.length() == 1) {
-                    result = new JSONOntologyTerm(docs.getJSONObject(0), this);
-                    this.cache.set(id, result);
-                } else {
-                    this.cache.set(id, EMPTY_MARKER);
-                }
-            } catch (IOException | JSONException ex) {
-                this.logger.warn("Failed to fetch gene definition: {}", ex.getMessage());
-            }
+            result = getStoredTerm(id);
+        }
+        if (result == null) {
+            result = waitFor(fetch(id, false));
         }
         return (result == EMPTY_MARKER) ? null : result;
     }
@@ -179,11 +270,28 @@ public VocabularyTerm getTerm(String id)
     @Override
     public Set<VocabularyTerm> getTerms(Collection<String> ids)
     {
-        // FIXME Reimplement with a bunch of async connections fired in parallel
-        Set<VocabularyTerm> result = new LinkedHashSet<>();
+        // Start all the missing lookups before waiting for any of them
+        Map<String, Future<VocabularyTerm>> lookups = new LinkedHashMap<>();
         for (String id : ids) {
-            VocabularyTerm term = getTerm(id);
-            if (term != null) {
+            if (id == null || lookups.containsKey(id)) {
+                continue;
+            }
+            VocabularyTerm cached = this.cache.get(id);
+            if (cached == null) {
+                cached = getStoredTerm(id);
+            }
+            if (cached != null) {
+                BasicFuture<VocabularyTerm> done = new BasicFuture<>(null);
+                done.completed(cached);
+                lookups.put(id, done);
+            } else {
+                lookups.put(id, fetch(id, true));
+            }
+        }
+        Set<VocabularyTerm> result = new LinkedHashSet<>();
+        for (Future<VocabularyTerm> lookup : lookups.values()) {
+            VocabularyTerm term = waitFor(lookup);
+            if (term != null && term != EMPTY_MARKER) {
                 result.add(term);
             }
         }
@@ -290,6 +398,27 @@ public long getDistance(VocabularyTerm fromTerm, VocabularyTerm toTerm)
         return -1;
     }
 
+    @Override
+    public Set<String> getAncestorIds(String termId)
+    {
+        // Flat nomenclature
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Set<String> getAncestorAndSelfIds(String termId)
+    {
+        VocabularyTerm term = getTerm(termId);
+        return term != null ? term.getAncestorAndSelfIds() : Collections.<String>emptySet();
+    }
+
+    @Override
+    public Set<String> getDescendantIds(String termId)
+    {
+        // Flat nomenclature
+        return Collections.emptySet();
+    }
+
     @Override
     public String getIdentifier()
     {
@@ -323,6 +452,15 @@ public int reindex(String ontologyUrl)
     {
         // Remote ontology, we cannot reindex, but we can clear the local cache
         this.cache.removeAll();
+        if (this.store != null) {
+            try {
+                this.store.expireAll();
+            } catch (IOException ex) {
+                this.logger.warn("Failed to expire the stored gene definitions: {}", ex.getMessage());
+            }
+        }
+        this.infoCache.removeAll();
+        this.observationManager.notify(new VocabularyVersionChangedEvent(getIdentifier()), this);
         return 0;
     }
 
@@ -339,10 +477,218 @@ public String getVersion()
         return info == null ? "" : info.getString("lastModified");
     }
 
+    /**
+     * Fetch a term from the remote service, or join the lookup of the same term already in progress.
+     *
+     * @param id the symbol to fetch
+     * @param async whether to send the request through the non-blocking client and return immediately, or to perform
+     *            it in the current thread
+     * @return the pending or finished lookup, whose result is the term, {@link #EMPTY_MARKER} if the term doesn't
+     *         exist, or {@code null} if the request failed
+     */
+    private Future<VocabularyTerm> fetch(final String id, boolean async)
+    {
+        final BasicFuture<VocabularyTerm> lookup = new BasicFuture<>(null);
+        if (isOffline()) {
+            lookup.completed(null);
+            return lookup;
+        }
+        Future<VocabularyTerm> pending = this.pendingFetches.putIfAbsent(id, lookup);
+        if (pending != null) {
+            return pending;
+        }
+        HttpGet method = new HttpGet(this.fetchServiceURL + "symbol/" + encode(id));
+        method.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+        if (async) {
+            try {
+                getAsyncClient().execute(method, new FutureCallback<HttpResponse>()
+                {
+                    @Override
+                    public void completed(HttpResponse response)
+                    {
+                        VocabularyTerm result = null;
+                        try {
+                            result = readTerm(id, response);
+                        } finally {
+                            finishFetch(id, lookup, result);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception ex)
+                    {
+                        markUnreachable(ex);
+                        finishFetch(id, lookup, null);
+                    }
+
+                    @Override
+                    public void cancelled()
+                    {
+                        finishFetch(id, lookup, null);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                this.logger.warn("Failed to fetch gene definition: {}", ex.getMessage());
+                finishFetch(id, lookup, null);
+            }
+        } else {
+            VocabularyTerm result = null;
+            try (CloseableHttpResponse httpResponse = this.client.execute(method)) {
+                result = readTerm(id, httpResponse);
+            } catch (IOException ex) {
+                markUnreachable(ex);
+            } finally {
+                finishFetch(id, lookup, result);
+            }
+        }
+        return lookup;
+    }
+
+    private void finishFetch(String id, BasicFuture<VocabularyTerm> lookup, VocabularyTerm result)
+    {
+        this.pendingFetches.remove(id, lookup);
+        lookup.completed(result);
+    }
+
+    /**
+     * Parse a fetch response and store the result in the cache. Error responses, such as server errors or throttling,
+     * say nothing about the term, so they aren't cached, and the service is considered unreachable for a while.
+     *
+     * @return the term, {@link #EMPTY_MARKER} if the term doesn't exist, or {@code null} if the response is invalid
+     */
+    private VocabularyTerm readTerm(String id, HttpResponse httpResponse)
+    {
+        int status = httpResponse.getStatusLine().getStatusCode();
+        if (status < HttpStatus.SC_OK || status >= HttpStatus.SC_MULTIPLE_CHOICES) {
+            markUnreachable(new HttpResponseException(status, "HTTP status " + status));
+            return null;
+        }
+        try {
+            String response = IOUtils.toString(httpResponse.getEntity().getContent(), Consts.UTF_8);
+            JSONObject responseJSON = new JSONObject(response);
+            JSONArray docs = responseJSON.getJSONObject(RESPONSE_KEY).getJSONArray(DATA_KEY);
+            JSONObject data = (docs.length() == 1) ? docs.getJSONObject(0) : null;
+            VocabularyTerm result = (data != null) ? new JSONOntologyTerm(data, this) : EMPTY_MARKER;
+            this.cache.set(id, result);
+            storeTerm(id, data);
+            return result;
+        } catch (IOException | JSONException ex) {
+            this.logger.warn("Failed to fetch gene definition: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    private void storeTerm(String id, JSONObject data)
+    {
+        if (this.store != null) {
+            try {
+                this.store.set(id, data);
+            } catch (IOException ex) {
+                this.logger.warn("Failed to store gene definition: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Look for a term in the persistent cache. Fresh terms are also put back in the memory cache, while outdated terms
+     * are returned as they are, and refreshed in the background.
+     *
+     * @return the term, {@link #EMPTY_MARKER} if the term is known not to exist, or {@code null} if it's not stored
+     */
+    private VocabularyTerm getStoredTerm(String id)
+    {
+        PersistentTermCache.Entry entry = (this.store == null) ? null : this.store.get(id);
+        if (entry == null) {
+            return null;
+        }
+        VocabularyTerm result;
+        try {
+            JSONObject data = entry.getData();
+            result = (data != null) ? new JSONOntologyTerm(data, this) : EMPTY_MARKER;
+        } catch (JSONException ex) {
+            return null;
+        }
+        if (entry.getAge() < this.timeToLive) {
+            this.cache.set(id, result);
+        } else {
+            fetch(id, true);
+        }
+        return result;
+    }
+
+    private PersistentTermCache openStore(int size)
+    {
+        File permanentDirectory = this.environment.getPermanentDirectory();
+        if (permanentDirectory == null) {
+            return null;
+        }
+        File journal = new File(new File(new File(permanentDirectory, "cache"), "hgnc"), "terms.journal");
+        PersistentTermCache result = new PersistentTermCache(journal.toPath(), size);
+        try {
+            result.load();
+        } catch (IOException ex) {
+            this.logger.warn("Failed to load the stored gene definitions: {}", ex.getMessage());
+        }
+        return result;
+    }
+
+    private boolean isOffline()
+    {
+        return this.offline || System.currentTimeMillis() < this.unreachableUntil;
+    }
+
+    private void markUnreachable(Exception ex)
+    {
+        if (System.currentTimeMillis() >= this.unreachableUntil) {
+            this.logger.warn("Failed to fetch gene definition, only stored genes will be used for the next {} seconds:"
+                + " {}", TimeUnit.MILLISECONDS.toSeconds(RETRY_DELAY), ex.getMessage());
+        }
+        this.unreachableUntil = System.currentTimeMillis() + RETRY_DELAY;
+    }
+
+    private VocabularyTerm waitFor(Future<VocabularyTerm> lookup)
+    {
+        try {
+            return lookup.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            this.logger.warn("Failed to fetch gene definition: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    private synchronized CloseableHttpAsyncClient getAsyncClient()
+    {
+        if (this.asyncClient == null) {
+            this.asyncClient = HttpAsyncClients.custom().useSystemProperties()
+                .setDefaultRequestConfig(this.requestConfig)
+                .setMaxConnTotal(this.maxConnections).setMaxConnPerRoute(this.maxConnections).build();
+            this.asyncClient.start();
+        }
+        return this.asyncClient;
+    }
+
+    private String encode(String id)
+    {
+        try {
+            return URLEncoder.encode(id, Consts.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            this.logger.warn("Could not find the encoding: {}", Consts.UTF_8.name());
+            return id.replaceAll("\\s", "");
+        }
+    }
+
+    private int getIntProperty(String key, int defaultValue)
+    {
+        Integer value = this.configuration.getProperty(key, Integer.class);
+        return (value == null || value <= 0) ? defaultValue : value;
+    }
+
     private JSONObject getInfo()
     {
         JSONObject info = this.infoCache.get("");
-        if (info != null) {
+        if (info != null || isOffline()) {
             return info;
         }
         HttpGet method = new HttpGet(this.infoServiceURL);
@@ -480,6 +826,18 @@ public Set<VocabularyTerm> getAncestorsAndSelf()
             return Collections.<VocabularyTerm>singleton(this);
         }
 
+        @Override
+        public Set<String> getAncestorIds()
+        {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Set<String> getAncestorAndSelfIds()
+        {
+            return Collections.singleton(getId());
+        }
+
         @Override
         public long getDistanceTo(VocabularyTerm other)
         {
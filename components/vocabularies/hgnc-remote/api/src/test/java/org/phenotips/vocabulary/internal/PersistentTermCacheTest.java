@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the {@link PersistentTermCache} class.
+ *
+ * @version $Id$
+ */
+public class PersistentTermCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journal;
+
+    @Before
+    public void setUp()
+    {
+        this.journal = this.folder.getRoot().toPath().resolve("hgnc").resolve("terms.journal");
+    }
+
+    @Test
+    public void storedTermsSurviveReloading() throws IOException
+    {
+        PersistentTermCache cache = new PersistentTermCache(this.journal, 10);
+        cache.load();
+        Assert.assertNull(cache.get("BRCA1"));
+        cache.set("BRCA1", new JSONObject().put("symbol", "BRCA1").put("name", "tab\tand\nnewline"));
+        cache.set("NOTHING", null);
+
+        PersistentTermCache reloaded = new PersistentTermCache(this.journal, 10);
+        reloaded.load();
+        Assert.assertEquals(2, reloaded.size());
+        Assert.assertEquals("tab\tand\nnewline", reloaded.get("BRCA1").getData().getString("name"));
+        Assert.assertTrue(reloaded.get("BRCA1").getAge() < 60000);
+        Assert.assertNotNull(reloaded.get("NOTHING"));
+        Assert.assertNull(reloaded.get("NOTHING").getData());
+    }
+
+    @Test
+    public void leastRecentlyUsedTermsAreDiscarded() throws IOException
+    {
+        PersistentTermCache cache = new PersistentTermCache(this.journal, 2);
+        cache.load();
+        cache.set("A", new JSONObject().put("symbol", "A"));
+        cache.set("B", new JSONObject().put("symbol", "B"));
+        cache.get("A");
+        cache.set("C", new JSONObject().put("symbol", "C"));
+        Assert.assertNotNull(cache.get("A"));
+        Assert.assertNull(cache.get("B"));
+        Assert.assertNotNull(cache.get("C"));
+
+        PersistentTermCache reloaded = new PersistentTermCache(this.journal, 2);
+        reloaded.load();
+        Assert.assertEquals(2, reloaded.size());
+    }
+
+    @Test
+    public void journalIsCompacted() throws IOException
+    {
+        PersistentTermCache cache = new PersistentTermCache(this.journal, 2);
+        cache.load();
+        for (int i = 0; i < 20; ++i) {
+            cache.set("A", new JSONObject().put("version", i));
+        }
+        Assert.assertTrue(Files.readAllLines(this.journal, StandardCharsets.UTF_8).size() <= 4);
+
+        PersistentTermCache reloaded = new PersistentTermCache(this.journal, 2);
+        reloaded.load();
+        Assert.assertEquals(19, reloaded.get("A").getData().getInt("version"));
+    }
+
+    @Test
+    public void invalidLinesAreIgnored() throws IOException
+    {
+        Files.createDirectories(this.journal.getParent());
+        Files.write(this.journal, Arrays.asList("A\t1\t{\"symbol\":\"A\"}", "garbage", "B\tnotatime\t{}", "C\t12"),
+            StandardCharsets.UTF_8, StandardOpenOption.CREATE);
+        PersistentTermCache cache = new PersistentTermCache(this.journal, 10);
+        cache.load();
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("A", cache.get("A").getData().getString("symbol"));
+    }
+
+    @Test
+    public void expiredTermsAreKept() throws IOException
+    {
+        PersistentTermCache cache = new PersistentTermCache(this.journal, 10);
+        cache.load();
+        cache.set("A", new JSONObject().put("symbol", "A"));
+        cache.expireAll();
+        Assert.assertTrue(cache.get("A").getAge() > 60000);
+
+        PersistentTermCache reloaded = new PersistentTermCache(this.journal, 10);
+        reloaded.load();
+        Assert.assertTrue(reloaded.get("A").getAge() > 60000);
+        Assert.assertEquals("A", reloaded.get("A").getData().getString("symbol"));
+    }
+}
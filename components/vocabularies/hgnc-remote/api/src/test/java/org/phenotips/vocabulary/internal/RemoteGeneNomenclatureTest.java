@@ -19,47 +19,69 @@
 
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.CacheConfiguration;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpVersion;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicStatusLine;
 import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.internal.matchers.CapturingMatcher;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -77,6 +99,9 @@
     public MockitoComponentMockingRule<Vocabulary> mocker =
         new MockitoComponentMockingRule<Vocabulary>(RemoteGeneNomenclature.class);
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private ConfigurationSource configuration;
 
     @Mock
@@ -107,6 +132,7 @@ public void setUp() throws ComponentLookupException, CacheException, NoSuchField
         when(this.configuration.getProperty("phenotips.ontologies.hgnc.serviceURL", "http://rest.genenames.org/"))
             .thenReturn("http://rest.genenames.org/");
         ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "client", this.client);
+        when(this.response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
         Field em = ReflectionUtils.getField(RemoteGeneNomenclature.class, "EMPTY_MARKER");
         em.setAccessible(true);
         this.emptyMarker = (VocabularyTerm) em.get(null);
@@ -211,23 +237,197 @@ public void getTermWithExceptionReturnsNull() throws ComponentLookupException, U
     }
 
     @Test
-    public void getTermsFetchesFromRemoteServer() throws ComponentLookupException, URISyntaxException,
-        ClientProtocolException, IOException
+    public void getTermsFetchesFromRemoteServer() throws Exception
     {
-        URI expectedURI1 = new URI("http://rest.genenames.org/fetch/symbol/BRCA1");
-        URI expectedURI2 = new URI("http://rest.genenames.org/fetch/symbol/NOTHING");
-        CapturingMatcher<HttpUriRequest> reqCapture = new CapturingMatcher<>();
-        when(this.client.execute(Matchers.argThat(reqCapture))).thenReturn(this.response);
-        when(this.response.getEntity()).thenReturn(this.responseEntity);
-        when(this.responseEntity.getContent()).thenReturn(ClassLoader.getSystemResourceAsStream("BRCA1.json"),
-            ClassLoader.getSystemResourceAsStream("NOTHING.json"));
+        final Set<String> requested = Collections.synchronizedSet(new HashSet<String>());
+        HttpServer server = startStubServer(new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String symbol = StringUtils.substringAfterLast(exchange.getRequestURI().getPath(), "/");
+                requested.add(symbol);
+                respond(exchange, "BRCA1".equals(symbol) ? "BRCA1.json" : "NOTHING.json");
+            }
+        });
+        try {
+            Set<VocabularyTerm> result =
+                this.mocker.getComponentUnderTest().getTerms(Arrays.asList("BRCA1", "NOTHING", "BRCA1"));
+            Assert.assertEquals(new HashSet<>(Arrays.asList("BRCA1", "NOTHING")), requested);
+            Assert.assertEquals(1, result.size());
+            Assert.assertEquals("BRCA1", result.iterator().next().getId());
+            verify(this.cache).set("BRCA1", result.iterator().next());
+            verify(this.cache).set("NOTHING", this.emptyMarker);
+            verify(this.client, never()).execute(any(HttpUriRequest.class));
+        } finally {
+            stopStubServer(server);
+        }
+    }
+
+    @Test
+    public void getTermsUsesCache() throws Exception
+    {
+        when(this.cache.get("BRCA1")).thenReturn(this.term);
+        when(this.cache.get("NOTHING")).thenReturn(this.emptyMarker);
         Set<VocabularyTerm> result = this.mocker.getComponentUnderTest().getTerms(Arrays.asList("BRCA1", "NOTHING"));
-        List<HttpUriRequest> calledURIs = reqCapture.getAllValues();
-        Assert.assertEquals(expectedURI1, calledURIs.get(0).getURI());
-        Assert.assertEquals(expectedURI2, calledURIs.get(1).getURI());
-        Assert.assertEquals("application/json", reqCapture.getLastValue().getLastHeader("Accept").getValue());
-        Assert.assertEquals(1, result.size());
-        Assert.assertEquals("BRCA1", result.iterator().next().getId());
+        Assert.assertEquals(Collections.singleton(this.term), result);
+        verify(this.client, never()).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void concurrentLookupsShareOneRequest() throws Exception
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = startStubServer(new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                requests.incrementAndGet();
+                received.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, "BRCA1.json");
+            }
+        });
+        try {
+            final Vocabulary hgnc = this.mocker.getComponentUnderTest();
+            final AtomicReference<Set<VocabularyTerm>> batchResult = new AtomicReference<>();
+            final AtomicReference<VocabularyTerm> singleResult = new AtomicReference<>();
+            Thread batch = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    batchResult.set(hgnc.getTerms(Collections.singleton("BRCA1")));
+                }
+            };
+            batch.start();
+            Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            Thread single = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    singleResult.set(hgnc.getTerm("BRCA1"));
+                }
+            };
+            single.start();
+            // Once waiting, the second lookup has joined the request in progress
+            while (single.getState() != Thread.State.WAITING && single.isAlive()) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            batch.join(5000);
+            single.join(5000);
+
+            Assert.assertEquals(1, requests.get());
+            Assert.assertEquals("BRCA1", singleResult.get().getId());
+            Assert.assertEquals(Collections.singleton(singleResult.get()), batchResult.get());
+            verify(this.client, never()).execute(any(HttpUriRequest.class));
+        } finally {
+            release.countDown();
+            stopStubServer(server);
+        }
+    }
+
+    @Test
+    public void slowRequestsTimeOut() throws Exception
+    {
+        when(this.configuration.getProperty("phenotips.ontologies.hgnc.timeout", Integer.class)).thenReturn(200);
+        final CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = startStubServer(new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, "BRCA1.json");
+            }
+        });
+        try {
+            long start = System.currentTimeMillis();
+            Assert.assertTrue(this.mocker.getComponentUnderTest().getTerms(Arrays.asList("BRCA1")).isEmpty());
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            verify(this.cache, never()).set(Matchers.eq("BRCA1"), any(VocabularyTerm.class));
+        } finally {
+            release.countDown();
+            stopStubServer(server);
+        }
+    }
+
+    @Test
+    public void fetchedTermsAreStoredOnDisk() throws Exception
+    {
+        usePermanentDirectory();
+        when(this.client.execute(any(HttpUriRequest.class))).thenReturn(this.response);
+        when(this.response.getEntity()).thenReturn(this.responseEntity);
+        when(this.responseEntity.getContent()).thenReturn(ClassLoader.getSystemResourceAsStream("BRCA1.json"));
+        Assert.assertNotNull(this.mocker.getComponentUnderTest().getTerm("BRCA1"));
+
+        PersistentTermCache stored = new PersistentTermCache(getJournal().toPath(), 10);
+        stored.load();
+        Assert.assertEquals("breast cancer 1, early onset", stored.get("BRCA1").getData().getString("name"));
+    }
+
+    @Test
+    public void storedTermsAreUsedInOfflineMode() throws Exception
+    {
+        PersistentTermCache stored = new PersistentTermCache(getJournal().toPath(), 10);
+        stored.load();
+        stored.set("BRCA1", new JSONObject().put("symbol", "BRCA1").put("name", "breast cancer 1, early onset"));
+        stored.set("NOTHING", null);
+        stored.expireAll();
+        when(this.configuration.getProperty("phenotips.ontologies.hgnc.offline", Boolean.class)).thenReturn(true);
+        usePermanentDirectory();
+
+        Vocabulary hgnc = this.mocker.getComponentUnderTest();
+        Assert.assertEquals("breast cancer 1, early onset", hgnc.getTerm("BRCA1").getName());
+        Assert.assertNull(hgnc.getTerm("NOTHING"));
+        Assert.assertNull(hgnc.getTerm("TP53"));
+        Set<VocabularyTerm> terms = hgnc.getTerms(Arrays.asList("BRCA1", "NOTHING", "TP53"));
+        Assert.assertEquals(1, terms.size());
+        Assert.assertEquals("BRCA1", terms.iterator().next().getId());
+        verify(this.client, never()).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void failedRequestsSwitchToStoredTerms() throws Exception
+    {
+        usePermanentDirectory();
+        when(this.client.execute(any(HttpUriRequest.class))).thenThrow(new IOException());
+        Assert.assertNull(this.mocker.getComponentUnderTest().getTerm("BRCA1"));
+        Assert.assertNull(this.mocker.getComponentUnderTest().getTerm("TP53"));
+        verify(this.client, Mockito.times(1)).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void errorResponsesAreNotCachedAndSwitchToStoredTerms() throws Exception
+    {
+        usePermanentDirectory();
+        when(this.client.execute(any(HttpUriRequest.class))).thenReturn(this.response);
+        when(this.response.getStatusLine())
+            .thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 503, "Service Unavailable"));
+        when(this.response.getEntity()).thenReturn(this.responseEntity);
+        when(this.responseEntity.getContent()).thenReturn(ClassLoader.getSystemResourceAsStream("NOTHING.json"));
+
+        Assert.assertNull(this.mocker.getComponentUnderTest().getTerm("BRCA1"));
+        Assert.assertNull(this.mocker.getComponentUnderTest().getTerm("TP53"));
+        verify(this.client, Mockito.times(1)).execute(any(HttpUriRequest.class));
+        verify(this.cache, never()).set(Matchers.eq("BRCA1"), any(VocabularyTerm.class));
+        PersistentTermCache stored = new PersistentTermCache(getJournal().toPath(), 10);
+        stored.load();
+        Assert.assertNull(stored.get("BRCA1"));
     }
 
     @Test
@@ -302,8 +502,12 @@ public void getVersionWithErrorReturnsEmptyString() throws ComponentLookupExcept
     public void reindexInvalidatesCache() throws ComponentLookupException
     {
         Assert.assertEquals(0, this.mocker.getComponentUnderTest().reindex(null));
-        Mockito.verify(this.cache).removeAll();
+        // The same mock is used for both the terms cache and the information cache
+        Mockito.verify(this.cache, Mockito.times(2)).removeAll();
         Mockito.verifyNoMoreInteractions(this.client);
+        Mockito.verify(this.mocker.<ObservationManager>getInstance(ObservationManager.class))
+            .notify(Matchers.any(VocabularyVersionChangedEvent.class),
+                Matchers.same(this.mocker.getComponentUnderTest()));
     }
 
     @Test
@@ -498,4 +702,46 @@ public void invalidOrEmptyResponseReturnsNoInfo() throws ComponentLookupExceptio
         when(this.responseEntity.getContent()).thenReturn(ClassLoader.getSystemResourceAsStream(""));
         Assert.assertEquals("", this.mocker.getComponentUnderTest().getVersion());
     }
+
+    /**
+     * Start a local HTTP server and point the component under test to it.
+     */
+    private HttpServer startStubServer(HttpHandler handler) throws Exception
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", handler);
+        server.start();
+        when(this.configuration.getProperty("phenotips.ontologies.hgnc.serviceURL", "http://rest.genenames.org/"))
+            .thenReturn("http://localhost:" + server.getAddress().getPort() + "/");
+        ((Initializable) this.mocker.getComponentUnderTest()).initialize();
+        return server;
+    }
+
+    private void stopStubServer(HttpServer server) throws Exception
+    {
+        ((Disposable) this.mocker.getComponentUnderTest()).dispose();
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, String resource) throws IOException
+    {
+        byte[] body = IOUtils.toByteArray(ClassLoader.getSystemResourceAsStream(resource));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private File getJournal()
+    {
+        return new File(new File(new File(this.folder.getRoot(), "cache"), "hgnc"), "terms.journal");
+    }
+
+    private void usePermanentDirectory() throws Exception
+    {
+        when(this.mocker.<Environment>getInstance(Environment.class).getPermanentDirectory())
+            .thenReturn(this.folder.getRoot());
+        ((Initializable) this.mocker.getComponentUnderTest()).initialize();
+    }
 }
@@ -293,6 +293,13 @@ public long getDistance(VocabularyTerm fromTerm, VocabularyTerm toTerm)
         return -1;
     }
 
+    @Override
+    public Set<String> getDescendantIds(String termId)
+    {
+        // Flat nomenclature
+        return Collections.emptySet();
+    }
+
     @Override
     protected Collection<SolrInputDocument> load(URL url)
     {
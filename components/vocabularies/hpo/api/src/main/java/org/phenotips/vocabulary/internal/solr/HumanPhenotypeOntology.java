@@ -57,6 +57,15 @@ public class HumanPhenotypeOntology extends AbstractOBOSolrVocabulary
     /** For determining if a query is a an id. */
     private static final Pattern ID_PATTERN = Pattern.compile("^HP:[0-9]+$", Pattern.CASE_INSENSITIVE);
 
+    /** The root of the phenotypic abnormalities branch, the only terms offered by default in searches. */
+    private static final String PHENOTYPIC_ABNORMALITY = "HP:0000118";
+
+    /**
+     * Single word inputs up to this length are answered from the in-memory suggester. Longer or multi-word inputs get
+     * the full Solr search, which also handles stemming and spelling mistakes.
+     */
+    private static final int MAX_SUGGESTER_INPUT_LENGTH = 5;
+
     @Override
     protected String getCoreName()
     {
@@ -105,6 +114,12 @@ public List<VocabularyTerm> search(String input, int maxResults, String sort, St
             return Collections.emptyList();
         }
         boolean isId = this.isId(input);
+        if (!isId && StringUtils.isBlank(sort) && StringUtils.isBlank(customFilter) && isShortPrefix(input)) {
+            List<VocabularyTerm> suggestions = suggest(input, maxResults);
+            if (suggestions != null && !suggestions.isEmpty()) {
+                return suggestions;
+            }
+        }
         Map<String, String> options = this.getStaticSolrParams();
         if (!isId) {
             options.putAll(this.getStaticFieldSolrParams());
@@ -165,4 +180,16 @@ private boolean isId(String query)
     {
         return ID_PATTERN.matcher(query).matches();
     }
+
+    private boolean isShortPrefix(String query)
+    {
+        String normalized = PrefixSuggester.normalize(query);
+        return normalized.length() <= MAX_SUGGESTER_INPUT_LENGTH && normalized.indexOf(' ') == -1;
+    }
+
+    @Override
+    protected boolean isSuggestable(String termId, OntologyGraph ontologyGraph)
+    {
+        return PHENOTYPIC_ABNORMALITY.equals(termId) || ontologyGraph.isAncestor(PHENOTYPIC_ABNORMALITY, termId);
+    }
 }
@@ -24,9 +24,17 @@
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -42,12 +50,14 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -98,6 +108,48 @@ public void testHumanPhenotypeOntologyReindex()
         Assert.assertTrue(this.ontologyServiceResult == 0);
     }
 
+    @Test
+    public void indexedTermsListAllTheirAncestors() throws SolrServerException, IOException
+    {
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<Collection> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(this.server).add(batch.capture());
+        SolrInputDocument growthDelay = null;
+        for (Object doc : batch.getValue()) {
+            if ("HP:0001510".equals(((SolrInputDocument) doc).getFieldValue("id"))) {
+                growthDelay = (SolrInputDocument) doc;
+            }
+        }
+        Assert.assertNotNull(growthDelay);
+        Assert.assertEquals(new HashSet<Object>(Arrays.asList("HP:0001510", "HP:0001507", "HP:0000118",
+            "HP:0000001")), new HashSet<Object>(growthDelay.getFieldValues("term_category")));
+    }
+
+    @Test
+    public void termStructureIsTakenFromTheGraph()
+    {
+        // The document doesn't list any parents, the structure comes from the graph built while reindexing
+        VocabularyTerm term = new SolrVocabularyTerm(document("HP:0001510", "Growth delay"), this.ontologyService);
+        Assert.assertEquals(Collections.singleton("HP:0001507"),
+            ((LazySolrTermSet) term.getParents()).getIdentifiers());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("HP:0001507", "HP:0000118", "HP:0000001")),
+            term.getAncestorIds());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("HP:0001510", "HP:0001507", "HP:0000118",
+            "HP:0000001")), term.getAncestorAndSelfIds());
+    }
+
+    @Test
+    public void failedGraphLoadsAreNotRetriedRightAway() throws SolrServerException, IOException
+    {
+        ReflectionUtils.setFieldValue(this.ontologyService, "graph", null);
+        when(this.server.query(any(SolrParams.class))).thenThrow(new SolrServerException("Unavailable"));
+        AbstractSolrVocabulary vocabulary = (AbstractSolrVocabulary) this.ontologyService;
+
+        Assert.assertNull(vocabulary.getGraph());
+        Assert.assertNull(vocabulary.getGraph());
+        verify(this.server, Mockito.times(1)).query(any(SolrParams.class));
+    }
+
     @Test
     public void testHumanPhenotypeOntologyVersion() throws SolrServerException, IOException
     {
@@ -169,6 +221,116 @@ public void testHumanPhenotypeOntologySuggestTermsMultipleWords() throws Compone
         verify(this.server).query(argThat(new IsDisMaxQuery()));
     }
 
+    @Test
+    public void shortInputsAreAnsweredByTheSuggester() throws ComponentLookupException, SolrServerException,
+        IOException
+    {
+        QueryResponse response = mock(QueryResponse.class);
+        when(this.server.query(any(SolrParams.class))).thenReturn(response);
+        when(response.getSpellCheckResponse()).thenReturn(null);
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.add(document("HP:0000001", "All"));
+        documents.add(document("HP:0001507", "Growth abnormality"));
+        documents.add(document("HP:0001510", "Growth delay"));
+        documents.setNumFound(documents.size());
+        when(response.getResults()).thenReturn(documents);
+
+        List<VocabularyTerm> result = this.mocker.getComponentUnderTest().search("Growt", 10, null, null);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals("HP:0001510", result.get(0).getId());
+        Assert.assertEquals("HP:0001507", result.get(1).getId());
+        verify(this.server, Mockito.never()).query(argThat(new IsDisMaxQuery()));
+
+        // Terms outside the phenotypic abnormality branch aren't suggested, so Solr is queried instead
+        this.mocker.getComponentUnderTest().search("all", 10, null, null);
+        verify(this.server).query(argThat(new IsDisMaxQuery()));
+    }
+
+    @Test
+    public void alternativeIdsAreSearchedOnceAndCachedUnderBothIds() throws ComponentLookupException,
+        SolrServerException, IOException
+    {
+        QueryResponse noResults = mock(QueryResponse.class);
+        when(noResults.getResults()).thenReturn(new SolrDocumentList());
+        QueryResponse altIdResults = mock(QueryResponse.class);
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.add(document("HP:0001507", "Growth abnormality"));
+        when(altIdResults.getResults()).thenReturn(documents);
+        when(this.server.query(any(SolrParams.class))).thenReturn(noResults);
+        when(this.server.query(argThat(new IsAltIdQuery()))).thenReturn(altIdResults);
+
+        VocabularyTerm result = this.mocker.getComponentUnderTest().getTerm("HP:0001508");
+        Assert.assertEquals("HP:0001507", result.getId());
+        // The caller gets the full term, the cache only keeps its compact form
+        Assert.assertTrue(result instanceof SolrVocabularyTerm);
+        verify(this.server, Mockito.times(1)).query(argThat(new IsAltIdQuery()));
+        ArgumentCaptor<VocabularyTerm> cached = ArgumentCaptor.forClass(VocabularyTerm.class);
+        verify(this.cache).set(eq("HP:0001508"), cached.capture());
+        verify(this.cache).set("HP:0001507", cached.getValue());
+        Assert.assertTrue(cached.getValue() instanceof CompactVocabularyTerm);
+        Assert.assertEquals(result, cached.getValue());
+    }
+
+    @Test
+    public void getTermsReturnsFullTermsLoadedInOneQuery() throws ComponentLookupException, SolrServerException,
+        IOException
+    {
+        CompactVocabularyTerm cachedTerm = new CompactVocabularyTerm(document("HP:0000118", "Phenotypic abnormality"),
+            (AbstractSolrVocabulary) this.ontologyService);
+        when(this.cache.get("HP:0000118")).thenReturn(cachedTerm);
+        QueryResponse response = mock(QueryResponse.class);
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.add(document("HP:0000001", "All"));
+        documents.add(document("HP:0000118", "Phenotypic abnormality"));
+        when(response.getResults()).thenReturn(documents);
+        when(this.server.query(argThat(new IsIdsQuery()))).thenReturn(response);
+
+        Set<VocabularyTerm> result = this.ontologyService.getTerms(Arrays.asList("HP:0000118", "HP:0000001"));
+        Assert.assertEquals(2, result.size());
+        Iterator<VocabularyTerm> terms = result.iterator();
+        VocabularyTerm term = terms.next();
+        Assert.assertEquals("HP:0000118", term.getId());
+        Assert.assertTrue(term instanceof SolrVocabularyTerm);
+        term = terms.next();
+        Assert.assertEquals("HP:0000001", term.getId());
+        Assert.assertTrue(term instanceof SolrVocabularyTerm);
+        verify(this.server, Mockito.times(1)).query(argThat(new IsIdsQuery()));
+
+        // The cached compact term is left as it is, the new term is cached in its compact form
+        verify(this.cache, Mockito.never()).set(eq("HP:0000118"), any(VocabularyTerm.class));
+        verify(this.cache).set(eq("HP:0000001"), any(CompactVocabularyTerm.class));
+
+        // The full terms are only returned, and not kept in the cached terms
+        result = this.ontologyService.getTerms(Arrays.asList("HP:0000118"));
+        Assert.assertTrue(result.iterator().next() instanceof SolrVocabularyTerm);
+        verify(this.server, Mockito.times(2)).query(argThat(new IsIdsQuery()));
+    }
+
+    @Test
+    public void termsDontChangeSharedDocuments()
+    {
+        SolrDocument doc = document("HP:0001510", "Growth delay");
+        doc.setField("term_category", Arrays.asList("HP:0001510", "HP:0001507", "HP:0000118"));
+
+        VocabularyTerm term = new SolrVocabularyTerm(doc, this.ontologyService);
+        Assert.assertEquals(Arrays.asList("HP:0001507", "HP:0000118"), term.get("term_category"));
+        Assert.assertFalse(term.getAncestorIds().contains("HP:0001510"));
+        Assert.assertEquals(Arrays.asList("HP:0001510", "HP:0001507", "HP:0000118"),
+            doc.getFieldValue("term_category"));
+
+        // Another term built from the same search result sees the same data
+        Assert.assertEquals(term.get("term_category"), new SolrVocabularyTerm(doc, this.ontologyService)
+            .get("term_category"));
+    }
+
+    private SolrDocument document(String id, String name)
+    {
+        SolrDocument result = new SolrDocument();
+        result.setField("id", id);
+        result.setField("name", name);
+        return result;
+    }
+
     class IsDisMaxQuery extends ArgumentMatcher<SolrParams>
     {
         @Override
@@ -191,6 +353,28 @@ public boolean matches(Object argument)
         }
     }
 
+    class IsIdsQuery extends ArgumentMatcher<SolrParams>
+    {
+        @Override
+        public boolean matches(Object argument)
+        {
+            SolrParams params = (SolrParams) argument;
+            return params != null && params.get(CommonParams.Q) != null
+                && params.get(CommonParams.Q).startsWith("id:(");
+        }
+    }
+
+    class IsAltIdQuery extends ArgumentMatcher<SolrParams>
+    {
+        @Override
+        public boolean matches(Object argument)
+        {
+            SolrParams params = (SolrParams) argument;
+            return params != null && params.get(CommonParams.Q) != null
+                && params.get(CommonParams.Q).contains("alt_id");
+        }
+    }
+
     class IsIdQuery extends ArgumentMatcher<SolrParams>
     {
         @Override
@@ -0,0 +1,295 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.DifferentialPhenotypeSuggester;
+import org.phenotips.vocabulary.PhenotypeSuggestion;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
+import org.phenotips.vocabulary.internal.solr.HumanPhenotypeOntologyKeys;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Suggests phenotypes to investigate using an in-memory {@link DisorderPhenotypeMatrix} built from the OMIM
+ * vocabulary. The disorders best matching the patient are found in the matrix, and each phenotype annotating them,
+ * which isn't already known for the patient, is scored by the total score of the disorders it annotates, divided by
+ * the squared number of such disorders, so that rare phenotypes of the best matching disorders come first.
+ * <p>
+ * The matrix is built when first needed, with a single search fetching all the annotated disorders, and discarded
+ * whenever the OMIM or HPO vocabularies are reindexed.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Component
+@Singleton
+public class DefaultDifferentialPhenotypeSuggester implements DifferentialPhenotypeSuggester, Initializable, Disposable
+{
+    private static final String LISTENER_NAME = "differential-phenotypes";
+
+    private static final String ID_FIELD = "id";
+
+    private static final String SYMPTOM_FIELD = "symptom";
+
+    private static final String ACTUAL_SYMPTOM_FIELD = "actual_symptom";
+
+    private static final String NOT_SYMPTOM_FIELD = "not_symptom";
+
+    private static final String NAME_SORT_FIELD = "nameSort";
+
+    /** The root of the HPO, which all the annotated disorders have among their propagated symptoms. */
+    private static final String ROOT_PHENOTYPE = "HP:0000001";
+
+    /** Only phenotypic abnormalities are suggested, and not, for example, modes of inheritance. */
+    private static final String PHENOTYPIC_ABNORMALITY = "HP:0000118";
+
+    /** The number of best matching disorders considered. */
+    private static final int MAX_DISORDERS = 100;
+
+    @Inject
+    @Named("omim")
+    private Vocabulary omim;
+
+    @Inject
+    @Named("hpo")
+    private Vocabulary hpo;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    /** The current matrix, {@code null} until first needed or after a reindex. */
+    private volatile DisorderPhenotypeMatrix matrix;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.observationManager.addListener(new AbstractEventListener(LISTENER_NAME,
+            new VocabularyVersionChangedEvent())
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                if (source == DefaultDifferentialPhenotypeSuggester.this.omim
+                    || source == DefaultDifferentialPhenotypeSuggester.this.hpo) {
+                    DefaultDifferentialPhenotypeSuggester.this.matrix = null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.observationManager.removeListener(LISTENER_NAME);
+    }
+
+    @Override
+    public List<PhenotypeSuggestion> getDifferentialPhenotypes(Collection<String> phenotypes,
+        Collection<String> negativePhenotypes, int limit)
+    {
+        int[] positive = DisorderPhenotypeMatrix.toKeys(phenotypes);
+        int[] negative = DisorderPhenotypeMatrix.toKeys(negativePhenotypes);
+        if (positive.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        DisorderPhenotypeMatrix disorders = getMatrix();
+        List<DisorderPhenotypeMatrix.Match> matches = disorders.match(positive, negative, MAX_DISORDERS);
+
+        // Phenotypes already known, either directly or through a more specific phenotype, aren't worth asking about
+        Set<Integer> known = new HashSet<>();
+        for (String phenotype : phenotypes) {
+            for (int key : DisorderPhenotypeMatrix.toKeys(this.hpo.getAncestorAndSelfIds(phenotype))) {
+                known.add(key);
+            }
+        }
+        for (int key : negative) {
+            known.add(key);
+        }
+
+        Map<Integer, Double> scores = new HashMap<>();
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (DisorderPhenotypeMatrix.Match match : matches) {
+            for (int symptom : disorders.getActualSymptoms(match.getDisorder())) {
+                if (!known.contains(symptom)) {
+                    Double score = scores.get(symptom);
+                    scores.put(symptom, score == null ? match.getScore() : score + match.getScore());
+                    Integer count = counts.get(symptom);
+                    counts.put(symptom, count == null ? 1 : count + 1);
+                }
+            }
+        }
+        // Nothing to suggest if all the candidates are shared by most of the disorders, since they wouldn't help
+        if (counts.isEmpty() || Collections.min(counts.values()) > matches.size() / 2) {
+            return Collections.emptyList();
+        }
+
+        final Map<String, Double> ranked = new HashMap<>();
+        for (Map.Entry<Integer, Double> score : scores.entrySet()) {
+            int count = counts.get(score.getKey());
+            ranked.put(HumanPhenotypeOntologyKeys.toTermId(score.getKey()), score.getValue() / (count * count));
+        }
+        List<String> ids = new ArrayList<>(ranked.keySet());
+        Collections.sort(ids, new Comparator<String>()
+        {
+            @Override
+            public int compare(String a, String b)
+            {
+                int byScore = Double.compare(ranked.get(b), ranked.get(a));
+                return byScore != 0 ? byScore : a.compareTo(b);
+            }
+        });
+        return toSuggestions(ids, ranked, limit);
+    }
+
+    /**
+     * Resolve the best suggestions, skipping the identifiers unknown to the HPO.
+     *
+     * @param ids the identifiers of the suggested phenotypes, best first
+     * @param scores the score of each suggestion
+     * @param limit the maximum number of suggestions to return
+     * @return the resolved suggestions, in the same order
+     */
+    private List<PhenotypeSuggestion> toSuggestions(List<String> ids, Map<String, Double> scores, int limit)
+    {
+        List<PhenotypeSuggestion> result = new ArrayList<>(limit);
+        int start = 0;
+        while (result.size() < limit && start < ids.size()) {
+            // Resolve just as many terms as still needed, all at once
+            List<String> batch = ids.subList(start, Math.min(ids.size(), start + limit - result.size()));
+            start += batch.size();
+            Map<String, VocabularyTerm> terms = new HashMap<>();
+            for (VocabularyTerm term : this.hpo.getTerms(batch)) {
+                terms.put(term.getId(), term);
+            }
+            for (String id : batch) {
+                VocabularyTerm term = terms.get(id);
+                if (term != null) {
+                    result.add(new PhenotypeSuggestion(id, term.getName(), scores.get(id)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private DisorderPhenotypeMatrix getMatrix()
+    {
+        DisorderPhenotypeMatrix result = this.matrix;
+        if (result == null) {
+            synchronized (this) {
+                result = this.matrix;
+                if (result == null) {
+                    result = buildMatrix();
+                    // Don't keep an empty matrix, the vocabulary may not be indexed yet
+                    if (result.size() > 0) {
+                        this.matrix = result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Load all the annotated disorders. The symptoms of a disorder are indexed together with all their ancestors, so
+     * they all have the root phenotype among their symptoms.
+     *
+     * @return the built matrix, empty if the OMIM vocabulary isn't indexed
+     */
+    private DisorderPhenotypeMatrix buildMatrix()
+    {
+        DisorderPhenotypeMatrix.Builder builder = new DisorderPhenotypeMatrix.Builder();
+        Map<String, String> rootQuery = Collections.singletonMap(SYMPTOM_FIELD, ROOT_PHENOTYPE);
+        long total = this.omim.count(rootQuery);
+        if (total > 0) {
+            Map<String, String> options = new LinkedHashMap<>();
+            options.put("rows", String.valueOf(total));
+            options.put("fl", StringUtils.join(new String[] { ID_FIELD, NAME_SORT_FIELD, SYMPTOM_FIELD,
+                ACTUAL_SYMPTOM_FIELD, NOT_SYMPTOM_FIELD }, ','));
+            Map<String, Boolean> abnormalities = new HashMap<>();
+            for (VocabularyTerm disorder : this.omim.search(rootQuery, options)) {
+                // Entries whose sort name starts with one of these characters are genes or removed entries
+                if (!StringUtils.startsWithAny(String.valueOf(disorder.get(NAME_SORT_FIELD)), "*", "+", "^")) {
+                    builder.add(disorder.getId(), getValues(disorder, SYMPTOM_FIELD),
+                        getPhenotypicAbnormalities(getValues(disorder, ACTUAL_SYMPTOM_FIELD), abnormalities),
+                        getValues(disorder, NOT_SYMPTOM_FIELD));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Keep only the phenotypic abnormalities, since other annotations, like the mode of inheritance, aren't phenotypes
+     * that can be investigated in a patient.
+     *
+     * @param symptoms the phenotypes to filter
+     * @param known the terms already checked, mapped to whether they are phenotypic abnormalities
+     * @return the phenotypic abnormalities among the phenotypes
+     */
+    private Collection<String> getPhenotypicAbnormalities(Collection<?> symptoms, Map<String, Boolean> known)
+    {
+        Collection<String> result = new ArrayList<>(symptoms.size());
+        for (Object symptom : symptoms) {
+            String id = String.valueOf(symptom);
+            Boolean abnormality = known.get(id);
+            if (abnormality == null) {
+                abnormality = this.hpo.getAncestorAndSelfIds(id).contains(PHENOTYPIC_ABNORMALITY);
+                known.put(id, abnormality);
+            }
+            if (abnormality) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private Collection<?> getValues(VocabularyTerm term, String field)
+    {
+        Object values = term.get(field);
+        if (values instanceof Collection) {
+            return (Collection<?>) values;
+        }
+        return values == null ? Collections.emptySet() : Collections.singleton(values);
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.internal.solr.HumanPhenotypeOntologyKeys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable sparse matrix of the phenotypes of each disorder, kept in memory so that disorders can be matched
+ * against a patient without querying the index. Each row holds, as sorted arrays of numeric HPO identifiers, the
+ * phenotypes of a disorder together with all their ancestors, the phenotypes directly annotating the disorder, and the
+ * phenotypes known to be absent in the disorder.
+ * <p>
+ * Disorders are scored like Lucene's classic TF-IDF similarity scores them for a query on the {@code symptom} and
+ * {@code not_symptom} fields: each matched term contributes its squared inverse document frequency, normalized by the
+ * length of the matched field, and the sum is multiplied by the fraction of the query terms that were matched.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+final class DisorderPhenotypeMatrix
+{
+    /** The identifiers of the disorders, one for each row. */
+    private final String[] disorders;
+
+    /** The phenotypes of each disorder, and all their ancestors. */
+    private final int[][] symptoms;
+
+    /** The phenotypes directly annotating each disorder. */
+    private final int[][] actualSymptoms;
+
+    /** The phenotypes absent in each disorder, and all their ancestors not present in the disorder. */
+    private final int[][] notSymptoms;
+
+    /** The number of disorders with each term among their {@link #symptoms}. */
+    private final Frequencies symptomFrequencies;
+
+    /** The number of disorders with each term among their {@link #notSymptoms}. */
+    private final Frequencies notSymptomFrequencies;
+
+    private DisorderPhenotypeMatrix(Builder builder)
+    {
+        int size = builder.disorders.size();
+        this.disorders = builder.disorders.toArray(new String[size]);
+        this.symptoms = builder.symptoms.toArray(new int[size][]);
+        this.actualSymptoms = builder.actualSymptoms.toArray(new int[size][]);
+        this.notSymptoms = builder.notSymptoms.toArray(new int[size][]);
+        this.symptomFrequencies = new Frequencies(this.symptoms);
+        this.notSymptomFrequencies = new Frequencies(this.notSymptoms);
+    }
+
+    /**
+     * The number of disorders.
+     *
+     * @return a positive number, or {@code 0} if the matrix is empty
+     */
+    int size()
+    {
+        return this.disorders.length;
+    }
+
+    /**
+     * The identifier of a disorder.
+     *
+     * @param disorder the row of the disorder
+     * @return the identifier of the disorder, as found in the vocabulary
+     */
+    String getDisorder(int disorder)
+    {
+        return this.disorders[disorder];
+    }
+
+    /**
+     * The phenotypes directly annotating a disorder.
+     *
+     * @param disorder the row of the disorder
+     * @return the sorted numeric identifiers of the phenotypes, must not be modified
+     */
+    int[] getActualSymptoms(int disorder)
+    {
+        return this.actualSymptoms[disorder];
+    }
+
+    /**
+     * Find the disorders best matching a patient.
+     *
+     * @param phenotypes the sorted numeric identifiers of the phenotypes observed in the patient
+     * @param negativePhenotypes the sorted numeric identifiers of the phenotypes not observed in the patient
+     * @param maxDisorders the maximum number of disorders to return
+     * @return the matching disorders, best first, and by identifier for the same score
+     */
+    List<Match> match(int[] phenotypes, int[] negativePhenotypes, int maxDisorders)
+    {
+        List<Match> result = new ArrayList<>();
+        int queryLength = phenotypes.length + negativePhenotypes.length;
+        if (queryLength == 0) {
+            return result;
+        }
+        double[] weights = this.symptomFrequencies.getWeights(phenotypes, size());
+        double[] negativeWeights = this.notSymptomFrequencies.getWeights(negativePhenotypes, size());
+        for (int disorder = 0; disorder < this.disorders.length; ++disorder) {
+            int matched = 0;
+            double score = 0;
+            double symptomsScore = sumMatched(phenotypes, weights, this.symptoms[disorder]);
+            if (symptomsScore > 0) {
+                matched += countMatched(phenotypes, this.symptoms[disorder]);
+                score += symptomsScore / Math.sqrt(this.symptoms[disorder].length);
+            }
+            double notSymptomsScore = sumMatched(negativePhenotypes, negativeWeights, this.notSymptoms[disorder]);
+            if (notSymptomsScore > 0) {
+                matched += countMatched(negativePhenotypes, this.notSymptoms[disorder]);
+                score += notSymptomsScore / Math.sqrt(this.notSymptoms[disorder].length);
+            }
+            if (matched > 0) {
+                result.add(new Match(disorder, score * matched / queryLength));
+            }
+        }
+        Collections.sort(result, new Comparator<Match>()
+        {
+            @Override
+            public int compare(Match a, Match b)
+            {
+                int byScore = Double.compare(b.score, a.score);
+                return byScore != 0 ? byScore : getDisorder(a.disorder).compareTo(getDisorder(b.disorder));
+            }
+        });
+        return result.size() > maxDisorders ? new ArrayList<>(result.subList(0, maxDisorders)) : result;
+    }
+
+    private static double sumMatched(int[] query, double[] weights, int[] row)
+    {
+        double result = 0;
+        for (int i = 0; i < query.length; ++i) {
+            if (Arrays.binarySearch(row, query[i]) >= 0) {
+                result += weights[i];
+            }
+        }
+        return result;
+    }
+
+    private static int countMatched(int[] query, int[] row)
+    {
+        int result = 0;
+        for (int term : query) {
+            if (Arrays.binarySearch(row, term) >= 0) {
+                ++result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Convert HPO identifiers into numbers, for example {@code HP:0000118} into {@code 118}.
+     *
+     * @param termIds the identifiers to convert; identifiers which aren't canonical HPO identifiers are ignored
+     * @return the sorted numeric identifiers, without duplicates
+     */
+    static int[] toKeys(Collection<?> termIds)
+    {
+        if (termIds == null) {
+            return new int[0];
+        }
+        int[] result = new int[termIds.size()];
+        int size = 0;
+        for (Object termId : termIds) {
+            int key = HumanPhenotypeOntologyKeys.toKey(termId == null ? null : String.valueOf(termId));
+            if (key >= 0) {
+                result[size++] = key;
+            }
+        }
+        Arrays.sort(result, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; ++i) {
+            if (unique == 0 || result[unique - 1] != result[i]) {
+                result[unique++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, unique);
+    }
+
+    /**
+     * A disorder matching a patient.
+     *
+     * @version $Id$
+     */
+    static final class Match
+    {
+        /** The row of the disorder. */
+        private final int disorder;
+
+        /** How well the disorder matches. */
+        private final double score;
+
+        Match(int disorder, double score)
+        {
+            this.disorder = disorder;
+            this.score = score;
+        }
+
+        int getDisorder()
+        {
+            return this.disorder;
+        }
+
+        double getScore()
+        {
+            return this.score;
+        }
+    }
+
+    /**
+     * Collects the rows of a new matrix.
+     *
+     * @version $Id$
+     */
+    static final class Builder
+    {
+        private final List<String> disorders = new ArrayList<>();
+
+        private final List<int[]> symptoms = new ArrayList<>();
+
+        private final List<int[]> actualSymptoms = new ArrayList<>();
+
+        private final List<int[]> notSymptoms = new ArrayList<>();
+
+        /**
+         * Add a disorder.
+         *
+         * @param disorder the identifier of the disorder
+         * @param symptoms the phenotypes of the disorder, and all their ancestors
+         * @param actualSymptoms the phenotypes directly annotating the disorder
+         * @param notSymptoms the phenotypes absent in the disorder, and their ancestors
+         * @return this builder
+         */
+        Builder add(String disorder, Collection<?> symptoms, Collection<?> actualSymptoms, Collection<?> notSymptoms)
+        {
+            this.disorders.add(disorder);
+            this.symptoms.add(toKeys(symptoms));
+            this.actualSymptoms.add(toKeys(actualSymptoms));
+            this.notSymptoms.add(toKeys(notSymptoms));
+            return this;
+        }
+
+        DisorderPhenotypeMatrix build()
+        {
+            return new DisorderPhenotypeMatrix(this);
+        }
+    }
+
+    /**
+     * The number of rows containing each term in one of the columns of the matrix.
+     *
+     * @version $Id$
+     */
+    private static final class Frequencies
+    {
+        /** The sorted numeric identifiers of the terms found in at least one row. */
+        private final int[] terms;
+
+        /** The number of rows containing each term in {@link #terms}, at the same position. */
+        private final int[] counts;
+
+        Frequencies(int[][] rows)
+        {
+            Map<Integer, Integer> found = new TreeMap<>();
+            for (int[] row : rows) {
+                for (int term : row) {
+                    Integer count = found.get(term);
+                    found.put(term, count == null ? 1 : count + 1);
+                }
+            }
+            this.terms = new int[found.size()];
+            this.counts = new int[found.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : found.entrySet()) {
+                this.terms[i] = entry.getKey();
+                this.counts[i] = entry.getValue();
+                ++i;
+            }
+        }
+
+        /**
+         * The weights of query terms, their squared inverse document frequency.
+         *
+         * @param query the numeric identifiers of the query terms
+         * @param total the total number of rows
+         * @return the weight of each query term, at the same position
+         */
+        double[] getWeights(int[] query, int total)
+        {
+            double[] result = new double[query.length];
+            for (int i = 0; i < query.length; ++i) {
+                int position = Arrays.binarySearch(this.terms, query[i]);
+                int count = position >= 0 ? this.counts[position] : 0;
+                double idf = 1 + Math.log(total / (count + 1.0));
+                result[i] = idf * idf;
+            }
+            return result;
+        }
+    }
+}
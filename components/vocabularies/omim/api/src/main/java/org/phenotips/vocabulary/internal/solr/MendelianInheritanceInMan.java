@@ -23,7 +23,6 @@
 import org.xwiki.component.annotation.Component;
 
 import java.io.IOException;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -31,6 +30,11 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -65,6 +69,12 @@ public class MendelianInheritanceInMan extends AbstractSolrVocabulary
     /** The standard name of this ontology, used as a term prefix. */
     public static final String STANDARD_NAME = "MIM";
 
+    /** The number of documents written at once. */
+    private static final int BATCH_SIZE = 1000;
+
+    /** The maximum number of threads writing documents in parallel. */
+    private static final int MAX_INDEXING_THREADS = 4;
+
     @Inject
     @Named("hpo")
     private Vocabulary hpo;
@@ -76,9 +86,9 @@ protected String getCoreName()
     }
 
     @Override
-    public VocabularyTerm getTerm(String id)
+    protected VocabularyTerm loadTerm(String id)
     {
-        VocabularyTerm result = super.getTerm(id);
+        VocabularyTerm result = super.loadTerm(id);
         if (result == null) {
             String optionalPrefix = STANDARD_NAME + ":";
             if (StringUtils.startsWith(id, optionalPrefix)) {
@@ -196,41 +206,91 @@ public String getVersion()
     }
 
     @Override
-    public synchronized int reindex(String sourceURL)
+    public int reindex(String sourceURL)
     {
+        return reindexInShadowCore(sourceURL);
+    }
+
+    @Override
+    protected int index(String sourceURL)
+    {
+        final int threads = Math.max(1, Math.min(MAX_INDEXING_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        // The queue is as short as the pool, and the parser writes the batch itself when all the workers are busy, so
+        // that at most a few batches are held in memory at any time
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(threads), new ThreadPoolExecutor.CallerRunsPolicy());
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicInteger written = new AtomicInteger();
         try {
-            Collection<SolrInputDocument> data = new OmimSourceParser(this.hpo, sourceURL).getData();
-            if (data.isEmpty()) {
-                return 2;
+            int count = new OmimSourceParser(this.hpo, sourceURL).parse(BATCH_SIZE, new BatchWriter(writers, failure,
+                written));
+            writers.shutdown();
+            if (!writers.awaitTermination(1, TimeUnit.HOURS)) {
+                throw new IOException("Timed out while writing the OMIM index");
             }
-            if (clear() == 1) {
-                return 1;
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            if (count <= 0) {
+                return 2;
             }
-            this.externalServicesAccess.getSolrConnection().add(data);
-            this.externalServicesAccess.getSolrConnection().commit();
-            this.externalServicesAccess.getTermCache().removeAll();
-        } catch (SolrServerException | IOException ex) {
+            getIndexingConnection().commit();
+            this.logger.info("Indexed {} OMIM documents", written.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.logger.error("Interrupted while reindexing OMIM");
+            return 1;
+        } catch (Exception ex) {
             this.logger.error("Failed to reindex OMIM: {}", ex.getMessage(), ex);
             return 1;
+        } finally {
+            writers.shutdownNow();
         }
         return 0;
     }
 
     /**
-     * Delete all the data in the Solr index.
-     *
-     * @return {@code 0} if the command was successful, {@code 1} otherwise
+     * Writes the batches produced by the parser on a pool of worker threads, remembering the first failure.
      */
-    private int clear()
+    private final class BatchWriter implements OmimSourceParser.BatchHandler
     {
-        try {
-            this.externalServicesAccess.getSolrConnection().deleteByQuery("*:*");
-            return 0;
-        } catch (SolrServerException ex) {
-            this.logger.error("SolrServerException while clearing the Solr index", ex);
-        } catch (IOException ex) {
-            this.logger.error("IOException while clearing the Solr index", ex);
+        private final ThreadPoolExecutor writers;
+
+        private final AtomicReference<Exception> failure;
+
+        private final AtomicInteger written;
+
+        BatchWriter(ThreadPoolExecutor writers, AtomicReference<Exception> failure, AtomicInteger written)
+        {
+            this.writers = writers;
+            this.failure = failure;
+            this.written = written;
+        }
+
+        @Override
+        public void handle(final List<SolrInputDocument> batch) throws IOException
+        {
+            if (this.failure.get() != null) {
+                // Stop parsing, there's no point in continuing
+                throw new IOException("Writing a previous batch failed", this.failure.get());
+            }
+            this.writers.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (BatchWriter.this.failure.get() != null) {
+                        return;
+                    }
+                    try {
+                        addTerms(batch);
+                        int total = BatchWriter.this.written.addAndGet(batch.size());
+                        MendelianInheritanceInMan.this.logger.debug("Written {} OMIM documents", total);
+                    } catch (SolrServerException | IOException | RuntimeException ex) {
+                        BatchWriter.this.failure.compareAndSet(null, ex);
+                    }
+                }
+            });
         }
-        return 1;
     }
 }
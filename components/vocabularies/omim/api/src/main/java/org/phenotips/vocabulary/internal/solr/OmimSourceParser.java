@@ -18,15 +18,20 @@
 package org.phenotips.vocabulary.internal.solr;
 
 import org.phenotips.vocabulary.Vocabulary;
-import org.phenotips.vocabulary.VocabularyTerm;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -44,6 +49,11 @@
 /**
  * Class for parsing the special OMIM source, while also gathering annotations from other sources: OMIM-Gene symbols
  * mapping from OMIM, OMIM-Phenotype mapping from HPO, OMIM-GeneReviews mapping from NCBI.
+ * <p>
+ * The annotation sources, which are small, are loaded first into lookup tables. The OMIM source is then read one
+ * record at a time, and each record is joined with its annotations and handed over in batches to a
+ * {@link BatchHandler}, so that the memory needed doesn't depend on the size of the OMIM source.
+ * </p>
  *
  * @version $Id$
  * @since 1.3M1
@@ -89,14 +99,54 @@
 
     private static final String GENE_FIELD = "GENE";
 
-    private SolrInputDocument crtTerm;
+    private static final String SYMPTOM_FIELD = "symptom";
 
-    private Map<String, SolrInputDocument> data = new HashMap<>();
+    /** The default number of documents passed at once to the batch handler. */
+    private static final int DEFAULT_BATCH_SIZE = 1000;
 
     private Logger logger = LoggerFactory.getLogger(OmimSourceParser.class);
 
     private Vocabulary hpo;
 
+    private final String sourceURL;
+
+    private final String genesURL;
+
+    private final String positiveAnnotationsURL;
+
+    private final String negativeAnnotationsURL;
+
+    private final String geneReviewsURL;
+
+    /** OMIM identifier to gene symbols and identifiers. */
+    private final Map<String, List<String>> genes = new HashMap<>();
+
+    /** OMIM identifier to the HPO terms annotated as present. */
+    private final Map<String, Set<String>> positiveSymptoms = new HashMap<>();
+
+    /** OMIM identifier to the HPO terms annotated as absent. */
+    private final Map<String, Set<String>> negativeSymptoms = new HashMap<>();
+
+    /** OMIM identifier to GeneReviews link. */
+    private final Map<String, String> geneReviews = new HashMap<>();
+
+    /**
+     * Receives the parsed documents, in batches.
+     *
+     * @version $Id$
+     * @since 1.3M1
+     */
+    public interface BatchHandler
+    {
+        /**
+         * Process a batch of parsed documents. The batch isn't modified by the parser after being handed over.
+         *
+         * @param batch the parsed documents
+         * @throws IOException if processing the documents fails, which stops the parsing
+         */
+        void handle(List<SolrInputDocument> batch) throws IOException;
+    }
+
     /**
      * Constructor which prepares the vocabulary data, parsing OMIM from the official site.
      *
@@ -115,155 +165,243 @@ public OmimSourceParser(Vocabulary hpo)
      *            file URL
      */
     public OmimSourceParser(Vocabulary hpo, String sourceURL)
+    {
+        this(hpo, sourceURL, GENE_ANNOTATIONS_URL, POSITIVE_ANNOTATIONS_URL, NEGATIVE_ANNOTATIONS_URL,
+            GENEREVIEWS_MAPPING_URL);
+    }
+
+    /**
+     * Constructor specifying the location of all the sources, for example for using local copies.
+     *
+     * @param hpo the HPO vocabulary, needed for computing the ancestors for the MIM-Phenotype mapping
+     * @param sourceURL the location from which to fetch the OMIM source, either plain or compressed
+     * @param genesURL the location of the OMIM-Gene mapping
+     * @param positiveAnnotationsURL the location of the OMIM-Phenotype mapping
+     * @param negativeAnnotationsURL the location of the OMIM-Phenotype mapping of excluded phenotypes
+     * @param geneReviewsURL the location of the OMIM-GeneReviews mapping
+     * @since 1.3M1
+     */
+    public OmimSourceParser(Vocabulary hpo, String sourceURL, String genesURL, String positiveAnnotationsURL,
+        String negativeAnnotationsURL, String geneReviewsURL)
     {
         this.hpo = hpo;
-        try (BufferedReader in =
-            new BufferedReader(new InputStreamReader(new CompressorStreamFactory().createCompressorInputStream(
-                new URL(sourceURL).openConnection().getInputStream()), ENCODING))) {
-            transform(in);
-            loadGenes();
-            loadSymptoms(true);
-            loadSymptoms(false);
-            loadGeneReviews();
-            loadVersion();
-        } catch (NullPointerException | CompressorException | IOException ex) {
-            this.logger.error("Failed to prepare the OMIM index: {}", ex.getMessage(), ex);
-        }
+        this.sourceURL = sourceURL;
+        this.genesURL = genesURL;
+        this.positiveAnnotationsURL = positiveAnnotationsURL;
+        this.negativeAnnotationsURL = negativeAnnotationsURL;
+        this.geneReviewsURL = geneReviewsURL;
     }
 
     /**
-     * Return the parsed vocabulary data.
+     * Return the parsed vocabulary data. This keeps all the documents in memory, prefer
+     * {@link #parse(int, BatchHandler)} for indexing.
      *
      * @return the vocabulary data, may be an empty collection if parsing the source failed
      */
     public Collection<SolrInputDocument> getData()
     {
-        return this.data.values();
+        final List<SolrInputDocument> result = new LinkedList<>();
+        int count = parse(DEFAULT_BATCH_SIZE, new BatchHandler()
+        {
+            @Override
+            public void handle(List<SolrInputDocument> batch)
+            {
+                result.addAll(batch);
+            }
+        });
+        return count > 0 ? result : new LinkedList<SolrInputDocument>();
+    }
+
+    /**
+     * Parse the OMIM source, passing the documents to the handler as soon as a batch is complete. The last batch also
+     * contains the version document.
+     *
+     * @param batchSize the maximum number of documents in a batch
+     * @param handler the handler receiving the documents
+     * @return the number of OMIM records parsed, {@code 0} if the source doesn't contain any records, or {@code -1} if
+     *         reading the source or handling the documents failed
+     */
+    public int parse(int batchSize, BatchHandler handler)
+    {
+        loadGenes();
+        loadSymptoms(true);
+        loadSymptoms(false);
+        loadGeneReviews();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(openSource(this.sourceURL), ENCODING))) {
+            int count = transform(in, batchSize, handler);
+            this.logger.info("Parsed {} OMIM records", count);
+            return count;
+        } catch (CompressorException | IOException | RuntimeException ex) {
+            this.logger.error("Failed to prepare the OMIM index: {}", ex.getMessage(), ex);
+        }
+        return -1;
+    }
+
+    /**
+     * Open the OMIM source, decompressing it if it is compressed.
+     */
+    private InputStream openSource(String location) throws IOException, CompressorException
+    {
+        InputStream in = new BufferedInputStream(new URL(location).openConnection().getInputStream());
+        try {
+            return new CompressorStreamFactory().createCompressorInputStream(in);
+        } catch (CompressorException ex) {
+            // Not a known compression format, read it as plain text; detecting the format doesn't consume the stream
+            return in;
+        }
     }
 
-    private Map<String, SolrInputDocument> transform(BufferedReader in) throws IOException
+    private int transform(BufferedReader in, int batchSize, BatchHandler handler) throws IOException
     {
         String line;
         StringBuilder fieldValue = new StringBuilder();
         String fieldName = null;
+        SolrInputDocument crtTerm = null;
+        List<SolrInputDocument> batch = new ArrayList<>(batchSize);
+        int count = 0;
         while ((line = in.readLine()) != null) {
             if (RECORD_MARKER.equalsIgnoreCase(line) || END_MARKER.equalsIgnoreCase(line)) {
-                if (this.crtTerm != null) {
-                    loadField(fieldName, fieldValue.toString().trim());
-                    storeCrtTerm();
-                } else {
-                    this.crtTerm = new SolrInputDocument();
+                if (crtTerm != null) {
+                    loadField(crtTerm, fieldName, fieldValue.toString().trim());
+                    if (crtTerm.getFieldValue(ID_FIELD) != null) {
+                        addAnnotations(crtTerm);
+                        batch.add(crtTerm);
+                        ++count;
+                    }
+                    if (batch.size() >= batchSize) {
+                        handler.handle(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
                 }
+                crtTerm = new SolrInputDocument();
+                fieldName = null;
+                fieldValue.setLength(0);
             } else if (line.startsWith(FIELD_MARKER)) {
-                loadField(fieldName, fieldValue.toString().trim());
+                loadField(crtTerm, fieldName, fieldValue.toString().trim());
                 fieldValue.setLength(0);
                 fieldName = line.substring(FIELD_MARKER.length());
             } else {
                 fieldValue.append(line.trim()).append(' ');
             }
         }
-
-        return this.data;
-    }
-
-    private void storeCrtTerm()
-    {
-        this.data.put(String.valueOf(this.crtTerm.get(ID_FIELD).getFirstValue()), this.crtTerm);
-        this.crtTerm = new SolrInputDocument();
+        if (count > 0) {
+            batch.add(getVersionDocument());
+        }
+        if (!batch.isEmpty()) {
+            handler.handle(batch);
+        }
+        return count;
     }
 
-    private void loadField(String name, String value)
+    private void loadField(SolrInputDocument crtTerm, String name, String value)
     {
-        if (StringUtils.isAnyBlank(name, value)) {
+        if (crtTerm == null || StringUtils.isAnyBlank(name, value)) {
             return;
         }
         switch (name) {
             case FIELD_MIM_NUMBER:
-                this.crtTerm.setField(ID_FIELD, value);
+                crtTerm.setField(ID_FIELD, value);
                 break;
             case FIELD_TITLE:
                 String title = StringUtils.substringBefore(value, TITLE_SEPARATOR).trim();
                 String[] synonyms =
                     StringUtils.split(StringUtils.substringAfter(value, TITLE_SEPARATOR), TITLE_SEPARATOR);
-                this.crtTerm.setField(NAME_FIELD, title);
+                crtTerm.setField(NAME_FIELD, title);
                 for (String synonym : synonyms) {
-                    this.crtTerm.addField(SYNONYM_FIELD, synonym.trim());
+                    crtTerm.addField(SYNONYM_FIELD, synonym.trim());
                 }
                 break;
             case FIELD_TEXT:
-                this.crtTerm.addField("def", value);
+                crtTerm.addField("def", value);
                 break;
             default:
                 return;
         }
     }
 
+    /**
+     * Join a parsed record with its genes, phenotypes and GeneReviews link.
+     */
+    private void addAnnotations(SolrInputDocument term)
+    {
+        String id = String.valueOf(term.getFieldValue(ID_FIELD));
+
+        List<String> termGenes = this.genes.get(id);
+        if (termGenes != null) {
+            for (String gene : termGenes) {
+                term.addField(GENE_FIELD, gene);
+            }
+        }
+
+        Set<String> symptoms = new HashSet<>();
+        Set<String> positive = this.positiveSymptoms.get(id);
+        if (positive != null) {
+            for (String symptom : positive) {
+                term.addField("actual_symptom", symptom);
+                symptoms.addAll(this.hpo.getAncestorAndSelfIds(symptom));
+            }
+            term.addField(SYMPTOM_FIELD, symptoms);
+        }
+
+        Set<String> negative = this.negativeSymptoms.get(id);
+        if (negative != null) {
+            Set<String> notSymptoms = new HashSet<>();
+            for (String symptom : negative) {
+                term.addField("actual_not_symptom", symptom);
+                notSymptoms.addAll(this.hpo.getAncestorAndSelfIds(symptom));
+            }
+            notSymptoms.removeAll(symptoms);
+            term.addField("not_symptom", notSymptoms);
+        }
+
+        String geneReviewsLink = this.geneReviews.get(id);
+        if (geneReviewsLink != null) {
+            term.setField("gene_reviews_link", geneReviewsLink);
+        }
+    }
+
     private void loadSymptoms(boolean positive)
     {
-        String omimId = "";
-        String previousOmimId = null;
-        Set<String> ancestors = new HashSet<>();
-        try (BufferedReader in = new BufferedReader(
-            new InputStreamReader(new URL(positive ? POSITIVE_ANNOTATIONS_URL : NEGATIVE_ANNOTATIONS_URL)
-                .openConnection().getInputStream(), ENCODING))) {
+        Map<String, Set<String>> target = positive ? this.positiveSymptoms : this.negativeSymptoms;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+            new URL(positive ? this.positiveAnnotationsURL : this.negativeAnnotationsURL).openConnection()
+                .getInputStream(), ENCODING))) {
             for (CSVRecord row : CSVFormat.TDF.parse(in)) {
                 if ("OMIM".equals(row.get(0))) {
-                    omimId = row.get(1);
-                    addAncestors(previousOmimId, omimId, ancestors, positive);
-                    previousOmimId = omimId;
-                    SolrInputDocument term = this.data.get(omimId);
-                    if (term != null) {
-                        term.addField(positive ? "actual_symptom" : "actual_not_symptom", row.get(4));
-                    }
-                    VocabularyTerm vterm = this.hpo.getTerm(row.get(4));
-                    if (vterm != null) {
-                        for (VocabularyTerm ancestor : vterm.getAncestorsAndSelf()) {
-                            ancestors.add(ancestor.getId());
-                        }
+                    Set<String> symptoms = target.get(row.get(1));
+                    if (symptoms == null) {
+                        symptoms = new LinkedHashSet<>();
+                        target.put(row.get(1), symptoms);
                     }
+                    symptoms.add(row.get(4));
                 }
             }
-            addAncestors(omimId, null, ancestors, positive);
         } catch (IOException ex) {
             this.logger.error("Failed to load OMIM-HPO links: {}", ex.getMessage(), ex);
         }
     }
 
-    private void addAncestors(String previousOmimId, String newOmimId, Set<String> ancestors, boolean positive)
-    {
-        if (previousOmimId == null || previousOmimId.equals(newOmimId)) {
-            return;
-        }
-        final String symptomField = "symptom";
-        SolrInputDocument term = this.data.get(previousOmimId);
-        if (!positive) {
-            ancestors.removeAll(term.getFieldValues(symptomField));
-            term.addField("not_symptom", new HashSet<String>(ancestors));
-        } else {
-            term.addField(symptomField, new HashSet<String>(ancestors));
-        }
-        ancestors.clear();
-    }
-
     private void loadGenes()
     {
         final String missing = "-";
         try (BufferedReader in = new BufferedReader(
-            new InputStreamReader(new URL(GENE_ANNOTATIONS_URL).openConnection().getInputStream(), ENCODING))) {
+            new InputStreamReader(new URL(this.genesURL).openConnection().getInputStream(), ENCODING))) {
             for (CSVRecord row : CSVFormat.TDF.withHeader().parse(in)) {
                 if (!row.get("Type").contains("gene")) {
                     continue;
                 }
-                SolrInputDocument term = this.data.get(row.get(2));
-                if (term != null) {
-                    String gs = row.get("Approved Gene Symbol");
-                    if (!missing.equals(gs)) {
-                        term.addField(GENE_FIELD, gs);
-                    }
-                    String eid = row.get("Ensembl Gene ID");
-                    if (!missing.equals(eid)) {
-                        term.addField(GENE_FIELD, eid);
-                    }
+                List<String> termGenes = this.genes.get(row.get(2));
+                if (termGenes == null) {
+                    termGenes = new ArrayList<>(2);
+                    this.genes.put(row.get(2), termGenes);
+                }
+                String gs = row.get("Approved Gene Symbol");
+                if (!missing.equals(gs)) {
+                    termGenes.add(gs);
+                }
+                String eid = row.get("Ensembl Gene ID");
+                if (!missing.equals(eid)) {
+                    termGenes.add(eid);
                 }
             }
         } catch (IOException ex) {
@@ -274,23 +412,20 @@ private void loadGenes()
     private void loadGeneReviews()
     {
         try (BufferedReader in = new BufferedReader(
-            new InputStreamReader(new URL(GENEREVIEWS_MAPPING_URL).openConnection().getInputStream(), ENCODING))) {
+            new InputStreamReader(new URL(this.geneReviewsURL).openConnection().getInputStream(), ENCODING))) {
             for (CSVRecord row : CSVFormat.TDF.withHeader().parse(in)) {
-                SolrInputDocument term = this.data.get(row.get(2));
-                if (term != null) {
-                    term.setField("gene_reviews_link", "https://www.ncbi.nlm.nih.gov/books/" + row.get(0));
-                }
+                this.geneReviews.put(row.get(2), "https://www.ncbi.nlm.nih.gov/books/" + row.get(0));
             }
         } catch (IOException ex) {
             this.logger.error("Failed to load OMIM-GeneReviews links: {}", ex.getMessage(), ex);
         }
     }
 
-    private void loadVersion()
+    private SolrInputDocument getVersionDocument()
     {
         SolrInputDocument metaTerm = new SolrInputDocument();
         metaTerm.addField(ID_FIELD, "HEADER_INFO");
         metaTerm.addField("version", ISODateTimeFormat.dateTime().withZoneUTC().print(new DateTime()));
-        this.data.put("VERSION", metaTerm);
+        return metaTerm;
     }
 }
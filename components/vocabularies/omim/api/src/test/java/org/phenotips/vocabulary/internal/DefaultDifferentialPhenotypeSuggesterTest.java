@@ -0,0 +1,288 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.DifferentialPhenotypeSuggester;
+import org.phenotips.vocabulary.PhenotypeSuggestion;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyVersionChangedEvent;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultDifferentialPhenotypeSuggester} component.
+ *
+ * @version $Id$
+ */
+public class DefaultDifferentialPhenotypeSuggesterTest
+{
+    private static final String ROOT = "HP:0000001";
+
+    private static final String ABNORMALITY = "HP:0000118";
+
+    private static final String INHERITANCE = "HP:0000005";
+
+    private static final String DOMINANT = "HP:0000006";
+
+    private static final String SEIZURES = "HP:0001250";
+
+    private static final String VISUAL_IMPAIRMENT = "HP:0000505";
+
+    private static final String HEAD = "HP:0000152";
+
+    private static final String DELAY = "HP:0001263";
+
+    private static final String MICROCEPHALY = "HP:0000252";
+
+    @Rule
+    public final MockitoComponentMockingRule<DifferentialPhenotypeSuggester> mocker =
+        new MockitoComponentMockingRule<DifferentialPhenotypeSuggester>(DefaultDifferentialPhenotypeSuggester.class);
+
+    private final Map<String, String> parents = new HashMap<>();
+
+    private final Set<String> unknownTerms = new HashSet<>();
+
+    private final List<VocabularyTerm> disorders = new ArrayList<>();
+
+    private Vocabulary omim;
+
+    private Vocabulary hpo;
+
+    @Before
+    public void setUp() throws ComponentLookupException
+    {
+        this.omim = this.mocker.getInstance(Vocabulary.class, "omim");
+        this.hpo = this.mocker.getInstance(Vocabulary.class, "hpo");
+
+        // All the phenotypes are children of the phenotypic abnormality, and the dominant inheritance is not
+        this.parents.put(ABNORMALITY, ROOT);
+        this.parents.put(INHERITANCE, ROOT);
+        this.parents.put(DOMINANT, INHERITANCE);
+        for (String phenotype : Arrays.asList(SEIZURES, VISUAL_IMPAIRMENT, HEAD, DELAY, MICROCEPHALY)) {
+            this.parents.put(phenotype, ABNORMALITY);
+        }
+        when(this.hpo.getAncestorAndSelfIds(any(String.class))).thenAnswer(new Answer<Set<String>>()
+        {
+            @Override
+            public Set<String> answer(InvocationOnMock invocation)
+            {
+                return getAncestors((String) invocation.getArguments()[0]);
+            }
+        });
+        when(this.hpo.getTerms(anyCollectionOf(String.class))).thenAnswer(new Answer<Set<VocabularyTerm>>()
+        {
+            @Override
+            public Set<VocabularyTerm> answer(InvocationOnMock invocation)
+            {
+                Set<VocabularyTerm> result = new HashSet<>();
+                for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+                    if (!DefaultDifferentialPhenotypeSuggesterTest.this.unknownTerms.contains(id)) {
+                        VocabularyTerm term = mock(VocabularyTerm.class);
+                        when(term.getId()).thenReturn((String) id);
+                        when(term.getName()).thenReturn("Name of " + id);
+                        result.add(term);
+                    }
+                }
+                return result;
+            }
+        });
+
+        addDisorder("100001", "#100001 FIRST", Arrays.asList(SEIZURES, VISUAL_IMPAIRMENT, MICROCEPHALY, DOMINANT),
+            Collections.<String>emptyList());
+        addDisorder("100002", "#100002 SECOND", Arrays.asList(SEIZURES, HEAD), Collections.<String>emptyList());
+        addDisorder("100003", "#100003 THIRD", Arrays.asList(SEIZURES, DELAY, MICROCEPHALY), Arrays.asList(HEAD));
+        addDisorder("100004", "#100004 FOURTH", Arrays.asList(HEAD), Collections.<String>emptyList());
+        // Genes are not disorders
+        addDisorder("100005", "*100005 GENE", Arrays.asList(SEIZURES, VISUAL_IMPAIRMENT),
+            Collections.<String>emptyList());
+        when(this.omim.count(anyMapOf(String.class, Object.class))).thenAnswer(new Answer<Long>()
+        {
+            @Override
+            public Long answer(InvocationOnMock invocation)
+            {
+                return (long) DefaultDifferentialPhenotypeSuggesterTest.this.disorders.size();
+            }
+        });
+        when(this.omim.search(anyMapOf(String.class, Object.class), anyMapOf(String.class, String.class)))
+            .thenAnswer(new Answer<List<VocabularyTerm>>()
+            {
+                @Override
+                public List<VocabularyTerm> answer(InvocationOnMock invocation)
+                {
+                    return new LinkedList<>(DefaultDifferentialPhenotypeSuggesterTest.this.disorders);
+                }
+            });
+    }
+
+    @Test
+    public void rarePhenotypesOfTheBestMatchingDisordersComeFirst() throws ComponentLookupException
+    {
+        // SEIZURES is present in three of the four disorders, so the disorders are ranked by their number of
+        // phenotypes: 100002 scores 1/sqrt(4), 100003 1/sqrt(5) and 100001 1/sqrt(7)
+        List<PhenotypeSuggestion> result = this.mocker.getComponentUnderTest()
+            .getDifferentialPhenotypes(Arrays.asList(SEIZURES), Collections.<String>emptyList(), 10);
+
+        Assert.assertEquals(Arrays.asList(HEAD, DELAY, VISUAL_IMPAIRMENT, MICROCEPHALY), getIds(result));
+        Assert.assertEquals("Name of " + HEAD, result.get(0).getName());
+        Assert.assertEquals(1 / Math.sqrt(4), result.get(0).getScore(), 1.0E-9);
+        Assert.assertEquals(1 / Math.sqrt(5), result.get(1).getScore(), 1.0E-9);
+        Assert.assertEquals(1 / Math.sqrt(7), result.get(2).getScore(), 1.0E-9);
+        Assert.assertEquals((1 / Math.sqrt(5) + 1 / Math.sqrt(7)) / 4, result.get(3).getScore(), 1.0E-9);
+    }
+
+    @Test
+    public void negativePhenotypesAreNotSuggestedAndFavorDisordersExcludingThem() throws ComponentLookupException
+    {
+        // 100003 is the only disorder known to lack HEAD, so it becomes the best match
+        List<PhenotypeSuggestion> result = this.mocker.getComponentUnderTest()
+            .getDifferentialPhenotypes(Arrays.asList(SEIZURES), Arrays.asList(HEAD), 10);
+
+        Assert.assertEquals(Arrays.asList(DELAY, MICROCEPHALY, VISUAL_IMPAIRMENT), getIds(result));
+    }
+
+    @Test
+    public void resultsAreLimitedAndOnlyTheNeededTermsAreResolved() throws ComponentLookupException
+    {
+        List<PhenotypeSuggestion> result = this.mocker.getComponentUnderTest()
+            .getDifferentialPhenotypes(Arrays.asList(SEIZURES), Collections.<String>emptyList(), 2);
+
+        Assert.assertEquals(Arrays.asList(HEAD, DELAY), getIds(result));
+        verify(this.hpo).getTerms(Arrays.asList(HEAD, DELAY));
+    }
+
+    @Test
+    public void phenotypesUnknownToTheHPOAreSkipped() throws ComponentLookupException
+    {
+        this.unknownTerms.add(HEAD);
+
+        List<PhenotypeSuggestion> result = this.mocker.getComponentUnderTest()
+            .getDifferentialPhenotypes(Arrays.asList(SEIZURES), Collections.<String>emptyList(), 2);
+
+        Assert.assertEquals(Arrays.asList(DELAY, VISUAL_IMPAIRMENT), getIds(result));
+    }
+
+    @Test
+    public void matrixIsBuiltOnceAndDiscardedWhenOmimIsReindexed() throws ComponentLookupException
+    {
+        DifferentialPhenotypeSuggester suggester = this.mocker.getComponentUnderTest();
+        suggester.getDifferentialPhenotypes(Arrays.asList(SEIZURES), Collections.<String>emptyList(), 10);
+        suggester.getDifferentialPhenotypes(Arrays.asList(HEAD), Collections.<String>emptyList(), 10);
+        verify(this.omim, times(1)).search(anyMapOf(String.class, Object.class), anyMapOf(String.class, String.class));
+
+        ArgumentCaptor<EventListener> listener = ArgumentCaptor.forClass(EventListener.class);
+        verify(this.mocker.getInstance(ObservationManager.class)).addListener(listener.capture());
+        // Other vocabularies don't matter
+        listener.getValue().onEvent(new VocabularyVersionChangedEvent("hgnc"), mock(Vocabulary.class), null);
+        suggester.getDifferentialPhenotypes(Arrays.asList(SEIZURES), Collections.<String>emptyList(), 10);
+        verify(this.omim, times(1)).search(anyMapOf(String.class, Object.class), anyMapOf(String.class, String.class));
+
+        listener.getValue().onEvent(new VocabularyVersionChangedEvent("omim"), this.omim, null);
+        this.disorders.remove(1);
+        Assert.assertEquals(Arrays.asList(DELAY, VISUAL_IMPAIRMENT, MICROCEPHALY), getIds(suggester
+            .getDifferentialPhenotypes(Arrays.asList(SEIZURES), Collections.<String>emptyList(), 10)));
+        verify(this.omim, times(2)).search(anyMapOf(String.class, Object.class), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void nothingIsSuggestedWithoutPhenotypes() throws ComponentLookupException
+    {
+        Assert.assertTrue(this.mocker.getComponentUnderTest()
+            .getDifferentialPhenotypes(Collections.<String>emptyList(), Arrays.asList(HEAD), 10).isEmpty());
+        verify(this.omim, never()).count(anyMapOf(String.class, Object.class));
+    }
+
+    @Test
+    public void emptyMatricesAreNotKept() throws ComponentLookupException
+    {
+        this.disorders.clear();
+        DifferentialPhenotypeSuggester suggester = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(suggester
+            .getDifferentialPhenotypes(Arrays.asList(SEIZURES), Collections.<String>emptyList(), 10).isEmpty());
+        suggester.getDifferentialPhenotypes(Arrays.asList(SEIZURES), Collections.<String>emptyList(), 10);
+        verify(this.omim, times(2)).count(anyMapOf(String.class, Object.class));
+    }
+
+    private void addDisorder(String id, String name, List<String> symptoms, List<String> notSymptoms)
+    {
+        VocabularyTerm disorder = mock(VocabularyTerm.class);
+        when(disorder.getId()).thenReturn(id);
+        when(disorder.get("nameSort")).thenReturn(name);
+        Set<String> closure = new HashSet<>();
+        for (String symptom : symptoms) {
+            closure.addAll(getAncestors(symptom));
+        }
+        when(disorder.get("symptom")).thenReturn(new ArrayList<>(closure));
+        when(disorder.get("actual_symptom")).thenReturn(symptoms);
+        if (!notSymptoms.isEmpty()) {
+            when(disorder.get("not_symptom")).thenReturn(notSymptoms);
+        }
+        this.disorders.add(disorder);
+    }
+
+    private Set<String> getAncestors(String termId)
+    {
+        Set<String> result = new HashSet<>();
+        String current = termId;
+        while (current != null) {
+            result.add(current);
+            current = this.parents.get(current);
+        }
+        return result;
+    }
+
+    private List<String> getIds(List<PhenotypeSuggestion> suggestions)
+    {
+        List<String> result = new ArrayList<>();
+        for (PhenotypeSuggestion suggestion : suggestions) {
+            result.add(suggestion.getId());
+        }
+        return result;
+    }
+}
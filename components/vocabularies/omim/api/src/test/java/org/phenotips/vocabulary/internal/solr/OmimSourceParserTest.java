@@ -0,0 +1,156 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.Vocabulary;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link OmimSourceParser} class, using trimmed local copies of the sources.
+ *
+ * @version $Id$
+ */
+public class OmimSourceParserTest
+{
+    private Vocabulary hpo;
+
+    /**
+     * Mocks the following HPO structure: HP:0000001 is the root, HP:0000002, HP:0000004 and HP:0000005 are its
+     * children, and HP:0000003 is a child of HP:0000002.
+     */
+    @Before
+    public void setUp()
+    {
+        this.hpo = mock(Vocabulary.class);
+        when(this.hpo.getAncestorAndSelfIds("HP:0000002")).thenReturn(set("HP:0000002", "HP:0000001"));
+        when(this.hpo.getAncestorAndSelfIds("HP:0000003")).thenReturn(set("HP:0000003", "HP:0000002", "HP:0000001"));
+        when(this.hpo.getAncestorAndSelfIds("HP:0000004")).thenReturn(set("HP:0000004", "HP:0000001"));
+        when(this.hpo.getAncestorAndSelfIds("HP:0000005")).thenReturn(set("HP:0000005", "HP:0000001"));
+    }
+
+    @Test
+    public void recordsAreParsedAndAnnotated()
+    {
+        Map<String, SolrInputDocument> documents = index(getParser("omim.txt").getData());
+        Assert.assertEquals(4, documents.size());
+
+        SolrInputDocument prune = documents.get("100100");
+        Assert.assertEquals("#100100 PRUNE BELLY SYNDROME", prune.getFieldValue("name"));
+        Assert.assertEquals(Arrays.asList("ABDOMINAL MUSCLES, ABSENCE OF", "EAGLE-BARRETT SYNDROME"),
+            prune.getFieldValues("synonym"));
+        Assert.assertEquals(
+            "The prune belly syndrome is characterized by deficiency of abdominal wall musculature.",
+            prune.getFieldValue("def"));
+        Assert.assertEquals(set("HP:0000004", "HP:0000003"), values(prune, "actual_symptom"));
+        Assert.assertEquals(set("HP:0000001", "HP:0000002", "HP:0000003", "HP:0000004"), values(prune, "symptom"));
+        Assert.assertEquals(set("HP:0000002", "HP:0000005"), values(prune, "actual_not_symptom"));
+        Assert.assertEquals(set("HP:0000005"), values(prune, "not_symptom"));
+        Assert.assertNull(prune.getFieldValue("GENE"));
+
+        SolrInputDocument palsy = documents.get("100200");
+        Assert.assertEquals(Arrays.asList("ABC"), palsy.getFieldValues("GENE"));
+        Assert.assertNull(palsy.getFieldValue("def"));
+        Assert.assertNull(palsy.getFieldValue("symptom"));
+
+        SolrInputDocument adams = documents.get("100300");
+        Assert.assertEquals(Arrays.asList("ARHGAP31", "ENSG00000031081"), adams.getFieldValues("GENE"));
+        Assert.assertEquals("https://www.ncbi.nlm.nih.gov/books/NBK1123", adams.getFieldValue("gene_reviews_link"));
+
+        Assert.assertNotNull(documents.get("HEADER_INFO").getFieldValue("version"));
+    }
+
+    @Test
+    public void compressedSourcesAreSupported()
+    {
+        Assert.assertEquals(4, getParser("omim.txt.gz").getData().size());
+    }
+
+    @Test
+    public void documentsAreHandledInBatches()
+    {
+        final List<Integer> batchSizes = new ArrayList<>();
+        int count = getParser("omim.txt").parse(2, new OmimSourceParser.BatchHandler()
+        {
+            @Override
+            public void handle(List<SolrInputDocument> batch)
+            {
+                batchSizes.add(batch.size());
+            }
+        });
+        Assert.assertEquals(3, count);
+        // The last batch also holds the version document
+        Assert.assertEquals(Arrays.asList(2, 2), batchSizes);
+    }
+
+    @Test
+    public void missingSourceReturnsNoData()
+    {
+        OmimSourceParser parser = getParser("missing.txt");
+        Assert.assertTrue(parser.getData().isEmpty());
+    }
+
+    private OmimSourceParser getParser(String omimFile)
+    {
+        return new OmimSourceParser(this.hpo, getResource(omimFile), getResource("mim2gene.txt"),
+            getResource("phenotype_annotation.tab"), getResource("negative_phenotype_annotation.tab"),
+            getResource("NBKid_shortname_OMIM.txt"));
+    }
+
+    private String getResource(String name)
+    {
+        // Missing resources are pointed at a file that doesn't exist
+        URL url = this.getClass().getClassLoader().getResource(name);
+        return url == null ? "file:///nonexistent/" + name : url.toString();
+    }
+
+    private static Map<String, SolrInputDocument> index(Collection<SolrInputDocument> documents)
+    {
+        Map<String, SolrInputDocument> result = new HashMap<>();
+        for (SolrInputDocument document : documents) {
+            result.put(String.valueOf(document.getFieldValue("id")), document);
+        }
+        return result;
+    }
+
+    private static Set<Object> values(SolrInputDocument document, String field)
+    {
+        return new HashSet<>(document.getFieldValues(field));
+    }
+
+    private static Set<String> set(String... ids)
+    {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+}
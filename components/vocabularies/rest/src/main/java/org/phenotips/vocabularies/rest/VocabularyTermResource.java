@@ -19,9 +19,12 @@
 
 import org.xwiki.stability.Unstable;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 /**
@@ -59,4 +62,28 @@
     @GET
     @Path("/{id}")
     Response resolveTerm(@PathParam("id") String termId);
+
+    /**
+     * Retrieves the JSON representations of several {@link org.phenotips.vocabulary.VocabularyTerm terms} at once,
+     * possibly from different vocabularies, each term being resolved using its prefix. The request body is a JSON
+     * object of the form:
+     *
+     * <pre>
+     * {
+     *   "ids": ["HP:0002066", "HP:0000118", "MIM:100100"],
+     *   "fields": ["id", "name"]
+     * }
+     * </pre>
+     *
+     * where {@code fields} is optional, and restricts the properties included for each term; the {@code id} is always
+     * included. The response is a JSON object with a {@code rows} array holding the found terms, in the requested order,
+     * and a {@code missing} array listing the identifiers that couldn't be resolved.
+     *
+     * @param json the list of identifiers to resolve, and the optional list of fields to return
+     * @return the requested terms, or an error if the request is not valid
+     * @since 1.3M1
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    Response resolveTerms(String json);
 }
@@ -24,6 +24,7 @@
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
 
 /**
  * Resource for searching in a vocabulary for terms matching an input (vocabulary suggest).
@@ -37,7 +38,8 @@
     /**
      * Provides term suggestions for the specified {@link org.phenotips.vocabulary.Vocabulary} as a list of
      * {@link VocabularyTerms}. Request can optionally specify additional filters. If no suggestions are found an empty
-     * list is returned.
+     * list is returned. The response carries an {@code ETag} derived from the version of the vocabulary, and
+     * conditional requests with a matching {@code If-None-Match} header are answered with {@code 304 Not Modified}.
      *
      * @param vocabularyId The ID of the {@link org.phenotips.vocabulary.Vocabulary} to be used for suggestions. Any
      *            alias of the vocabulary can be used. If no matching vocabulary is found an error is returned to the
@@ -49,11 +51,12 @@
      * @param customFilter a custom filter query to further restrict which terms may be returned, in a format that
      *            depends on the actual engine that stores the vocabulary; some vocabularies may not support a filter
      *            query; may be empty
-     * @return A {@link VocabularyTerms} representing a list of
-     *         {@link org.phenotips.vocabularies.rest.model.VocabularyTerm} suggestions.
+     * @return a response holding a {@link VocabularyTerms} representing a list of
+     *         {@link org.phenotips.vocabularies.rest.model.VocabularyTerm} suggestions, or an empty
+     *         {@code 304 Not Modified} response if the client already has the current suggestions
      */
     @GET
-    VocabularyTerms suggest(@PathParam("vocabulary") String vocabularyId,
+    Response suggest(@PathParam("vocabulary") String vocabularyId,
         @QueryParam("input") String input,
         @QueryParam("maxResults") @DefaultValue("10") int maxResults,
         @QueryParam("sort") String sort,
@@ -21,10 +21,12 @@
 import org.phenotips.vocabularies.rest.model.VocabularyTermSummary;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.VocabularyVersionRegistry;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.stability.Unstable;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.json.JSONObject;
@@ -38,6 +40,9 @@
 @Singleton
 public class DefaultDomainObjectFactory implements DomainObjectFactory
 {
+    @Inject
+    private VocabularyVersionRegistry versions;
+
     @Override
     public org.phenotips.vocabularies.rest.model.Vocabulary createVocabularyRepresentation(Vocabulary vocabulary)
     {
@@ -48,7 +53,7 @@ public org.phenotips.vocabularies.rest.model.Vocabulary createVocabularyRepresen
             .withName(vocabulary.getName())
             .withAliases(vocabulary.getAliases())
             .withSize(vocabulary.size())
-            .withVersion(vocabulary.getVersion());
+            .withVersion(this.versions.getVersion(vocabulary));
         try {
             result.withDefaultSourceLocation(vocabulary.getDefaultSourceLocation());
         } catch (UnsupportedOperationException e) {
@@ -27,6 +27,11 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.rest.XWikiResource;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -35,6 +40,8 @@
 import javax.ws.rs.core.UriBuilder;
 
 import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -48,6 +55,13 @@
 @Singleton
 public class DefaultVocabularyTermResource extends XWikiResource implements VocabularyTermResource
 {
+    /** The maximum number of terms that can be requested at once. */
+    private static final int MAX_TERMS_PER_REQUEST = 10000;
+
+    private static final String ID = "id";
+
+    private static final String LINKS = "links";
+
     @Inject
     private VocabularyManager vm;
 
@@ -65,7 +79,7 @@ public Response getTerm(String vocabularyId, String termId)
         if (term == null) {
             return Response.status(Response.Status.NOT_FOUND).build();
         }
-        JSONObject rep = this.createTermRepresentation(term);
+        JSONObject rep = this.createTermRepresentation(term, this.uriInfo.getRequestUri().toString(), null);
         return Response.ok(rep, MediaType.APPLICATION_JSON_TYPE).build();
     }
 
@@ -76,21 +90,92 @@ public Response resolveTerm(String termId)
         if (term == null) {
             return Response.status(Response.Status.NOT_FOUND).build();
         }
-        JSONObject rep = this.createTermRepresentation(term);
+        JSONObject rep = this.createTermRepresentation(term, this.uriInfo.getRequestUri().toString(), null);
         return Response.ok(rep, MediaType.APPLICATION_JSON_TYPE).build();
     }
 
-    private JSONObject createTermRepresentation(VocabularyTerm term)
+    @Override
+    public Response resolveTerms(String json)
+    {
+        Set<String> ids = new LinkedHashSet<>();
+        Set<String> fields = null;
+        try {
+            JSONObject input = new JSONObject(json);
+            JSONArray idsInput = input.optJSONArray("ids");
+            if (idsInput == null) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+            for (int i = 0; i < idsInput.length(); ++i) {
+                String id = idsInput.optString(i);
+                if (StringUtils.isNotBlank(id)) {
+                    ids.add(id);
+                }
+            }
+            JSONArray fieldsInput = input.optJSONArray("fields");
+            if (fieldsInput != null) {
+                fields = new LinkedHashSet<>();
+                fields.add(ID);
+                for (int i = 0; i < fieldsInput.length(); ++i) {
+                    fields.add(fieldsInput.optString(i));
+                }
+            }
+        } catch (JSONException ex) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if (ids.size() > MAX_TERMS_PER_REQUEST) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        Map<String, VocabularyTerm> terms = this.vm.resolveTerms(ids);
+        JSONArray rows = new JSONArray();
+        JSONArray missing = new JSONArray();
+        for (String id : ids) {
+            VocabularyTerm term = terms.get(id);
+            if (term == null) {
+                missing.put(id);
+            } else {
+                String self = UriBuilder.fromUri(this.uriInfo.getBaseUri())
+                    .path(VocabularyTermResource.class)
+                    .path(VocabularyTermResource.class, "resolveTerm")
+                    .build(id)
+                    .toString();
+                rows.put(createTermRepresentation(term, self, fields));
+            }
+        }
+        JSONObject result = new JSONObject();
+        result.put("rows", rows);
+        result.put("missing", missing);
+        result.put(LINKS, new JSONObject().put(Relations.SELF, this.uriInfo.getRequestUri().toString()));
+        return Response.ok(result, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    private JSONObject createTermRepresentation(VocabularyTerm term, String self, Set<String> fields)
     {
-        JSONObject rep = term.toJSON();
-        // decorate with links
-        JSONObject links = new JSONObject();
-        links.accumulate(Relations.SELF, this.uriInfo.getRequestUri().toString());
-        links.accumulate(Relations.VOCABULARY, UriBuilder.fromUri(this.uriInfo.getBaseUri())
-            .path(VocabularyResource.class)
-            .build(term.getVocabulary().getAliases().iterator().next())
-            .toString());
-        rep.accumulate("links", links);
+        JSONObject rep;
+        if (fields == null) {
+            rep = term.toJSON();
+        } else {
+            // Only the requested fields are read, without serializing the whole term
+            rep = new JSONObject();
+            rep.put(ID, term.getId());
+            for (String field : fields) {
+                Object value = LINKS.equals(field) ? null : term.get(field);
+                if (value instanceof Collection) {
+                    rep.put(field, new JSONArray((Collection<?>) value));
+                } else if (value != null) {
+                    rep.put(field, value);
+                }
+            }
+        }
+        if (fields == null || fields.contains(LINKS)) {
+            JSONObject links = new JSONObject();
+            links.put(Relations.SELF, self);
+            links.put(Relations.VOCABULARY, UriBuilder.fromUri(this.uriInfo.getBaseUri())
+                .path(VocabularyResource.class)
+                .build(term.getVocabulary().getAliases().iterator().next())
+                .toString());
+            rep.put(LINKS, links);
+        }
         return rep;
     }
 }
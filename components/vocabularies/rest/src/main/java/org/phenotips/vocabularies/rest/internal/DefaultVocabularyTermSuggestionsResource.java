@@ -28,6 +28,7 @@
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.VocabularyVersionRegistry;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.rest.XWikiResource;
@@ -41,6 +42,10 @@
 import javax.inject.Singleton;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
@@ -64,8 +69,18 @@ public class DefaultVocabularyTermSuggestionsResource extends XWikiResource impl
     @Inject
     private DomainObjectFactory objectFactory;
 
+    @Inject
+    private VocabularySuggestionsCache cache;
+
+    @Inject
+    private VocabularyVersionRegistry versions;
+
+    /** The current request, needed for evaluating conditional requests. */
+    @Context
+    private Request request;
+
     @Override
-    public VocabularyTerms suggest(String vocabularyId, String input, @DefaultValue("10") int maxResults, String sort,
+    public Response suggest(String vocabularyId, String input, @DefaultValue("10") int maxResults, String sort,
         String customFilter)
     {
         if (StringUtils.isEmpty(input) || StringUtils.isEmpty(vocabularyId)) {
@@ -75,6 +90,44 @@ public VocabularyTerms suggest(String vocabularyId, String input, @DefaultValue(
         if (vocabulary == null) {
             throw new WebApplicationException(Response.Status.NOT_FOUND);
         }
+
+        // Suggestions only change when the vocabulary is reindexed, so its version is a good validator
+        String version = this.versions.getVersion(vocabulary);
+        CacheControl cacheControl = new CacheControl();
+        // Requests are authenticated, so shared caches shouldn't keep the responses
+        cacheControl.setPrivate(true);
+        EntityTag tag = null;
+        String key = null;
+        if (StringUtils.isNotBlank(version)) {
+            tag = new EntityTag(vocabulary.getIdentifier() + '-' + version.replace('"', '\''), true);
+            Response.ResponseBuilder notModified = this.request.evaluatePreconditions(tag);
+            if (notModified != null) {
+                return notModified.tag(tag).cacheControl(cacheControl).build();
+            }
+            cacheControl.setMaxAge(this.cache.getMaxAge());
+            key = this.cache.getKey(vocabulary.getIdentifier(), version, this.uriInfo.getBaseUri().toString(), input,
+                maxResults, sort, customFilter);
+        } else {
+            cacheControl.setNoCache(true);
+        }
+
+        List<VocabularyTermSummary> termReps = key == null ? null : this.cache.get(key);
+        if (termReps == null) {
+            // Cached suggestions are shared by all the aliases of the vocabulary, so their links use its identifier
+            termReps = getSuggestions(vocabulary, input, maxResults, sort, customFilter);
+            if (key != null) {
+                this.cache.set(key, termReps);
+            }
+        }
+        VocabularyTerms result = new VocabularyTerms().withVocabularyTerms(termReps);
+        result.withLinks(new Link().withRel(Relations.SELF).withHref(this.uriInfo.getRequestUri().toString()));
+        return Response.ok(result).tag(tag).cacheControl(cacheControl).build();
+    }
+
+    private List<VocabularyTermSummary> getSuggestions(Vocabulary vocabulary, String input, int maxResults,
+        String sort, String customFilter)
+    {
+        String vocabularyId = vocabulary.getIdentifier();
         List<VocabularyTerm> termSuggestions = vocabulary.search(input, maxResults, sort, customFilter);
 
         List<VocabularyTermSummary> termReps = new ArrayList<>();
@@ -93,8 +146,6 @@ public VocabularyTerms suggest(String vocabularyId, String input, @DefaultValue(
             termRep.withLinks(links);
             termReps.add(termRep);
         }
-        VocabularyTerms result = new VocabularyTerms().withVocabularyTerms(termReps);
-        result.withLinks(new Link().withRel(Relations.SELF).withHref(this.uriInfo.getRequestUri().toString()));
-        return result;
+        return termReps;
     }
 }
@@ -0,0 +1,157 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest.internal;
+
+import org.phenotips.vocabularies.rest.model.VocabularyTermSummary;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Keeps the recent vocabulary suggestions, so that the same prefixes typed again and again by users don't need a new
+ * search each time. The version of the vocabulary is part of the cache key, so reindexing a vocabulary makes all its
+ * old suggestions unreachable, and they are eventually evicted.
+ * <p>
+ * The size of the cache is configured with the {@code phenotips.vocabularies.rest.suggestions.cache.maxEntries}
+ * property, and the number of seconds clients may reuse a response without revalidating it with
+ * {@code phenotips.vocabularies.rest.suggestions.maxAge}.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M1
+ */
+@Component(roles = { VocabularySuggestionsCache.class })
+@Singleton
+public class VocabularySuggestionsCache implements Initializable, Disposable
+{
+    private static final String CONFIGURATION_PREFIX = "phenotips.vocabularies.rest.suggestions.";
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final int DEFAULT_MAX_AGE = 300;
+
+    /** Separates the parts of a cache key; not expected in any of the parameters. */
+    private static final char KEY_SEPARATOR = '\n';
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** The cached suggestions, with the keys built by {@link #getKey}. */
+    private Cache<List<VocabularyTermSummary>> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int maxEntries = getIntProperty(CONFIGURATION_PREFIX + "cache.maxEntries", DEFAULT_MAX_ENTRIES, 1);
+        CacheConfiguration config = new CacheConfiguration(new LRUEvictionConfiguration(maxEntries));
+        config.setConfigurationId("vocabulary.rest.suggestions");
+        try {
+            this.cache = this.cacheManager.createNewLocalCache(config);
+        } catch (CacheException ex) {
+            throw new InitializationException("Failed to create the vocabulary suggestions cache", ex);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+    }
+
+    /**
+     * Get the cached suggestions for a search.
+     *
+     * @param key the key of the search, as returned by {@link #getKey}
+     * @return the cached suggestions, or {@code null} if they're not in the cache
+     */
+    public List<VocabularyTermSummary> get(String key)
+    {
+        return this.cache.get(key);
+    }
+
+    /**
+     * Store the suggestions for a search.
+     *
+     * @param key the key of the search, as returned by {@link #getKey}
+     * @param suggestions the suggestions to store, must not be modified afterwards
+     */
+    public void set(String key, List<VocabularyTermSummary> suggestions)
+    {
+        this.cache.set(key, suggestions);
+    }
+
+    /**
+     * Build the cache key identifying a search.
+     *
+     * @param vocabularyId the canonical identifier of the vocabulary
+     * @param version the current version of the vocabulary
+     * @param baseUri the base URI of the REST API, since the cached suggestions contain links
+     * @param input the text to search for
+     * @param maxResults the maximum number of results
+     * @param sort the optional sort parameter
+     * @param customFilter the optional filter
+     * @return a key identifying the search
+     */
+    public String getKey(String vocabularyId, String version, String baseUri, String input, int maxResults,
+        String sort, String customFilter)
+    {
+        return new StringBuilder().append(vocabularyId).append(KEY_SEPARATOR)
+            .append(version).append(KEY_SEPARATOR)
+            .append(baseUri).append(KEY_SEPARATOR)
+            .append(maxResults).append(KEY_SEPARATOR)
+            .append(sort).append(KEY_SEPARATOR)
+            .append(customFilter).append(KEY_SEPARATOR)
+            .append(input).toString();
+    }
+
+    /**
+     * The number of seconds clients may reuse a response before revalidating it.
+     *
+     * @return a positive number, or {@code 0} if responses must always be revalidated
+     */
+    public int getMaxAge()
+    {
+        return getIntProperty(CONFIGURATION_PREFIX + "maxAge", DEFAULT_MAX_AGE, 0);
+    }
+
+    private int getIntProperty(String key, int defaultValue, int minValue)
+    {
+        Integer value = this.configuration.getProperty(key, Integer.class);
+        return (value == null || value < minValue) ? defaultValue : value;
+    }
+}